@@ -31,6 +31,7 @@ import de.avanux.smartapplianceenabler.modbus.ModbusTcp;
 import de.avanux.smartapplianceenabler.schedule.*;
 import de.avanux.smartapplianceenabler.semp.webservice.DeviceInfo;
 import de.avanux.smartapplianceenabler.configuration.Validateable;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import org.slf4j.Logger;
@@ -187,6 +188,9 @@ public class Appliance implements Validateable, ControlStateChangedListener, Tim
             if(meter instanceof ApplianceLifeCycle) {
                 meter.init();
             }
+            if(timeframeIntervalHandler != null) {
+                meter.addPowerUpdateListener(timeframeIntervalHandler);
+            }
             if(control != null) {
                 if(meter instanceof S0ElectricityMeter) {
                     ((S0ElectricityMeter) meter).setControl(control);
@@ -234,19 +238,19 @@ public class Appliance implements Validateable, ControlStateChangedListener, Tim
         }
     }
 
-    public void start(Timer timer) {
+    public void start(TaskScheduler scheduler) {
         logger.info("{}: Starting appliance", id);
         LocalDateTime now = LocalDateTime.now();
         if(timeframeIntervalHandler != null) {
-            timeframeIntervalHandler.setTimer(timer);
+            timeframeIntervalHandler.setScheduler(scheduler);
         }
         if(meter != null) {
             logger.info("{}: Starting {}", id, meter.getClass().getSimpleName());
-            meter.start(now, timer);
+            meter.start(now, scheduler);
         }
         if(control != null) {
             logger.info("{}: Starting {}", id, control.getClass().getSimpleName());
-            control.start(LocalDateTime.now(), timer);
+            control.start(LocalDateTime.now(), scheduler);
             logger.info("{}: Switch off appliance initially", id);
             control.on(now, false);
         }
@@ -18,15 +18,15 @@
 
 package de.avanux.smartapplianceenabler.appliance;
 
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import java.time.LocalDateTime;
 
-import java.util.Timer;
 
 public interface ApplianceLifeCycle {
 
     void init();
 
-    void start(LocalDateTime now, Timer timer);
+    void start(LocalDateTime now, TaskScheduler scheduler);
 
     void stop(LocalDateTime now);
 }
@@ -24,14 +24,25 @@ import de.avanux.smartapplianceenabler.configuration.Configuration;
 import de.avanux.smartapplianceenabler.configuration.ConfigurationException;
 import de.avanux.smartapplianceenabler.configuration.Connectivity;
 import de.avanux.smartapplianceenabler.control.Control;
+import de.avanux.smartapplianceenabler.history.TimeSeriesStore;
+import de.avanux.smartapplianceenabler.http.HttpClientPool;
+import de.avanux.smartapplianceenabler.http.HttpRequestCoalescer;
 import de.avanux.smartapplianceenabler.meter.Meter;
+import de.avanux.smartapplianceenabler.modbus.ModbusConnectionManager;
+import de.avanux.smartapplianceenabler.modbus.ModbusMetrics;
+import de.avanux.smartapplianceenabler.modbus.ModbusReadPlanner;
+import de.avanux.smartapplianceenabler.modbus.ModbusServer;
 import de.avanux.smartapplianceenabler.modbus.ModbusTcp;
 import de.avanux.smartapplianceenabler.schedule.Schedule;
+import de.avanux.smartapplianceenabler.schedule.TimeframeIntervalHandler;
 import de.avanux.smartapplianceenabler.semp.webservice.Device2EM;
 import de.avanux.smartapplianceenabler.semp.webservice.DeviceInfo;
 import de.avanux.smartapplianceenabler.semp.webservice.DeviceStatus;
+import de.avanux.smartapplianceenabler.util.CircuitBreakerRegistry;
 import de.avanux.smartapplianceenabler.util.FileHandler;
 import de.avanux.smartapplianceenabler.util.GuardedTimerTask;
+import de.avanux.smartapplianceenabler.util.TaskMetrics;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -48,8 +59,11 @@ public class ApplianceManager implements Runnable {
     private FileHandler fileHandler = new FileHandler();
     private Device2EM device2EM;
     private Appliances appliances;
-    private Timer timer;
+    private TaskScheduler scheduler;
     private GuardedTimerTask holidaysDownloaderTimerTask;
+    private TimeSeriesStore timeSeriesStore;
+    private GuardedTimerTask timeSeriesFlushTimerTask;
+    private static final int TIME_SERIES_FLUSH_INTERVAL_SECONDS = 60;
     private Integer autoclearSeconds;
     
     private ApplianceManager() {
@@ -58,8 +72,14 @@ public class ApplianceManager implements Runnable {
     public static ApplianceManager getInstance() {
         if(instance == null) {
             instance = new ApplianceManager();
-            // creating the timer here disables the it during unit tests
-            instance.timer = new Timer();
+            // creating the scheduler here disables the it during unit tests
+            instance.scheduler = new TaskScheduler();
+            ModbusMetrics.getInstance().registerMBean();
+            TaskMetrics.getInstance().registerMBean();
+            String homeDir = System.getProperty(FileHandler.SAE_HOME);
+            if(homeDir != null) {
+                instance.timeSeriesStore = new TimeSeriesStore(homeDir);
+            }
             String autoClear = System.getProperty("sae.autoclear", null);
             if(autoClear != null) {
                 instance.autoclearSeconds = Integer.parseInt(autoClear);
@@ -162,6 +182,71 @@ public class ApplianceManager implements Runnable {
             }
         }
 
+        String coalescingMillis = appliances.getConfigurationValue(HttpRequestCoalescer.freshnessConfigurationParamName);
+        HttpRequestCoalescer.getInstance().setFreshnessMillis(coalescingMillis != null
+                ? Integer.parseInt(coalescingMillis) : HttpRequestCoalescer.DEFAULT_FRESHNESS_MILLIS);
+        String maxConnectionsPerRoute = appliances.getConfigurationValue(HttpClientPool.maxPerRouteConfigurationParamName);
+        HttpClientPool.getInstance().setMaxPerRoute(maxConnectionsPerRoute != null
+                ? Integer.parseInt(maxConnectionsPerRoute) : HttpClientPool.DEFAULT_MAX_PER_ROUTE);
+        String failureThreshold = appliances.getConfigurationValue(
+                CircuitBreakerRegistry.failureThresholdConfigurationParamName);
+        CircuitBreakerRegistry.getInstance().setFailureThreshold(failureThreshold != null
+                ? Integer.parseInt(failureThreshold) : CircuitBreakerRegistry.DEFAULT_FAILURE_THRESHOLD);
+        String maxBackoffSeconds = appliances.getConfigurationValue(
+                CircuitBreakerRegistry.maxBackoffSecondsConfigurationParamName);
+        CircuitBreakerRegistry.getInstance().setMaxBackoffSeconds(maxBackoffSeconds != null
+                ? Integer.parseInt(maxBackoffSeconds) : CircuitBreakerRegistry.DEFAULT_MAX_BACKOFF_SECONDS);
+        // connections of a previous configuration must not be reused
+        ModbusConnectionManager.getInstance().close();
+        String maxModbusConnections = appliances.getConfigurationValue(
+                ModbusConnectionManager.maxConnectionsConfigurationParamName);
+        ModbusConnectionManager.getInstance().setMaxConnections(maxModbusConnections != null
+                ? Integer.parseInt(maxModbusConnections) : ModbusConnectionManager.DEFAULT_MAX_CONNECTIONS);
+        String modbusReadMaxGap = appliances.getConfigurationValue(ModbusReadPlanner.maxGapConfigurationParamName);
+        ModbusReadPlanner.getInstance().setMaxGap(modbusReadMaxGap != null
+                ? Integer.parseInt(modbusReadMaxGap) : ModbusReadPlanner.DEFAULT_MAX_GAP);
+        if(scheduler != null) {
+            String deviceIoThreads = appliances.getConfigurationValue(
+                    TaskScheduler.deviceIoThreadsConfigurationParamName);
+            String scheduleThreads = appliances.getConfigurationValue(
+                    TaskScheduler.scheduleThreadsConfigurationParamName);
+            String maxConcurrencyPerEndpoint = appliances.getConfigurationValue(
+                    TaskScheduler.maxConcurrencyPerEndpointConfigurationParamName);
+            scheduler.configure(
+                    deviceIoThreads != null ? Integer.parseInt(deviceIoThreads) : TaskScheduler.DEFAULT_DEVICE_IO_THREADS,
+                    scheduleThreads != null ? Integer.parseInt(scheduleThreads) : TaskScheduler.DEFAULT_SCHEDULE_THREADS,
+                    maxConcurrencyPerEndpoint != null ? Integer.parseInt(maxConcurrencyPerEndpoint)
+                            : TaskScheduler.DEFAULT_MAX_CONCURRENCY_PER_ENDPOINT);
+            HttpClientPool.getInstance().setExecutor(scheduler.getDeviceIoExecutor());
+            ModbusConnectionManager.getInstance().setCompletionExecutor(scheduler.getDeviceIoExecutor());
+        }
+        String slowTaskWarningPercent = appliances.getConfigurationValue(
+                TaskMetrics.slowTaskWarningPercentConfigurationParamName);
+        TaskMetrics.getInstance().setSlowTaskWarningPercent(slowTaskWarningPercent != null
+                ? Integer.valueOf(slowTaskWarningPercent) : null);
+        if(timeSeriesStore != null) {
+            String historyRetentionDays = appliances.getConfigurationValue(
+                    TimeSeriesStore.retentionDaysConfigurationParamName);
+            timeSeriesStore.setRetentionDays(historyRetentionDays != null
+                    ? Integer.parseInt(historyRetentionDays) : TimeSeriesStore.DEFAULT_RETENTION_DAYS);
+        }
+        String scheduleEventDriven = appliances.getConfigurationValue(
+                TimeframeIntervalHandler.eventDrivenConfigurationParamName);
+        TimeframeIntervalHandler.setEventDriven(scheduleEventDriven != null
+                ? Boolean.parseBoolean(scheduleEventDriven) : TimeframeIntervalHandler.DEFAULT_EVENT_DRIVEN);
+        ModbusServer modbusServer = ModbusServer.getInstance();
+        modbusServer.close();
+        String modbusServerPort = appliances.getConfigurationValue(ModbusServer.portConfigurationParamName);
+        if(modbusServerPort != null) {
+            String unitId = appliances.getConfigurationValue(ModbusServer.unitIdConfigurationParamName);
+            String registersPerAppliance = appliances.getConfigurationValue(
+                    ModbusServer.registersPerApplianceConfigurationParamName);
+            modbusServer.configure(Integer.parseInt(modbusServerPort),
+                    unitId != null ? Integer.parseInt(unitId) : ModbusServer.DEFAULT_UNIT_ID,
+                    registersPerAppliance != null ? Integer.parseInt(registersPerAppliance)
+                            : ModbusServer.DEFAULT_REGISTERS_PER_APPLIANCE);
+        }
+
         boolean holidaysUsed = false;
         for (Appliance appliance : getAppliances()) {
             if(appliance.hasTimeframeForHolidays()) {
@@ -176,8 +261,34 @@ public class ApplianceManager implements Runnable {
                 logger.error("{}: Terminating because of incorrect configuration", appliance.getId());
                 System.exit(-1);
             }
+            if(timeSeriesStore != null && appliance.getMeter() != null) {
+                String applianceId = appliance.getId();
+                Integer measurementInterval = appliance.getMeter().getMeasurementInterval();
+                // meters notifying on pulses only do not report power dropping to 0
+                int maxIntegrationSeconds = measurementInterval != null ? measurementInterval : 0;
+                appliance.getMeter().addPowerUpdateListener(averagePower -> timeSeriesStore.record(applianceId,
+                        System.currentTimeMillis(), averagePower, maxIntegrationSeconds));
+            }
+            if(modbusServer.isEnabled()) {
+                String address = appliances.getConfigurationValue(
+                        ModbusServer.addressConfigurationParamNamePrefix + appliance.getId());
+                modbusServer.addAppliance(appliance, address != null ? Integer.parseInt(address) : null);
+            }
             logger.debug("{}: Starting appliance ...", appliance.getId());
-            appliance.start(timer);
+            appliance.start(scheduler);
+        }
+        modbusServer.open();
+
+        if(timeSeriesStore != null && this.timeSeriesFlushTimerTask == null) {
+            this.timeSeriesFlushTimerTask = new GuardedTimerTask(null,
+                    "TimeSeriesStoreFlush", TIME_SERIES_FLUSH_INTERVAL_SECONDS * 1000) {
+                @Override
+                public void runTask() {
+                    timeSeriesStore.flush();
+                }
+            };
+            scheduler.schedule(this.timeSeriesFlushTimerTask, this.timeSeriesFlushTimerTask.getPeriod(),
+                    this.timeSeriesFlushTimerTask.getPeriod());
         }
 
         if(holidaysUsed) {
@@ -188,7 +299,7 @@ public class ApplianceManager implements Runnable {
              * load holidays from the file pass them on to all appliances.
              */
             this.holidaysDownloaderTimerTask = new GuardedTimerTask(null,
-                    "HolidaysDownloader", 24 * 60 * 60 * 1000) {
+                    "HolidaysDownloader", 24 * 60 * 60 * 1000, "HolidaysDownloader") {
                 @Override
                 public void runTask() {
                     FileHandler fileHandler = new FileHandler();
@@ -210,7 +321,7 @@ public class ApplianceManager implements Runnable {
                     }
                 }
             };
-            timer.schedule(this.holidaysDownloaderTimerTask, 0, this.holidaysDownloaderTimerTask.getPeriod());
+            scheduler.schedule(this.holidaysDownloaderTimerTask, 0, this.holidaysDownloaderTimerTask.getPeriod());
         }
         else {
             logger.debug("Holidays are NOT used.");
@@ -228,9 +339,9 @@ public class ApplianceManager implements Runnable {
         if(writeDevice2EM || writeAppliances) {
             restartAppliances();
             if(this.autoclearSeconds != null) {
-                this.timer.schedule(new TimerTask() {
+                this.scheduler.schedule(new GuardedTimerTask(null, "AutoClear", 0) {
                     @Override
-                    public void run() {
+                    public void runTask() {
                         logger.info("*** AUTO CLEAR ENABLED ***");
                         if(device2EM.getDeviceInfo() != null) {
                             device2EM.getDeviceInfo().clear();
@@ -247,6 +358,10 @@ public class ApplianceManager implements Runnable {
         }
     }
 
+    public TimeSeriesStore getTimeSeriesStore() {
+        return timeSeriesStore;
+    }
+
     public Device2EM getDevice2EM() {
         return this.device2EM;
     }
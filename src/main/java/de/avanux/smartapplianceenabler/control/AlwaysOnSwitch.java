@@ -18,9 +18,9 @@
 
 package de.avanux.smartapplianceenabler.control;
 
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import java.time.LocalDateTime;
 
-import java.util.Timer;
 
 /**
  * A switch which is always switched on.
@@ -32,7 +32,7 @@ public class AlwaysOnSwitch implements Control {
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
     }
 
     @Override
@@ -27,6 +27,7 @@ import de.avanux.smartapplianceenabler.protocol.ContentProtocolType;
 import de.avanux.smartapplianceenabler.protocol.JsonContentProtocolHandler;
 import de.avanux.smartapplianceenabler.util.ParentWithChild;
 import de.avanux.smartapplianceenabler.configuration.Validateable;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.slf4j.Logger;
@@ -38,6 +39,7 @@ import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -62,7 +64,7 @@ public class HttpSwitch implements Control, ApplianceLifeCycle, Validateable, Ap
     private transient HttpTransactionExecutor httpTransactionExecutor = new HttpTransactionExecutor();
     private transient ContentProtocolHandler contentContentProtocolHandler;
     protected transient boolean on;
-    private transient List<ControlStateChangedListener> controlStateChangedListeners = new ArrayList<>();
+    private transient List<ControlStateChangedListener> controlStateChangedListeners = new CopyOnWriteArrayList<>();
 
     @Override
     public void setApplianceId(String applianceId) {
@@ -89,6 +91,9 @@ public class HttpSwitch implements Control, ApplianceLifeCycle, Validateable, Ap
             this.httpTransactionExecutor.setConfiguration(this.httpConfiguration);
         }
         this.httpHandler.setHttpTransactionExecutor(httpTransactionExecutor);
+        if(this.httpRead != null) {
+            this.httpHandler.compile(Collections.singletonList(this.httpRead), getContentContentProtocolHandler());
+        }
     }
 
 
@@ -109,7 +114,7 @@ public class HttpSwitch implements Control, ApplianceLifeCycle, Validateable, Ap
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
     }
 
     @Override
@@ -19,13 +19,14 @@
 package de.avanux.smartapplianceenabler.control;
 
 import de.avanux.smartapplianceenabler.appliance.ApplianceIdConsumer;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import java.time.LocalDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * This switch only maintains its state and listeners.
@@ -35,14 +36,14 @@ public class MockSwitch implements Control, ApplianceIdConsumer {
     private transient Logger logger = LoggerFactory.getLogger(MockSwitch.class);
     private transient String applianceId;
     private transient boolean on;
-    transient List<ControlStateChangedListener> controlStateChangedListeners = new ArrayList<>();
+    transient List<ControlStateChangedListener> controlStateChangedListeners = new CopyOnWriteArrayList<>();
 
     @Override
     public void init() {
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
     }
 
     @Override
@@ -25,6 +25,7 @@ import de.avanux.smartapplianceenabler.modbus.ModbusValidator;
 import de.avanux.smartapplianceenabler.modbus.executor.*;
 import de.avanux.smartapplianceenabler.util.ParentWithChild;
 import de.avanux.smartapplianceenabler.configuration.Validateable;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import java.time.LocalDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,14 +34,14 @@ import javax.xml.bind.annotation.XmlElement;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ModbusSwitch extends ModbusSlave implements Control, Validateable {
 
     private transient Logger logger = LoggerFactory.getLogger(ModbusSwitch.class);
     @XmlElement(name = "ModbusWrite")
     private List<ModbusWrite> modbusWrites;
-    private transient List<ControlStateChangedListener> controlStateChangedListeners = new ArrayList<>();
+    private transient List<ControlStateChangedListener> controlStateChangedListeners = new CopyOnWriteArrayList<>();
 
     @Override
     public void init() {
@@ -62,7 +63,7 @@ public class ModbusSwitch extends ModbusSlave implements Control, Validateable {
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
     }
 
     @Override
@@ -80,7 +81,7 @@ public class ModbusSwitch extends ModbusSlave implements Control, Validateable {
             try {
                 ModbusWriteTransactionExecutor executor = ModbusExecutorFactory.getWriteExecutor(getApplianceId(),
                         registerWrite.getType(), registerWrite.getAddress(),registerWrite.getFactorToValue());
-                executeTransaction(executor, true);
+                executeTransaction(executor);
                 if(executor instanceof WriteCoilExecutor) {
                     result = switchOn == ((WriteCoilExecutor) executor).getResult();
                 }
@@ -110,7 +111,7 @@ public class ModbusSwitch extends ModbusSlave implements Control, Validateable {
             try {
                 ModbusReadTransactionExecutor executor = ModbusExecutorFactory.getReadExecutor(getApplianceId(),
                         registerWrite.getReadRegisterType(), registerWrite.getAddress());
-                executeTransaction(executor, true);
+                executeTransaction(executor);
                 if(executor instanceof ReadCoilExecutorImpl) {
                     on = ((ReadCoilExecutorImpl) executor).getValue();
                 }
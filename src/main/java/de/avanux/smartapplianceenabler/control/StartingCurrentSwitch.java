@@ -24,12 +24,14 @@ import de.avanux.smartapplianceenabler.meter.S0ElectricityMeter;
 import de.avanux.smartapplianceenabler.schedule.DayTimeframeCondition;
 import de.avanux.smartapplianceenabler.schedule.TimeframeIntervalHandler;
 import de.avanux.smartapplianceenabler.util.GuardedTimerTask;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.bind.annotation.*;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -71,8 +73,8 @@ public class StartingCurrentSwitch implements Control, ApplianceIdConsumer, Powe
     private transient boolean on;
     private transient boolean startingCurrentDetected;
     private transient LocalDateTime switchOnTime;
-    private transient List<ControlStateChangedListener> controlStateChangedListeners = new ArrayList<>();
-    private transient List<StartingCurrentSwitchListener> startingCurrentSwitchListeners = new ArrayList<>();
+    private transient List<ControlStateChangedListener> controlStateChangedListeners = new CopyOnWriteArrayList<>();
+    private transient List<StartingCurrentSwitchListener> startingCurrentSwitchListeners = new CopyOnWriteArrayList<>();
     private transient GuardedTimerTask powerUpdateTimerTask;
 
 
@@ -150,16 +152,16 @@ public class StartingCurrentSwitch implements Control, ApplianceIdConsumer, Powe
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
         logger.info("{}: Starting current switch: powerThreshold={}W startingCurrentDetectionDuration={}s " +
                         "finishedCurrentDetectionDuration={}s minRunningTime={}s",
                 applianceId, getPowerThreshold(), getStartingCurrentDetectionDuration(),
                 getFinishedCurrentDetectionDuration(), getMinRunningTime());
         if(this.control != null) {
-            this.control.start(now, timer);
+            this.control.start(now, scheduler);
         }
         applianceOn(now, true);
-        if (timer != null && meter instanceof S0ElectricityMeter) {
+        if (scheduler != null && meter instanceof S0ElectricityMeter) {
             logger.debug("{}: Creating timer task to trigger power updates for finished current detection", this.applianceId);
             // for PulsePowerMeter the finished current cannot be detected if there are no pulses anymore
             // therefore this time task is needed
@@ -175,7 +177,7 @@ public class StartingCurrentSwitch implements Control, ApplianceIdConsumer, Powe
                     }
                 }
             };
-            timer.schedule(this.powerUpdateTimerTask, 0, this.powerUpdateTimerTask.getPeriod());
+            scheduler.schedule(this.powerUpdateTimerTask, 0, this.powerUpdateTimerTask.getPeriod());
         }
     }
 
@@ -21,6 +21,7 @@ import com.pi4j.io.gpio.GpioController;
 import com.pi4j.io.gpio.GpioPinDigitalOutput;
 import com.pi4j.io.gpio.PinState;
 import de.avanux.smartapplianceenabler.appliance.ApplianceIdConsumer;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import java.time.LocalDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,7 +31,7 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @XmlAccessorType(XmlAccessType.FIELD)
 public class Switch extends GpioControllable implements Control, ApplianceIdConsumer {
@@ -38,14 +39,14 @@ public class Switch extends GpioControllable implements Control, ApplianceIdCons
     @XmlAttribute
     private boolean reverseStates;
     private transient GpioPinDigitalOutput outputPin;
-    private transient List<ControlStateChangedListener> controlStateChangedListeners = new ArrayList<>();
+    private transient List<ControlStateChangedListener> controlStateChangedListeners = new CopyOnWriteArrayList<>();
 
     @Override
     public void init() {
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
         logger.debug("{}: Starting {} for {}", getApplianceId(), getClass().getSimpleName(), getGpio());
         GpioController gpioController = getGpioController();
         if (gpioController != null) {
@@ -35,6 +35,14 @@ public interface EVChargerControl extends ApplianceIdConsumer, Validateable {
 
     boolean isInErrorState();
 
+    /**
+     * Returns the status of the charger. Implementations should read the charger once for all values.
+     * @return the status
+     */
+    default EVChargerStatus getStatus() {
+        return new EVChargerStatus(isVehicleNotConnected(), isVehicleConnected(), isCharging(), isInErrorState());
+    }
+
     void setChargeCurrent(int current);
 
     void startCharging();
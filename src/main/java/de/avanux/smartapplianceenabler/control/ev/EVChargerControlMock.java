@@ -22,6 +22,7 @@ import de.avanux.smartapplianceenabler.meter.Meter;
 import java.time.LocalDateTime;
 
 import de.avanux.smartapplianceenabler.meter.PowerUpdateListener;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -126,7 +127,7 @@ public class EVChargerControlMock implements EVChargerControl, Meter {
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
         logDebug("start");
     }
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.control.ev;
+
+/**
+ * Immutable snapshot of the status of an EV charger. All values are derived from the same reading of the charger
+ * so that they are consistent with each other.
+ */
+public class EVChargerStatus {
+    private final boolean vehicleNotConnected;
+    private final boolean vehicleConnected;
+    private final boolean charging;
+    private final boolean inErrorState;
+
+    public EVChargerStatus(boolean vehicleNotConnected, boolean vehicleConnected, boolean charging,
+                           boolean inErrorState) {
+        this.vehicleNotConnected = vehicleNotConnected;
+        this.vehicleConnected = vehicleConnected;
+        this.charging = charging;
+        this.inErrorState = inErrorState;
+    }
+
+    public boolean isVehicleNotConnected() {
+        return vehicleNotConnected;
+    }
+
+    public boolean isVehicleConnected() {
+        return vehicleConnected;
+    }
+
+    public boolean isCharging() {
+        return charging;
+    }
+
+    public boolean isInErrorState() {
+        return inErrorState;
+    }
+
+    @Override
+    public String toString() {
+        return "EVChargerStatus{" +
+                "vehicleNotConnected=" + vehicleNotConnected +
+                ", vehicleConnected=" + vehicleConnected +
+                ", charging=" + charging +
+                ", inErrorState=" + inErrorState +
+                '}';
+    }
+}
@@ -23,12 +23,15 @@ import de.avanux.smartapplianceenabler.configuration.ConfigurationException;
 import de.avanux.smartapplianceenabler.control.Control;
 import de.avanux.smartapplianceenabler.control.ControlStateChangedListener;
 import de.avanux.smartapplianceenabler.http.EVHttpControl;
+import de.avanux.smartapplianceenabler.http.HttpRead;
 import de.avanux.smartapplianceenabler.meter.Meter;
 import de.avanux.smartapplianceenabler.modbus.EVModbusControl;
 import de.avanux.smartapplianceenabler.schedule.*;
 import de.avanux.smartapplianceenabler.semp.webservice.DeviceInfo;
+import de.avanux.smartapplianceenabler.util.CircuitBreakerRegistry;
 import de.avanux.smartapplianceenabler.util.GuardedTimerTask;
 import de.avanux.smartapplianceenabler.configuration.Validateable;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,8 +41,8 @@ import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -78,7 +81,7 @@ public class ElectricVehicleCharger implements Control, ApplianceLifeCycle, Vali
     private transient Vector<EVChargerState> stateHistory = new Vector<>();
     private transient LocalDateTime stateLastChangedTimestamp;
     private transient boolean useOptionalEnergy = true;
-    private transient List<ControlStateChangedListener> controlStateChangedListeners = new ArrayList<>();
+    private transient List<ControlStateChangedListener> controlStateChangedListeners = new CopyOnWriteArrayList<>();
     private transient Long switchChargingStateTimestamp;
     private transient Integer chargePower;
     private transient GuardedTimerTask updateStateTimerTask;
@@ -278,21 +281,38 @@ public class ElectricVehicleCharger implements Control, ApplianceLifeCycle, Vali
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
         logger.debug("{}: Starting ...", this.applianceId);
-        if(timer != null) {
+        if(scheduler != null) {
             this.updateStateTimerTask = new GuardedTimerTask(this.applianceId,"UpdateState",
-                    getPollInterval() * 1000) {
+                    getPollInterval() * 1000, getEndpoint()) {
                 @Override
                 public void runTask() {
                     updateState(LocalDateTime.now());
                     updateSoc(LocalDateTime.now());
                 }
             };
-            timer.schedule(this.updateStateTimerTask, 0, this.updateStateTimerTask.getPeriod());
+            scheduler.schedule(this.updateStateTimerTask, 0, this.updateStateTimerTask.getPeriod());
         }
     }
 
+    /**
+     * Returns the endpoint of the charger or the appliance id, if it is unknown.
+     */
+    private String getEndpoint() {
+        String endpoint = null;
+        if(control instanceof EVModbusControl) {
+            endpoint = ((EVModbusControl) control).getEndpoint();
+        }
+        else if(control instanceof EVHttpControl) {
+            List<HttpRead> httpReads = ((EVHttpControl) control).getHttpReads();
+            if(httpReads != null && ! httpReads.isEmpty()) {
+                endpoint = CircuitBreakerRegistry.getEndpoint(httpReads.get(0).getUrl());
+            }
+        }
+        return endpoint != null ? endpoint : this.applianceId;
+    }
+
     @Override
     public void stop(LocalDateTime now) {
         logger.debug("{}: Stopping ...", this.applianceId);
@@ -375,10 +395,11 @@ public class ElectricVehicleCharger implements Control, ApplianceLifeCycle, Vali
     }
 
     protected EVChargerState getNewState(LocalDateTime now, EVChargerState currenState, boolean firstInvocationAfterSkip) {
-        boolean vehicleNotConnected = control.isVehicleNotConnected();
-        boolean vehicleConnected = control.isVehicleConnected();
-        boolean charging = control.isCharging();
-        boolean errorState = control.isInErrorState();
+        EVChargerStatus status = control.getStatus();
+        boolean vehicleNotConnected = status.isVehicleNotConnected();
+        boolean vehicleConnected = status.isVehicleConnected();
+        boolean charging = status.isCharging();
+        boolean errorState = status.isInErrorState();
         boolean hasOnlyEmptyRequestsBeforeTimeGap = hasOnlyEmptyRequestsBeforeTimeGap(now);
         logger.debug("{}: currenState={} startChargingRequested={} stopChargingRequested={} vehicleNotConnected={} " +
                         "vehicleConnected={} charging={} errorState={} firstInvocationAfterSkip={} hasOnlyEmptyRequestsBeforeTimeGap={}",
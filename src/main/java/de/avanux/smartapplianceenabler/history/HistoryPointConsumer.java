@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.history;
+
+import java.io.IOException;
+
+/**
+ * Receives the points of a history query one by one so that they don't have to be collected in memory.
+ */
+@FunctionalInterface
+public interface HistoryPointConsumer {
+
+    /**
+     * @param epochSecond the timestamp of the record or the start of the bucket
+     * @param averagePower the average power in W
+     * @param minPower the minimum power in W
+     * @param maxPower the maximum power in W
+     * @param energy the energy in kWh consumed since the previous point or within the bucket
+     */
+    void accept(long epochSecond, float averagePower, float minPower, float maxPower, float energy) throws IOException;
+}
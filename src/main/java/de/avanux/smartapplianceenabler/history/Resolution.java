@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.history;
+
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * The resolution of history data. Except for {@link #RAW} each resolution is backed by a rollup tier
+ * aggregating the records into buckets of the given size.
+ */
+public enum Resolution {
+    RAW("raw", 0),
+    MINUTE("1m", 60),
+    QUARTER_HOUR("15m", 15 * 60),
+    HOUR("1h", 60 * 60),
+    DAY("1d", 24 * 60 * 60);
+
+    private String id;
+    private int bucketSeconds;
+
+    Resolution(String id, int bucketSeconds) {
+        this.id = id;
+        this.bucketSeconds = bucketSeconds;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    public boolean isRollup() {
+        return bucketSeconds > 0;
+    }
+
+    /**
+     * Returns the start of the bucket containing the given epoch second. Days start at midnight of the given zone.
+     */
+    public long getBucketStart(long epochSecond, ZoneId zoneId) {
+        if(this == RAW) {
+            return epochSecond;
+        }
+        if(this == DAY) {
+            return Instant.ofEpochSecond(epochSecond).atZone(zoneId).toLocalDate().atStartOfDay(zoneId).toEpochSecond();
+        }
+        return epochSecond - Math.floorMod(epochSecond, (long) bucketSeconds);
+    }
+
+    /**
+     * Returns the resolution for the given id.
+     * @param id the id, e.g. "15m"
+     * @return the resolution or null, if the id is unknown
+     */
+    public static Resolution fromId(String id) {
+        for(Resolution resolution : values()) {
+            if(resolution.id.equalsIgnoreCase(id)) {
+                return resolution;
+            }
+        }
+        return null;
+    }
+}
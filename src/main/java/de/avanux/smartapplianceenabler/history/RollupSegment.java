@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A memory-mapped file of fixed-width rollup records sorted by bucket start. Each record holds the aggregates
+ * of the power values added to its bucket and the energy consumed within the bucket. The record of the most recent
+ * bucket is updated in place while values are added to it. The mapping grows by doubling when the file is full.
+ * <p>
+ * The average power is weighted by time: each power value is weighted with the duration until the next value
+ * was added and this duration is accounted to the bucket of the value. As long as the duration of the values of a
+ * bucket is not known, the average of min and max power is returned.
+ * <p>
+ * Segments opened for reading are not mapped but read into a heap buffer.
+ * <p>
+ * Header layout: magic (int), version (int), record size (int), record count (int).
+ * Record layout: bucket start epoch second (long), duration in seconds (float), min power (float),
+ * max power (float), energy in kWh (float), sum of power multiplied by duration in Ws (double).
+ */
+public class RollupSegment {
+
+    public static final int MAGIC = 0x53414552; // "SAER"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 32;
+    private static final int RECORD_COUNT_OFFSET = 12;
+    private static final int DURATION_OFFSET = 8;
+    private static final int MIN_OFFSET = 12;
+    private static final int MAX_OFFSET = 16;
+    private static final int ENERGY_OFFSET = 20;
+    private static final int SUM_OFFSET = 24;
+    private final File file;
+    private final boolean writable;
+    private ByteBuffer buffer;
+    private int maxRecords;
+    private int recordCount;
+
+    private RollupSegment(File file, boolean writable, ByteBuffer buffer) {
+        this.file = file;
+        this.writable = writable;
+        this.buffer = buffer;
+        this.maxRecords = (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+        this.recordCount = buffer.getInt(RECORD_COUNT_OFFSET);
+    }
+
+    /**
+     * Opens a segment for adding values. The file is created if it does not exist.
+     * @param file the segment file
+     * @param initialRecords the number of records of a new segment
+     */
+    public static RollupSegment openForWrite(File file, int initialRecords) throws IOException {
+        file.getParentFile().mkdirs();
+        boolean created = file.length() < HEADER_SIZE;
+        long size = created ? HEADER_SIZE + (long) Math.max(initialRecords, 1) * RECORD_SIZE : file.length();
+        MappedByteBuffer buffer = map(file, size);
+        if(created) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            buffer.putInt(RECORD_COUNT_OFFSET, 0);
+        }
+        else {
+            checkHeader(file, buffer);
+        }
+        return new RollupSegment(file, true, buffer);
+    }
+
+    /**
+     * Opens a segment for reading only.
+     * @param file the segment file
+     */
+    public static RollupSegment openForRead(File file) throws IOException {
+        ByteBuffer buffer = TimeSeriesSegment.readRecords(file, RECORD_COUNT_OFFSET, RECORD_SIZE);
+        checkHeader(file, buffer);
+        return new RollupSegment(file, false, buffer.asReadOnlyBuffer());
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static void checkHeader(File file, ByteBuffer buffer) throws IOException {
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Not a rollup segment: " + file);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Adds a power value and the energy consumed since the previous value to the bucket.
+     * @param bucketStart the start of the bucket which must not be before the bucket of the most recent record
+     * @param power the power in W
+     * @param energy the energy in kWh
+     * @param previousDuration the duration in seconds since the previous value was added
+     * @param previousPowerSeconds the power multiplied by duration in Ws since the previous value was added
+     * @return false, if the bucket is before the bucket of the most recent record
+     */
+    public synchronized boolean add(long bucketStart, float power, float energy,
+                                    double previousDuration, double previousPowerSeconds) throws IOException {
+        if(recordCount > 0) {
+            int offset = recordOffset(recordCount - 1);
+            long lastBucketStart = buffer.getLong(offset);
+            if(bucketStart < lastBucketStart) {
+                return false;
+            }
+            // the duration of the previous value is accounted to its bucket
+            buffer.putFloat(offset + DURATION_OFFSET,
+                    (float) (buffer.getFloat(offset + DURATION_OFFSET) + previousDuration));
+            buffer.putDouble(offset + SUM_OFFSET, buffer.getDouble(offset + SUM_OFFSET) + previousPowerSeconds);
+            if(bucketStart == lastBucketStart) {
+                buffer.putFloat(offset + MIN_OFFSET, Math.min(buffer.getFloat(offset + MIN_OFFSET), power));
+                buffer.putFloat(offset + MAX_OFFSET, Math.max(buffer.getFloat(offset + MAX_OFFSET), power));
+                buffer.putFloat(offset + ENERGY_OFFSET, buffer.getFloat(offset + ENERGY_OFFSET) + energy);
+                return true;
+            }
+        }
+        if(recordCount >= maxRecords) {
+            grow();
+        }
+        int offset = recordOffset(recordCount);
+        buffer.putLong(offset, bucketStart);
+        buffer.putFloat(offset + DURATION_OFFSET, 0.0f);
+        buffer.putFloat(offset + MIN_OFFSET, power);
+        buffer.putFloat(offset + MAX_OFFSET, power);
+        buffer.putFloat(offset + ENERGY_OFFSET, energy);
+        buffer.putDouble(offset + SUM_OFFSET, 0.0);
+        recordCount++;
+        // the record count is written last so that a partially written record is never visible
+        buffer.putInt(RECORD_COUNT_OFFSET, recordCount);
+        return true;
+    }
+
+    /**
+     * Deletes the records of buckets starting before the given epoch second by moving the remaining records to the
+     * start of the segment so that their space is reused instead of growing the file.
+     * @return the number of records deleted
+     */
+    public synchronized int deleteBefore(long epochSecond) throws IOException {
+        if(! writable) {
+            throw new IOException("Rollup segment is read-only: " + file);
+        }
+        int index = indexOf(epochSecond);
+        if(index == 0) {
+            return 0;
+        }
+        // records are moved towards the start, i.e. copying in ascending order never overwrites a record not moved yet
+        int remaining = recordCount - index;
+        int sourceOffset = recordOffset(index);
+        int length = remaining * RECORD_SIZE;
+        for(int i = 0; i < length; i += Long.BYTES) {
+            buffer.putLong(HEADER_SIZE + i, buffer.getLong(sourceOffset + i));
+        }
+        recordCount = remaining;
+        buffer.putInt(RECORD_COUNT_OFFSET, recordCount);
+        return index;
+    }
+
+    private void grow() throws IOException {
+        if(! writable) {
+            throw new IOException("Rollup segment is read-only: " + file);
+        }
+        ((MappedByteBuffer) buffer).force();
+        buffer = map(file, HEADER_SIZE + (long) maxRecords * 2 * RECORD_SIZE);
+        maxRecords = (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    /**
+     * Returns the index of the first record with a bucket start equal to or after the given epoch second.
+     * @return the index or the record count, if there is no such record
+     */
+    public synchronized int indexOf(long epochSecond) {
+        int low = 0;
+        int high = recordCount;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(buffer.getLong(recordOffset(middle)) < epochSecond) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public synchronized long getBucketStart(int index) {
+        return buffer.getLong(checkedRecordOffset(index));
+    }
+
+    public synchronized float getAveragePower(int index) {
+        return averagePower(checkedRecordOffset(index));
+    }
+
+    private float averagePower(int offset) {
+        float duration = buffer.getFloat(offset + DURATION_OFFSET);
+        if(duration > 0.0f) {
+            return (float) (buffer.getDouble(offset + SUM_OFFSET) / duration);
+        }
+        return (buffer.getFloat(offset + MIN_OFFSET) + buffer.getFloat(offset + MAX_OFFSET)) / 2.0f;
+    }
+
+    public synchronized float getMinPower(int index) {
+        return buffer.getFloat(checkedRecordOffset(index) + MIN_OFFSET);
+    }
+
+    public synchronized float getMaxPower(int index) {
+        return buffer.getFloat(checkedRecordOffset(index) + MAX_OFFSET);
+    }
+
+    public synchronized float getEnergy(int index) {
+        return buffer.getFloat(checkedRecordOffset(index) + ENERGY_OFFSET);
+    }
+
+    /**
+     * Passes the record to the consumer.
+     */
+    public void accept(int index, HistoryPointConsumer consumer) throws IOException {
+        long bucketStart;
+        float averagePower;
+        float minPower;
+        float maxPower;
+        float energy;
+        synchronized(this) {
+            int offset = checkedRecordOffset(index);
+            bucketStart = buffer.getLong(offset);
+            averagePower = averagePower(offset);
+            minPower = buffer.getFloat(offset + MIN_OFFSET);
+            maxPower = buffer.getFloat(offset + MAX_OFFSET);
+            energy = buffer.getFloat(offset + ENERGY_OFFSET);
+        }
+        consumer.accept(bucketStart, averagePower, minPower, maxPower, energy);
+    }
+
+    private int checkedRecordOffset(int index) {
+        if(index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("index=" + index + " recordCount=" + recordCount);
+        }
+        return recordOffset(index);
+    }
+
+    private int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    /**
+     * Writes modified pages to disk.
+     */
+    public synchronized void force() {
+        if(writable) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.avanux.smartapplianceenabler.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A memory-mapped, append-only file of fixed-width records. Each record consists of the epoch second (long),
+ * the power in W (float) and the energy in kWh (float). The file is mapped with its maximum size when opened so that
+ * appending a record only writes to memory; the operating system writes dirty pages to disk in batches and
+ * {@link #force()} can be used to flush them explicitly.
+ * <p>
+ * Segments opened for reading are not mapped. Their records are read into a heap buffer and the file is closed
+ * immediately so that queries spanning many days do not leave a mapping per day behind.
+ * <p>
+ * Header layout: magic (int), version (int), record size (int), record count (int).
+ */
+public class TimeSeriesSegment {
+
+    public static final int MAGIC = 0x53414554; // "SAET"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 16;
+    private static final int RECORD_COUNT_OFFSET = 12;
+    private final File file;
+    private final int maxRecords;
+    private final ByteBuffer buffer;
+    private int recordCount;
+
+    private TimeSeriesSegment(File file, int maxRecords, ByteBuffer buffer, int recordCount) {
+        this.file = file;
+        this.maxRecords = maxRecords;
+        this.buffer = buffer;
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * Opens a segment for appending records. The file is created if it does not exist.
+     * @param file the segment file
+     * @param maxRecords the maximum number of records of a new segment
+     */
+    public static TimeSeriesSegment openForWrite(File file, int maxRecords) throws IOException {
+        file.getParentFile().mkdirs();
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            boolean created = channel.size() < HEADER_SIZE;
+            long size = created ? HEADER_SIZE + (long) maxRecords * RECORD_SIZE : channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if(created) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, RECORD_SIZE);
+                buffer.putInt(RECORD_COUNT_OFFSET, 0);
+            }
+            else {
+                checkHeader(file, buffer);
+            }
+            int segmentMaxRecords = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+            return new TimeSeriesSegment(file, segmentMaxRecords, buffer, buffer.getInt(RECORD_COUNT_OFFSET));
+        }
+    }
+
+    /**
+     * Opens a segment for reading only.
+     * @param file the segment file
+     */
+    public static TimeSeriesSegment openForRead(File file) throws IOException {
+        ByteBuffer buffer = readRecords(file, RECORD_COUNT_OFFSET, RECORD_SIZE);
+        checkHeader(file, buffer);
+        int recordCount = buffer.getInt(RECORD_COUNT_OFFSET);
+        return new TimeSeriesSegment(file, recordCount, buffer.asReadOnlyBuffer(), recordCount);
+    }
+
+    /**
+     * Reads the header and the records of a file into a heap buffer and closes the file.
+     * @param recordCountOffset the offset of the record count within the header
+     * @param recordSize the size of a record
+     */
+    static ByteBuffer readRecords(File file, int recordCountOffset, int recordSize) throws IOException {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            int recordCount = header.getInt(recordCountOffset);
+            long size = HEADER_SIZE + (long) Math.max(recordCount, 0) * recordSize;
+            if(recordCount < 0 || size > channel.size()) {
+                throw new IOException("Invalid record count " + recordCount + ": " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            readFully(channel, buffer, 0);
+            return buffer;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    private static void checkHeader(File file, ByteBuffer buffer) throws IOException {
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Not a time series segment: " + file);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    public boolean isFull() {
+        return getRecordCount() >= maxRecords;
+    }
+
+    /**
+     * Appends a record.
+     * @return false, if the segment is full
+     */
+    public synchronized boolean append(long epochSecond, float power, float energy) {
+        if(recordCount >= maxRecords) {
+            return false;
+        }
+        int offset = HEADER_SIZE + recordCount * RECORD_SIZE;
+        buffer.putLong(offset, epochSecond);
+        buffer.putFloat(offset + 8, power);
+        buffer.putFloat(offset + 12, energy);
+        recordCount++;
+        // the record count is written last so that a partially written record is never visible
+        buffer.putInt(RECORD_COUNT_OFFSET, recordCount);
+        return true;
+    }
+
+    /**
+     * Returns the index of the first record with an epoch second equal to or after the given one.
+     * @return the index or the record count, if there is no such record
+     */
+    public synchronized int indexOf(long epochSecond) {
+        int low = 0;
+        int high = recordCount;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(buffer.getLong(HEADER_SIZE + middle * RECORD_SIZE) < epochSecond) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public synchronized long getEpochSecond(int index) {
+        return buffer.getLong(recordOffset(index));
+    }
+
+    public synchronized float getPower(int index) {
+        return buffer.getFloat(recordOffset(index) + 8);
+    }
+
+    public synchronized float getEnergy(int index) {
+        return buffer.getFloat(recordOffset(index) + 12);
+    }
+
+    private int recordOffset(int index) {
+        if(index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("index=" + index + " recordCount=" + recordCount);
+        }
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    /**
+     * Writes modified pages to disk.
+     */
+    public synchronized void force() {
+        if(buffer instanceof MappedByteBuffer && ! buffer.isReadOnly()) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.avanux.smartapplianceenabler.history;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores power and energy readings of appliances in {@link TimeSeriesSegment}s below the history directory
+ * with one segment file per appliance and day: history/{applianceId}/{yyyy-MM-dd}.tss
+ * <p>
+ * At most one record per appliance and second is stored. The energy of a record is the energy in kWh consumed
+ * since the start of the day which is derived from the power readings. A power reading is integrated until the next
+ * reading but not longer than the maximum integration time of the appliance, since meters notifying on pulses only
+ * (S0) do not report that power dropped to 0. The energy is continued from the last record of the segment after a
+ * restart.
+ * <p>
+ * In addition each record is added to the rollup tiers of all {@link Resolution}s except {@link Resolution#RAW}
+ * which are stored as {@link RollupSegment}s: history/{applianceId}/rollup-{resolution}.tsr
+ * Queries for a coarse resolution therefore read one record per bucket instead of the raw records.
+ * <p>
+ * Segment files are mapped with their maximum size but the file system allocates only the pages actually written
+ * (sparse files). Segment files older than the retention period are deleted when the segment of a new day is opened.
+ * Rollup records of buckets before the retention period are deleted at the same time.
+ * If a segment cannot be opened, opening is retried with the next record.
+ */
+public class TimeSeriesStore {
+
+    public static final String HISTORY_DIR = "history";
+    public static final String SEGMENT_FILE_SUFFIX = ".tss";
+    // one record per second and an additional record for daylight saving time switch
+    public static final int MAX_RECORDS_PER_SEGMENT = 25 * 60 * 60;
+    public static final String ROLLUP_FILE_PREFIX = "rollup-";
+    public static final String ROLLUP_FILE_SUFFIX = ".tsr";
+    // initial size of rollup segments before they grow
+    private static final int ROLLUP_INITIAL_SECONDS = 31 * 24 * 60 * 60;
+    private static final int ROLLUP_RESOLUTION_COUNT
+            = (int) Arrays.stream(Resolution.values()).filter(Resolution::isRollup).count();
+    public static final String retentionDaysConfigurationParamName = "History.RetentionDays";
+    public static final int DEFAULT_RETENTION_DAYS = 365;
+    private static final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private transient Logger logger = LoggerFactory.getLogger(TimeSeriesStore.class);
+    private File directory;
+    private ZoneId zoneId = ZoneId.systemDefault();
+    private Map<String, ApplianceTimeSeries> applianceIdWithTimeSeries = new ConcurrentHashMap<>();
+    private volatile int retentionDays = DEFAULT_RETENTION_DAYS;
+
+    /**
+     * @param homeDir the directory below which the history directory is located
+     */
+    public TimeSeriesStore(String homeDir) {
+        this.directory = new File(homeDir, HISTORY_DIR);
+        logger.info("Using history directory " + this.directory);
+    }
+
+    /**
+     * Sets the number of days for which segment files are kept. A value of 0 or less keeps them forever.
+     */
+    public void setRetentionDays(int retentionDays) {
+        this.retentionDays = retentionDays;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public File getSegmentFile(String applianceId, LocalDate day) {
+        return new File(new File(directory, applianceId), dateFormatter.format(day) + SEGMENT_FILE_SUFFIX);
+    }
+
+    public File getRollupFile(String applianceId, Resolution resolution) {
+        return new File(new File(directory, applianceId), ROLLUP_FILE_PREFIX + resolution.getId() + ROLLUP_FILE_SUFFIX);
+    }
+
+    /**
+     * Records a power reading of an appliance which is integrated until the next reading.
+     * @param applianceId the appliance id
+     * @param timestampMillis the timestamp of the reading in epoch millis
+     * @param power the power in W
+     */
+    public void record(String applianceId, long timestampMillis, int power) {
+        record(applianceId, timestampMillis, power, 0);
+    }
+
+    /**
+     * Records a power reading of an appliance.
+     * @param applianceId the appliance id
+     * @param timestampMillis the timestamp of the reading in epoch millis
+     * @param power the power in W
+     * @param maxIntegrationSeconds the maximum time the power is integrated if the next reading is later, e.g. the
+     *                              measurement interval of the meter; 0 or less integrates until the next reading
+     */
+    public void record(String applianceId, long timestampMillis, int power, int maxIntegrationSeconds) {
+        ApplianceTimeSeries timeSeries = applianceIdWithTimeSeries.computeIfAbsent(applianceId,
+                id -> new ApplianceTimeSeries(id));
+        timeSeries.record(timestampMillis, power,
+                maxIntegrationSeconds > 0 ? maxIntegrationSeconds * 1000L : Long.MAX_VALUE);
+    }
+
+    /**
+     * Writes modified pages of all open segments to disk.
+     */
+    public void flush() {
+        applianceIdWithTimeSeries.values().forEach(ApplianceTimeSeries::flush);
+    }
+
+    /**
+     * Passes the history of an appliance within the given time range to the consumer in chronological order.
+     * For {@link Resolution#RAW} each record is passed with its power as average, min and max power and the energy
+     * consumed since the previous record. Otherwise each bucket starting within the time range is passed.
+     * @param applianceId the appliance id
+     * @param fromEpochSecond the start of the time range (inclusive)
+     * @param toEpochSecond the end of the time range (inclusive)
+     * @param resolution the resolution
+     * @param consumer the consumer of the history points
+     */
+    public void query(String applianceId, long fromEpochSecond, long toEpochSecond, Resolution resolution,
+                      HistoryPointConsumer consumer) throws IOException {
+        ApplianceTimeSeries timeSeries = applianceIdWithTimeSeries.get(applianceId);
+        if(resolution.isRollup()) {
+            RollupSegment rollup = timeSeries != null ? timeSeries.getRollup(resolution) : null;
+            if(rollup == null) {
+                File file = getRollupFile(applianceId, resolution);
+                if(! file.exists()) {
+                    return;
+                }
+                rollup = RollupSegment.openForRead(file);
+            }
+            int recordCount = rollup.getRecordCount();
+            for(int i = rollup.indexOf(resolution.getBucketStart(fromEpochSecond, zoneId));
+                i < recordCount && rollup.getBucketStart(i) <= toEpochSecond; i++) {
+                rollup.accept(i, consumer);
+            }
+        }
+        else {
+            LocalDate toDay = Instant.ofEpochSecond(toEpochSecond).atZone(zoneId).toLocalDate();
+            for(LocalDate day = Instant.ofEpochSecond(fromEpochSecond).atZone(zoneId).toLocalDate();
+                ! day.isAfter(toDay); day = day.plusDays(1)) {
+                TimeSeriesSegment segment = timeSeries != null ? timeSeries.getSegment(day) : null;
+                if(segment == null) {
+                    File file = getSegmentFile(applianceId, day);
+                    if(! file.exists()) {
+                        continue;
+                    }
+                    segment = TimeSeriesSegment.openForRead(file);
+                }
+                queryRaw(segment, fromEpochSecond, toEpochSecond, consumer);
+            }
+        }
+    }
+
+    /**
+     * Deletes the segment files of an appliance for days before the retention period ending with the given day.
+     */
+    protected void deleteExpiredSegments(String applianceId, LocalDate day) {
+        int retentionDays = this.retentionDays;
+        if(retentionDays <= 0) {
+            return;
+        }
+        File[] files = new File(directory, applianceId).listFiles(
+                (dir, name) -> name.endsWith(SEGMENT_FILE_SUFFIX));
+        if(files == null) {
+            return;
+        }
+        LocalDate oldestDay = day.minusDays(retentionDays - 1);
+        for(File file : files) {
+            String name = file.getName();
+            LocalDate fileDay;
+            try {
+                fileDay = LocalDate.parse(name.substring(0, name.length() - SEGMENT_FILE_SUFFIX.length()),
+                        dateFormatter);
+            }
+            catch(DateTimeParseException e) {
+                continue;
+            }
+            if(fileDay.isBefore(oldestDay)) {
+                if(file.delete()) {
+                    logger.debug("{}: Deleted expired history segment {}", applianceId, file);
+                }
+                else {
+                    logger.warn("{}: Error deleting expired history segment {}", applianceId, file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the records of the rollup segments for buckets before the retention period ending with the given day.
+     */
+    protected void deleteExpiredRollups(String applianceId, LocalDate day, Map<Resolution, RollupSegment> rollups) {
+        int retentionDays = this.retentionDays;
+        if(retentionDays <= 0) {
+            return;
+        }
+        long oldestEpochSecond = day.minusDays(retentionDays - 1).atStartOfDay(zoneId).toEpochSecond();
+        for(Map.Entry<Resolution, RollupSegment> entry : rollups.entrySet()) {
+            try {
+                int deleted = entry.getValue().deleteBefore(entry.getKey().getBucketStart(oldestEpochSecond, zoneId));
+                if(deleted > 0) {
+                    logger.debug("{}: Deleted {} expired records of rollup segment {}", applianceId, deleted,
+                            entry.getValue().getFile());
+                }
+            }
+            catch(IOException e) {
+                logger.error("{}: Error deleting expired records of rollup segment {}", applianceId,
+                        entry.getValue().getFile(), e);
+            }
+        }
+    }
+
+    private void queryRaw(TimeSeriesSegment segment, long fromEpochSecond, long toEpochSecond,
+                          HistoryPointConsumer consumer) throws IOException {
+        int recordCount = segment.getRecordCount();
+        int index = segment.indexOf(fromEpochSecond);
+        float previousEnergy = index > 0 ? segment.getEnergy(index - 1) : 0.0f;
+        for(int i = index; i < recordCount; i++) {
+            long epochSecond = segment.getEpochSecond(i);
+            if(epochSecond > toEpochSecond) {
+                break;
+            }
+            float power = segment.getPower(i);
+            float energy = segment.getEnergy(i);
+            consumer.accept(epochSecond, power, power, power, energy - previousEnergy);
+            previousEnergy = energy;
+        }
+    }
+
+    private class ApplianceTimeSeries {
+        private String applianceId;
+        private TimeSeriesSegment segment;
+        private LocalDate segmentDay;
+        private long segmentEndMillis;
+        private Map<Resolution, RollupSegment> rollups;
+        // the day for which expired rollup records have been deleted
+        private LocalDate rollupsExpiredDay;
+        private long lastTimestampMillis;
+        private int lastPower;
+        private long lastEpochSecond = Long.MIN_VALUE;
+        private double energy;
+        // energy consumed since the last record which has not been added to the rollups yet
+        private double pendingEnergy;
+        // duration and power multiplied by duration since the last record which have not been added to the rollups yet
+        private double pendingDuration;
+        private double pendingPowerSeconds;
+        // errors are logged once until opening succeeds again
+        private boolean openFailed;
+
+        ApplianceTimeSeries(String applianceId) {
+            this.applianceId = applianceId;
+        }
+
+        synchronized void record(long timestampMillis, int power, long maxIntegrationMillis) {
+            if(timestampMillis >= segmentEndMillis || segment == null) {
+                openSegment(timestampMillis);
+            }
+            if(rollups == null || rollups.size() < ROLLUP_RESOLUTION_COUNT) {
+                openRollups();
+            }
+            if(segmentDay != null && ! segmentDay.equals(rollupsExpiredDay)) {
+                deleteExpiredRollups(applianceId, segmentDay, rollups);
+                rollupsExpiredDay = segmentDay;
+            }
+            if(segment == null) {
+                return;
+            }
+            if(lastTimestampMillis > 0 && timestampMillis > lastTimestampMillis) {
+                // integrate the previous power value over the time elapsed since then but not longer than the
+                // maximum integration time; the power is assumed to be 0 for the rest of the time elapsed
+                long elapsedMillis = timestampMillis - lastTimestampMillis;
+                long integrationMillis = Math.min(elapsedMillis, maxIntegrationMillis);
+                double energyIncrement = lastPower * integrationMillis / 3600000000.0;
+                energy += energyIncrement;
+                pendingEnergy += energyIncrement;
+                pendingDuration += elapsedMillis / 1000.0;
+                pendingPowerSeconds += lastPower * integrationMillis / 1000.0;
+            }
+            lastTimestampMillis = timestampMillis;
+            lastPower = power;
+
+            long epochSecond = timestampMillis / 1000;
+            if(epochSecond > lastEpochSecond) {
+                if(segment.append(epochSecond, power, (float) energy)) {
+                    lastEpochSecond = epochSecond;
+                    addToRollups(epochSecond, power);
+                }
+                else {
+                    logger.warn("{}: History segment full: {}", applianceId, segment.getFile());
+                }
+            }
+        }
+
+        private void openSegment(long timestampMillis) {
+            flush();
+            LocalDate day = Instant.ofEpochMilli(timestampMillis).atZone(zoneId).toLocalDate();
+            if(! day.equals(segmentDay)) {
+                deleteExpiredSegments(applianceId, day);
+            }
+            segmentDay = day;
+            segmentEndMillis = day.plusDays(1).atStartOfDay(zoneId).toInstant().toEpochMilli();
+            File file = getSegmentFile(applianceId, day);
+            try {
+                segment = TimeSeriesSegment.openForWrite(file, MAX_RECORDS_PER_SEGMENT);
+                int recordCount = segment.getRecordCount();
+                if(recordCount > 0) {
+                    energy = segment.getEnergy(recordCount - 1);
+                    lastEpochSecond = segment.getEpochSecond(recordCount - 1);
+                }
+                else {
+                    energy = 0.0;
+                    lastEpochSecond = Long.MIN_VALUE;
+                    // do not integrate across days
+                    lastTimestampMillis = 0;
+                    pendingEnergy = 0.0;
+                    pendingDuration = 0.0;
+                    pendingPowerSeconds = 0.0;
+                }
+                logger.debug("{}: Opened history segment {} records={}", applianceId, file, recordCount);
+                openFailed = false;
+            }
+            catch(IOException e) {
+                logOpenError(file, e);
+                segment = null;
+            }
+        }
+
+        private void openRollups() {
+            if(rollups == null) {
+                rollups = new EnumMap<>(Resolution.class);
+            }
+            for(Resolution resolution : Resolution.values()) {
+                if(resolution.isRollup() && ! rollups.containsKey(resolution)) {
+                    File file = getRollupFile(applianceId, resolution);
+                    try {
+                        rollups.put(resolution, RollupSegment.openForWrite(file,
+                                ROLLUP_INITIAL_SECONDS / resolution.getBucketSeconds()));
+                    }
+                    catch(IOException e) {
+                        logOpenError(file, e);
+                    }
+                }
+            }
+        }
+
+        private void logOpenError(File file, IOException e) {
+            if(openFailed) {
+                logger.debug("{}: Error opening history file {}: {}", applianceId, file, e.getMessage());
+            }
+            else {
+                logger.error("{}: Error opening history file {}", applianceId, file, e);
+                openFailed = true;
+            }
+        }
+
+        private void addToRollups(long epochSecond, int power) {
+            for(Map.Entry<Resolution, RollupSegment> entry : rollups.entrySet()) {
+                try {
+                    entry.getValue().add(entry.getKey().getBucketStart(epochSecond, zoneId), power, (float) pendingEnergy,
+                            pendingDuration, pendingPowerSeconds);
+                }
+                catch(IOException e) {
+                    logger.error("{}: Error adding to rollup segment {}", applianceId, entry.getValue().getFile(), e);
+                }
+            }
+            pendingEnergy = 0.0;
+            pendingDuration = 0.0;
+            pendingPowerSeconds = 0.0;
+        }
+
+        synchronized TimeSeriesSegment getSegment(LocalDate day) {
+            return day.equals(segmentDay) ? segment : null;
+        }
+
+        synchronized RollupSegment getRollup(Resolution resolution) {
+            return rollups != null ? rollups.get(resolution) : null;
+        }
+
+        synchronized void flush() {
+            if(segment != null) {
+                segment.force();
+            }
+            if(rollups != null) {
+                rollups.values().forEach(RollupSegment::force);
+            }
+        }
+    }
+}
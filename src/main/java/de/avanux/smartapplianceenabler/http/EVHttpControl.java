@@ -27,6 +27,7 @@ import de.avanux.smartapplianceenabler.protocol.ContentProtocolType;
 import de.avanux.smartapplianceenabler.protocol.JsonContentProtocolHandler;
 import de.avanux.smartapplianceenabler.util.ParentWithChild;
 import de.avanux.smartapplianceenabler.util.RequestCache;
+import de.avanux.smartapplianceenabler.util.ValueExtractor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,7 +36,10 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -55,6 +59,7 @@ public class EVHttpControl implements EVChargerControl {
     private transient RequestCache<ParentWithChild<HttpRead, HttpReadValue>, String> requestCache;
     private transient HttpTransactionExecutor httpTransactionExecutor = new HttpTransactionExecutor();
     private transient Integer pollInterval; // seconds
+    private transient Map<HttpReadValue, ValueExtractor> readValueWithExtractor = new ConcurrentHashMap<>();
 
 
     public EVHttpControl() {
@@ -111,6 +116,16 @@ public class EVHttpControl implements EVChargerControl {
         if(this.httpConfiguration != null) {
             this.httpTransactionExecutor.setConfiguration(this.httpConfiguration);
         }
+        if(this.httpReads != null) {
+            for(HttpRead read : this.httpReads) {
+                read.getReadValues().forEach(this::getValueExtractor);
+            }
+        }
+    }
+
+    private ValueExtractor getValueExtractor(HttpReadValue readValue) {
+        return readValueWithExtractor.computeIfAbsent(readValue,
+                key -> ValueExtractor.compile(key.getExtractionRegex(), key.getFactorToValue()));
     }
 
     @Override
@@ -157,7 +172,7 @@ public class EVHttpControl implements EVChargerControl {
         if(read != null) {
             String response = this.requestCache.get(read);
             if(response == null) {
-                response = this.httpTransactionExecutor.executeGet(read.parent().getUrl());
+                response = this.httpTransactionExecutor.executeRead(HttpMethod.GET, read.parent().getUrl(), null);
                 this.requestCache.put(read, response);
             }
             else {
@@ -167,12 +182,12 @@ public class EVHttpControl implements EVChargerControl {
                 String value = response;
                 ContentProtocolHandler contentProtocolHandler = getContentProtocolHandler();
                 if(contentProtocolHandler != null) {
-                    contentProtocolHandler.parse(response);
-                    value = contentProtocolHandler.readValue(read.child().getPath());
+                    String path = read.child().getPath();
+                    value = contentProtocolHandler.readValues(response, Collections.singletonList(path)).get(path);
                 }
-                String regex = read.child().getExtractionRegex();
-                boolean match = value.matches(regex);
-                logger.debug("test={} value={} regex={} match={}", valueName.name(), value, regex, match);
+                boolean match = value != null && getValueExtractor(read.child()).isFullMatch(value);
+                logger.debug("test={} value={} regex={} match={}", valueName.name(), value,
+                        read.child().getExtractionRegex(), match);
                 return match;
             }
         }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.http;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide HTTP client shared by all appliances. Connections are pooled per route (i.e. device host) and kept
+ * alive between requests so that polling does not pay connection setup for every request. Idle and expired
+ * connections are evicted by a background thread of the client. Credentials are not part of the client but
+ * passed with each request.
+ * <p>
+ * The client is blocking. Requests which should not block the calling thread are offloaded to a bounded executor
+ * which executes them with the pooled client and completes their futures, i.e. each request still occupies a thread
+ * of the executor while waiting for the response. The executor has to be set before requests are offloaded.
+ */
+public class HttpClientPool {
+    public static final String maxPerRouteConfigurationParamName = "Http.MaxConnectionsPerRoute";
+    public static final int DEFAULT_MAX_PER_ROUTE = 2;
+    public static final int DEFAULT_MAX_TOTAL = 50;
+    private static final int TIMEOUT_SECONDS = 5;
+    private static final int IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+    // embedded devices tend to close idle connections silently
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+    private static HttpClientPool instance;
+    private Logger logger = LoggerFactory.getLogger(HttpClientPool.class);
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient client;
+    private volatile Executor executor;
+
+    private HttpClientPool() {
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(DEFAULT_MAX_TOTAL);
+        this.connectionManager.setDefaultMaxPerRoute(DEFAULT_MAX_PER_ROUTE);
+        this.connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(TIMEOUT_SECONDS * 1000)
+                .setConnectionRequestTimeout(TIMEOUT_SECONDS * 1000)
+                .setSocketTimeout(TIMEOUT_SECONDS * 1000).build();
+        this.client = HttpClients.custom()
+                .setConnectionManager(this.connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+        logger.debug("HTTP client pool created: maxTotal={} maxPerRoute={}", DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE);
+    }
+
+    public static synchronized HttpClientPool getInstance() {
+        if(instance == null) {
+            instance = new HttpClientPool();
+        }
+        return instance;
+    }
+
+    public CloseableHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Returns the executor to which requests are offloaded.
+     * @throws IllegalStateException if no executor has been set
+     */
+    public Executor getExecutor() {
+        Executor executor = this.executor;
+        if(executor == null) {
+            throw new IllegalStateException("No executor set for offloading HTTP requests");
+        }
+        return executor;
+    }
+
+    /**
+     * Sets the executor to which requests are offloaded.
+     * @param executor the executor which should have a bounded number of threads
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the maximum number of connections per route, i.e. the maximum number of concurrent requests to a device.
+     */
+    public void setMaxPerRoute(int maxPerRoute) {
+        this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        logger.debug("Maximum HTTP connections per route set to {}", maxPerRoute);
+    }
+
+    /**
+     * Returns the statistics of all routes.
+     */
+    public PoolStats getTotalStats() {
+        return this.connectionManager.getTotalStats();
+    }
+
+    /**
+     * Returns the statistics by route.
+     */
+    public Map<String, PoolStats> getRouteStats() {
+        Map<String, PoolStats> routeWithStats = new LinkedHashMap<>();
+        for(HttpRoute route : this.connectionManager.getRoutes()) {
+            routeWithStats.put(route.getTargetHost().toURI(), this.connectionManager.getStats(route));
+        }
+        return routeWithStats;
+    }
+}
@@ -21,15 +21,26 @@ package de.avanux.smartapplianceenabler.http;
 import de.avanux.smartapplianceenabler.appliance.ApplianceIdConsumer;
 import de.avanux.smartapplianceenabler.protocol.ContentProtocolHandler;
 import de.avanux.smartapplianceenabler.util.ParentWithChild;
-import de.avanux.smartapplianceenabler.util.RegexUtil;
+import de.avanux.smartapplianceenabler.util.ValueExtractor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class HttpHandler implements ApplianceIdConsumer {
 
     private transient Logger logger = LoggerFactory.getLogger(HttpHandler.class);
     private transient String applianceId;
     private transient HttpTransactionExecutor httpTransactionExecutor;
+    private transient Map<HttpReadValue, ValueExtractor> readValueWithExtractor = new ConcurrentHashMap<>();
 
     @Override
     public void setApplianceId(String applianceId) {
@@ -44,32 +55,149 @@ public class HttpHandler implements ApplianceIdConsumer {
                                ContentProtocolHandler contentProtocolHandler) {
         String protocolHandlerValue = getValue(read, contentProtocolHandler);
         if(protocolHandlerValue != null) {
-            String valueExtractionRegex = read.child().getExtractionRegex();
-            String extractedValue = RegexUtil.getMatchingGroup1(protocolHandlerValue, valueExtractionRegex);
-            String parsableString = extractedValue.replace(',', '.');
-            Float value;
-            Double factorToValue = read.child().getFactorToValue();
-            if(factorToValue != null) {
-                value = Double.valueOf(Double.parseDouble(parsableString) * factorToValue).floatValue();
+            return toFloatValue(read.child(), protocolHandlerValue);
+        }
+        return 0.0f;
+    }
+
+    /**
+     * Returns the float values of all read values. Each distinct request (url and data) is executed only once
+     * and its response is parsed only once no matter how many values are extracted from it.
+     * @param reads the reads
+     * @param contentProtocolHandler the content protocol handler used for read values with path
+     * @return the values by read value name; values of failed requests are missing
+     */
+    public Map<String, Float> getFloatValues(List<HttpRead> reads, ContentProtocolHandler contentProtocolHandler) {
+        Map<String, Float> values = new HashMap<>();
+        for(Map.Entry<List<String>, List<ParentWithChild<HttpRead, HttpReadValue>>> entry: groupByRequest(reads).entrySet()) {
+            String url = entry.getKey().get(0);
+            String data = entry.getKey().get(1);
+            String response = this.httpTransactionExecutor.executeRead(getHttpMethod(data), url, data);
+            extractFloatValues(url, response, entry.getValue(), contentProtocolHandler, values);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the float values of all read values like {@link #getFloatValues(List, ContentProtocolHandler)} but the
+     * requests are offloaded to the executor of the {@link HttpClientPool}. All distinct requests are executed
+     * concurrently.
+     * @return the future of the values by read value name
+     */
+    public CompletableFuture<Map<String, Float>> getFloatValuesOffloaded(List<HttpRead> reads,
+                                                                         ContentProtocolHandler contentProtocolHandler) {
+        Map<List<String>, List<ParentWithChild<HttpRead, HttpReadValue>>> requestWithReads = groupByRequest(reads);
+        List<CompletableFuture<String>> responses = new ArrayList<>();
+        for(List<String> request: requestWithReads.keySet()) {
+            String data = request.get(1);
+            responses.add(this.httpTransactionExecutor.executeReadOffloaded(getHttpMethod(data), request.get(0), data));
+        }
+        return CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            // values are extracted in configuration order so that the first read of a value name wins
+            Map<String, Float> values = new HashMap<>();
+            int index = 0;
+            for(Map.Entry<List<String>, List<ParentWithChild<HttpRead, HttpReadValue>>> entry: requestWithReads.entrySet()) {
+                extractFloatValues(entry.getKey().get(0), responses.get(index++).join(), entry.getValue(),
+                        contentProtocolHandler, values);
+            }
+            return values;
+        });
+    }
+
+    private Map<List<String>, List<ParentWithChild<HttpRead, HttpReadValue>>> groupByRequest(List<HttpRead> reads) {
+        Map<List<String>, List<ParentWithChild<HttpRead, HttpReadValue>>> requestWithReads = new LinkedHashMap<>();
+        if(reads != null) {
+            for(HttpRead read: reads) {
+                for(HttpReadValue readValue: read.getReadValues()) {
+                    requestWithReads.computeIfAbsent(Arrays.asList(read.getUrl(), readValue.getData()),
+                            request -> new ArrayList<>()).add(new ParentWithChild<>(read, readValue));
+                }
             }
-            else {
-                value = Double.valueOf(Double.parseDouble(parsableString)).floatValue();
+        }
+        return requestWithReads;
+    }
+
+    private HttpMethod getHttpMethod(String data) {
+        return data != null ? HttpMethod.POST : HttpMethod.GET;
+    }
+
+    /**
+     * Compiles the paths and value extractors of the read values so that responses can be read without compiling
+     * paths or regular expressions.
+     * @param reads the reads
+     * @param contentProtocolHandler the content protocol handler used for read values with path
+     */
+    public void compile(List<HttpRead> reads, ContentProtocolHandler contentProtocolHandler) {
+        if(reads != null) {
+            for(HttpRead read: reads) {
+                read.getReadValues().forEach(this::getValueExtractor);
             }
-            logger.debug("{}: value={} protocolHandlerValue={} valueExtractionRegex={} extractedValue={}",
-                    applianceId, value, protocolHandlerValue, valueExtractionRegex, extractedValue);
-            return value;
         }
-        return 0.0f;
+        if(contentProtocolHandler != null) {
+            for(List<ParentWithChild<HttpRead, HttpReadValue>> requestReads: groupByRequest(reads).values()) {
+                List<String> paths = getPaths(requestReads);
+                if(! paths.isEmpty()) {
+                    contentProtocolHandler.compile(paths);
+                }
+            }
+        }
+    }
+
+    private List<String> getPaths(List<ParentWithChild<HttpRead, HttpReadValue>> reads) {
+        List<String> paths = new ArrayList<>();
+        for(ParentWithChild<HttpRead, HttpReadValue> read: reads) {
+            String path = read.child().getPath();
+            if(path != null && ! paths.contains(path)) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    private void extractFloatValues(String url, String response, List<ParentWithChild<HttpRead, HttpReadValue>> reads,
+                                    ContentProtocolHandler contentProtocolHandler, Map<String, Float> values) {
+        logger.debug("{}: url={} values={}", applianceId, url, reads.size());
+        if(response != null) {
+            logger.debug("{}: Response: {}", applianceId, response);
+            Map<String, String> pathWithValue = Collections.emptyMap();
+            if(contentProtocolHandler != null) {
+                List<String> paths = getPaths(reads);
+                if(! paths.isEmpty()) {
+                    pathWithValue = contentProtocolHandler.readValues(response, paths);
+                }
+            }
+            for(ParentWithChild<HttpRead, HttpReadValue> read: reads) {
+                String path = read.child().getPath();
+                String protocolHandlerValue = contentProtocolHandler != null && path != null
+                        ? pathWithValue.get(path) : response;
+                if(protocolHandlerValue != null) {
+                    values.putIfAbsent(read.child().getName(), toFloatValue(read.child(), protocolHandlerValue));
+                }
+            }
+        }
+    }
+
+    private ValueExtractor getValueExtractor(HttpReadValue readValue) {
+        return readValueWithExtractor.computeIfAbsent(readValue,
+                key -> ValueExtractor.compile(key.getExtractionRegex(), key.getFactorToValue()));
+    }
+
+    private float toFloatValue(HttpReadValue readValue, String protocolHandlerValue) {
+        float value = getValueExtractor(readValue).getFloatValue(protocolHandlerValue);
+        if(logger.isDebugEnabled()) {
+            logger.debug("{}: {}={} protocolHandlerValue={} valueExtractionRegex={}",
+                    applianceId, readValue.getName(), value, protocolHandlerValue, readValue.getExtractionRegex());
+        }
+        return value;
     }
 
     public boolean getBooleanValue(ParentWithChild<HttpRead, HttpReadValue> read,
                                    ContentProtocolHandler contentProtocolHandler) {
         String protocolHandlerValue = getValue(read, contentProtocolHandler);
         if(protocolHandlerValue != null) {
-            String valueExtractionRegex = read.child().getExtractionRegex();
-            boolean match = RegexUtil.isMatch(protocolHandlerValue, valueExtractionRegex);
+            boolean match = getValueExtractor(read.child()).isMatch(protocolHandlerValue);
             logger.debug("{}: match={} protocolHandlerValue={} valueExtractionRegex={}",
-                    applianceId, match, protocolHandlerValue, valueExtractionRegex);
+                    applianceId, match, protocolHandlerValue, read.child().getExtractionRegex());
             return match;
         }
         return false;
@@ -82,15 +210,15 @@ public class HttpHandler implements ApplianceIdConsumer {
             String data = read.child().getData();
             HttpMethod httpMethod = data != null ? HttpMethod.POST : HttpMethod.GET;
             String path = read.child().getPath();
-            String response = this.httpTransactionExecutor.execute(httpMethod, url, data);
+            String response = this.httpTransactionExecutor.executeRead(httpMethod, url, data);
             logger.debug("{}: url={} httpMethod={} data={} path={}",
                     applianceId, url, httpMethod, data, path);
             if(response != null) {
                 logger.debug("{}: Response: {}", applianceId, response);
                 String protocolHandlerValue = response;
                 if(contentProtocolHandler != null && path != null) {
-                    contentProtocolHandler.parse(response);
-                    protocolHandlerValue = contentProtocolHandler.readValue(path);
+                    protocolHandlerValue = contentProtocolHandler.readValues(response, Collections.singletonList(path))
+                            .get(path);
                 }
                 return protocolHandlerValue;
             }
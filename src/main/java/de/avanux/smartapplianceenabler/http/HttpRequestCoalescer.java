@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.http;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide coalescer of identical read requests. Several appliances reading from the same device
+ * (e.g. the channels of a multi-channel relay or a meter shared by several appliances) issue identical requests.
+ * Concurrent identical requests share one request in flight and the response is reused by identical requests
+ * within the freshness window. Failed requests (null responses) are not reused.
+ */
+public class HttpRequestCoalescer {
+    public static final String freshnessConfigurationParamName = "Http.RequestCoalescingMillis";
+    public static final int DEFAULT_FRESHNESS_MILLIS = 2000;
+    private static HttpRequestCoalescer instance;
+    private Logger logger = LoggerFactory.getLogger(HttpRequestCoalescer.class);
+    private Map<RequestKey, Response> keyWithResponse = new ConcurrentHashMap<>();
+    private volatile int freshnessMillis = DEFAULT_FRESHNESS_MILLIS;
+
+    public static synchronized HttpRequestCoalescer getInstance() {
+        if(instance == null) {
+            instance = new HttpRequestCoalescer();
+        }
+        return instance;
+    }
+
+    public int getFreshnessMillis() {
+        return freshnessMillis;
+    }
+
+    /**
+     * Sets the freshness window. A value of 0 disables coalescing.
+     * @param freshnessMillis the time in milliseconds a response is reused
+     */
+    public void setFreshnessMillis(int freshnessMillis) {
+        this.freshnessMillis = freshnessMillis;
+        logger.debug("Freshness of coalesced HTTP responses set to {}ms", freshnessMillis);
+    }
+
+    /**
+     * Returns the response of an identical request in flight or completed within the freshness window.
+     * Otherwise the request is executed.
+     * @param applianceId the id of the requesting appliance used for logging
+     * @param request executes the request and returns the response or null, if the request failed
+     * @return the response
+     */
+    public String execute(String applianceId, HttpMethod httpMethod, String url, String data, String username,
+                          String password, Supplier<String> request) {
+        return executeAsync(applianceId, httpMethod, url, data, username, password,
+                () -> CompletableFuture.completedFuture(request.get())).join();
+    }
+
+    /**
+     * Returns the response of an identical request in flight or completed within the freshness window.
+     * Otherwise the request is started.
+     * @param applianceId the id of the requesting appliance used for logging
+     * @param request starts the request and returns the future of the response which is completed with null,
+     *                if the request failed
+     * @return the future of the response which is completed with null, if the request failed
+     */
+    public CompletableFuture<String> executeAsync(String applianceId, HttpMethod httpMethod, String url, String data,
+                                                  String username, String password,
+                                                  Supplier<CompletableFuture<String>> request) {
+        if(freshnessMillis <= 0) {
+            return startRequest(request);
+        }
+        RequestKey key = new RequestKey(httpMethod, url, data, username, password);
+        while(true) {
+            Response cachedResponse = keyWithResponse.get(key);
+            if(cachedResponse != null) {
+                if(! cachedResponse.future.isDone()) {
+                    logger.debug("{}: Using response of request in flight url={}", applianceId, url);
+                    return cachedResponse.future;
+                }
+                String value = cachedResponse.future.getNow(null);
+                long ageMillis = System.currentTimeMillis() - cachedResponse.completedMillis;
+                if(value != null && ageMillis < freshnessMillis) {
+                    logger.debug("{}: Using coalesced response url={} ageMillis={}", applianceId, url, ageMillis);
+                    return cachedResponse.future;
+                }
+            }
+            Response response = new Response();
+            boolean executeRequest = cachedResponse == null
+                    ? keyWithResponse.putIfAbsent(key, response) == null
+                    : keyWithResponse.replace(key, cachedResponse, response);
+            if(executeRequest) {
+                startRequest(request).whenComplete((value, throwable) -> {
+                    response.completedMillis = System.currentTimeMillis();
+                    if(value == null) {
+                        keyWithResponse.remove(key, response);
+                    }
+                    response.future.complete(value);
+                });
+                return response.future;
+            }
+            // another thread started the same request in between
+        }
+    }
+
+    private CompletableFuture<String> startRequest(Supplier<CompletableFuture<String>> request) {
+        try {
+            return request.get().exceptionally(throwable -> {
+                logger.error("Error executing HTTP request", throwable);
+                return null;
+            });
+        }
+        catch(RuntimeException e) {
+            logger.error("Error executing HTTP request", e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Removes all responses of requests to the host of the given URL. Has to be called if a request might have
+     * changed the state of the device.
+     * @param url the URL of the request
+     */
+    public void invalidate(String url) {
+        String authority = getAuthority(url);
+        keyWithResponse.keySet().removeIf(key -> Objects.equals(getAuthority(key.url), authority));
+    }
+
+    public void clear() {
+        keyWithResponse.clear();
+    }
+
+    private String getAuthority(String url) {
+        try {
+            return URI.create(url).getAuthority();
+        }
+        catch(Exception e) {
+            return url;
+        }
+    }
+
+    private static class Response {
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private volatile long completedMillis;
+    }
+
+    private static class RequestKey {
+        private final HttpMethod httpMethod;
+        private final String url;
+        private final String data;
+        private final String username;
+        private final String password;
+
+        RequestKey(HttpMethod httpMethod, String url, String data, String username, String password) {
+            this.httpMethod = httpMethod;
+            this.url = url;
+            this.data = data;
+            this.username = username;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            RequestKey that = (RequestKey) o;
+
+            return new EqualsBuilder()
+                    .append(httpMethod, that.httpMethod)
+                    .append(url, that.url)
+                    .append(data, that.data)
+                    .append(username, that.username)
+                    .append(password, that.password)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .append(httpMethod)
+                    .append(url)
+                    .append(data)
+                    .append(username)
+                    .append(password)
+                    .toHashCode();
+        }
+    }
+}
@@ -17,22 +17,22 @@
  */
 package de.avanux.smartapplianceenabler.http;
 
+import de.avanux.smartapplianceenabler.util.CircuitBreaker;
+import de.avanux.smartapplianceenabler.util.CircuitBreakerRegistry;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +42,8 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlTransient;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Executor of a HTTP transaction.
@@ -49,7 +51,6 @@ import java.io.IOException;
 public class HttpTransactionExecutor {
     private Logger logger = LoggerFactory.getLogger(HttpTransactionExecutor.class);
     private String applianceId;
-    private RequestConfig requestConfig;
     private HttpConfiguration configuration = new HttpConfiguration();
 
     public void setApplianceId(String applianceId) {
@@ -68,10 +69,47 @@ public class HttpTransactionExecutor {
         return execute(HttpMethod.POST, url, data);
     }
 
+    /**
+     * Executes a request which does not change the state of the device. Identical read requests of all appliances
+     * are coalesced by the {@link HttpRequestCoalescer}.
+     * @return the response or null, if the request failed or was rejected by the open circuit breaker of the device
+     * endpoint. Meters treat both as the device not consuming power.
+     */
+    public String executeRead(HttpMethod httpMethod, String url, String data) {
+        return HttpRequestCoalescer.getInstance().execute(applianceId, httpMethod, url, data,
+                configuration.getUsername(), configuration.getPassword(),
+                () -> executeAndReadResponse(httpMethod, url, data, false));
+    }
+
+    /**
+     * Executes a request which does not change the state of the device like
+     * {@link #executeRead(HttpMethod, String, String)} but offloads the blocking request to the executor of the
+     * {@link HttpClientPool} so that the calling thread is not blocked.
+     * @return the future of the response which is completed with null, if the request failed
+     * @throws IllegalStateException if no executor has been set for the {@link HttpClientPool}
+     */
+    public CompletableFuture<String> executeReadOffloaded(HttpMethod httpMethod, String url, String data) {
+        Executor executor = HttpClientPool.getInstance().getExecutor();
+        return HttpRequestCoalescer.getInstance().executeAsync(applianceId, httpMethod, url, data,
+                configuration.getUsername(), configuration.getPassword(),
+                () -> CompletableFuture.supplyAsync(() -> executeAndReadResponse(httpMethod, url, data, false),
+                        executor));
+    }
+
+    /**
+     * Executes a request which might change the state of the device. Coalesced responses of requests to the device
+     * are discarded. The request is sent even if the circuit breaker of the device endpoint is open.
+     * @return the response or null, if the request failed
+     */
     public String execute(HttpMethod httpMethod, String url, String data) {
+        HttpRequestCoalescer.getInstance().invalidate(url);
+        return executeAndReadResponse(httpMethod, url, data, true);
+    }
+
+    private String executeAndReadResponse(HttpMethod httpMethod, String url, String data, boolean write) {
         CloseableHttpResponse response = null;
         try {
-            response = executeLeaveOpen(httpMethod, url, data);
+            response = executeRequest(httpMethod, url, data, write);
             if (response != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
                 return EntityUtils.toString(response.getEntity());
             }
@@ -83,7 +121,40 @@ public class HttpTransactionExecutor {
         return null;
     }
 
+    /**
+     * Executes a request which might change the state of the device like {@link #execute(HttpMethod, String, String)}
+     * but returns the response which has to be closed by the caller.
+     */
     public CloseableHttpResponse executeLeaveOpen(HttpMethod httpMethod, String url, String data) {
+        HttpRequestCoalescer.getInstance().invalidate(url);
+        return executeRequest(httpMethod, url, data, true);
+    }
+
+    /**
+     * Executes a request unless the circuit breaker of the device endpoint is open. Writes are executed regardless
+     * of the circuit breaker since switching must not be suppressed. The outcome is recorded by the
+     * circuit breaker: every HTTP response counts as success since the device is reachable.
+     */
+    private CloseableHttpResponse executeRequest(HttpMethod httpMethod, String url, String data, boolean write) {
+        CircuitBreaker circuitBreaker = CircuitBreakerRegistry.getInstance().getCircuitBreakerForUrl(url);
+        if(circuitBreaker != null && ! write && ! circuitBreaker.allowRequest(System.currentTimeMillis())) {
+            logger.debug("{}: Circuit breaker open for {}: skipping {} request", applianceId,
+                    circuitBreaker.getEndpoint(), httpMethod);
+            return null;
+        }
+        CloseableHttpResponse response = sendRequest(httpMethod, url, data);
+        if(circuitBreaker != null) {
+            if(response != null) {
+                circuitBreaker.recordSuccess(System.currentTimeMillis());
+            }
+            else {
+                circuitBreaker.recordFailure(System.currentTimeMillis());
+            }
+        }
+        return response;
+    }
+
+    private CloseableHttpResponse sendRequest(HttpMethod httpMethod, String url, String data) {
         CloseableHttpResponse response = null;
         try {
             if(httpMethod == HttpMethod.POST) {
@@ -103,12 +174,10 @@ public class HttpTransactionExecutor {
 
     public CloseableHttpResponse get(String url, String username, String password) {
         logger.debug("{}: Sending GET request url={}", applianceId, url);
-        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-        withUsernameAndPassword(httpClientBuilder, username, password);
-        CloseableHttpClient client = httpClientBuilder.setDefaultRequestConfig(getRequestConfig()).build();
         try {
             HttpRequestBase request = new HttpGet(url);
-            CloseableHttpResponse response = client.execute(request);
+            CloseableHttpResponse response = HttpClientPool.getInstance().getClient()
+                    .execute(request, createContext(username, password));
             return logResponse(response);
         }
         catch(IOException e) {
@@ -119,13 +188,11 @@ public class HttpTransactionExecutor {
 
     public CloseableHttpResponse post(String url, ContentType contentType, String data, String username, String password) {
         logger.debug("{}: Sending POST request url={} contentType={} data={}", applianceId, url, contentType, data);
-        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-        withUsernameAndPassword(httpClientBuilder, username, password);
-        CloseableHttpClient client = httpClientBuilder.setDefaultRequestConfig(getRequestConfig()).build();
         try {
             HttpPost request = new HttpPost(url);
             request.setEntity(new StringEntity(data, contentType));
-            CloseableHttpResponse response = client.execute(request);
+            CloseableHttpResponse response = HttpClientPool.getInstance().getClient()
+                    .execute(request, createContext(username, password));
             return logResponse(response);
         }
         catch(IOException e) {
@@ -134,20 +201,26 @@ public class HttpTransactionExecutor {
         }
     }
 
-    protected HttpClientBuilder withUsernameAndPassword(HttpClientBuilder httpClientBuilder, String username, String password) {
+    /**
+     * Creates the context of a request which holds the credentials since the HTTP client is shared.
+     */
+    protected HttpClientContext createContext(String username, String password) {
+        HttpClientContext context = HttpClientContext.create();
         if(username != null && password != null) {
             logger.debug("{}: username={} password={}", applianceId, username, password);
             CredentialsProvider provider = new BasicCredentialsProvider();
             UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(username, password);
             provider.setCredentials(AuthScope.ANY, credentials);
-            httpClientBuilder.setDefaultCredentialsProvider(provider);
+            context.setCredentialsProvider(provider);
         }
-        return httpClientBuilder;
+        return context;
     }
 
     public void closeResponse(CloseableHttpResponse response) {
         try {
             if(response != null) {
+                // consuming the entity allows the connection to be reused
+                EntityUtils.consumeQuietly(response.getEntity());
                 response.close();
             }
         } catch (IOException e) {
@@ -160,16 +233,4 @@ public class HttpTransactionExecutor {
         logger.debug("{}: Response code is {}", applianceId, responseCode);
         return response;
     }
-
-    private RequestConfig getRequestConfig() {
-        if(this.requestConfig == null) {
-            int timeout = 5; // seconds
-            this.requestConfig = RequestConfig.custom()
-                    .setConnectTimeout(timeout * 1000)
-                    .setConnectionRequestTimeout(timeout * 1000)
-                    .setSocketTimeout(timeout * 1000).build();
-
-        }
-        return this.requestConfig;
-    }
 }
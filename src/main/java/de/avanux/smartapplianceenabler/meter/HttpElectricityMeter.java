@@ -24,8 +24,12 @@ import de.avanux.smartapplianceenabler.http.*;
 import de.avanux.smartapplianceenabler.protocol.ContentProtocolHandler;
 import de.avanux.smartapplianceenabler.protocol.ContentProtocolType;
 import de.avanux.smartapplianceenabler.protocol.JsonContentProtocolHandler;
+import de.avanux.smartapplianceenabler.util.GuardedTimerTask;
 import de.avanux.smartapplianceenabler.util.ParentWithChild;
+import de.avanux.smartapplianceenabler.util.SampleWindow;
 import de.avanux.smartapplianceenabler.configuration.Validateable;
+import de.avanux.smartapplianceenabler.util.CircuitBreakerRegistry;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,13 +37,17 @@ import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Electricity meter reading current power and energy from the response of a HTTP request.
  * <p>
+ * Power and energy are polled in a single poll cycle which executes each distinct request only once
+ * even if several values are read from its response. The requests of a poll cycle are executed asynchronously
+ * and the values are added when all responses have been received.
+ * <p>
  * IMPORTANT: URLs have to be escaped (e.g. use "&amp;" instead of "&")
  */
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -63,6 +71,7 @@ public class HttpElectricityMeter implements Meter, ApplianceLifeCycle, Validate
     private transient PollEnergyMeter pollEnergyMeter = new PollEnergyMeter();
     private transient HttpHandler httpHandler = new HttpHandler();
     private transient ContentProtocolHandler contentContentProtocolHandler;
+    private transient GuardedTimerTask pollTimerTask;
 
 
     @Override
@@ -190,48 +199,115 @@ public class HttpElectricityMeter implements Meter, ApplianceLifeCycle, Validate
             this.httpTransactionExecutor.setConfiguration(this.httpConfiguration);
         }
         this.httpHandler.setHttpTransactionExecutor(httpTransactionExecutor);
+        this.httpHandler.compile(this.httpReads, getContentContentProtocolHandler());
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
         logger.debug("{}: Starting ...", applianceId);
-        pollEnergyMeter.start(timer, getPollInterval(), getMeasurementInterval(), this);
-        pollPowerMeter.start(timer, getPollInterval(), getMeasurementInterval(), this);
+        // the poll meters are only used for storing values since polling is done by the poll cycle
+        pollEnergyMeter.start(null, null, getPollInterval(), getMeasurementInterval(), this);
+        pollPowerMeter.start(null, null, getPollInterval(), getMeasurementInterval(), this);
+        this.pollTimerTask = new GuardedTimerTask(this.applianceId, "HttpElectricityMeter", getPollInterval() * 1000,
+                getEndpoint()) {
+            @Override
+            public CompletableFuture<?> runTaskAsync() {
+                return pollValuesAsync(LocalDateTime.now());
+            }
+        };
+        if(scheduler != null) {
+            scheduler.schedule(this.pollTimerTask, 0, this.pollTimerTask.getPeriod());
+        }
+    }
+
+    /**
+     * Returns the endpoint of the first URL polled or the appliance id, if there is none.
+     */
+    private String getEndpoint() {
+        String endpoint = null;
+        if(this.httpReads != null && ! this.httpReads.isEmpty()) {
+            endpoint = CircuitBreakerRegistry.getEndpoint(this.httpReads.get(0).getUrl());
+        }
+        return endpoint != null ? endpoint : this.applianceId;
     }
 
     @Override
     public void stop(LocalDateTime now) {
         logger.debug("{}: Stopping ...", applianceId);
+        if(this.pollTimerTask != null) {
+            this.pollTimerTask.cancel();
+        }
         pollEnergyMeter.cancelTimer();
         pollPowerMeter.cancelTimer();
     }
 
+    /**
+     * Polls all values with one request per distinct url and data and adds them to the poll meters.
+     * @param now the timestamp of the values
+     */
+    protected void pollValues(LocalDateTime now) {
+        addValues(now, this.httpHandler.getFloatValues(this.httpReads, getContentContentProtocolHandler()));
+    }
+
+    /**
+     * Starts polling all values like {@link #pollValues(LocalDateTime)} with the requests offloaded to the executor
+     * of the {@link HttpClientPool}. The scheduler does not start the next poll cycle before the returned future
+     * has completed.
+     * @param now the timestamp of the values
+     * @return the future completed when the values have been added
+     */
+    protected CompletableFuture<Void> pollValuesAsync(LocalDateTime now) {
+        return this.httpHandler.getFloatValuesOffloaded(this.httpReads, getContentContentProtocolHandler())
+                .handle((values, throwable) -> {
+                    if(throwable != null) {
+                        logger.error("{}: Error polling values", applianceId, throwable);
+                        // a device not responding does not consume power
+                        addValues(now, Collections.emptyMap());
+                    }
+                    else {
+                        addValues(now, values);
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Adds the values polled to the poll meters. If power is read but missing in the values since the request failed
+     * 0W is added like {@link HttpHandler#getFloatValue} does so that the average power does not remain at the last
+     * value polled while the device is unreachable.
+     */
+    private void addValues(LocalDateTime now, Map<String, Float> values) {
+        Float energy = values.get(MeterValueName.Energy.name());
+        if(energy != null && energy > 0.0f) {
+            // the energy counter we poll might already have been reset and we don't want to add 0 to the cache
+            pollEnergyMeter.addValue(now, energy);
+        }
+        Float power = values.get(MeterValueName.Power.name());
+        if(power == null) {
+            power = isCalculatePowerFromEnergy() ? calculatePowerFromEnergy() : Float.valueOf(0.0f);
+        }
+        if(power != null) {
+            pollPowerMeter.addValue(now, power);
+        }
+        pollPowerMeter.notifyPowerUpdateListeners();
+    }
+
     private boolean isCalculatePowerFromEnergy() {
         return HttpRead.getFirstHttpRead(MeterValueName.Power.name(), this.httpReads) == null;
     }
 
     /**
-     * Calculates power values from energy differences and time differences.
-     * @param timestampWithEnergyValue a collection of timestamp with energy value
-     * @return the power values in W
+     * Calculates power from the energy difference and time difference of two energy values.
+     * @param previousEnergy the previous energy value in kWh
+     * @param energy the energy value in kWh
+     * @param diffTime the time difference in seconds
+     * @return the power in W
      */
-    protected Vector<Float> calculatePower(TreeMap<LocalDateTime, Float> timestampWithEnergyValue) {
-        Vector<Float> powerValues = new Vector<>();
-        LocalDateTime previousTimestamp = null;
-        Float previousEnergy = null;
-        for(LocalDateTime timestamp: timestampWithEnergyValue.keySet()) {
-            Float energy = timestampWithEnergyValue.get(timestamp);
-            if(previousTimestamp != null && previousEnergy != null) {
-                long diffTime = Duration.between(previousTimestamp, timestamp).toSeconds();
-                Float diffEnergy = energy - previousEnergy;
-                // diffEnergy kWh * 1000W/kW * 3600s/1h / diffTime ms
-                float power = diffEnergy * 1000.0f * 3600.0f / diffTime;
-                powerValues.add(power > 0 ? power : 0.0f);
-            }
-            previousTimestamp = timestamp;
-            previousEnergy = energy;
-        }
-        return powerValues;
+    private float calculatePower(float previousEnergy, float energy, long diffTime) {
+        float diffEnergy = energy - previousEnergy;
+        // diffEnergy kWh * 1000W/kW * 3600s/1h / diffTime s
+        float power = diffEnergy * 1000.0f * 3600.0f / diffTime;
+        return power > 0 ? power : 0.0f;
     }
 
     @Override
@@ -245,11 +321,19 @@ public class HttpElectricityMeter implements Meter, ApplianceLifeCycle, Validate
         if(powerRead != null) {
             return getValue(powerRead);
         }
-        Vector<Float> powerValues = calculatePower(this.pollEnergyMeter.getValuesInMeasurementInterval());
-        if(powerValues.size() > 0) {
-            Float power = powerValues.lastElement();
-            logger.debug("{}: Calculated power from energy: {}W", applianceId, power);
-            return power;
+        return calculatePowerFromEnergy();
+    }
+
+    private Float calculatePowerFromEnergy() {
+        SampleWindow energyValues = this.pollEnergyMeter.getValuesInMeasurementInterval();
+        synchronized(energyValues) {
+            int size = energyValues.size();
+            if(size > 1) {
+                long diffTime = (energyValues.getTimestamp(size - 1) - energyValues.getTimestamp(size - 2)) / 1000;
+                float power = calculatePower(energyValues.getValue(size - 2), energyValues.getValue(size - 1), diffTime);
+                logger.debug("{}: Calculated power from energy: {}W", applianceId, power);
+                return power;
+            }
         }
         return null;
     }
@@ -19,11 +19,11 @@
 package de.avanux.smartapplianceenabler.meter;
 
 import de.avanux.smartapplianceenabler.appliance.ApplianceIdConsumer;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import java.time.LocalDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Timer;
 
 public class MockElectricityMeter implements Meter, ApplianceIdConsumer {
 
@@ -51,7 +51,7 @@ public class MockElectricityMeter implements Meter, ApplianceIdConsumer {
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
     }
 
     @Override
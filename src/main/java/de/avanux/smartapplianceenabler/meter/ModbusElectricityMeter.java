@@ -21,12 +21,10 @@ import de.avanux.smartapplianceenabler.appliance.ApplianceIdConsumer;
 import de.avanux.smartapplianceenabler.configuration.ConfigurationException;
 import de.avanux.smartapplianceenabler.modbus.*;
 import de.avanux.smartapplianceenabler.modbus.executor.ModbusExecutorFactory;
-import de.avanux.smartapplianceenabler.modbus.executor.ModbusReadTransactionExecutor;
-import de.avanux.smartapplianceenabler.modbus.executor.ReadDecimalInputRegisterExecutor;
-import de.avanux.smartapplianceenabler.modbus.executor.ReadFloatInputRegisterExecutor;
-import de.avanux.smartapplianceenabler.modbus.executor.ReadFloatHoldingRegisterExecutor;
+import de.avanux.smartapplianceenabler.modbus.executor.ReadNumericRegisterExecutor;
 import de.avanux.smartapplianceenabler.util.ParentWithChild;
 import de.avanux.smartapplianceenabler.configuration.Validateable;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,7 +33,7 @@ import javax.xml.bind.annotation.XmlElement;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents a ModBus electricity meter device accessible by ModBus TCP.
@@ -54,6 +52,10 @@ public class ModbusElectricityMeter extends ModbusSlave implements Meter, Applia
     private Integer measurementInterval; // seconds
     private transient PollPowerMeter pollPowerMeter = new PollPowerMeter();
     private transient PollEnergyMeter pollEnergyMeter = new PollEnergyMeter();
+    private transient ModbusRead powerRead;
+    private transient ReadNumericRegisterExecutor powerExecutor;
+    private transient ModbusRead energyRead;
+    private transient ReadNumericRegisterExecutor energyExecutor;
 
     @Override
     public void setApplianceId(String applianceId) {
@@ -83,6 +85,11 @@ public class ModbusElectricityMeter extends ModbusSlave implements Meter, Applia
         return power;
     }
 
+    @Override
+    protected List<ModbusRead> getModbusReads() {
+        return modbusReads;
+    }
+
     @Override
     public boolean isOn() {
         Float power = pollPower();
@@ -101,6 +108,18 @@ public class ModbusElectricityMeter extends ModbusSlave implements Meter, Applia
     @Override
     public void init() {
         this.pollEnergyMeter.setPollEnergyExecutor(this);
+        ParentWithChild<ModbusRead, ModbusReadValue> power
+                = ModbusRead.getFirstRegisterRead(MeterValueName.Power.name(), modbusReads);
+        if(power != null) {
+            this.powerRead = power.parent();
+            this.powerExecutor = createExecutor(this.powerRead);
+        }
+        ParentWithChild<ModbusRead, ModbusReadValue> energy
+                = ModbusRead.getFirstRegisterRead(MeterValueName.Energy.name(), modbusReads);
+        if(energy != null) {
+            this.energyRead = energy.parent();
+            this.energyExecutor = createExecutor(this.energyRead);
+        }
     }
 
     @Override
@@ -131,9 +150,9 @@ public class ModbusElectricityMeter extends ModbusSlave implements Meter, Applia
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
         logger.debug("{}: Starting ...", getApplianceId());
-        pollPowerMeter.start(timer, getPollInterval(), getMeasurementInterval(), this);
+        pollPowerMeter.start(scheduler, getEndpoint(), getPollInterval(), getMeasurementInterval(), this);
     }
 
     @Override
@@ -144,9 +163,7 @@ public class ModbusElectricityMeter extends ModbusSlave implements Meter, Applia
 
     @Override
     public Float pollPower() {
-        ParentWithChild<ModbusRead, ModbusReadValue> read
-                = ModbusRead.getFirstRegisterRead(MeterValueName.Power.name(), modbusReads);
-        return readRegister(read.parent());
+        return readRegister(powerRead, powerExecutor);
     }
 
     @Override
@@ -179,37 +196,56 @@ public class ModbusElectricityMeter extends ModbusSlave implements Meter, Applia
 
     @Override
     public Float pollEnergy(LocalDateTime now) {
-        ParentWithChild<ModbusRead, ModbusReadValue> read
-                = ModbusRead.getFirstRegisterRead(MeterValueName.Energy.name(), modbusReads);
-        return readRegister(read.parent());
-    }
-
-    private float readRegister(ModbusRead registerRead) {
-        try {
-            ModbusReadTransactionExecutor executor = ModbusExecutorFactory.getReadExecutor(getApplianceId(),
-                    registerRead.getType(), registerRead.getAddress(), registerRead.getBytes(),
-                    registerRead.getByteOrder(), registerRead.getFactorToValue());
-            if(executor != null) {
-                Float registerValue = null;
-                executeTransaction(executor, true);
-                if(executor instanceof ReadFloatInputRegisterExecutor) {
-                    registerValue = ((ReadFloatInputRegisterExecutor) executor).getValue();
-                }
-                if(executor instanceof ReadDecimalInputRegisterExecutor) {
-                    registerValue = ((ReadDecimalInputRegisterExecutor) executor).getValue().floatValue();
-                }
-                if(executor instanceof ReadFloatHoldingRegisterExecutor) {
-                    registerValue = ((ReadFloatHoldingRegisterExecutor) executor).getValue().floatValue();
-                }
-                if(registerValue != null) {
-                    logger.debug("{}: Float value={}", getApplianceId(), registerValue);
-                    return registerValue;
-                }
-            }
+        return readRegister(energyRead, energyExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Float> pollPowerAsync() {
+        if(getModbusTcp() == null || ! getModbusTcp().isPipelined() || powerExecutor == null) {
+            return CompletableFuture.completedFuture(pollPower());
         }
-        catch(Exception e) {
-            logger.error("{}: Error reading input register {}", getApplianceId(), registerRead.getAddress(), e);
+        return executeReadTransactionAsync(powerRead, powerExecutor, getReadMaxAgeMillis())
+                .thenApply(result -> getValue(powerExecutor))
+                .exceptionally(throwable -> {
+                    logger.error("{}: Error reading input register {}", getApplianceId(), powerRead.getAddress(),
+                            throwable);
+                    return 0.0f;
+                });
+    }
+
+    /**
+     * Returns the max age of register values read by another read: power and energy polls within half the
+     * poll interval are served by the same range read.
+     */
+    private long getReadMaxAgeMillis() {
+        return getPollInterval() * 1000L / 2;
+    }
+
+    private ReadNumericRegisterExecutor createExecutor(ModbusRead registerRead) {
+        ReadNumericRegisterExecutor executor = ModbusExecutorFactory.getNumericReadExecutor(getApplianceId(),
+                registerRead.getType(), registerRead.getAddress(), registerRead.getBytes(),
+                registerRead.getByteOrder(), registerRead.getFactorToValue());
+        if(executor == null) {
+            logger.error("{}: No numeric value can be read from {} register {} with {} bytes", getApplianceId(),
+                    registerRead.getType(), registerRead.getAddress(), registerRead.getBytes());
+        }
+        return executor;
+    }
+
+    private float readRegister(ModbusRead registerRead, ReadNumericRegisterExecutor executor) {
+        if(executor != null) {
+            try {
+                executeReadTransaction(registerRead, executor, getReadMaxAgeMillis());
+                return getValue(executor);
+            }
+            catch(Exception e) {
+                logger.error("{}: Error reading input register {}", getApplianceId(), registerRead.getAddress(), e);
+            }
         }
         return 0;
     }
+
+    private float getValue(ReadNumericRegisterExecutor executor) {
+        return executor.hasValue() ? (float) executor.getDoubleValue() : 0.0f;
+    }
 }
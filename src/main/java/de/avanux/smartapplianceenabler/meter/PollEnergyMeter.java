@@ -20,13 +20,12 @@ package de.avanux.smartapplianceenabler.meter;
 
 import de.avanux.smartapplianceenabler.appliance.ApplianceIdConsumer;
 import de.avanux.smartapplianceenabler.util.GuardedTimerTask;
-import de.avanux.smartapplianceenabler.util.TimestampBasedCache;
+import de.avanux.smartapplianceenabler.util.SampleWindow;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import java.time.LocalDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Timer;
-import java.util.TreeMap;
 
 /**
  * A PollEnergyMeter meters energy by polling the energy count.
@@ -38,7 +37,7 @@ public class PollEnergyMeter implements ApplianceIdConsumer {
     private PollEnergyExecutor pollEnergyExecutor;
     private transient Float startEnergyCounter;
     private transient Float totalEnergy;
-    private TimestampBasedCache<Float> cache = new TimestampBasedCache<>("Energy");
+    private SampleWindow cache = new SampleWindow("Energy");
     private GuardedTimerTask pollTimerTask;
     private boolean started;
 
@@ -53,9 +52,16 @@ public class PollEnergyMeter implements ApplianceIdConsumer {
         this.pollEnergyExecutor = pollEnergyExecutor;
     }
 
-    public void start(Timer timer, Integer pollInterval, Integer measurementInterval, PollEnergyExecutor pollEnergyExecutor) {
+    /**
+     * Starts polling.
+     * @param scheduler the scheduler or null, if values are added by the caller
+     * @param endpoint the endpoint of the device polled
+     */
+    public void start(TaskScheduler scheduler, String endpoint, Integer pollInterval, Integer measurementInterval, PollEnergyExecutor pollEnergyExecutor) {
         this.cache.setMaxAgeSeconds(measurementInterval);
-        this.pollTimerTask = new GuardedTimerTask(this.applianceId, "PollEnergyMeter", pollInterval * 1000) {
+        this.cache.setCapacity(measurementInterval / pollInterval + 2);
+        this.pollTimerTask = new GuardedTimerTask(this.applianceId, "PollEnergyMeter", pollInterval * 1000,
+                endpoint != null ? endpoint : this.applianceId) {
             @Override
             public void runTask() {
                 LocalDateTime now = LocalDateTime.now();
@@ -67,8 +73,8 @@ public class PollEnergyMeter implements ApplianceIdConsumer {
                 }
             }
         };
-        if(timer != null) {
-            timer.schedule(this.pollTimerTask, 0, this.pollTimerTask.getPeriod());
+        if(scheduler != null) {
+            scheduler.schedule(this.pollTimerTask, 0, this.pollTimerTask.getPeriod());
         }
     }
 
@@ -86,8 +92,12 @@ public class PollEnergyMeter implements ApplianceIdConsumer {
         cache.addValue(timestamp, power);
     }
 
-    public TreeMap<LocalDateTime, Float> getValuesInMeasurementInterval() {
-        return this.cache.getTimestampWithValue();
+    /**
+     * Returns the energy values polled during measurement interval.
+     * @return the samples with epoch millis as timestamp and energy in kWh as value
+     */
+    public SampleWindow getValuesInMeasurementInterval() {
+        return this.cache;
     }
 
     public float getEnergy() {
@@ -125,9 +135,8 @@ public class PollEnergyMeter implements ApplianceIdConsumer {
         if(stopEnergyCounter == 0.0f) {
             // the event causing the the counter to stop may have already reset the counter we poll
             // in this case we use the last value from cache
-            Float lastValue = this.cache.getLastValue();
-            if(lastValue != null) {
-                stopEnergyCounter = lastValue;
+            if(! this.cache.isEmpty()) {
+                stopEnergyCounter = this.cache.getLastValue();
             }
         }
         if(this.startEnergyCounter != null) {
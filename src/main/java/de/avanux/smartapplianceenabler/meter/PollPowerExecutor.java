@@ -17,6 +17,8 @@
  */
 package de.avanux.smartapplianceenabler.meter;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Poll power consumption from a appliance.
  */
@@ -24,4 +26,11 @@ public interface PollPowerExecutor {
 
     Float pollPower();
 
+    /**
+     * Polls power consumption without blocking the calling thread if supported by the executor.
+     */
+    default CompletableFuture<Float> pollPowerAsync() {
+        return CompletableFuture.completedFuture(pollPower());
+    }
+
 }
@@ -19,14 +19,15 @@ package de.avanux.smartapplianceenabler.meter;
 
 import de.avanux.smartapplianceenabler.appliance.ApplianceIdConsumer;
 import de.avanux.smartapplianceenabler.util.GuardedTimerTask;
-import de.avanux.smartapplianceenabler.util.TimestampBasedCache;
+import de.avanux.smartapplianceenabler.util.SampleWindow;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A PollPowerMeter calculates power consumption by polling.
@@ -34,10 +35,10 @@ import java.util.Timer;
 public class PollPowerMeter implements ApplianceIdConsumer {
 
     private Logger logger = LoggerFactory.getLogger(PollPowerMeter.class);
-    private TimestampBasedCache<Float> cache = new TimestampBasedCache<>("Power");
+    private SampleWindow cache = new SampleWindow("Power");
     private String applianceId;
     private GuardedTimerTask pollTimerTask;
-    private transient List<PowerUpdateListener> powerUpdateListeners = new ArrayList<>();
+    private transient List<PowerUpdateListener> powerUpdateListeners = new CopyOnWriteArrayList<>();
 
 
     @Override
@@ -46,17 +47,23 @@ public class PollPowerMeter implements ApplianceIdConsumer {
         this.cache.setApplianceId(applianceId);
     }
 
-    public void start(Timer timer, Integer pollInterval, Integer measurementInterval, PollPowerExecutor pollPowerExecutor) {
+    /**
+     * Starts polling.
+     * @param scheduler the scheduler or null, if values are added by the caller
+     * @param endpoint the endpoint of the device polled
+     */
+    public void start(TaskScheduler scheduler, String endpoint, Integer pollInterval, Integer measurementInterval, PollPowerExecutor pollPowerExecutor) {
         this.cache.setMaxAgeSeconds(measurementInterval);
-        this.pollTimerTask = new GuardedTimerTask(this.applianceId, "PollPowerMeter", pollInterval * 1000) {
+        this.cache.setCapacity(measurementInterval / pollInterval + 2);
+        this.pollTimerTask = new GuardedTimerTask(this.applianceId, "PollPowerMeter", pollInterval * 1000,
+                endpoint != null ? endpoint : this.applianceId) {
             @Override
-            public void runTask() {
-                addValue(LocalDateTime.now(), pollPowerExecutor);
-                powerUpdateListeners.forEach(listener -> listener.onPowerUpdate(getAveragePower()));
+            public CompletableFuture<?> runTaskAsync() {
+                return addValueAsync(LocalDateTime.now(), pollPowerExecutor);
             }
         };
-        if(timer != null) {
-            timer.schedule(this.pollTimerTask, 0, this.pollTimerTask.getPeriod());
+        if(scheduler != null) {
+            scheduler.schedule(this.pollTimerTask, 0, this.pollTimerTask.getPeriod());
         }
     }
 
@@ -73,6 +80,24 @@ public class PollPowerMeter implements ApplianceIdConsumer {
         }
     }
 
+    /**
+     * Polls the power using {@link PollPowerExecutor#pollPowerAsync()} and adds it when available. The scheduler
+     * does not start the next poll before the returned future has completed.
+     * @return the future completed when the value has been added
+     */
+    private CompletableFuture<Void> addValueAsync(LocalDateTime timestamp, PollPowerExecutor pollPowerExecutor) {
+        return pollPowerExecutor.pollPowerAsync().handle((value, throwable) -> {
+            if(throwable != null) {
+                logger.error("{}: Error polling power", applianceId, throwable);
+            }
+            else if(value != null) {
+                cache.addValue(timestamp, value);
+            }
+            notifyPowerUpdateListeners();
+            return null;
+        });
+    }
+
     public void addValue(LocalDateTime timestamp, float power) {
         cache.addValue(timestamp, power);
     }
@@ -82,43 +107,23 @@ public class PollPowerMeter implements ApplianceIdConsumer {
     }
 
     public int getAveragePower() {
-        double sum = 0.0f;
-        if(!cache.isEmpty()) {
-            for (Float value : cache.values()) {
-                sum += value;
-            }
-            return Double.valueOf(sum / cache.size()).intValue();
-        }
-        return 0;
+        return (int) cache.getAverage();
     }
 
     public int getMinPower() {
-        float minValue = Float.MAX_VALUE;
-        if(!cache.isEmpty()) {
-            for (Float value : cache.values()) {
-                if(value < minValue) {
-                    minValue = value;
-                }
-            }
-            return Float.valueOf(minValue).intValue();
-        }
-        return 0;
+        return (int) cache.getMin();
     }
 
     public int getMaxPower() {
-        float maxValue = Float.MIN_VALUE;
-        if(!cache.isEmpty()) {
-            for (Float value : cache.values()) {
-                if(value > maxValue) {
-                    maxValue = value;
-                }
-            }
-            return Float.valueOf(maxValue).intValue();
-        }
-        return 0;
+        return (int) cache.getMax();
     }
 
     public void addPowerUpateListener(PowerUpdateListener listener) {
         this.powerUpdateListeners.add(listener);
     }
+
+    public void notifyPowerUpdateListeners() {
+        int averagePower = getAveragePower();
+        powerUpdateListeners.forEach(listener -> listener.onPowerUpdate(averagePower));
+    }
 }
@@ -22,16 +22,19 @@ import de.avanux.smartapplianceenabler.appliance.ApplianceIdConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A PulseEnergyMeter meters energy by counting pulses.
+ * The pulse counter may be increased by one thread while being read or reset by other threads.
  */
 public class PulseEnergyMeter implements ApplianceIdConsumer {
 
     private Logger logger = LoggerFactory.getLogger(PulseEnergyMeter.class);
     private String applianceId;
     private Integer impulsesPerKwh;
-    private int pulseCounter;
-    private boolean started;
+    private AtomicInteger pulseCounter = new AtomicInteger();
+    private volatile boolean started;
 
     @Override
     public void setApplianceId(String applianceId) {
@@ -44,14 +47,16 @@ public class PulseEnergyMeter implements ApplianceIdConsumer {
 
     public void increasePulseCounter() {
         if(started) {
-            pulseCounter++;
+            pulseCounter.incrementAndGet();
+        }
+        if(logger.isDebugEnabled()) {
+            logger.debug("{}: energy={}kWh started={} pulses={} pulses/kWh={}", applianceId, getEnergy(),
+                    started, pulseCounter.get(), impulsesPerKwh);
         }
-        logger.debug("{}: energy={}kWh started={} pulses={} pulses/kWh={}", applianceId, getEnergy(),
-                started, pulseCounter, impulsesPerKwh);
     }
 
     public float getEnergy() {
-        return Double.valueOf(pulseCounter / Double.valueOf(impulsesPerKwh)).floatValue();
+        return (float) (pulseCounter.get() / impulsesPerKwh.doubleValue());
     }
 
     public void startEnergyCounter() {
@@ -63,7 +68,7 @@ public class PulseEnergyMeter implements ApplianceIdConsumer {
     }
 
     public void resetEnergyCounter() {
-        pulseCounter = 0;
+        pulseCounter.set(0);
     }
 
 }
@@ -22,18 +22,13 @@ import de.avanux.smartapplianceenabler.appliance.ApplianceIdConsumer;
 import de.avanux.smartapplianceenabler.configuration.ConfigurationException;
 import de.avanux.smartapplianceenabler.control.Control;
 import de.avanux.smartapplianceenabler.configuration.Validateable;
-import de.avanux.smartapplianceenabler.schedule.TimeframeIntervalHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 public class PulsePowerMeter implements ApplianceIdConsumer, Validateable {
     private Logger logger = LoggerFactory.getLogger(PulsePowerMeter.class);
     private String applianceId;
-    private List<Long> impulseTimestamps = Collections.synchronizedList(new ArrayList<Long>());
+    private PulseTimestampBuffer impulseTimestamps = new PulseTimestampBuffer();
     private Integer measurementInterval; // seconds
     private Integer impulsesPerKwh;
     private Control control;
@@ -58,6 +53,7 @@ public class PulsePowerMeter implements ApplianceIdConsumer, Validateable {
 
     void setMeasurementInterval(Integer measurementInterval) {
         this.measurementInterval = measurementInterval;
+        this.impulseTimestamps.setMaxAgeMillis(measurementInterval * 1000L);
     }
 
     public Integer getMeasurementInterval() {
@@ -77,55 +73,12 @@ public class PulsePowerMeter implements ApplianceIdConsumer, Validateable {
         impulseTimestamps.add(timestampMillis);
     }
 
-    private void maintainTimestamps(long timestampNow) {
-        List<Long> impulseTimestampsForRemoval = new ArrayList<Long>();
-        this.impulseTimestamps.stream()
-                .filter(timestamp -> isTimestampExpired(timestampNow, timestamp))
-                .forEach(impulseTimestampsForRemoval::add);
-
-        // remove expired timestamps but keep the 2 most most recent ones
-        Long secondMostRecentTimestamp = getSecondMostRecentTimestamp();
-        Long mostRecentTimestamp = getMostRecentTimestamp();
-        this.impulseTimestamps.removeAll(impulseTimestampsForRemoval);
-        if(this.impulseTimestamps.size() == 1) {
-            if(secondMostRecentTimestamp != null) {
-                this.impulseTimestamps.add(0, secondMostRecentTimestamp);
-            }
-        }
-        else if(this.impulseTimestamps.size() == 0) {
-            if(secondMostRecentTimestamp != null) {
-                this.impulseTimestamps.add(secondMostRecentTimestamp);
-            }
-            if(mostRecentTimestamp != null) {
-                this.impulseTimestamps.add(mostRecentTimestamp);
-            }
-        }
-    }
-
-    private boolean isTimestampExpired(long timestampNow, long timestamp) {
-        return timestampNow - timestamp > this.measurementInterval * 1000;
-    }
-
-    private Long getMostRecentTimestamp() {
-        return this.impulseTimestamps.size() > 0
-                ? this.impulseTimestamps.get(this.impulseTimestamps.size() - 1) : null;
-    }
-
-    private Long getSecondMostRecentTimestamp() {
-        return this.impulseTimestamps.size() > 1
-                ? this.impulseTimestamps.get(this.impulseTimestamps.size() - 2) : null;
-    }
-
-    protected double calculatePower(long timestampNow, long timestamp1, long timestamp2) {
-        long timestampDelta12 = timestamp2 - timestamp1;
-        if(isTimestampExpired(timestampNow, timestamp2)) {
-            long timestampDeltaNow2 = timestampNow - timestamp2;
-            if(timestampDeltaNow2 > timestampDelta12 * 1.5) {
-                return 0.0;
-            }
-        }
+    /**
+     * Returns the factor to be divided by the impulse interval in milliseconds in order to get the power in W.
+     */
+    private double getPowerFactor() {
         // 3600s * 1000 W/Kw / (timestampDelta ms * 1s/1000ms * imp/KWh)
-        return 3600.0 * 1000 / (timestampDelta12 / 1000.0 * this.impulsesPerKwh);
+        return 3600.0 * 1000 * 1000 / this.impulsesPerKwh;
     }
 
     public int getAveragePower() {
@@ -133,16 +86,7 @@ public class PulsePowerMeter implements ApplianceIdConsumer, Validateable {
     }
 
     int getAveragePower(long timestampNow) {
-        this.maintainTimestamps(timestampNow);
-        if(this.impulseTimestamps.size() == 0 || this.impulseTimestamps.size() == 1) {
-            return 0;
-        }
-
-        Double powerValuesSum = 0.0;
-        for(int i=0; i<this.impulseTimestamps.size() - 1; i ++) {
-            powerValuesSum += calculatePower(timestampNow, impulseTimestamps.get(i), impulseTimestamps.get(i + 1));
-        }
-        return Double.valueOf(powerValuesSum / (impulseTimestamps.size() - 1)).intValue();
+        return (int) impulseTimestamps.getAveragePower(timestampNow, getPowerFactor());
     }
 
     public int getMinPower() {
@@ -150,22 +94,7 @@ public class PulsePowerMeter implements ApplianceIdConsumer, Validateable {
     }
 
     int getMinPower(long timestampNow) {
-        this.maintainTimestamps(timestampNow);
-        if(this.impulseTimestamps.size() == 0) {
-            return 0;
-        }
-        if(this.impulseTimestamps.size() == 1) {
-            return getAveragePower(timestampNow);
-        }
-
-        double minPower = Double.MAX_VALUE;
-        for(int i=0; i<this.impulseTimestamps.size() - 1; i ++) {
-            double power = calculatePower(timestampNow, this.impulseTimestamps.get(i), this.impulseTimestamps.get(i + 1));
-            if(power < minPower) {
-                minPower = power;
-            }
-        }
-        return Double.valueOf(minPower).intValue();
+        return (int) impulseTimestamps.getMinPower(timestampNow, getPowerFactor());
     }
 
     public int getMaxPower() {
@@ -173,22 +102,7 @@ public class PulsePowerMeter implements ApplianceIdConsumer, Validateable {
     }
 
     int getMaxPower(long timestampNow) {
-        this.maintainTimestamps(timestampNow);
-        if(this.impulseTimestamps.size() == 0) {
-            return 0;
-        }
-        if(this.impulseTimestamps.size() == 1) {
-            return getAveragePower(timestampNow);
-        }
-
-        double maxPower = Double.MIN_VALUE;
-        for(int i=0; i<this.impulseTimestamps.size() - 1; i ++) {
-            double power = calculatePower(timestampNow, this.impulseTimestamps.get(i), this.impulseTimestamps.get(i + 1));
-            if(power > maxPower) {
-                maxPower = power;
-            }
-        }
-        return Double.valueOf(maxPower).intValue();
+        return (int) impulseTimestamps.getMaxPower(timestampNow, getPowerFactor());
     }
 
     public boolean isOn() {
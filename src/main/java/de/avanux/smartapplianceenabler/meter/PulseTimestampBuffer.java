@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.avanux.smartapplianceenabler.meter;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Ring buffer of impulse timestamps (epoch millis) written by a single thread and read by any number of threads.
+ * <p>
+ * For each impulse the writer stores the timestamp and the prefix sum of the reciprocal inter-pulse intervals.
+ * Monotonic deques of interval sequence numbers provide the minimum and maximum interval. Since the expiry of
+ * timestamps depends on the time of the query, readers locate the oldest non-expired timestamp by binary search and
+ * derive average/min/max power from prefix sums and deques without iterating over the impulses.
+ * <p>
+ * Readers use optimistic reads of a {@link StampedLock} and retry if the writer modified the buffer in between,
+ * i.e. readers never block the writer.
+ */
+public class PulseTimestampBuffer {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final int OPTIMISTIC_READ_ATTEMPTS = 3;
+    private static final int AVERAGE = 0;
+    private static final int MIN = 1;
+    private static final int MAX = 2;
+    private final StampedLock lock = new StampedLock();
+    private final int capacity;
+    private final long[] timestamps;
+    // prefix sum of reciprocal intervals up to and including the interval ending at the timestamp with the same slot
+    private final double[] reciprocalIntervalSums;
+    // monotonic deques holding sequence numbers of intervals (identified by the sequence number of their end timestamp)
+    private final long[] minIntervalDeque;
+    private final long[] maxIntervalDeque;
+    private int minIntervalDequeHead;
+    private int minIntervalDequeSize;
+    private int maxIntervalDequeHead;
+    private int maxIntervalDequeSize;
+    private long headSequence;
+    private long tailSequence;
+    private long maxAgeMillis;
+
+    public PulseTimestampBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PulseTimestampBuffer(int capacity) {
+        this.capacity = Math.max(capacity, 2);
+        this.timestamps = new long[this.capacity];
+        this.reciprocalIntervalSums = new double[this.capacity];
+        this.minIntervalDeque = new long[this.capacity];
+        this.maxIntervalDeque = new long[this.capacity];
+    }
+
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        long stamp = lock.writeLock();
+        try {
+            this.maxAgeMillis = maxAgeMillis;
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds an impulse timestamp. Must only be called by a single thread. Timestamps not being later than the most
+     * recent timestamp are ignored.
+     * @param timestampMillis the impulse timestamp
+     * @return true, if the timestamp was added
+     */
+    public boolean add(long timestampMillis) {
+        long stamp = lock.writeLock();
+        try {
+            long size = tailSequence - headSequence;
+            if(size > 0 && timestampMillis <= timestamps[slot(tailSequence - 1)]) {
+                return false;
+            }
+            // remove expired timestamps but keep the 2 most most recent ones
+            while(size > 2 && timestampMillis - timestamps[slot(headSequence)] > maxAgeMillis) {
+                removeHead();
+                size--;
+            }
+            if(size == capacity) {
+                removeHead();
+                size--;
+            }
+
+            long sequence = tailSequence;
+            int slot = slot(sequence);
+            timestamps[slot] = timestampMillis;
+            if(size > 0) {
+                long previousSequence = sequence - 1;
+                long interval = timestampMillis - timestamps[slot(previousSequence)];
+                reciprocalIntervalSums[slot] = reciprocalIntervalSums[slot(previousSequence)] + 1.0 / interval;
+                while(minIntervalDequeSize > 0 && interval(minIntervalDequeLast()) >= interval) {
+                    minIntervalDequeSize--;
+                }
+                minIntervalDeque[dequeSlot(minIntervalDequeHead, minIntervalDequeSize++)] = sequence;
+                while(maxIntervalDequeSize > 0 && interval(maxIntervalDequeLast()) <= interval) {
+                    maxIntervalDequeSize--;
+                }
+                maxIntervalDeque[dequeSlot(maxIntervalDequeHead, maxIntervalDequeSize++)] = sequence;
+            }
+            else {
+                reciprocalIntervalSums[slot] = 0.0;
+            }
+            tailSequence = sequence + 1;
+            return true;
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void removeHead() {
+        headSequence++;
+        // the interval ending at the new head timestamp has lost its start timestamp
+        if(minIntervalDequeSize > 0 && minIntervalDeque[minIntervalDequeHead] <= headSequence) {
+            minIntervalDequeHead = dequeSlot(minIntervalDequeHead, 1);
+            minIntervalDequeSize--;
+        }
+        if(maxIntervalDequeSize > 0 && maxIntervalDeque[maxIntervalDequeHead] <= headSequence) {
+            maxIntervalDequeHead = dequeSlot(maxIntervalDequeHead, 1);
+            maxIntervalDequeSize--;
+        }
+    }
+
+    /**
+     * Returns the average of the power values calculated for each pair of consecutive impulses within max age.
+     * @param timestampNow the current timestamp
+     * @param powerFactor the factor to be divided by the interval in milliseconds in order to get the power
+     * @return the average power
+     */
+    public double getAveragePower(long timestampNow, double powerFactor) {
+        return read(timestampNow, powerFactor, AVERAGE);
+    }
+
+    public double getMinPower(long timestampNow, double powerFactor) {
+        return read(timestampNow, powerFactor, MIN);
+    }
+
+    public double getMaxPower(long timestampNow, double powerFactor) {
+        return read(timestampNow, powerFactor, MAX);
+    }
+
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = (int) (tailSequence - headSequence);
+        if(! lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                size = (int) (tailSequence - headSequence);
+            }
+            finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    private double read(long timestampNow, double powerFactor, int value) {
+        for(int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if(stamp != 0L) {
+                double power = calculatePower(timestampNow, powerFactor, value);
+                if(lock.validate(stamp)) {
+                    return power;
+                }
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            return calculatePower(timestampNow, powerFactor, value);
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Calculates the power. The state read may be inconsistent if the writer modifies it concurrently in which case
+     * the result is discarded by the caller. Therefore all indexes are bounded to the arrays.
+     */
+    private double calculatePower(long timestampNow, double powerFactor, int value) {
+        long head = headSequence;
+        long tail = tailSequence;
+        if(tail - head < 2 || tail - head > capacity) {
+            return 0.0;
+        }
+        long start = Math.max(Math.min(firstNonExpired(timestampNow, head, tail), tail - 2), head);
+        long lastTimestamp = timestamps[slot(tail - 1)];
+        long intervalCount = tail - 1 - start;
+        if(intervalCount == 1 && isExpired(timestampNow, lastTimestamp)) {
+            long interval = interval(tail - 1);
+            if(timestampNow - lastTimestamp > interval * 1.5) {
+                return 0.0;
+            }
+            return interval > 0 ? powerFactor / interval : 0.0;
+        }
+        if(value == MIN) {
+            long interval = firstIntervalFrom(maxIntervalDeque, maxIntervalDequeHead, maxIntervalDequeSize, start + 1);
+            return interval > 0 ? powerFactor / interval : 0.0;
+        }
+        if(value == MAX) {
+            long interval = firstIntervalFrom(minIntervalDeque, minIntervalDequeHead, minIntervalDequeSize, start + 1);
+            return interval > 0 ? powerFactor / interval : 0.0;
+        }
+        double reciprocalIntervalSum = reciprocalIntervalSums[slot(tail - 1)] - reciprocalIntervalSums[slot(start)];
+        return powerFactor * reciprocalIntervalSum / intervalCount;
+    }
+
+    private boolean isExpired(long timestampNow, long timestamp) {
+        return timestampNow - timestamp > maxAgeMillis;
+    }
+
+    /**
+     * Returns the sequence number of the oldest timestamp not being expired or tail if all timestamps are expired.
+     */
+    private long firstNonExpired(long timestampNow, long head, long tail) {
+        long low = head;
+        long high = tail;
+        while(low < high) {
+            long middle = (low + high) >>> 1;
+            if(isExpired(timestampNow, timestamps[slot(middle)])) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the interval of the first deque entry with a sequence number equal to or greater than the given one.
+     */
+    private long firstIntervalFrom(long[] deque, int dequeHead, int dequeSize, long sequence) {
+        int low = 0;
+        int high = Math.min(Math.max(dequeSize, 0), capacity);
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(deque[dequeSlot(dequeHead, middle)] < sequence) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low < dequeSize ? interval(deque[dequeSlot(dequeHead, low)]) : 0L;
+    }
+
+    private long interval(long sequence) {
+        return timestamps[slot(sequence)] - timestamps[slot(sequence - 1)];
+    }
+
+    private long minIntervalDequeLast() {
+        return minIntervalDeque[dequeSlot(minIntervalDequeHead, minIntervalDequeSize - 1)];
+    }
+
+    private long maxIntervalDequeLast() {
+        return maxIntervalDeque[dequeSlot(maxIntervalDequeHead, maxIntervalDequeSize - 1)];
+    }
+
+    private int slot(long sequence) {
+        return (int) Math.floorMod(sequence, (long) capacity);
+    }
+
+    private int dequeSlot(int dequeHead, int offset) {
+        return Math.floorMod(dequeHead + offset, capacity);
+    }
+}
@@ -21,19 +21,31 @@ import com.pi4j.io.gpio.*;
 import com.pi4j.io.gpio.event.GpioPinListenerDigital;
 import de.avanux.smartapplianceenabler.control.Control;
 import de.avanux.smartapplianceenabler.control.GpioControllable;
+import de.avanux.smartapplianceenabler.util.SpscLongQueue;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import java.time.LocalDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlType;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Electricity meter counting S0 impulses on a GPIO pin.
+ * <p>
+ * The GPIO listener only enqueues the timestamp and state of each edge into a preallocated queue. Debouncing,
+ * power calculation, energy counting and notification of {@link PowerUpdateListener}s is done by a dedicated
+ * consumer thread so that the GPIO listener thread is never delayed.
+ */
 @XmlType(propOrder={"gpio", "pinPullResistance", "impulsesPerKwh", "measurementInterval"})
 public class S0ElectricityMeter extends GpioControllable implements Meter {
 
+    private static final int EDGE_QUEUE_CAPACITY = 1024;
+    private static final long CONSUMER_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
     private transient Logger logger = LoggerFactory.getLogger(S0ElectricityMeter.class);
     @XmlAttribute
     private Integer impulsesPerKwh;
@@ -41,11 +53,16 @@ public class S0ElectricityMeter extends GpioControllable implements Meter {
     private Integer measurementInterval; // seconds
     @XmlAttribute
     private Integer minPulseDuration; // milliseconds
-    private transient Long pulseTimestamp;
+    private transient long pulseTimestamp;
+    private transient boolean pulseStarted;
     private transient GpioPinDigitalInput inputPin;
     private transient PulsePowerMeter pulsePowerMeter = new PulsePowerMeter();
     private transient PulseEnergyMeter pulseEnergyMeter = new PulseEnergyMeter();
-    private transient List<PowerUpdateListener> powerMeterListeners = new ArrayList<>();
+    private transient List<PowerUpdateListener> powerMeterListeners = new CopyOnWriteArrayList<>();
+    private transient SpscLongQueue edgeQueue = new SpscLongQueue(EDGE_QUEUE_CAPACITY);
+    private transient Thread edgeConsumerThread;
+    private transient volatile boolean edgeConsumerRunning;
+    private transient volatile int droppedEdges;
 
 
     public Integer getImpulsesPerKwh() {
@@ -135,18 +152,21 @@ public class S0ElectricityMeter extends GpioControllable implements Meter {
     }
 
     @Override
-    public void start(LocalDateTime now, Timer timer) {
+    public void start(LocalDateTime now, TaskScheduler scheduler) {
         logger.debug("{}: Starting {}", getApplianceId(), getClass().getSimpleName());
         GpioController gpioController = getGpioController();
         if(gpioController != null) {
             try {
                 inputPin = gpioController.provisionDigitalInputPin(getGpio(), getPinPullResistance());
+                // the consumer is started after provisioning so that it is not leaked if provisioning fails
+                startEdgeConsumer();
                 inputPin.addListener((GpioPinListenerDigital) event -> {
-                    handleEvent(event.getPin(), event.getState(), getPinPullResistance(), System.currentTimeMillis());
+                    enqueueEdge(event.getState(), System.currentTimeMillis());
                 });
             }
             catch(Exception e) {
                 logger.error("{}: Error start metering using {}", getApplianceId(), getGpio(), e);
+                stopEdgeConsumer();
             }
         }
         else {
@@ -160,25 +180,97 @@ public class S0ElectricityMeter extends GpioControllable implements Meter {
         GpioController gpioController = getGpioController();
         if(gpioController != null) {
             gpioController.unprovisionPin(inputPin);
+            stopEdgeConsumer();
         }
         else {
             logGpioAccessDisabled(logger);
         }
     }
 
-    protected synchronized void handleEvent(GpioPin pin, PinState state, PinPullResistance pinPullResistance, Long timestamp) {
+    /**
+     * Called by the GPIO listener thread. Only records the edge so that no processing delays the listener thread.
+     * @param state the pin state after the edge
+     * @param timestamp the timestamp of the edge in epoch millis
+     */
+    protected void enqueueEdge(PinState state, long timestamp) {
+        // the lowest bit carries the pin state
+        if(edgeQueue.offer(timestamp << 1 | (state == PinState.HIGH ? 1L : 0L))) {
+            LockSupport.unpark(edgeConsumerThread);
+        }
+        else {
+            droppedEdges++;
+        }
+    }
+
+    private void startEdgeConsumer() {
+        edgeConsumerRunning = true;
+        edgeConsumerThread = new Thread(this::consumeEdges, "S0-" + getApplianceId());
+        edgeConsumerThread.setDaemon(true);
+        edgeConsumerThread.start();
+    }
+
+    private void stopEdgeConsumer() {
+        edgeConsumerRunning = false;
+        LockSupport.unpark(edgeConsumerThread);
+    }
+
+    private void consumeEdges() {
+        logger.debug("{}: S0 edge consumer started", getApplianceId());
+        int reportedDroppedEdges = 0;
+        while(edgeConsumerRunning) {
+            boolean impulseDetected = false;
+            long edge;
+            while((edge = edgeQueue.poll()) != SpscLongQueue.EMPTY) {
+                PinState state = (edge & 1L) == 1L ? PinState.HIGH : PinState.LOW;
+                impulseDetected |= processEdge(inputPin, state, getPinPullResistance(), edge >> 1);
+            }
+            if(impulseDetected) {
+                notifyPowerUpdateListeners();
+            }
+            int currentDroppedEdges = droppedEdges;
+            if(currentDroppedEdges != reportedDroppedEdges) {
+                logger.warn("{}: S0 edge queue full - edges dropped: {}", getApplianceId(),
+                        currentDroppedEdges - reportedDroppedEdges);
+                reportedDroppedEdges = currentDroppedEdges;
+            }
+            if(edgeQueue.isEmpty()) {
+                LockSupport.parkNanos(this, CONSUMER_PARK_NANOS);
+            }
+        }
+        logger.debug("{}: S0 edge consumer stopped", getApplianceId());
+    }
+
+    protected void handleEvent(GpioPin pin, PinState state, PinPullResistance pinPullResistance, Long timestamp) {
+        if(processEdge(pin, state, pinPullResistance, timestamp)) {
+            notifyPowerUpdateListeners();
+        }
+    }
+
+    /**
+     * Processes an edge. Must only be called by a single thread.
+     * @return true, if the edge completed an impulse
+     */
+    private boolean processEdge(GpioPin pin, PinState state, PinPullResistance pinPullResistance, long timestamp) {
         if((pinPullResistance == PinPullResistance.PULL_DOWN && state == PinState.HIGH)
                 || (pinPullResistance == PinPullResistance.PULL_UP && state == PinState.LOW)) {
             pulseTimestamp = timestamp;
+            pulseStarted = true;
         }
-        else if (pulseTimestamp != null && (timestamp - pulseTimestamp) > getMinPulseDuration()) {
-            logger.debug("{}: S0 impulse detected on GPIO {}", getApplianceId(), pin.getPin().getAddress());
+        else if (pulseStarted && (timestamp - pulseTimestamp) > getMinPulseDuration()) {
+            if(logger.isDebugEnabled()) {
+                logger.debug("{}: S0 impulse detected on GPIO {}", getApplianceId(), pin.getPin().getAddress());
+            }
             pulsePowerMeter.addTimestamp(pulseTimestamp);
             pulseEnergyMeter.increasePulseCounter();
-            int averagePower = getAveragePower();
-            logger.debug("{}: power: {}W", getApplianceId(), averagePower);
-            powerMeterListeners.forEach(listener -> listener.onPowerUpdate(averagePower));
-            pulseTimestamp = null;
+            pulseStarted = false;
+            return true;
         }
+        return false;
+    }
+
+    private void notifyPowerUpdateListeners() {
+        int averagePower = getAveragePower();
+        logger.debug("{}: power: {}W", getApplianceId(), averagePower);
+        powerMeterListeners.forEach(listener -> listener.onPowerUpdate(averagePower));
     }
 }
@@ -20,18 +20,23 @@ package de.avanux.smartapplianceenabler.modbus;
 
 import de.avanux.smartapplianceenabler.configuration.ConfigurationException;
 import de.avanux.smartapplianceenabler.control.ev.EVChargerControl;
+import de.avanux.smartapplianceenabler.control.ev.EVChargerStatus;
 import de.avanux.smartapplianceenabler.control.ev.EVReadValueName;
 import de.avanux.smartapplianceenabler.control.ev.EVWriteValueName;
 import de.avanux.smartapplianceenabler.modbus.executor.*;
 import de.avanux.smartapplianceenabler.util.ParentWithChild;
 import de.avanux.smartapplianceenabler.util.RequestCache;
+import de.avanux.smartapplianceenabler.util.ValueExtractor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @XmlAccessorType(XmlAccessType.FIELD)
 public class EVModbusControl extends ModbusSlave implements EVChargerControl {
@@ -43,7 +48,13 @@ public class EVModbusControl extends ModbusSlave implements EVChargerControl {
     private List<ModbusWrite> modbusWrites;
     private transient Integer pollInterval; // seconds
     private transient RequestCache<ModbusRead, ModbusReadTransactionExecutor> requestCache;
+    private transient Map<ModbusReadValue, ValueExtractor> readValueWithExtractor = new ConcurrentHashMap<>();
+    // created once in init() and reused for every read
+    private transient Map<ModbusRead, ModbusReadTransactionExecutor> readWithExecutor = new IdentityHashMap<>();
+    // the register values of the reused executors must not change while being evaluated
+    private transient Object readLock = new Object();
 
+    @Override
     public List<ModbusRead> getModbusReads() {
         return modbusReads;
     }
@@ -76,7 +87,25 @@ public class EVModbusControl extends ModbusSlave implements EVChargerControl {
     public void init() {
         int cacheMaxAgeSeconds = this.pollInterval - 1;
         this.requestCache = new RequestCache<>(getApplianceId(), cacheMaxAgeSeconds);
+        synchronized(readLock) {
+            this.readWithExecutor.clear();
+            if(this.modbusReads != null) {
+                for(ModbusRead read: this.modbusReads) {
+                    read.getReadValues().forEach(this::getValueExtractor);
+                    this.readWithExecutor.put(read, createReadExecutor(read));
+                }
+            }
+        }
+    }
+
+    private ModbusReadTransactionExecutor createReadExecutor(ModbusRead registerRead) {
+        return ModbusExecutorFactory.getReadExecutor(getApplianceId(),
+                registerRead.getType(), registerRead.getAddress(), registerRead.getBytes());
+    }
 
+    private ValueExtractor getValueExtractor(ModbusReadValue readValue) {
+        return readValueWithExtractor.computeIfAbsent(readValue,
+                key -> ValueExtractor.compile(key.getExtractionRegex(), null));
     }
 
     @Override
@@ -120,52 +149,104 @@ public class EVModbusControl extends ModbusSlave implements EVChargerControl {
         return isMatchingVehicleStatus(EVReadValueName.Error);
     }
 
+    /**
+     * Reads each register required by any status value exactly once and evaluates all status values against
+     * these register values. Reads of adjacent registers are coalesced by the {@link ModbusReadPlanner}.
+     */
+    @Override
+    public EVChargerStatus getStatus() {
+        synchronized(readLock) {
+            Map<ModbusRead, ModbusReadTransactionExecutor> snapshot = readRegisters(
+                    EVReadValueName.VehicleNotConnected, EVReadValueName.VehicleConnected, EVReadValueName.Charging,
+                    EVReadValueName.Error);
+            EVChargerStatus status = new EVChargerStatus(
+                    isMatchingVehicleStatus(EVReadValueName.VehicleNotConnected, snapshot),
+                    isMatchingVehicleStatus(EVReadValueName.VehicleConnected, snapshot),
+                    isMatchingVehicleStatus(EVReadValueName.Charging, snapshot),
+                    isMatchingVehicleStatus(EVReadValueName.Error, snapshot));
+            logger.debug("{}: {} registersRead={}", getApplianceId(), status, snapshot.size());
+            return status;
+        }
+    }
+
     public boolean isMatchingVehicleStatus(EVReadValueName registerName) {
+        synchronized(readLock) {
+            return isMatchingVehicleStatus(registerName, readRegisters(registerName));
+        }
+    }
+
+    /**
+     * Returns the executors holding the register values of all reads required for the given value names.
+     * Each read is performed at most once; the executor of a failed read is null.
+     */
+    private Map<ModbusRead, ModbusReadTransactionExecutor> readRegisters(EVReadValueName... registerNames) {
+        Map<ModbusRead, ModbusReadTransactionExecutor> snapshot = new IdentityHashMap<>();
+        for(EVReadValueName registerName : registerNames) {
+            for(ParentWithChild<ModbusRead, ModbusReadValue> read
+                    : ModbusRead.getRegisterReads(registerName.name(), this.modbusReads)) {
+                ModbusRead registerRead = read.parent();
+                if(! snapshot.containsKey(registerRead)) {
+                    snapshot.put(registerRead, readRegister(registerRead));
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private ModbusReadTransactionExecutor readRegister(ModbusRead registerRead) {
+        try {
+            ModbusReadTransactionExecutor executor = this.requestCache.get(registerRead);
+            if (executor == null) {
+                executor = this.readWithExecutor.computeIfAbsent(registerRead, this::createReadExecutor);
+                executeReadTransaction(registerRead, executor, this.requestCache.getMaxAgeMillis());
+                this.requestCache.put(registerRead, executor);
+            }
+            else {
+                if(executor instanceof BaseTransactionExecutor) {
+                    BaseTransactionExecutor readInputRegisterExecutor = (BaseTransactionExecutor) executor;
+                    logger.debug("{}: Using cached input register={}", getApplianceId(),
+                            readInputRegisterExecutor.getAddress());
+                }
+            }
+            if (executor == null) {
+                logger.error("{}: no input register executor available", getApplianceId());
+            }
+            return executor;
+        } catch (Exception e) {
+            logger.error("{}: Error reading register {}", getApplianceId(), registerRead.getAddress(), e);
+        }
+        return null;
+    }
+
+    private boolean isMatchingVehicleStatus(EVReadValueName registerName,
+                                            Map<ModbusRead, ModbusReadTransactionExecutor> snapshot) {
         List<ParentWithChild<ModbusRead, ModbusReadValue>> reads
                 = ModbusRead.getRegisterReads(registerName.name(), this.modbusReads);
         if (reads.size() > 0) {
             boolean result = true;
             for (ParentWithChild<ModbusRead, ModbusReadValue> read : reads) {
                 ModbusRead registerRead = read.parent();
-                try {
-                    ModbusReadTransactionExecutor executor = this.requestCache.get(registerRead);
-                    if (executor == null) {
-                        executor = ModbusExecutorFactory.getReadExecutor(getApplianceId(),
-                                registerRead.getType(), registerRead.getAddress(), registerRead.getBytes());
-                        executeTransaction(executor, true);
-                        this.requestCache.put(registerRead, executor);
-                    }
-                    else {
-                        if(executor instanceof BaseTransactionExecutor) {
-                            BaseTransactionExecutor readInputRegisterExecutor = (BaseTransactionExecutor) executor;
-                            logger.debug("{}: Using cached input register={}", getApplianceId(),
-                                    readInputRegisterExecutor.getAddress());
-                        }
-                    }
-                    if (result) {
-                        if (executor != null) {
-                            if (executor instanceof ReadStringInputRegisterExecutor) {
-                                String registerValue = ((ReadStringInputRegisterExecutor) executor).getValue();
-                                logger.debug("{}: Register value={}", getApplianceId(), registerValue);
-                                result &= registerValue.matches(read.child().getExtractionRegex());
-                            } else if (executor instanceof ReadCoilExecutor) {
-                                Boolean registerValue = ((ReadCoilExecutor) executor).getValue();
-                                logger.debug("{}: Register value={}", getApplianceId(), registerValue);
-                                result &= registerValue;
-                            } else if (executor instanceof ReadDiscreteInputExecutor) {
-                                Boolean registerValue = ((ReadDiscreteInputExecutor) executor).getValue();
-                                logger.debug("{}: Register value={}", getApplianceId(), registerValue);
-                                result &= registerValue;
-                            }
-                        }
-                        else {
-                            logger.error("{}: no input register executor available", getApplianceId());
+                if (result) {
+                    try {
+                        ModbusReadTransactionExecutor executor = snapshot.get(registerRead);
+                        if (executor instanceof ReadStringInputRegisterExecutor) {
+                            String registerValue = ((ReadStringInputRegisterExecutor) executor).getValue();
+                            logger.debug("{}: Register value={}", getApplianceId(), registerValue);
+                            result &= registerValue != null && getValueExtractor(read.child()).isFullMatch(registerValue);
+                        } else if (executor instanceof ReadCoilExecutor) {
+                            Boolean registerValue = ((ReadCoilExecutor) executor).getValue();
+                            logger.debug("{}: Register value={}", getApplianceId(), registerValue);
+                            result &= registerValue;
+                        } else if (executor instanceof ReadDiscreteInputExecutor) {
+                            Boolean registerValue = ((ReadDiscreteInputExecutor) executor).getValue();
+                            logger.debug("{}: Register value={}", getApplianceId(), registerValue);
+                            result &= registerValue;
                         }
-                    } else {
-                        logger.debug("{}: Skipping read register {}", getApplianceId(), registerRead.getAddress());
+                    } catch (Exception e) {
+                        logger.error("{}: Error evaluating register {}", getApplianceId(), registerRead.getAddress(), e);
                     }
-                } catch (Exception e) {
-                    logger.error("{}: Error reading register {}", getApplianceId(), registerRead.getAddress(), e);
+                } else {
+                    logger.debug("{}: Skipping read register {}", getApplianceId(), registerRead.getAddress());
                 }
             }
             return result;
@@ -189,7 +270,7 @@ public class EVModbusControl extends ModbusSlave implements EVChargerControl {
                         registerWrite.getType(), registerWrite.getAddress(), registerWrite.getFactorToValue());
                 if(executor != null) {
                     executor.setValue(current);
-                    executeTransaction(executor, true);
+                    executeTransaction(executor);
                 }
             }
             catch(Exception e) {
@@ -230,7 +311,7 @@ public class EVModbusControl extends ModbusSlave implements EVChargerControl {
                         value = "1".equals(stringValue);
                     }
                     executor.setValue(value);
-                    executeTransaction(executor, true);
+                    executeTransaction(executor);
                 }
             }
             catch(Exception e) {
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide manager of ModBus TCP connections with a small pool of long-lived connections per {@link ModbusTcp}
+ * gateway shared by all slaves on that gateway. The number of connections per gateway is limited since cheap
+ * RS485-to-TCP gateways accept only few connections; transactions of all slaves are serialized on them.
+ * <p>
+ * Connections stay open between transactions. Connections idle for longer than {@link #IDLE_TIMEOUT_MILLIS} are
+ * reconnected before use since gateways tend to drop idle connections. A connection failing in a transaction is
+ * closed; if it had been reused and the transaction is idempotent (i.e. a read), the transaction is retried once with
+ * a new connection. Writes are not retried since the failure may have occurred after the request had been sent.
+ * <p>
+ * For gateways being {@link ModbusTcp#isPipelined() pipelined} register reads are sent through a
+ * {@link ModbusPipeline} using one additional connection.
+ */
+public class ModbusConnectionManager {
+    public static final String maxConnectionsConfigurationParamName = "Modbus.MaxConnectionsPerGateway";
+    public static final int DEFAULT_MAX_CONNECTIONS = 1;
+    public static final long IDLE_TIMEOUT_MILLIS = 30000;
+    private static ModbusConnectionManager instance;
+    private Logger logger = LoggerFactory.getLogger(ModbusConnectionManager.class);
+    private Map<String, GatewayPool> idWithPool = new ConcurrentHashMap<>();
+    private Map<String, ModbusPipeline> idWithPipeline = new ConcurrentHashMap<>();
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private volatile Executor completionExecutor = Runnable::run;
+
+    protected ModbusConnectionManager() {
+    }
+
+    public static synchronized ModbusConnectionManager getInstance() {
+        if(instance == null) {
+            instance = new ModbusConnectionManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the maximum number of connections per gateway used by pools created afterwards.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(maxConnections, 1);
+    }
+
+    /**
+     * Sets the executor of the callbacks of pipelined requests used by pipelines created afterwards.
+     * @param completionExecutor the executor which should have a bounded number of threads or null to use the
+     * reader thread of the pipeline
+     */
+    public void setCompletionExecutor(Executor completionExecutor) {
+        this.completionExecutor = completionExecutor != null ? completionExecutor : Runnable::run;
+    }
+
+    /**
+     * Executes a transaction on a pooled connection to the gateway.
+     * @param applianceId the id of the appliance used for logging
+     * @param modbusTcp the gateway
+     * @param transaction the transaction
+     * @param idempotent true, if the transaction may be retried if a reused connection failed
+     */
+    public void execute(String applianceId, ModbusTcp modbusTcp, Transaction transaction, boolean idempotent)
+            throws Exception {
+        getPool(modbusTcp).execute(applianceId, transaction, idempotent);
+    }
+
+    /**
+     * Returns the pipeline of a pipelined gateway.
+     */
+    public ModbusPipeline getPipeline(ModbusTcp modbusTcp) {
+        String id = getId(modbusTcp);
+        ModbusPipeline pipeline = idWithPipeline.computeIfAbsent(id, key -> new ModbusPipeline(modbusTcp, completionExecutor));
+        if(! pipeline.getModbusTcp().getEndpoint().equals(modbusTcp.getEndpoint())) {
+            // the gateway has been reconfigured
+            if(idWithPipeline.replace(id, pipeline, new ModbusPipeline(modbusTcp, completionExecutor))) {
+                pipeline.close();
+            }
+            pipeline = idWithPipeline.get(id);
+        }
+        return pipeline;
+    }
+
+    private String getId(ModbusTcp modbusTcp) {
+        return modbusTcp.getId() != null ? modbusTcp.getId() : modbusTcp.getEndpoint();
+    }
+
+    private GatewayPool getPool(ModbusTcp modbusTcp) {
+        String id = getId(modbusTcp);
+        GatewayPool pool = idWithPool.computeIfAbsent(id, key -> new GatewayPool(key, modbusTcp, maxConnections));
+        if(! pool.modbusTcp.getEndpoint().equals(modbusTcp.getEndpoint())) {
+            // the gateway has been reconfigured
+            GatewayPool newPool = new GatewayPool(id, modbusTcp, maxConnections);
+            if(idWithPool.replace(id, pool, newPool)) {
+                pool.close();
+            }
+            pool = idWithPool.get(id);
+        }
+        return pool;
+    }
+
+    /**
+     * Closes all connections and removes all pools.
+     */
+    public void close() {
+        for(GatewayPool pool : idWithPool.values()) {
+            pool.close();
+        }
+        idWithPool.clear();
+        for(ModbusPipeline pipeline : idWithPipeline.values()) {
+            pipeline.close();
+        }
+        idWithPipeline.clear();
+    }
+
+    /**
+     * Returns the statistics of all gateways sorted by id.
+     */
+    public List<ModbusGatewayStatistics> getStatistics() {
+        List<ModbusGatewayStatistics> statistics = new ArrayList<>();
+        for(GatewayPool pool : idWithPool.values()) {
+            statistics.add(pool.getStatistics());
+        }
+        statistics.sort(Comparator.comparing(ModbusGatewayStatistics::getId));
+        return statistics;
+    }
+
+    /**
+     * A transaction executed on a connection.
+     */
+    public interface Transaction {
+        void execute(TCPMasterConnection connection) throws Exception;
+    }
+
+    private class GatewayPool {
+        private final String id;
+        private final ModbusTcp modbusTcp;
+        private final int maxConnections;
+        private final Semaphore permits;
+        private final Deque<PooledConnection> idleConnections = new ArrayDeque<>();
+        private final AtomicLong connects = new AtomicLong();
+        private final AtomicLong connectFailures = new AtomicLong();
+        private final AtomicLong disconnects = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong transactions = new AtomicLong();
+        private final AtomicLong transactionFailures = new AtomicLong();
+        private final AtomicLong transactionNanos = new AtomicLong();
+        private final AtomicLong acquisitions = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private int openConnections;
+        private boolean closed;
+
+        GatewayPool(String id, ModbusTcp modbusTcp, int maxConnections) {
+            this.id = id;
+            this.modbusTcp = modbusTcp;
+            this.maxConnections = maxConnections;
+            this.permits = new Semaphore(maxConnections, true);
+        }
+
+        void execute(String applianceId, Transaction transaction, boolean idempotent) throws Exception {
+            long waitStart = System.nanoTime();
+            permits.acquire();
+            try {
+                acquisitions.incrementAndGet();
+                waitNanos.addAndGet(System.nanoTime() - waitStart);
+                PooledConnection connection = borrow(applianceId);
+                boolean reused = connection.lastUsedMillis > 0;
+                try {
+                    executeOn(connection, transaction);
+                }
+                catch(ModbusSlaveException e) {
+                    // the slave responded, i.e. the connection is fine
+                    release(connection);
+                    throw e;
+                }
+                catch(Exception e) {
+                    discard(connection);
+                    if(! reused || ! idempotent) {
+                        throw e;
+                    }
+                    logger.debug("{}: Retrying transaction on new connection to modbus {}: {}",
+                            applianceId, modbusTcp, e.toString());
+                    retries.incrementAndGet();
+                    connection = borrow(applianceId);
+                    try {
+                        executeOn(connection, transaction);
+                    }
+                    catch(ModbusSlaveException e2) {
+                        release(connection);
+                        throw e2;
+                    }
+                    catch(Exception e2) {
+                        discard(connection);
+                        throw e2;
+                    }
+                }
+                release(connection);
+            }
+            finally {
+                permits.release();
+            }
+        }
+
+        private void executeOn(PooledConnection connection, Transaction transaction) throws Exception {
+            long start = System.nanoTime();
+            transactions.incrementAndGet();
+            try {
+                transaction.execute(connection.connection);
+            }
+            catch(Exception e) {
+                transactionFailures.incrementAndGet();
+                throw e;
+            }
+            finally {
+                transactionNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Returns an idle connection or a new one. Must only be called while holding a permit.
+         */
+        private PooledConnection borrow(String applianceId) throws Exception {
+            PooledConnection connection;
+            synchronized(this) {
+                connection = idleConnections.pollFirst();
+            }
+            if(connection != null) {
+                if(connection.connection.isConnected()
+                        && System.currentTimeMillis() - connection.lastUsedMillis < IDLE_TIMEOUT_MILLIS) {
+                    return connection;
+                }
+                discard(connection);
+            }
+            logger.debug("{}: Connecting to modbus {}", applianceId, modbusTcp);
+            TCPMasterConnection tcpMasterConnection = modbusTcp.getConnection();
+            connects.incrementAndGet();
+            try {
+                tcpMasterConnection.connect();
+            }
+            catch(Exception e) {
+                connectFailures.incrementAndGet();
+                tcpMasterConnection.close();
+                throw e;
+            }
+            synchronized(this) {
+                openConnections++;
+            }
+            return new PooledConnection(tcpMasterConnection);
+        }
+
+        private synchronized void release(PooledConnection connection) {
+            connection.lastUsedMillis = System.currentTimeMillis();
+            if(closed) {
+                discard(connection);
+            }
+            else {
+                idleConnections.addFirst(connection);
+            }
+        }
+
+        private synchronized void discard(PooledConnection connection) {
+            connection.connection.close();
+            openConnections--;
+            disconnects.incrementAndGet();
+        }
+
+        synchronized void close() {
+            closed = true;
+            for(PooledConnection connection : idleConnections) {
+                discard(connection);
+            }
+            idleConnections.clear();
+        }
+
+        synchronized ModbusGatewayStatistics getStatistics() {
+            ModbusGatewayStatistics statistics = new ModbusGatewayStatistics();
+            statistics.setId(id);
+            statistics.setEndpoint(modbusTcp.getEndpoint());
+            statistics.setMaxConnections(maxConnections);
+            statistics.setOpenConnections(openConnections);
+            statistics.setIdleConnections(idleConnections.size());
+            statistics.setConnects(connects.get());
+            statistics.setConnectFailures(connectFailures.get());
+            statistics.setDisconnects(disconnects.get());
+            statistics.setRetries(retries.get());
+            long transactionCount = transactions.get();
+            statistics.setTransactions(transactionCount);
+            statistics.setTransactionFailures(transactionFailures.get());
+            statistics.setAverageTransactionMillis(transactionCount > 0
+                    ? transactionNanos.get() / transactionCount / 1000000.0 : 0.0);
+            long acquisitionCount = acquisitions.get();
+            statistics.setAverageWaitMillis(acquisitionCount > 0
+                    ? waitNanos.get() / acquisitionCount / 1000000.0 : 0.0);
+            return statistics;
+        }
+    }
+
+    private static class PooledConnection {
+        private final TCPMasterConnection connection;
+        private long lastUsedMillis;
+
+        PooledConnection(TCPMasterConnection connection) {
+            this.connection = connection;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+/**
+ * Connection and transaction statistics of a {@link ModbusTcp} gateway.
+ */
+public class ModbusGatewayStatistics {
+    private String id;
+    private String endpoint;
+    private int maxConnections;
+    private int openConnections;
+    private int idleConnections;
+    private long connects;
+    private long connectFailures;
+    private long disconnects;
+    private long retries;
+    private long transactions;
+    private long transactionFailures;
+    private double averageTransactionMillis;
+    private double averageWaitMillis;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getOpenConnections() {
+        return openConnections;
+    }
+
+    public void setOpenConnections(int openConnections) {
+        this.openConnections = openConnections;
+    }
+
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    public void setIdleConnections(int idleConnections) {
+        this.idleConnections = idleConnections;
+    }
+
+    public long getConnects() {
+        return connects;
+    }
+
+    public void setConnects(long connects) {
+        this.connects = connects;
+    }
+
+    public long getConnectFailures() {
+        return connectFailures;
+    }
+
+    public void setConnectFailures(long connectFailures) {
+        this.connectFailures = connectFailures;
+    }
+
+    public long getDisconnects() {
+        return disconnects;
+    }
+
+    public void setDisconnects(long disconnects) {
+        this.disconnects = disconnects;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    public void setRetries(long retries) {
+        this.retries = retries;
+    }
+
+    public long getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(long transactions) {
+        this.transactions = transactions;
+    }
+
+    public long getTransactionFailures() {
+        return transactionFailures;
+    }
+
+    public void setTransactionFailures(long transactionFailures) {
+        this.transactionFailures = transactionFailures;
+    }
+
+    public double getAverageTransactionMillis() {
+        return averageTransactionMillis;
+    }
+
+    public void setAverageTransactionMillis(double averageTransactionMillis) {
+        this.averageTransactionMillis = averageTransactionMillis;
+    }
+
+    public double getAverageWaitMillis() {
+        return averageWaitMillis;
+    }
+
+    public void setAverageWaitMillis(double averageWaitMillis) {
+        this.averageWaitMillis = averageWaitMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ModbusGatewayStatistics{" +
+                "id='" + id + '\'' +
+                ", endpoint='" + endpoint + '\'' +
+                ", openConnections=" + openConnections +
+                ", connects=" + connects +
+                ", disconnects=" + disconnects +
+                ", transactions=" + transactions +
+                ", transactionFailures=" + transactionFailures +
+                '}';
+    }
+}
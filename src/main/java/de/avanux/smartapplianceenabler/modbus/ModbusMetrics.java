@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import de.avanux.smartapplianceenabler.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide statistics of ModBus transactions per gateway, slave, function code and register including
+ * latency histograms, error counters and the estimated number of bytes transferred. The statistics are
+ * available via REST and as JMX MXBean {@link #OBJECT_NAME}.
+ */
+public class ModbusMetrics implements ModbusMetricsMXBean {
+    public static final String OBJECT_NAME = "de.avanux.smartapplianceenabler:type=ModbusMetrics";
+    // MBAP header of ModBus TCP frames
+    private static final int HEADER_BYTES = 7;
+    private static ModbusMetrics instance;
+    private Logger logger = LoggerFactory.getLogger(ModbusMetrics.class);
+    private Map<String, TransactionMetrics> keyWithMetrics = new ConcurrentHashMap<>();
+
+    public enum Outcome {
+        SUCCESS,
+        SLAVE_EXCEPTION,
+        TIMEOUT,
+        ERROR,
+        REJECTED
+    }
+
+    protected ModbusMetrics() {
+    }
+
+    public static synchronized ModbusMetrics getInstance() {
+        if(instance == null) {
+            instance = new ModbusMetrics();
+        }
+        return instance;
+    }
+
+    /**
+     * Registers the statistics with the platform MBean server.
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            logger.debug("Registered MBean {}", OBJECT_NAME);
+        }
+        catch(InstanceAlreadyExistsException e) {
+            // registered already
+        }
+        catch(Exception e) {
+            logger.warn("Error registering MBean {}", OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Records a transaction.
+     * @param modbusTcp the gateway
+     * @param slaveAddress the slave address
+     * @param functionCode the function code
+     * @param address the register address
+     * @param count the number of registers or coils
+     * @param nanos the duration of the last attempt
+     * @param retries the number of retries
+     * @param throwable the exception causing the transaction to fail or null
+     */
+    public void record(ModbusTcp modbusTcp, int slaveAddress, int functionCode, int address, int count,
+                       long nanos, int retries, Throwable throwable) {
+        record(modbusTcp, slaveAddress, functionCode, address, count, nanos, retries, getOutcome(throwable));
+    }
+
+    public void record(ModbusTcp modbusTcp, int slaveAddress, int functionCode, int address, int count,
+                       long nanos, int retries, Outcome outcome) {
+        String gateway = modbusTcp.getId() != null ? modbusTcp.getId() : modbusTcp.getEndpoint();
+        String key = gateway + "/" + slaveAddress + "/" + functionCode + "/" + address;
+        TransactionMetrics metrics = keyWithMetrics.computeIfAbsent(key,
+                k -> new TransactionMetrics(gateway, slaveAddress, functionCode, address));
+        metrics.record(count, nanos, retries, outcome);
+    }
+
+    /**
+     * Returns the outcome of a transaction.
+     * @param throwable the exception causing the transaction to fail or null
+     */
+    public static Outcome getOutcome(Throwable throwable) {
+        if(throwable == null) {
+            return Outcome.SUCCESS;
+        }
+        for(Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if(cause instanceof ModbusSlaveException) {
+                return Outcome.SLAVE_EXCEPTION;
+            }
+            if(cause instanceof SocketTimeoutException || cause instanceof TimeoutException) {
+                return Outcome.TIMEOUT;
+            }
+            String message = cause.getMessage();
+            if(message != null && (message.contains("timed out") || message.toLowerCase().contains("timeout"))) {
+                return Outcome.TIMEOUT;
+            }
+            if(cause.getCause() == cause) {
+                break;
+            }
+        }
+        return Outcome.ERROR;
+    }
+
+    /**
+     * Returns the size of a request frame.
+     */
+    static int getRequestBytes(int functionCode, int count) {
+        switch(functionCode) {
+            case Modbus.WRITE_MULTIPLE_COILS:
+                // function code, address, count, byte count and coil values
+                return HEADER_BYTES + 6 + (count + 7) / 8;
+            case Modbus.WRITE_MULTIPLE_REGISTERS:
+                // function code, address, count, byte count and register values
+                return HEADER_BYTES + 6 + 2 * count;
+            default:
+                // function code, address and count or value
+                return HEADER_BYTES + 5;
+        }
+    }
+
+    /**
+     * Returns the size of a normal response frame.
+     */
+    static int getResponseBytes(int functionCode, int count) {
+        switch(functionCode) {
+            case Modbus.READ_COILS:
+            case Modbus.READ_INPUT_DISCRETES:
+                return HEADER_BYTES + 2 + (count + 7) / 8;
+            case Modbus.READ_MULTIPLE_REGISTERS:
+            case Modbus.READ_INPUT_REGISTERS:
+                return HEADER_BYTES + 2 + 2 * count;
+            default:
+                // echo of the request or, for multiple writes, of its address and count
+                return HEADER_BYTES + 5;
+        }
+    }
+
+    /**
+     * Returns the size of an exception response frame.
+     */
+    static int getExceptionResponseBytes() {
+        return HEADER_BYTES + 2;
+    }
+
+    @Override
+    public List<ModbusTransactionStatistics> getTransactionStatistics() {
+        List<ModbusTransactionStatistics> statistics = new ArrayList<>();
+        for(TransactionMetrics metrics : keyWithMetrics.values()) {
+            statistics.add(metrics.getStatistics());
+        }
+        statistics.sort(Comparator.comparing(ModbusTransactionStatistics::getGateway)
+                .thenComparingInt(ModbusTransactionStatistics::getSlaveAddress)
+                .thenComparingInt(ModbusTransactionStatistics::getFunctionCode)
+                .thenComparingInt(ModbusTransactionStatistics::getRegister));
+        return statistics;
+    }
+
+    @Override
+    public List<ModbusGatewayStatistics> getGatewayStatistics() {
+        return ModbusConnectionManager.getInstance().getStatistics();
+    }
+
+    @Override
+    public void reset() {
+        keyWithMetrics.clear();
+    }
+
+    private static class TransactionMetrics {
+        private final String gateway;
+        private final int slaveAddress;
+        private final int functionCode;
+        private final int address;
+        private volatile int count;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final AtomicLong transactions = new AtomicLong();
+        private final AtomicLong slaveExceptions = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+
+        TransactionMetrics(String gateway, int slaveAddress, int functionCode, int address) {
+            this.gateway = gateway;
+            this.slaveAddress = slaveAddress;
+            this.functionCode = functionCode;
+            this.address = address;
+        }
+
+        void record(int count, long nanos, int retryCount, Outcome outcome) {
+            this.count = count;
+            transactions.incrementAndGet();
+            if(outcome == Outcome.REJECTED) {
+                rejected.incrementAndGet();
+                return;
+            }
+            retries.addAndGet(retryCount);
+            bytesSent.addAndGet((long) (retryCount + 1) * getRequestBytes(functionCode, count));
+            switch(outcome) {
+                case SUCCESS:
+                    latencies.recordNanos(nanos);
+                    bytesReceived.addAndGet(getResponseBytes(functionCode, count));
+                    break;
+                case SLAVE_EXCEPTION:
+                    latencies.recordNanos(nanos);
+                    bytesReceived.addAndGet(getExceptionResponseBytes());
+                    slaveExceptions.incrementAndGet();
+                    break;
+                case TIMEOUT:
+                    timeouts.incrementAndGet();
+                    break;
+                default:
+                    errors.incrementAndGet();
+            }
+        }
+
+        ModbusTransactionStatistics getStatistics() {
+            ModbusTransactionStatistics statistics = new ModbusTransactionStatistics();
+            statistics.setGateway(gateway);
+            statistics.setSlaveAddress(slaveAddress);
+            statistics.setFunctionCode(functionCode);
+            statistics.setRegister(address);
+            statistics.setRegisterCount(count);
+            statistics.setTransactions(transactions.get());
+            statistics.setSlaveExceptions(slaveExceptions.get());
+            statistics.setTimeouts(timeouts.get());
+            statistics.setErrors(errors.get());
+            statistics.setRejected(rejected.get());
+            statistics.setRetries(retries.get());
+            statistics.setBytesSent(bytesSent.get());
+            statistics.setBytesReceived(bytesReceived.get());
+            statistics.setLatencyMeanMillis(latencies.getMeanMicros() / 1000.0);
+            statistics.setLatencyP50Millis(latencies.getPercentileMicros(50.0) / 1000.0);
+            statistics.setLatencyP90Millis(latencies.getPercentileMicros(90.0) / 1000.0);
+            statistics.setLatencyP99Millis(latencies.getPercentileMicros(99.0) / 1000.0);
+            statistics.setLatencyMaxMillis(latencies.getMaxMicros() / 1000.0);
+            return statistics;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipelined transport for register reads on a {@link ModbusTcp} gateway accepting several outstanding transactions
+ * on one connection. Up to max in flight requests are sent on a single socket without waiting for the responses of
+ * the previous ones. A reader thread matches the responses by transaction id and completes the futures of the
+ * waiting callers. The callbacks of the futures are executed by the completion executor so that they do not delay
+ * the reader thread.
+ * <p>
+ * The connection is established on the first request and after it has been closed due to an I/O or framing error.
+ * A response timeout fails only the expired request and keeps the connection since the other requests may still
+ * be answered; responses with an unknown transaction id arriving late are discarded. Only if
+ * {@link #MAX_CONSECUTIVE_TIMEOUTS} requests time out without any response in between the connection is considered
+ * dead and closed.
+ */
+public class ModbusPipeline {
+    public static final int TIMEOUT_MILLIS = 3000;
+    public static final int MAX_CONSECUTIVE_TIMEOUTS = 3;
+    private static final int FUNCTION_CODE_READ_HOLDING_REGISTERS = 3;
+    private static final int FUNCTION_CODE_READ_INPUT_REGISTERS = 4;
+    private Logger logger = LoggerFactory.getLogger(ModbusPipeline.class);
+    private final ModbusTcp modbusTcp;
+    private final Executor completionExecutor;
+    private final Semaphore permits;
+    private final AtomicInteger consecutiveTimeouts = new AtomicInteger();
+    private final Map<Integer, PendingRequest> transactionIdWithRequest = new ConcurrentHashMap<>();
+    private Socket socket;
+    private OutputStream outputStream;
+    private int nextTransactionId;
+    private boolean closed;
+
+    /**
+     * Creates a pipeline.
+     * @param modbusTcp the gateway
+     * @param completionExecutor the bounded executor of the callbacks of the futures
+     */
+    public ModbusPipeline(ModbusTcp modbusTcp, Executor completionExecutor) {
+        this.modbusTcp = modbusTcp;
+        this.completionExecutor = completionExecutor;
+        this.permits = new Semaphore(modbusTcp.getResolvedMaxInFlight(), true);
+    }
+
+    public ModbusTcp getModbusTcp() {
+        return modbusTcp;
+    }
+
+    /**
+     * Returns the number of requests sent whose responses have not been received yet.
+     */
+    public int getInFlight() {
+        return transactionIdWithRequest.size();
+    }
+
+    /**
+     * Sends a request for reading holding registers (FC 3) or input registers (FC 4). The calling thread blocks only
+     * if max in flight requests are outstanding already.
+     * @param applianceId the id of the appliance used for logging
+     * @param slaveAddress the slave address
+     * @param holding true for holding registers, false for input registers
+     * @param address the address of the first register
+     * @param count the number of registers
+     * @return the future of the register values
+     */
+    public CompletableFuture<int[]> readRegisters(String applianceId, int slaveAddress, boolean holding,
+                                                  int address, int count) {
+        try {
+            if(! permits.tryAcquire(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return CompletableFuture.failedFuture(new TimeoutException(
+                        "Too many requests in flight on modbus " + modbusTcp));
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        PendingRequest request = new PendingRequest(
+                holding ? FUNCTION_CODE_READ_HOLDING_REGISTERS : FUNCTION_CODE_READ_INPUT_REGISTERS, count);
+        request.future.orTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).whenComplete((values, throwable) -> {
+            transactionIdWithRequest.remove(request.transactionId, request);
+            permits.release();
+            if(throwable instanceof TimeoutException) {
+                int timeouts = consecutiveTimeouts.incrementAndGet();
+                logger.debug("{}: Response timeout for transaction {} on modbus {}",
+                        applianceId, request.transactionId, modbusTcp);
+                if(timeouts >= MAX_CONSECUTIVE_TIMEOUTS) {
+                    closeConnection(request.socket, (TimeoutException) throwable);
+                }
+            }
+        });
+        try {
+            send(request, slaveAddress, address, count);
+            logger.debug("{}: Sent transaction {} reading registers {}-{} of slave {} on modbus {}", applianceId,
+                    request.transactionId, address, address + count - 1, slaveAddress, modbusTcp);
+        }
+        catch(IOException e) {
+            request.future.completeExceptionally(e);
+        }
+        return request.future.handleAsync((values, throwable) -> {
+            if(throwable != null) {
+                throw throwable instanceof CompletionException
+                        ? (CompletionException) throwable : new CompletionException(throwable);
+            }
+            return values;
+        }, completionExecutor);
+    }
+
+    private synchronized void send(PendingRequest request, int slaveAddress, int address, int count)
+            throws IOException {
+        if(closed) {
+            throw new IOException("Pipeline closed for modbus " + modbusTcp);
+        }
+        if(socket == null) {
+            connect();
+        }
+        request.transactionId = nextTransactionId;
+        request.socket = socket;
+        nextTransactionId = (nextTransactionId + 1) & 0xFFFF;
+        transactionIdWithRequest.put(request.transactionId, request);
+
+        byte[] frame = new byte[12];
+        putShort(frame, 0, request.transactionId);
+        putShort(frame, 2, 0); // protocol id
+        putShort(frame, 4, 6); // length of unit id and PDU
+        frame[6] = (byte) slaveAddress;
+        frame[7] = (byte) request.functionCode;
+        putShort(frame, 8, address);
+        putShort(frame, 10, count);
+        try {
+            outputStream.write(frame);
+            outputStream.flush();
+        }
+        catch(IOException e) {
+            closeConnection(socket, e);
+            throw e;
+        }
+    }
+
+    private static void putShort(byte[] frame, int offset, int value) {
+        frame[offset] = (byte) (value >> 8);
+        frame[offset + 1] = (byte) value;
+    }
+
+    private void connect() throws IOException {
+        logger.debug("Connecting pipeline to modbus {}", modbusTcp);
+        Socket newSocket = new Socket();
+        try {
+            newSocket.setTcpNoDelay(true);
+            newSocket.connect(new InetSocketAddress(modbusTcp.getResolvedHost(), modbusTcp.getResolvedPort()),
+                    TIMEOUT_MILLIS);
+            DataInputStream inputStream = new DataInputStream(new BufferedInputStream(newSocket.getInputStream()));
+            outputStream = newSocket.getOutputStream();
+            Thread readerThread = new Thread(() -> readResponses(newSocket, inputStream),
+                    "ModbusPipeline-" + modbusTcp.getEndpoint());
+            readerThread.setDaemon(true);
+            readerThread.start();
+            socket = newSocket;
+            consecutiveTimeouts.set(0);
+        }
+        catch(IOException e) {
+            newSocket.close();
+            throw e;
+        }
+    }
+
+    private void readResponses(Socket readSocket, DataInputStream inputStream) {
+        try {
+            while(true) {
+                int transactionId = inputStream.readUnsignedShort();
+                inputStream.readUnsignedShort(); // protocol id
+                int length = inputStream.readUnsignedShort();
+                if(length < 2 || length > 254) {
+                    throw new IOException("Invalid length " + length + " of transaction " + transactionId);
+                }
+                inputStream.readUnsignedByte(); // unit id
+                byte[] pdu = new byte[length - 1];
+                inputStream.readFully(pdu);
+                consecutiveTimeouts.set(0);
+                PendingRequest request = transactionIdWithRequest.remove(transactionId);
+                if(request != null) {
+                    complete(request, pdu);
+                }
+                else {
+                    logger.debug("Discarding response of unknown transaction {} on modbus {}", transactionId, modbusTcp);
+                }
+            }
+        }
+        catch(IOException e) {
+            closeConnection(readSocket, e);
+        }
+    }
+
+    private void complete(PendingRequest request, byte[] pdu) {
+        int functionCode = pdu[0] & 0xFF;
+        if((functionCode & 0x80) != 0) {
+            request.future.completeExceptionally(new ModbusSlaveException(pdu.length > 1 ? pdu[1] & 0xFF : 0));
+        }
+        else if(functionCode != request.functionCode || pdu.length < 2 + request.count * 2
+                || (pdu[1] & 0xFF) != request.count * 2) {
+            request.future.completeExceptionally(new IOException("Invalid response of transaction "
+                    + request.transactionId + " on modbus " + modbusTcp));
+        }
+        else {
+            int[] values = new int[request.count];
+            for(int i = 0; i < request.count; i++) {
+                values[i] = (pdu[2 + i * 2] & 0xFF) << 8 | pdu[3 + i * 2] & 0xFF;
+            }
+            request.future.complete(values);
+        }
+    }
+
+    /**
+     * Closes the socket unless it has been replaced already and fails all requests sent on it.
+     */
+    private void closeConnection(Socket failedSocket, Exception cause) {
+        if(failedSocket == null) {
+            return;
+        }
+        synchronized(this) {
+            if(socket == failedSocket) {
+                logger.debug("Closing pipeline to modbus {}: {}", modbusTcp, cause.toString());
+                socket = null;
+                outputStream = null;
+            }
+        }
+        try {
+            failedSocket.close();
+        }
+        catch(IOException e) {
+            logger.debug("Error closing pipeline to modbus {}", modbusTcp, e);
+        }
+        for(PendingRequest request : transactionIdWithRequest.values()) {
+            if(request.socket == failedSocket) {
+                request.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Closes the connection and fails all outstanding requests.
+     */
+    public void close() {
+        Socket closedSocket;
+        synchronized(this) {
+            closed = true;
+            closedSocket = socket;
+        }
+        closeConnection(closedSocket, new IOException("Pipeline closed for modbus " + modbusTcp));
+    }
+
+    private static class PendingRequest {
+        private final CompletableFuture<int[]> future = new CompletableFuture<>();
+        private final int functionCode;
+        private final int count;
+        private volatile int transactionId = -1;
+        private volatile Socket socket;
+
+        PendingRequest(int functionCode, int count) {
+            this.functionCode = functionCode;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import de.avanux.smartapplianceenabler.modbus.executor.BaseTransactionExecutor;
+import de.avanux.smartapplianceenabler.modbus.executor.ReadRegisterExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Plans the register reads of all slaves with the same slave address on a {@link ModbusTcp} gateway across all
+ * appliances. The registered reads of holding registers and of input registers are merged into as few contiguous
+ * ranges as possible where a range is limited to {@link #MAX_REGISTERS_PER_REQUEST} registers and neighbouring reads
+ * are merged only if the number of registers between them does not exceed the max gap.
+ * <p>
+ * A read of registers is served from the values of the range containing them. The range is read with a single request
+ * if its values are older than the max age given by the caller, i.e. the first read of a poll reads the range and
+ * the other reads of the same poll are served from its values. Reads issued while the range is being read wait for
+ * the same response.
+ * <p>
+ * If the slave rejects the read of a merged range with an illegal data address exception (e.g. because of undefined
+ * registers in a gap) coalescing is disabled for the slave and each read is executed separately. Other exceptions
+ * (e.g. slave busy) are transient: the reads of the range fail and the range is read again by the next read.
+ */
+public class ModbusReadPlanner {
+    public static final String maxGapConfigurationParamName = "Modbus.ReadPlannerMaxGap";
+    public static final int DEFAULT_MAX_GAP = 10;
+    public static final int MAX_REGISTERS_PER_REQUEST = 125;
+    private static ModbusReadPlanner instance;
+    private Logger logger = LoggerFactory.getLogger(ModbusReadPlanner.class);
+    private static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+    private Map<String, RegisterTable> keyWithTable = new ConcurrentHashMap<>();
+    private int maxGap = DEFAULT_MAX_GAP;
+
+    protected ModbusReadPlanner() {
+    }
+
+    public static synchronized ModbusReadPlanner getInstance() {
+        if(instance == null) {
+            instance = new ModbusReadPlanner();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the maximum number of registers not being read by anyone which may be read in order to merge two reads.
+     */
+    public void setMaxGap(int maxGap) {
+        this.maxGap = maxGap;
+        clear();
+    }
+
+    /**
+     * Removes all registered reads and register values.
+     */
+    public void clear() {
+        keyWithTable.clear();
+    }
+
+    /**
+     * Returns true, if reads of the register type may be served from a range read.
+     */
+    public static boolean isPlannable(ReadRegisterType type) {
+        return getTableName(type) != null;
+    }
+
+    /**
+     * Registers a read to be included in the range reads of the slave.
+     */
+    public void register(ModbusTcp modbusTcp, int slaveAddress, ModbusRead read) {
+        if(isPlannable(read.getType())) {
+            getTable(modbusTcp, slaveAddress, read.getType())
+                    .register(BaseTransactionExecutor.parseAddress(read.getAddress()), read.getBytes());
+        }
+    }
+
+    /**
+     * Provides the register values to the executor. The values are taken from the range containing the registers
+     * which is read using the range reader unless its values are younger than max age.
+     * @param applianceId the id of the appliance used for logging
+     * @param modbusTcp the gateway
+     * @param slaveAddress the slave address
+     * @param type the register type which has to be plannable
+     * @param executor the executor to which the register values are provided
+     * @param maxAgeMillis the max age of range values to be used
+     * @param rangeReader the reader of register ranges
+     */
+    public void read(String applianceId, ModbusTcp modbusTcp, int slaveAddress, ReadRegisterType type,
+                     ReadRegisterExecutor executor, long maxAgeMillis, RangeReader rangeReader) throws Exception {
+        try {
+            readAsync(applianceId, modbusTcp, slaveAddress, type, executor, maxAgeMillis, rangeReader).get();
+        }
+        catch(ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Provides the register values to the executor like {@link #read(String, ModbusTcp, int, ReadRegisterType,
+     * ReadRegisterExecutor, long, RangeReader)} without blocking if the range reader does not block. A read of a range
+     * still in progress is shared.
+     * @return the future being completed when the register values have been provided to the executor
+     */
+    public CompletableFuture<Void> readAsync(String applianceId, ModbusTcp modbusTcp, int slaveAddress,
+                                             ReadRegisterType type, ReadRegisterExecutor executor, long maxAgeMillis,
+                                             RangeReader rangeReader) {
+        int address = executor.getAddress();
+        int count = executor.getBytes();
+        RegisterTable table = getTable(modbusTcp, slaveAddress, type);
+        Range range = table.getRange(address, count);
+        if(range == null) {
+            return rangeReader.read(type, address, count).thenAccept(values -> executor.setRegisterValues(values, 0));
+        }
+        CompletableFuture<int[]> rangeValues;
+        synchronized(range) {
+            long now = System.currentTimeMillis();
+            if(range.values == null || range.values.isCompletedExceptionally()
+                    || (range.values.isDone() && now - range.timestampMillis > maxAgeMillis)) {
+                logger.debug("{}: Reading registers {} of slave {} on modbus {} covering {} reads",
+                        applianceId, range, slaveAddress, modbusTcp, range.reads);
+                range.timestampMillis = now;
+                range.values = rangeReader.read(type, range.address, range.count);
+            }
+            rangeValues = range.values;
+        }
+        int offset = address - range.address;
+        if(rangeValues.isDone() && ! rangeValues.isCompletedExceptionally()) {
+            // avoid creating dependent futures if the values are available already
+            executor.setRegisterValues(rangeValues.getNow(null), offset);
+            return COMPLETED;
+        }
+        Range readRange = range;
+        return rangeValues.handle((values, throwable) -> {
+            if(throwable == null) {
+                executor.setRegisterValues(values, offset);
+                return COMPLETED;
+            }
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            if(cause instanceof ModbusSlaveException
+                    && ((ModbusSlaveException) cause).isType(Modbus.ILLEGAL_ADDRESS_EXCEPTION) && readRange.reads > 1) {
+                logger.warn("{}: Slave {} on modbus {} rejected read of registers {}. Reading registers separately.",
+                        applianceId, slaveAddress, modbusTcp, readRange);
+                table.disableCoalescing();
+                return rangeReader.read(type, address, count)
+                        .thenAccept(separateValues -> executor.setRegisterValues(separateValues, 0));
+            }
+            return CompletableFuture.<Void>failedFuture(cause);
+        }).thenCompose(future -> future);
+    }
+
+    /**
+     * Discards the register values of the slave so that the next read of each range reads it from the slave.
+     */
+    public void invalidate(ModbusTcp modbusTcp, int slaveAddress) {
+        String slaveKey = getSlaveKey(modbusTcp, slaveAddress);
+        for(Map.Entry<String, RegisterTable> entry : keyWithTable.entrySet()) {
+            if(entry.getKey().startsWith(slaveKey)) {
+                entry.getValue().invalidate();
+            }
+        }
+    }
+
+    /**
+     * Returns the ranges of the slave planned for the register type.
+     */
+    public List<Range> getRanges(ModbusTcp modbusTcp, int slaveAddress, ReadRegisterType type) {
+        return getTable(modbusTcp, slaveAddress, type).getRanges();
+    }
+
+    private RegisterTable getTable(ModbusTcp modbusTcp, int slaveAddress, ReadRegisterType type) {
+        String key = getSlaveKey(modbusTcp, slaveAddress) + getTableName(type);
+        return keyWithTable.computeIfAbsent(key, RegisterTable::new);
+    }
+
+    private static String getSlaveKey(ModbusTcp modbusTcp, int slaveAddress) {
+        return (modbusTcp.getId() != null ? modbusTcp.getId() : modbusTcp.getEndpoint()) + "/" + slaveAddress + "/";
+    }
+
+    private static String getTableName(ReadRegisterType type) {
+        switch(type) {
+            case Holding:
+                return "Holding";
+            case InputFloat:
+            case InputDecimal:
+            case InputString:
+                return "Input";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Merges the reads given as address and number of registers into ranges sorted by address.
+     */
+    static List<Range> plan(List<int[]> reads, int maxGap, int maxRegisters) {
+        List<int[]> sortedReads = new ArrayList<>(reads);
+        sortedReads.sort(Comparator.comparingInt(read -> read[0]));
+        List<Range> ranges = new ArrayList<>();
+        int start = 0;
+        int end = 0;
+        int rangeReads = 0;
+        for(int[] read : sortedReads) {
+            int readEnd = read[0] + read[1];
+            if(rangeReads > 0 && read[0] - end <= maxGap && Math.max(end, readEnd) - start <= maxRegisters) {
+                end = Math.max(end, readEnd);
+                rangeReads++;
+            }
+            else {
+                if(rangeReads > 0) {
+                    ranges.add(new Range(start, end - start, rangeReads));
+                }
+                start = read[0];
+                end = readEnd;
+                rangeReads = 1;
+            }
+        }
+        if(rangeReads > 0) {
+            ranges.add(new Range(start, end - start, rangeReads));
+        }
+        return ranges;
+    }
+
+    /**
+     * A reader of a range of registers.
+     */
+    public interface RangeReader {
+        CompletableFuture<int[]> read(ReadRegisterType type, int address, int count);
+    }
+
+    /**
+     * A range of registers read with a single request and its values.
+     */
+    public static class Range {
+        private final int address;
+        private final int count;
+        private final int reads;
+        private CompletableFuture<int[]> values;
+        private long timestampMillis;
+
+        Range(int address, int count, int reads) {
+            this.address = address;
+            this.count = count;
+            this.reads = reads;
+        }
+
+        public int getAddress() {
+            return address;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getReads() {
+            return reads;
+        }
+
+        private boolean contains(int address, int count) {
+            return address >= this.address && address + count <= this.address + this.count;
+        }
+
+        private synchronized void invalidate() {
+            values = null;
+        }
+
+        @Override
+        public String toString() {
+            return address + "-" + (address + count - 1);
+        }
+    }
+
+    private class RegisterTable {
+        private final String key;
+        private final List<int[]> reads = new ArrayList<>();
+        private List<Range> ranges;
+        private boolean coalescing = true;
+
+        RegisterTable(String key) {
+            this.key = key;
+        }
+
+        synchronized void register(int address, int count) {
+            for(int[] read : reads) {
+                if(read[0] == address && read[1] == count) {
+                    return;
+                }
+            }
+            reads.add(new int[] {address, count});
+            ranges = null;
+        }
+
+        synchronized List<Range> getRanges() {
+            if(ranges == null) {
+                ranges = plan(reads, maxGap, MAX_REGISTERS_PER_REQUEST);
+                logger.debug("Planned reads of {}: {}", key, ranges);
+            }
+            return ranges;
+        }
+
+        /**
+         * Returns the range containing the registers or null, if reads are not coalesced.
+         */
+        synchronized Range getRange(int address, int count) {
+            if(! coalescing) {
+                return null;
+            }
+            Range range = findRange(address, count);
+            if(range == null) {
+                register(address, count);
+                range = findRange(address, count);
+            }
+            return range;
+        }
+
+        private Range findRange(int address, int count) {
+            for(Range range : getRanges()) {
+                if(range.contains(address, count)) {
+                    return range;
+                }
+            }
+            return null;
+        }
+
+        synchronized void disableCoalescing() {
+            coalescing = false;
+        }
+
+        synchronized void invalidate() {
+            if(ranges != null) {
+                ranges.forEach(Range::invalidate);
+            }
+        }
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
+import com.ghgande.j2mod.modbus.procimg.InputRegister;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleInputRegister;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
+import de.avanux.smartapplianceenabler.appliance.Appliance;
+import de.avanux.smartapplianceenabler.control.ControlStateChangedListener;
+import de.avanux.smartapplianceenabler.control.ev.EVChargerState;
+import de.avanux.smartapplianceenabler.control.ev.ElectricVehicle;
+import de.avanux.smartapplianceenabler.control.ev.ElectricVehicleCharger;
+import de.avanux.smartapplianceenabler.control.ev.SocValues;
+import de.avanux.smartapplianceenabler.meter.PowerUpdateListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Embedded ModBus TCP slave re-exporting the latest values of all appliances so that other local consumers
+ * do not have to poll the physical devices again. The values are pushed into an in-memory register image by
+ * {@link PowerUpdateListener} and {@link ControlStateChangedListener} notifications, i.e. requests are answered
+ * from that image only and never cause device access.
+ * <p>
+ * Each appliance occupies a block of registers starting at the address configured for the appliance or, by default,
+ * at its index multiplied by the configured number of registers per appliance. A block overlapping the block of
+ * another appliance is rejected. The block can be read both as holding registers (FC 3) and input registers (FC 4);
+ * values spanning two registers are big-endian (high word first):
+ * <pre>
+ * offset 0-1  average power in W (float32)
+ * offset 2-3  session energy in kWh (float32)
+ * offset 4    on/off state (0 = off, 1 = on)
+ * offset 5    EV charger state (0 = not an EV charger, 1 = vehicle not connected, 2 = vehicle connected,
+ *             3 = charging, 4 = charging completed, 5 = error, 0xFFFF = unknown)
+ * offset 6    state of charge of the connected EV in % (0xFFFF = unknown)
+ * </pre>
+ * The session energy is integrated from the average power updates since the server has been configured, i.e. it
+ * starts at 0 whenever SAE is started or its configuration is reloaded. It is not the energy counter of the meter
+ * which would require polling the device.
+ * <p>
+ * The image is read-only: write requests are answered with an illegal data address exception.
+ */
+public class ModbusServer {
+    public static final String portConfigurationParamName = "ModbusServer.Port";
+    public static final String unitIdConfigurationParamName = "ModbusServer.UnitId";
+    public static final String registersPerApplianceConfigurationParamName = "ModbusServer.RegistersPerAppliance";
+    /**
+     * Prefix of the parameter name to be followed by the appliance id for the start address of its register block.
+     */
+    public static final String addressConfigurationParamNamePrefix = "ModbusServer.Address.";
+    public static final int DEFAULT_UNIT_ID = 1;
+    public static final int DEFAULT_REGISTERS_PER_APPLIANCE = 10;
+    public static final int POWER_OFFSET = 0;
+    public static final int SESSION_ENERGY_OFFSET = 2;
+    public static final int ON_OFFSET = 4;
+    public static final int EV_CHARGER_STATE_OFFSET = 5;
+    public static final int SOC_OFFSET = 6;
+    public static final int REGISTERS_PER_BLOCK = 7;
+    public static final int SOC_UNKNOWN = 0xFFFF;
+    public static final int EV_CHARGER_STATE_NONE = 0;
+    public static final int EV_CHARGER_STATE_VEHICLE_NOT_CONNECTED = 1;
+    public static final int EV_CHARGER_STATE_VEHICLE_CONNECTED = 2;
+    public static final int EV_CHARGER_STATE_CHARGING = 3;
+    public static final int EV_CHARGER_STATE_CHARGING_COMPLETED = 4;
+    public static final int EV_CHARGER_STATE_ERROR = 5;
+    public static final int EV_CHARGER_STATE_UNKNOWN = 0xFFFF;
+    private static final int POOL_SIZE = 5;
+    private static ModbusServer instance;
+    private Logger logger = LoggerFactory.getLogger(ModbusServer.class);
+    private Integer port;
+    private int unitId = DEFAULT_UNIT_ID;
+    private int registersPerAppliance = DEFAULT_REGISTERS_PER_APPLIANCE;
+    private int applianceCount;
+    private List<ApplianceRegisterBlock> blocks = new ArrayList<>();
+    private RegisterImage image = new RegisterImage(DEFAULT_UNIT_ID);
+    private com.ghgande.j2mod.modbus.slave.ModbusSlave slave;
+
+    protected ModbusServer() {
+    }
+
+    public static synchronized ModbusServer getInstance() {
+        if(instance == null) {
+            instance = new ModbusServer();
+        }
+        return instance;
+    }
+
+    /**
+     * Enables the server for appliances added afterwards.
+     * @param port the TCP port to listen on
+     * @param unitId the unit id the register image is published for
+     * @param registersPerAppliance the distance between the default start addresses of consecutive appliances
+     */
+    public synchronized void configure(int port, int unitId, int registersPerAppliance) {
+        this.port = port;
+        this.unitId = unitId;
+        this.registersPerAppliance = Math.max(registersPerAppliance, REGISTERS_PER_BLOCK);
+        this.image = new RegisterImage(unitId);
+        this.applianceCount = 0;
+        this.blocks = new ArrayList<>();
+    }
+
+    public synchronized boolean isEnabled() {
+        return port != null;
+    }
+
+    /**
+     * Publishes the values of an appliance by registering with its meter and control.
+     * @param appliance the appliance
+     * @param address the start address of the register block or null for the default address
+     */
+    public void addAppliance(Appliance appliance, Integer address) {
+        ApplianceRegisterBlock block = register(appliance.getId(), address);
+        if(block == null) {
+            return;
+        }
+        if(appliance.getMeter() != null) {
+            Integer measurementInterval = appliance.getMeter().getMeasurementInterval();
+            // meters notifying on pulses only do not report power dropping to 0
+            block.setMaxIntegrationSeconds(measurementInterval != null ? measurementInterval : 0);
+            appliance.getMeter().addPowerUpdateListener(block);
+        }
+        if(appliance.getControl() != null) {
+            appliance.getControl().addControlStateChangedListener(block);
+            if(appliance.getControl() instanceof ElectricVehicleCharger) {
+                block.onEVChargerStateChanged(LocalDateTime.now(), null,
+                        ((ElectricVehicleCharger) appliance.getControl()).getState(), null);
+            }
+        }
+    }
+
+    /**
+     * Reserves a register block for an appliance.
+     * @param applianceId the appliance id
+     * @param address the start address of the register block or null for the default address
+     * @return the register block to be notified about value changes or null, if the block would overlap the block
+     * of another appliance
+     */
+    public synchronized ApplianceRegisterBlock register(String applianceId, Integer address) {
+        int startAddress = address != null ? address : applianceCount * registersPerAppliance;
+        applianceCount++;
+        for(ApplianceRegisterBlock other : blocks) {
+            if(startAddress < other.getAddress() + REGISTERS_PER_BLOCK
+                    && other.getAddress() < startAddress + REGISTERS_PER_BLOCK) {
+                logger.error("{}: ModBus server registers {}-{} overlap registers {}-{} of {}: values not published",
+                        applianceId, startAddress, startAddress + REGISTERS_PER_BLOCK - 1, other.getAddress(),
+                        other.getAddress() + REGISTERS_PER_BLOCK - 1, other.getApplianceId());
+                return null;
+            }
+        }
+        ApplianceRegisterBlock block = new ApplianceRegisterBlock(applianceId, image, startAddress);
+        blocks.add(block);
+        logger.info("{}: ModBus server registers {}-{}", applianceId, startAddress,
+                startAddress + REGISTERS_PER_BLOCK - 1);
+        return block;
+    }
+
+    /**
+     * Returns the code of an EV charger state exported by the server. The codes are part of the protocol and must not
+     * change if {@link EVChargerState} is changed.
+     */
+    public static int getEVChargerStateCode(EVChargerState state) {
+        if(state == null) {
+            return EV_CHARGER_STATE_NONE;
+        }
+        switch(state) {
+            case VEHICLE_NOT_CONNECTED:
+                return EV_CHARGER_STATE_VEHICLE_NOT_CONNECTED;
+            case VEHICLE_CONNECTED:
+                return EV_CHARGER_STATE_VEHICLE_CONNECTED;
+            case CHARGING:
+                return EV_CHARGER_STATE_CHARGING;
+            case CHARGING_COMPLETED:
+                return EV_CHARGER_STATE_CHARGING_COMPLETED;
+            case ERROR:
+                return EV_CHARGER_STATE_ERROR;
+            default:
+                return EV_CHARGER_STATE_UNKNOWN;
+        }
+    }
+
+    /**
+     * Starts listening if the server is enabled.
+     */
+    public synchronized void open() {
+        if(port == null || slave != null) {
+            return;
+        }
+        try {
+            slave = ModbusSlaveFactory.createTCPSlave(port, POOL_SIZE);
+            slave.addProcessImage(unitId, image);
+            slave.open();
+            logger.info("ModBus server listening on port {} with unit id {}", port, unitId);
+        }
+        catch(Exception e) {
+            logger.error("Error starting ModBus server on port {}", port, e);
+            close();
+        }
+    }
+
+    /**
+     * Stops listening and disables the server.
+     */
+    public synchronized void close() {
+        if(slave != null) {
+            ModbusSlaveFactory.close(slave);
+            slave = null;
+            logger.info("ModBus server stopped");
+        }
+        port = null;
+    }
+
+    /**
+     * Should only be used for testing.
+     */
+    RegisterImage getImage() {
+        return image;
+    }
+
+    /**
+     * Register values of all appliances. Ranges are copied while holding the lock so that values spanning multiple
+     * registers are never read partially updated.
+     */
+    static class RegisterImage extends SimpleProcessImage {
+        private int[] registers = new int[0];
+
+        RegisterImage(int unitId) {
+            super(unitId);
+        }
+
+        synchronized void reserve(int address, int count) {
+            if(address + count > registers.length) {
+                registers = Arrays.copyOf(registers, address + count);
+            }
+        }
+
+        synchronized void setRegister(int address, int value) {
+            registers[address] = value & 0xFFFF;
+        }
+
+        synchronized void setFloat(int address, float value) {
+            int bits = Float.floatToIntBits(value);
+            registers[address] = bits >>> 16;
+            registers[address + 1] = bits & 0xFFFF;
+        }
+
+        synchronized int getValue(int address) {
+            return registers[address];
+        }
+
+        private void checkRange(int offset, int count) {
+            if(offset < 0 || count < 1 || offset + count > registers.length) {
+                throw new IllegalAddressException();
+            }
+        }
+
+        @Override
+        public synchronized Register[] getRegisterRange(int offset, int count) {
+            checkRange(offset, count);
+            Register[] range = new Register[count];
+            for(int i = 0; i < count; i++) {
+                range[i] = new SimpleRegister(registers[offset + i]);
+            }
+            return range;
+        }
+
+        @Override
+        public Register getRegister(int ref) {
+            // only used by write requests
+            throw new IllegalAddressException();
+        }
+
+        @Override
+        public synchronized int getRegisterCount() {
+            return registers.length;
+        }
+
+        @Override
+        public synchronized InputRegister[] getInputRegisterRange(int offset, int count) {
+            checkRange(offset, count);
+            InputRegister[] range = new InputRegister[count];
+            for(int i = 0; i < count; i++) {
+                range[i] = new SimpleInputRegister(registers[offset + i]);
+            }
+            return range;
+        }
+
+        @Override
+        public synchronized InputRegister getInputRegister(int ref) {
+            checkRange(ref, 1);
+            return new SimpleInputRegister(registers[ref]);
+        }
+
+        @Override
+        public synchronized int getInputRegisterCount() {
+            return registers.length;
+        }
+    }
+
+    /**
+     * The register block of one appliance. The session energy is integrated from the power updates since the meter
+     * itself only provides energy by polling the device. A power update is integrated until the next update but not
+     * longer than the maximum integration time.
+     */
+    public static class ApplianceRegisterBlock implements PowerUpdateListener, ControlStateChangedListener {
+        private String applianceId;
+        private RegisterImage image;
+        private int address;
+        private long lastPowerTimestamp;
+        private int lastPower;
+        private double sessionEnergy;
+        private long maxIntegrationMillis = Long.MAX_VALUE;
+
+        ApplianceRegisterBlock(String applianceId, RegisterImage image, int address) {
+            this.applianceId = applianceId;
+            this.image = image;
+            this.address = address;
+            image.reserve(address, REGISTERS_PER_BLOCK);
+            image.setRegister(address + SOC_OFFSET, SOC_UNKNOWN);
+        }
+
+        public String getApplianceId() {
+            return applianceId;
+        }
+
+        public int getAddress() {
+            return address;
+        }
+
+        /**
+         * Sets the maximum time a power update is integrated if the next update is later.
+         * @param maxIntegrationSeconds e.g. the measurement interval of the meter; 0 or less integrates until the
+         *                              next update
+         */
+        public synchronized void setMaxIntegrationSeconds(int maxIntegrationSeconds) {
+            this.maxIntegrationMillis = maxIntegrationSeconds > 0 ? maxIntegrationSeconds * 1000L : Long.MAX_VALUE;
+        }
+
+        @Override
+        public void onPowerUpdate(int averagePower) {
+            onPowerUpdate(System.currentTimeMillis(), averagePower);
+        }
+
+        synchronized void onPowerUpdate(long timestampMillis, int averagePower) {
+            if(lastPowerTimestamp > 0 && timestampMillis > lastPowerTimestamp) {
+                long integrationMillis = Math.min(timestampMillis - lastPowerTimestamp, maxIntegrationMillis);
+                sessionEnergy += lastPower * integrationMillis / 3600000000.0;
+            }
+            lastPowerTimestamp = timestampMillis;
+            lastPower = averagePower;
+            synchronized(image) {
+                image.setFloat(address + POWER_OFFSET, averagePower);
+                image.setFloat(address + SESSION_ENERGY_OFFSET, (float) sessionEnergy);
+            }
+        }
+
+        @Override
+        public void controlStateChanged(LocalDateTime now, boolean switchOn) {
+            image.setRegister(address + ON_OFFSET, switchOn ? 1 : 0);
+        }
+
+        @Override
+        public void onEVChargerStateChanged(LocalDateTime now, EVChargerState previousState, EVChargerState newState,
+                                            ElectricVehicle ev) {
+            image.setRegister(address + EV_CHARGER_STATE_OFFSET, getEVChargerStateCode(newState));
+        }
+
+        @Override
+        public void onEVChargerSocChanged(LocalDateTime now, SocValues socValues) {
+            image.setRegister(address + SOC_OFFSET, socValues != null && socValues.current != null
+                    ? socValues.current : SOC_UNKNOWN);
+        }
+    }
+}
@@ -17,10 +17,18 @@
  */
 package de.avanux.smartapplianceenabler.modbus;
 
-import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
 import de.avanux.smartapplianceenabler.appliance.ApplianceIdConsumer;
+import de.avanux.smartapplianceenabler.modbus.executor.BaseTransactionExecutor;
+import de.avanux.smartapplianceenabler.modbus.executor.ModbusReadTransactionExecutor;
 import de.avanux.smartapplianceenabler.modbus.executor.ModbusTestingExecutor;
 import de.avanux.smartapplianceenabler.modbus.executor.ModbusTransactionExecutor;
+import de.avanux.smartapplianceenabler.modbus.executor.ModbusWriteTransactionExecutor;
+import de.avanux.smartapplianceenabler.modbus.executor.ReadRegisterExecutor;
+import de.avanux.smartapplianceenabler.modbus.executor.ReadRegisterRangeExecutor;
+import de.avanux.smartapplianceenabler.util.CircuitBreaker;
+import de.avanux.smartapplianceenabler.util.CircuitBreakerRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +36,12 @@ import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlTransient;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Base class for ModBus slaves.
@@ -42,7 +56,8 @@ abstract public class ModbusSlave implements ApplianceIdConsumer {
     private int slaveAddress;
     private transient String applianceId;
     private transient ModbusTcp modbusTcp;
-    private transient TCPMasterConnection connection;
+    private transient volatile boolean readsPlanned;
+    private transient ModbusReadPlanner.RangeReader rangeReader = this::readRange;
 
     @Override
     public void setApplianceId(String applianceId) {
@@ -61,6 +76,13 @@ abstract public class ModbusSlave implements ApplianceIdConsumer {
         this.modbusTcp = modbusTcp;
     }
 
+    /**
+     * Returns the endpoint (host:port) of the ModBus TCP gateway.
+     */
+    public String getEndpoint() {
+        return modbusTcp != null ? modbusTcp.getEndpoint() : null;
+    }
+
     public String getIdref() {
         return idref;
     }
@@ -69,26 +91,169 @@ abstract public class ModbusSlave implements ApplianceIdConsumer {
         this.idref = idref;
     }
 
-    protected synchronized void executeTransaction(ModbusTransactionExecutor modbusTransactionExecutor, boolean closeConnection) throws Exception {
+    /**
+     * Returns the reads of the slave which are registered with the {@link ModbusReadPlanner}.
+     */
+    protected List<ModbusRead> getModbusReads() {
+        return null;
+    }
+
+    /**
+     * Executes a read transaction. Reads of registers are served by the {@link ModbusReadPlanner} from a range read
+     * covering the reads of all slaves with the same slave address on the ModBus TCP gateway.
+     * @param read the read
+     * @param executor the executor of the read
+     * @param maxAgeMillis the max age of register values read by another read
+     */
+    protected void executeReadTransaction(ModbusRead read, ModbusReadTransactionExecutor executor, long maxAgeMillis)
+            throws Exception {
+        if(isPlanned(read, executor)) {
+            getPlanner().read(applianceId, getModbusTcp(), slaveAddress, read.getType(),
+                    (ReadRegisterExecutor) executor, maxAgeMillis, rangeReader);
+        }
+        else {
+            executeTransaction(executor);
+        }
+    }
+
+    /**
+     * Executes a read transaction like {@link #executeReadTransaction(ModbusRead, ModbusReadTransactionExecutor, long)}.
+     * If the gateway is pipelined, register reads do not block the calling thread. Otherwise the transaction is
+     * executed before returning.
+     * @return the future being completed when the values have been provided to the executor
+     */
+    protected CompletableFuture<Void> executeReadTransactionAsync(ModbusRead read,
+                                                                  ModbusReadTransactionExecutor executor,
+                                                                  long maxAgeMillis) {
+        if(isPlanned(read, executor)) {
+            return getPlanner().readAsync(applianceId, getModbusTcp(), slaveAddress, read.getType(),
+                    (ReadRegisterExecutor) executor, maxAgeMillis, rangeReader);
+        }
+        try {
+            executeTransaction(executor);
+            return CompletableFuture.completedFuture(null);
+        }
+        catch(Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private boolean isPlanned(ModbusRead read, ModbusReadTransactionExecutor executor) {
+        return executor instanceof ReadRegisterExecutor && !(executor instanceof ModbusTestingExecutor)
+                && ModbusReadPlanner.isPlannable(read.getType());
+    }
+
+    private ModbusReadPlanner getPlanner() {
+        ModbusReadPlanner planner = ModbusReadPlanner.getInstance();
+        if(! readsPlanned) {
+            List<ModbusRead> modbusReads = getModbusReads();
+            if(modbusReads != null) {
+                modbusReads.forEach(modbusRead -> planner.register(getModbusTcp(), slaveAddress, modbusRead));
+            }
+            readsPlanned = true;
+        }
+        return planner;
+    }
+
+    private CompletableFuture<int[]> readRange(ReadRegisterType type, int address, int count) {
+        ModbusTcp modbusTcp = getModbusTcp();
+        boolean holding = type == ReadRegisterType.Holding;
+        if(modbusTcp.isPipelined()) {
+            int functionCode = holding ? Modbus.READ_MULTIPLE_REGISTERS : Modbus.READ_INPUT_REGISTERS;
+            CircuitBreaker circuitBreaker = CircuitBreakerRegistry.getInstance().getCircuitBreaker(modbusTcp.getEndpoint());
+            if(! circuitBreaker.allowRequest(System.currentTimeMillis())) {
+                ModbusMetrics.getInstance().record(modbusTcp, slaveAddress, functionCode, address, count,
+                        0, 0, ModbusMetrics.Outcome.REJECTED);
+                return CompletableFuture.failedFuture(
+                        new IOException("Circuit breaker open for modbus " + modbusTcp.toString()));
+            }
+            long start = System.nanoTime();
+            return ModbusConnectionManager.getInstance().getPipeline(modbusTcp)
+                    .readRegisters(applianceId, slaveAddress, holding, address, count)
+                    .whenComplete((values, throwable) -> {
+                        Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                        ModbusMetrics.getInstance().record(modbusTcp, slaveAddress, functionCode, address, count,
+                                System.nanoTime() - start, 0, cause);
+                        if(cause == null || cause instanceof ModbusSlaveException) {
+                            circuitBreaker.recordSuccess(System.currentTimeMillis());
+                        }
+                        else {
+                            circuitBreaker.recordFailure(System.currentTimeMillis());
+                            logger.debug("{}: Pipelined transaction failed on modbus {}", applianceId, modbusTcp.toString());
+                        }
+                    });
+        }
+        ReadRegisterRangeExecutor executor = new ReadRegisterRangeExecutor(address, count, holding);
+        executor.setApplianceId(applianceId);
+        try {
+            executeTransaction(executor);
+            return CompletableFuture.completedFuture(executor.getRegisterValues());
+        }
+        catch(Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Executes a transaction on a connection of the {@link ModbusConnectionManager} shared by all slaves on the same
+     * ModBus TCP gateway unless the circuit breaker of the gateway endpoint is open in which case an
+     * {@link IOException} is thrown immediately instead of waiting for the connect timeout. Writes are executed
+     * regardless of the circuit breaker since switching must not be suppressed.
+     */
+    protected void executeTransaction(ModbusTransactionExecutor modbusTransactionExecutor) throws Exception {
         if(! (modbusTransactionExecutor instanceof ModbusTestingExecutor)) {
             ModbusTcp modbusTcp = getModbusTcp();
-            if(connection == null) {
-                logger.debug("{}: Connecting to modbus {}", applianceId, modbusTcp.toString());
-                connection = modbusTcp.getConnection();
+            CircuitBreaker circuitBreaker = CircuitBreakerRegistry.getInstance().getCircuitBreaker(modbusTcp.getEndpoint());
+            boolean write = modbusTransactionExecutor instanceof ModbusWriteTransactionExecutor;
+            if(! write && ! circuitBreaker.allowRequest(System.currentTimeMillis())) {
+                recordTransaction(modbusTcp, modbusTransactionExecutor, 0, 0, ModbusMetrics.Outcome.REJECTED);
+                throw new IOException("Circuit breaker open for modbus " + modbusTcp.toString());
             }
-            if(! connection.isConnected()) {
-                connection.connect();
-            }
-            if(connection.isConnected()) {
-                modbusTransactionExecutor.execute(connection, slaveAddress);
-                if(closeConnection) {
-                    connection.close();
-                    connection = null;
+            // the connection manager retries reads once on a new connection if a reused connection failed
+            AtomicInteger attempts = new AtomicInteger();
+            AtomicLong attemptStart = new AtomicLong(System.nanoTime());
+            try {
+                ModbusConnectionManager.getInstance().execute(applianceId, modbusTcp,
+                        connection -> {
+                            attempts.incrementAndGet();
+                            attemptStart.set(System.nanoTime());
+                            modbusTransactionExecutor.execute(connection, slaveAddress);
+                        }, ! write);
+                recordTransaction(modbusTcp, modbusTransactionExecutor, System.nanoTime() - attemptStart.get(),
+                        attempts.get(), ModbusMetrics.Outcome.SUCCESS);
+                circuitBreaker.recordSuccess(System.currentTimeMillis());
+                if(write) {
+                    // the next read after write should return fresh values from the slave
+                    ModbusReadPlanner.getInstance().invalidate(modbusTcp, slaveAddress);
                 }
             }
-            else {
-                logger.error("{}: Cannot connect to modbus {}", applianceId, modbusTcp.toString());
+            catch(ModbusSlaveException e) {
+                // the slave responded with an exception, i.e. it is reachable
+                recordTransaction(modbusTcp, modbusTransactionExecutor, System.nanoTime() - attemptStart.get(),
+                        attempts.get(), ModbusMetrics.Outcome.SLAVE_EXCEPTION);
+                circuitBreaker.recordSuccess(System.currentTimeMillis());
+                throw e;
+            }
+            catch(Exception e) {
+                recordTransaction(modbusTcp, modbusTransactionExecutor, System.nanoTime() - attemptStart.get(),
+                        attempts.get(), ModbusMetrics.getOutcome(e));
+                circuitBreaker.recordFailure(System.currentTimeMillis());
+                logger.debug("{}: Transaction failed on modbus {}", applianceId, modbusTcp.toString());
+                throw e;
             }
         }
     }
+
+    private void recordTransaction(ModbusTcp modbusTcp, ModbusTransactionExecutor executor, long nanos,
+                                   int attempts, ModbusMetrics.Outcome outcome) {
+        int address = 0;
+        int count = 0;
+        if(executor instanceof BaseTransactionExecutor) {
+            BaseTransactionExecutor baseTransactionExecutor = (BaseTransactionExecutor) executor;
+            address = baseTransactionExecutor.getAddress() != null ? baseTransactionExecutor.getAddress() : 0;
+            count = baseTransactionExecutor.getBytes();
+        }
+        ModbusMetrics.getInstance().record(modbusTcp, slaveAddress, executor.getFunctionCode(), address, count,
+                nanos, Math.max(attempts - 1, 0), outcome);
+    }
 }
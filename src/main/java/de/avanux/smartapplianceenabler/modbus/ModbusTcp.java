@@ -40,6 +40,9 @@ public class ModbusTcp {
     public transient static final int DEFAULT_PORT = 502;
     @XmlAttribute
     private Integer port;
+    public transient static final int DEFAULT_MAX_IN_FLIGHT = 1;
+    @XmlAttribute
+    private Integer maxInFlight;
 
 
     public String getId() {
@@ -62,7 +65,11 @@ public class ModbusTcp {
         return port;
     }
 
-    private Integer getResolvedPort() {
+    String getResolvedHost() {
+        return host != null ? host : DEFAULT_HOST;
+    }
+
+    int getResolvedPort() {
         return port != null ? port : DEFAULT_PORT;
     }
 
@@ -70,13 +77,40 @@ public class ModbusTcp {
         this.port = port;
     }
 
+    public Integer getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    int getResolvedMaxInFlight() {
+        return maxInFlight != null ? maxInFlight : DEFAULT_MAX_IN_FLIGHT;
+    }
+
+    public void setMaxInFlight(Integer maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Returns true, if the gateway accepts several outstanding transactions on a connection in which case register
+     * reads are pipelined using a {@link ModbusPipeline}.
+     */
+    public boolean isPipelined() {
+        return getResolvedMaxInFlight() > 1;
+    }
+
     public TCPMasterConnection getConnection() throws UnknownHostException {
-        InetAddress address = InetAddress.getByName(host != null ? host : DEFAULT_HOST);
+        InetAddress address = InetAddress.getByName(getResolvedHost());
         TCPMasterConnection connection = new TCPMasterConnection(address);
         connection.setPort(getResolvedPort());
         return connection;
     }
 
+    /**
+     * Returns the endpoint (host:port) of the ModBus TCP.
+     */
+    public String getEndpoint() {
+        return getResolvedHost() + ":" + getResolvedPort();
+    }
+
     @Override
     public String toString() {
         return id + "@" + host + ":" + getResolvedPort();
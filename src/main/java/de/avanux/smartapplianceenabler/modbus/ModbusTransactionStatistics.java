@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+/**
+ * Transaction statistics of a register of a ModBus slave for one function code.
+ * Latencies are those of transactions the slave responded to.
+ */
+public class ModbusTransactionStatistics {
+    private String gateway;
+    private int slaveAddress;
+    private int functionCode;
+    private int register;
+    private int registerCount;
+    private long transactions;
+    private long slaveExceptions;
+    private long timeouts;
+    private long errors;
+    private long rejected;
+    private long retries;
+    private long bytesSent;
+    private long bytesReceived;
+    private double latencyMeanMillis;
+    private double latencyP50Millis;
+    private double latencyP90Millis;
+    private double latencyP99Millis;
+    private double latencyMaxMillis;
+
+    public String getGateway() {
+        return gateway;
+    }
+
+    public void setGateway(String gateway) {
+        this.gateway = gateway;
+    }
+
+    public int getSlaveAddress() {
+        return slaveAddress;
+    }
+
+    public void setSlaveAddress(int slaveAddress) {
+        this.slaveAddress = slaveAddress;
+    }
+
+    public int getFunctionCode() {
+        return functionCode;
+    }
+
+    public void setFunctionCode(int functionCode) {
+        this.functionCode = functionCode;
+    }
+
+    public int getRegister() {
+        return register;
+    }
+
+    public void setRegister(int register) {
+        this.register = register;
+    }
+
+    public int getRegisterCount() {
+        return registerCount;
+    }
+
+    public void setRegisterCount(int registerCount) {
+        this.registerCount = registerCount;
+    }
+
+    public long getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(long transactions) {
+        this.transactions = transactions;
+    }
+
+    public long getSlaveExceptions() {
+        return slaveExceptions;
+    }
+
+    public void setSlaveExceptions(long slaveExceptions) {
+        this.slaveExceptions = slaveExceptions;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public void setTimeouts(long timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public void setErrors(long errors) {
+        this.errors = errors;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    public void setRetries(long retries) {
+        this.retries = retries;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public void setBytesSent(long bytesSent) {
+        this.bytesSent = bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public void setBytesReceived(long bytesReceived) {
+        this.bytesReceived = bytesReceived;
+    }
+
+    public double getLatencyMeanMillis() {
+        return latencyMeanMillis;
+    }
+
+    public void setLatencyMeanMillis(double latencyMeanMillis) {
+        this.latencyMeanMillis = latencyMeanMillis;
+    }
+
+    public double getLatencyP50Millis() {
+        return latencyP50Millis;
+    }
+
+    public void setLatencyP50Millis(double latencyP50Millis) {
+        this.latencyP50Millis = latencyP50Millis;
+    }
+
+    public double getLatencyP90Millis() {
+        return latencyP90Millis;
+    }
+
+    public void setLatencyP90Millis(double latencyP90Millis) {
+        this.latencyP90Millis = latencyP90Millis;
+    }
+
+    public double getLatencyP99Millis() {
+        return latencyP99Millis;
+    }
+
+    public void setLatencyP99Millis(double latencyP99Millis) {
+        this.latencyP99Millis = latencyP99Millis;
+    }
+
+    public double getLatencyMaxMillis() {
+        return latencyMaxMillis;
+    }
+
+    public void setLatencyMaxMillis(double latencyMaxMillis) {
+        this.latencyMaxMillis = latencyMaxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ModbusTransactionStatistics{" +
+                "gateway='" + gateway + '\'' +
+                ", slaveAddress=" + slaveAddress +
+                ", functionCode=" + functionCode +
+                ", register=" + register +
+                ", transactions=" + transactions +
+                ", timeouts=" + timeouts +
+                ", errors=" + errors +
+                ", latencyP99Millis=" + latencyP99Millis +
+                '}';
+    }
+}
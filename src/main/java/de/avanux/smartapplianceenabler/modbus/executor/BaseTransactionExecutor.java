@@ -27,13 +27,22 @@ abstract public class BaseTransactionExecutor implements ApplianceIdConsumer {
     private int bytes = 1;
 
     public BaseTransactionExecutor(String address, int bytes) {
+        this(parseAddress(address), bytes);
+    }
+
+    public BaseTransactionExecutor(int address, int bytes) {
+        this.address = address;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Parses a register address given as decimal number or as hex number prefixed with "0x".
+     */
+    public static int parseAddress(String address) {
         if(address.startsWith("0x")) {
-            this.address = Integer.parseInt(address.substring(2), 16);
-        }
-        else {
-            this.address = Integer.parseInt(address);
+            return Integer.parseInt(address.substring(2), 16);
         }
-        this.bytes = bytes;
+        return Integer.parseInt(address);
     }
 
 
@@ -50,7 +59,7 @@ abstract public class BaseTransactionExecutor implements ApplianceIdConsumer {
         return address;
     }
 
-    protected int getBytes() {
+    public int getBytes() {
         return bytes;
     }
 }
@@ -38,6 +38,10 @@ public class ModbusExecutorFactory {
         ModbusExecutorFactory.testingReadBooleanExecutor = testingReadBooleanExecutor;
     }
 
+    /**
+     * Sets the executor returned for float and decimal input registers. It has to implement
+     * {@link ReadNumericRegisterExecutor} in order to be returned as numeric read executor.
+     */
     public static void setTestingReadFloatExecutor(ModbusReadTransactionExecutor testingReadFloatExecutor) {
         ModbusExecutorFactory.testingReadFloatExecutor = testingReadFloatExecutor;
     }
@@ -118,6 +122,34 @@ public class ModbusExecutorFactory {
         return executor;
     }
 
+    /**
+     * Returns an executor reading a numeric value which may be reused for every read or null, if the register type
+     * and number of registers do not denote a numeric value. Unless a testing executor is set, the executor is a
+     * {@link ReadNumericRegisterExecutorImpl}.
+     */
+    public static ReadNumericRegisterExecutor getNumericReadExecutor(String applianceId, ReadRegisterType type,
+                                                                     String address, int bytes, ByteOrder byteOrder,
+                                                                     Double factorToValue) {
+        RegisterCodec codec = RegisterCodec.forRead(type, bytes);
+        if(codec == null) {
+            return null;
+        }
+        if(testingReadFloatExecutor != null
+                && (type == ReadRegisterType.InputFloat || type == ReadRegisterType.InputDecimal)) {
+            testingReadFloatExecutor.setApplianceId(applianceId);
+            return (ReadNumericRegisterExecutor) testingReadFloatExecutor;
+        }
+        boolean holding = type == ReadRegisterType.Holding;
+        // factorToValue has never been applied to float input registers
+        double factor = factorToValue != null && type != ReadRegisterType.InputFloat ? factorToValue : 1.0;
+        // the byte order has never been applied to holding registers
+        boolean wordSwap = byteOrder == ByteOrder.LittleEndian && ! holding;
+        ReadNumericRegisterExecutorImpl executor = new ReadNumericRegisterExecutorImpl(address, holding, codec,
+                wordSwap, factor);
+        executor.setApplianceId(applianceId);
+        return executor;
+    }
+
     public static ModbusWriteTransactionExecutor getWriteExecutor(String applianceId, WriteRegisterType type,
                                                                   String address, Double factorToValue) {
         ModbusWriteTransactionExecutor executor;
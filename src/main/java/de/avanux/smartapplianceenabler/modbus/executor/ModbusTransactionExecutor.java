@@ -34,5 +34,12 @@ public interface ModbusTransactionExecutor extends ApplianceIdConsumer {
      * @throws ModbusException
      */
     void execute(TCPMasterConnection con, int slaveAddress) throws ModbusException;
+
+    /**
+     * Returns the ModBus function code of the transaction or 0, if it is unknown.
+     */
+    default int getFunctionCode() {
+        return 0;
+    }
     
 }
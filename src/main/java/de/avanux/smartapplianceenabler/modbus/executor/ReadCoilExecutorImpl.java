@@ -17,6 +17,7 @@
  */
 package de.avanux.smartapplianceenabler.modbus.executor;
 
+import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusException;
 import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
 import com.ghgande.j2mod.modbus.msg.ReadCoilsRequest;
@@ -39,6 +40,11 @@ public class ReadCoilExecutorImpl extends BaseTransactionExecutor
         super(registerAddress, 1);
     }
 
+    @Override
+    public int getFunctionCode() {
+        return Modbus.READ_COILS;
+    }
+
     @Override
     public void execute(TCPMasterConnection con, int slaveAddress) throws ModbusException {
         ReadCoilsRequest req = new ReadCoilsRequest(getAddress(), getBytes());
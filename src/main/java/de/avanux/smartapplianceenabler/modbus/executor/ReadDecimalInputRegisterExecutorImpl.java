@@ -42,7 +42,7 @@ public class ReadDecimalInputRegisterExecutorImpl extends ReadInputRegisterExecu
 
     @Override
     public Double getValue() {
-        Integer[] byteValues = getByteValues();
+        int[] byteValues = getByteValues();
         if (this.byteOrder == ByteOrder.LittleEndian) {
             if (getBytes() == 2) {
                 return Float.valueOf(byteValues[1] << 16 | byteValues[0]).doubleValue() * getInitializedFactorToValue();
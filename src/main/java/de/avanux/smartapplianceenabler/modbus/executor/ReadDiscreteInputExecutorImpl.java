@@ -18,6 +18,7 @@
 
 package de.avanux.smartapplianceenabler.modbus.executor;
 
+import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusException;
 import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
 import com.ghgande.j2mod.modbus.msg.ReadInputDiscretesRequest;
@@ -36,6 +37,11 @@ public class ReadDiscreteInputExecutorImpl extends BaseTransactionExecutor
         super(registerAddress, 1);
     }
 
+    @Override
+    public int getFunctionCode() {
+        return Modbus.READ_INPUT_DISCRETES;
+    }
+
     @Override
     public void execute(TCPMasterConnection con, int slaveAddress) throws ModbusException {
         ReadInputDiscretesRequest req = new ReadInputDiscretesRequest(getAddress(), getBytes());
@@ -39,7 +39,7 @@ public class ReadFloatHoldingRegisterExecutorImpl extends ReadHoldingRegisterExe
 
     @Override
     public Float getValue() {
-        Integer[] byteValues = getByteValues();
+        int[] byteValues = getByteValues();
         if(getBytes() == 2) {
             return Float.intBitsToFloat(byteValues[0] << 16 | byteValues[1]) * getInitializedFactorToValue();
         } else if(getBytes() == 4) {
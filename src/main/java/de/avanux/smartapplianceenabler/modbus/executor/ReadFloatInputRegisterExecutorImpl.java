@@ -37,7 +37,7 @@ public class ReadFloatInputRegisterExecutorImpl extends ReadInputRegisterExecuto
 
     @Override
     public Float getValue() {
-        Integer[] byteValues = getByteValues();
+        int[] byteValues = getByteValues();
         if(getBytes() == 2) {
             return Float.intBitsToFloat(byteValues[0] << 16 | byteValues[1]);
         } else if(getBytes() == 4) {
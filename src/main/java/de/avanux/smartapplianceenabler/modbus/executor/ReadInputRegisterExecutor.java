@@ -17,6 +17,7 @@
  */
 package de.avanux.smartapplianceenabler.modbus.executor;
 
+import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusException;
 import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
 import com.ghgande.j2mod.modbus.msg.ReadInputRegistersRequest;
@@ -29,15 +30,24 @@ import org.slf4j.LoggerFactory;
  * Implements a <tt>ReadInputRegistersRequest</tt>.
  * The implementation directly correlates with the class 0 function <i>read multiple registers (FC 4)</i>
  */
-abstract public class ReadInputRegisterExecutor<V> extends BaseTransactionExecutor implements ModbusReadTransactionExecutor<V> {
-    private Integer[] byteValues;
+abstract public class ReadInputRegisterExecutor<V> extends BaseTransactionExecutor implements ModbusReadTransactionExecutor<V>,
+        ReadRegisterExecutor {
+    // preallocated buffer of the register values reused for every read
+    private final int[] registerValues;
+    private int[] byteValues;
 
     public ReadInputRegisterExecutor(String address, int bytes) {
         super(address, bytes);
+        this.registerValues = new int[bytes];
     }
 
     abstract Logger getLogger();
 
+    @Override
+    public int getFunctionCode() {
+        return Modbus.READ_INPUT_REGISTERS;
+    }
+
     @Override
     public void execute(TCPMasterConnection con, int slaveAddress) throws ModbusException {
         ReadInputRegistersRequest req = new ReadInputRegistersRequest(getAddress(), getBytes());
@@ -50,22 +60,38 @@ abstract public class ReadInputRegisterExecutor<V> extends BaseTransactionExecut
         ReadInputRegistersResponse res = (ReadInputRegistersResponse) trans.getResponse();
         this.byteValues = null;
         if (res != null) {
-            this.byteValues = new Integer[getBytes()];
             for (int i = 0; i < getBytes(); i++) {
-                this.byteValues[i] = res.getRegisterValue(i);
+                this.registerValues[i] = res.getRegisterValue(i);
             }
+            this.byteValues = this.registerValues;
             getLogger().debug("{}: Input register={} value={}", getApplianceId(), getAddress(), this.byteValues);
         } else {
             getLogger().error("{}: No response received.", getApplianceId());
         }
     }
 
-    public Integer[] getByteValues() {
+    /**
+     * Returns the register values read or null, if no response was received.
+     */
+    public int[] getByteValues() {
         return byteValues;
     }
 
+    @Override
+    public void setRegisterValues(int[] registerValues, int offset) {
+        this.byteValues = null;
+        if(registerValues != null && registerValues.length >= offset + getBytes()) {
+            System.arraycopy(registerValues, offset, this.registerValues, 0, getBytes());
+            this.byteValues = this.registerValues;
+        }
+    }
+
     // Should only be used for testing.
     public void setByteValues(Integer[] byteValues) {
-        this.byteValues = byteValues;
+        int[] registerValues = new int[byteValues.length];
+        for(int i = 0; i < byteValues.length; i++) {
+            registerValues[i] = byteValues[i];
+        }
+        setRegisterValues(registerValues, 0);
     }
 }
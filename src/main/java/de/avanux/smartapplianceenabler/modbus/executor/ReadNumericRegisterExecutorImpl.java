@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus.executor;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.ReadInputRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadInputRegistersResponse;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a numeric value from holding registers (FC 3) or input registers (FC 4) and decodes it using a
+ * {@link RegisterCodec}. The executor is created once per configured read and reused for every read: the registers
+ * are copied into a preallocated buffer and the value is decoded into a primitive double.
+ */
+public class ReadNumericRegisterExecutorImpl extends BaseTransactionExecutor
+        implements ReadNumericRegisterExecutor, ReadRegisterExecutor {
+
+    private Logger logger = LoggerFactory.getLogger(ReadNumericRegisterExecutorImpl.class);
+    private final boolean holding;
+    private final RegisterCodec codec;
+    private final boolean wordSwap;
+    private final double factorToValue;
+    private final int[] registers;
+    private volatile double value = Double.NaN;
+
+    public ReadNumericRegisterExecutorImpl(String address, boolean holding, RegisterCodec codec, boolean wordSwap,
+                                           double factorToValue) {
+        super(address, codec.getRegisterCount());
+        this.holding = holding;
+        this.codec = codec;
+        this.wordSwap = wordSwap;
+        this.factorToValue = factorToValue;
+        this.registers = new int[codec.getRegisterCount()];
+    }
+
+    public RegisterCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public int getFunctionCode() {
+        return holding ? Modbus.READ_MULTIPLE_REGISTERS : Modbus.READ_INPUT_REGISTERS;
+    }
+
+    @Override
+    public synchronized void execute(TCPMasterConnection con, int slaveAddress) throws ModbusException {
+        ModbusRequest req = holding
+                ? new ReadMultipleRegistersRequest(getAddress(), getBytes())
+                : new ReadInputRegistersRequest(getAddress(), getBytes());
+        req.setUnitID(slaveAddress);
+
+        ModbusTCPTransaction trans = new ModbusTCPTransaction(con);
+        trans.setRequest(req);
+        trans.execute();
+
+        ModbusResponse res = trans.getResponse();
+        if(res != null) {
+            for(int i = 0; i < registers.length; i++) {
+                registers[i] = holding
+                        ? ((ReadMultipleRegistersResponse) res).getRegisterValue(i)
+                        : ((ReadInputRegistersResponse) res).getRegisterValue(i);
+            }
+            setRegisterValues(registers, 0);
+        }
+        else {
+            value = Double.NaN;
+            logger.error("{}: No response received.", getApplianceId());
+        }
+    }
+
+    @Override
+    public void setRegisterValues(int[] registerValues, int offset) {
+        if(registerValues == null || registerValues.length < offset + registers.length) {
+            value = Double.NaN;
+            return;
+        }
+        value = codec.decode(registerValues, offset, wordSwap) * factorToValue;
+        if(logger.isDebugEnabled()) {
+            logger.debug("{}: Register={} {} value={}", getApplianceId(), getAddress(), codec, value);
+        }
+    }
+
+    @Override
+    public boolean hasValue() {
+        return ! Double.isNaN(value);
+    }
+
+    @Override
+    public double getDoubleValue() {
+        return value;
+    }
+
+    @Override
+    public Double getValue() {
+        return hasValue() ? value : null;
+    }
+}
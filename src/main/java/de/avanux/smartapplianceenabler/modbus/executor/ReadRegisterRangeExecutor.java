@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus.executor;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.ReadInputRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadInputRegistersResponse;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a range of holding registers (FC 3) or input registers (FC 4) with a single request.
+ */
+public class ReadRegisterRangeExecutor extends BaseTransactionExecutor implements ModbusTransactionExecutor {
+
+    private Logger logger = LoggerFactory.getLogger(ReadRegisterRangeExecutor.class);
+    private boolean holding;
+    private int[] registerValues;
+
+    public ReadRegisterRangeExecutor(int address, int bytes, boolean holding) {
+        super(address, bytes);
+        this.holding = holding;
+    }
+
+    @Override
+    public int getFunctionCode() {
+        return holding ? Modbus.READ_MULTIPLE_REGISTERS : Modbus.READ_INPUT_REGISTERS;
+    }
+
+    @Override
+    public void execute(TCPMasterConnection con, int slaveAddress) throws ModbusException {
+        ModbusRequest req = holding
+                ? new ReadMultipleRegistersRequest(getAddress(), getBytes())
+                : new ReadInputRegistersRequest(getAddress(), getBytes());
+        req.setUnitID(slaveAddress);
+
+        ModbusTCPTransaction trans = new ModbusTCPTransaction(con);
+        trans.setRequest(req);
+        trans.execute();
+
+        ModbusResponse res = trans.getResponse();
+        this.registerValues = null;
+        if(res != null) {
+            this.registerValues = new int[getBytes()];
+            for(int i = 0; i < getBytes(); i++) {
+                this.registerValues[i] = holding
+                        ? ((ReadMultipleRegistersResponse) res).getRegisterValue(i)
+                        : ((ReadInputRegistersResponse) res).getRegisterValue(i);
+            }
+            logger.debug("{}: Read {} registers {}-{}", getApplianceId(), holding ? "holding" : "input",
+                    getAddress(), getAddress() + getBytes() - 1);
+        }
+        else {
+            logger.error("{}: No response received.", getApplianceId());
+        }
+    }
+
+    public int[] getRegisterValues() {
+        return registerValues;
+    }
+}
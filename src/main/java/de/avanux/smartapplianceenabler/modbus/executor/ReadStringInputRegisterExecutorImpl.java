@@ -38,8 +38,8 @@ public class ReadStringInputRegisterExecutorImpl extends ReadInputRegisterExecut
     @Override
     public String getValue() {
         StringBuilder stringValue = new StringBuilder();
-        for(Integer byteValue : getByteValues()) {
-            stringValue.append(new Character((char) byteValue.intValue()));
+        for(int byteValue : getByteValues()) {
+            stringValue.append((char) byteValue);
         }
         return stringValue.toString();
     }
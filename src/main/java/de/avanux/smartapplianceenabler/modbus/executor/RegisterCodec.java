@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus.executor;
+
+import de.avanux.smartapplianceenabler.modbus.ReadRegisterType;
+
+/**
+ * Decodes a numeric value from consecutive 16 bit registers. Registers are big endian (most significant word first)
+ * unless word swap is requested.
+ */
+public enum RegisterCodec {
+    INT16(1) {
+        @Override
+        public double decode(int[] registers, int offset, boolean wordSwap) {
+            return (short) registers[offset];
+        }
+    },
+    INT32(2) {
+        @Override
+        public double decode(int[] registers, int offset, boolean wordSwap) {
+            return decodeInt(registers, offset, wordSwap);
+        }
+    },
+    INT64(4) {
+        @Override
+        public double decode(int[] registers, int offset, boolean wordSwap) {
+            return decodeLong(registers, offset, wordSwap);
+        }
+    },
+    FLOAT32(2) {
+        @Override
+        public double decode(int[] registers, int offset, boolean wordSwap) {
+            return Float.intBitsToFloat(decodeInt(registers, offset, wordSwap));
+        }
+    },
+    FLOAT64(4) {
+        @Override
+        public double decode(int[] registers, int offset, boolean wordSwap) {
+            return Double.longBitsToDouble(decodeLong(registers, offset, wordSwap));
+        }
+    };
+
+    private final int registerCount;
+
+    RegisterCodec(int registerCount) {
+        this.registerCount = registerCount;
+    }
+
+    public int getRegisterCount() {
+        return registerCount;
+    }
+
+    /**
+     * Decodes the value from the registers starting at offset.
+     * @param registers the register values each of which contains 16 bits
+     * @param offset the index of the first register of the value
+     * @param wordSwap true, if the least significant register comes first
+     */
+    public abstract double decode(int[] registers, int offset, boolean wordSwap);
+
+    /**
+     * Returns the codec for a numeric register type and number of registers or null, if there is none.
+     */
+    public static RegisterCodec forRead(ReadRegisterType type, int registerCount) {
+        switch(type) {
+            case InputFloat:
+            case Holding:
+                return registerCount == 2 ? FLOAT32 : registerCount == 4 ? FLOAT64 : null;
+            case InputDecimal:
+                return registerCount == 1 ? INT16 : registerCount == 2 ? INT32 : registerCount == 4 ? INT64 : null;
+            default:
+                return null;
+        }
+    }
+
+    private static int word(int[] registers, int offset, int index, int count, boolean wordSwap) {
+        return registers[offset + (wordSwap ? count - 1 - index : index)] & 0xFFFF;
+    }
+
+    private static int decodeInt(int[] registers, int offset, boolean wordSwap) {
+        return word(registers, offset, 0, 2, wordSwap) << 16 | word(registers, offset, 1, 2, wordSwap);
+    }
+
+    private static long decodeLong(int[] registers, int offset, boolean wordSwap) {
+        long value = 0;
+        for(int i = 0; i < 4; i++) {
+            value = value << 16 | word(registers, offset, i, 4, wordSwap);
+        }
+        return value;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package de.avanux.smartapplianceenabler.modbus.executor;
 
+import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusException;
 import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
 import com.ghgande.j2mod.modbus.msg.WriteCoilRequest;
@@ -50,6 +51,11 @@ public class WriteCoilExecutorImpl extends BaseTransactionExecutor
         return result;
     }
 
+    @Override
+    public int getFunctionCode() {
+        return Modbus.WRITE_COIL;
+    }
+
     @Override
     public void execute(TCPMasterConnection con, int slaveAddress) throws ModbusException {
         WriteCoilRequest req = new WriteCoilRequest(getAddress(), value);
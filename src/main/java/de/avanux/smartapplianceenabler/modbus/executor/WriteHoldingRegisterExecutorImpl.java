@@ -18,6 +18,7 @@
 
 package de.avanux.smartapplianceenabler.modbus.executor;
 
+import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusException;
 import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
 import com.ghgande.j2mod.modbus.msg.*;
@@ -49,6 +50,11 @@ public class WriteHoldingRegisterExecutorImpl extends BaseTransactionExecutor
         return result;
     }
 
+    @Override
+    public int getFunctionCode() {
+        return Modbus.WRITE_SINGLE_REGISTER;
+    }
+
     @Override
     public void execute(TCPMasterConnection con, int slaveAddress) throws ModbusException {
         Integer factoredValue = Double.valueOf(value * getInitializedFactorToValue()).intValue();
@@ -18,9 +18,41 @@
 
 package de.avanux.smartapplianceenabler.protocol;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 public interface ContentProtocolHandler {
 
     void parse(String content);
 
     String readValue(String selector);
+
+    /**
+     * Prepares reading the given selectors with {@link #readValues(String, List)}.
+     * @param selectors the selectors
+     */
+    default void compile(List<String> selectors) {
+    }
+
+    /**
+     * Returns the values of the selectors. In contrast to {@link #parse(String)} and {@link #readValue(String)}
+     * this method can be called concurrently.
+     * @param content the content
+     * @param selectors the selectors
+     * @return the values by selector; selectors without value are missing
+     */
+    default Map<String, String> readValues(String content, List<String> selectors) {
+        Map<String, String> values = new HashMap<>();
+        synchronized(this) {
+            parse(content);
+            for(String selector : selectors) {
+                String value = readValue(selector);
+                if(value != null) {
+                    values.put(selector, value);
+                }
+            }
+        }
+        return values;
+    }
 }
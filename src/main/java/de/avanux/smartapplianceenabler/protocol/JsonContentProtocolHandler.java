@@ -20,11 +20,30 @@ package de.avanux.smartapplianceenabler.protocol;
 
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.InvalidJsonException;
 import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.PathNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content protocol handler for JSON using JsonPath selectors.
+ * <p>
+ * {@link #readValues(String, List)} does not keep state: the selectors are compiled once into a {@link JsonPathPlan}
+ * which reads the values while streaming the content. Only selectors which cannot be streamed are evaluated on the
+ * parsed document using precompiled {@link JsonPath}s.
+ */
 public class JsonContentProtocolHandler implements ContentProtocolHandler {
 
+    private Logger logger = LoggerFactory.getLogger(JsonContentProtocolHandler.class);
     private DocumentContext context;
+    private Map<List<String>, JsonPathPlan> selectorsWithPlan = new ConcurrentHashMap<>();
+    private Map<String, JsonPath> selectorWithJsonPath = new ConcurrentHashMap<>();
 
     @Override
     public void parse(String content) {
@@ -35,11 +54,52 @@ public class JsonContentProtocolHandler implements ContentProtocolHandler {
     @Override
     public String readValue(String selector) {
         if(this.context != null) {
-            Object value = this.context.read(selector);
+            Object value = this.context.read(getJsonPath(selector));
             if(value != null) {
                 return value.toString();
             }
         }
         return null;
     }
+
+    @Override
+    public void compile(List<String> selectors) {
+        getPlan(selectors);
+    }
+
+    @Override
+    public Map<String, String> readValues(String content, List<String> selectors) {
+        List<String> fallbackSelectors = new ArrayList<>();
+        Map<String, String> values = getPlan(selectors).read(content, fallbackSelectors);
+        if(! fallbackSelectors.isEmpty()) {
+            DocumentContext documentContext;
+            try {
+                documentContext = JsonPath.using(Configuration.defaultConfiguration()).parse(content);
+            }
+            catch(InvalidJsonException e) {
+                logger.error("Invalid JSON content: {}", content, e);
+                return values;
+            }
+            for(String selector : fallbackSelectors) {
+                try {
+                    Object value = documentContext.read(getJsonPath(selector));
+                    if(value != null) {
+                        values.put(selector, value.toString());
+                    }
+                }
+                catch(PathNotFoundException e) {
+                    logger.debug("Path not found: {}", selector);
+                }
+            }
+        }
+        return values;
+    }
+
+    private JsonPathPlan getPlan(List<String> selectors) {
+        return selectorsWithPlan.computeIfAbsent(new ArrayList<>(selectors), JsonPathPlan::new);
+    }
+
+    private JsonPath getJsonPath(String selector) {
+        return selectorWithJsonPath.computeIfAbsent(selector, JsonPath::compile);
+    }
 }
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.protocol;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A set of JSON paths compiled into a tree of path segments. JSON content is read with a pull parser following
+ * the tree: subtrees not containing any of the paths are skipped and parsing stops as soon as all paths have been
+ * resolved, i.e. the document is never materialized. Once created, a plan is immutable and can be used concurrently.
+ * <p>
+ * Only definite paths consisting of field names and array indexes (e.g. <code>$.a.b[2]['c d']</code>) can be streamed.
+ * Other paths (wildcards, deep scan, filters, functions ...) and paths selecting an object or array are returned as
+ * fallback paths to be evaluated on the parsed document.
+ */
+public class JsonPathPlan {
+
+    private static final JsonFactory jsonFactory = new JsonFactoryBuilder()
+            .enable(JsonReadFeature.ALLOW_SINGLE_QUOTES)
+            .enable(JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES)
+            .enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS)
+            .build();
+    private static final Pattern FIELD_NAME = Pattern.compile("[^.\\[\\]*()?@$,: ]+");
+    private static final Pattern QUOTED_FIELD_NAME = Pattern.compile("'[^',]*'|\"[^\",]*\"");
+    private static final Pattern INDEX = Pattern.compile("\\d+");
+    private final Node root = new Node();
+    private final List<String> streamablePaths = new ArrayList<>();
+    private final List<String> fallbackPaths = new ArrayList<>();
+
+    public JsonPathPlan(Collection<String> paths) {
+        for(String path : paths) {
+            List<Object> segments = compile(path);
+            if(segments != null) {
+                Node node = root;
+                for(Object segment : segments) {
+                    node = node.getOrCreateChild(segment);
+                }
+                node.paths.add(path);
+                streamablePaths.add(path);
+            }
+            else {
+                fallbackPaths.add(path);
+            }
+        }
+    }
+
+    /**
+     * Splits a path into field names (String) and array indexes (Integer).
+     * @return the segments or null, if the path cannot be streamed
+     */
+    protected static List<Object> compile(String path) {
+        if(path == null || ! path.startsWith("$")) {
+            return null;
+        }
+        List<Object> segments = new ArrayList<>();
+        int position = 1;
+        while(position < path.length()) {
+            char c = path.charAt(position);
+            if(c == '.') {
+                int end = position + 1;
+                while(end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                String name = path.substring(position + 1, end);
+                if(! FIELD_NAME.matcher(name).matches()) {
+                    return null;
+                }
+                segments.add(name);
+                position = end;
+            }
+            else if(c == '[') {
+                int end = path.indexOf(']', position);
+                if(end < 0) {
+                    return null;
+                }
+                String selector = path.substring(position + 1, end).trim();
+                if(QUOTED_FIELD_NAME.matcher(selector).matches()) {
+                    segments.add(selector.substring(1, selector.length() - 1));
+                }
+                else if(INDEX.matcher(selector).matches()) {
+                    segments.add(Integer.valueOf(selector));
+                }
+                else {
+                    return null;
+                }
+                position = end + 1;
+            }
+            else {
+                return null;
+            }
+        }
+        return segments;
+    }
+
+    public List<String> getStreamablePaths() {
+        return Collections.unmodifiableList(streamablePaths);
+    }
+
+    public List<String> getFallbackPaths() {
+        return Collections.unmodifiableList(fallbackPaths);
+    }
+
+    /**
+     * Reads the values of the streamable paths from the content.
+     * @param content the JSON content
+     * @param fallbackPaths receives the paths which have to be evaluated on the parsed document
+     * @return the values by path; paths not found in the content are missing
+     */
+    public Map<String, String> read(String content, Collection<String> fallbackPaths) {
+        fallbackPaths.addAll(this.fallbackPaths);
+        Map<String, String> values = new HashMap<>();
+        if(streamablePaths.isEmpty()) {
+            return values;
+        }
+        ReadState state = new ReadState(values, fallbackPaths, streamablePaths.size());
+        try(JsonParser parser = jsonFactory.createParser(content)) {
+            state.parser = parser;
+            JsonToken token = parser.nextToken();
+            if(token != null) {
+                read(state, root, token);
+            }
+        }
+        catch(IOException e) {
+            // the content is not well-formed JSON: let the fallback decide how to handle it
+            values.clear();
+            fallbackPaths.addAll(streamablePaths);
+        }
+        return values;
+    }
+
+    private void read(ReadState state, Node node, JsonToken token) throws IOException {
+        JsonParser parser = state.parser;
+        if(! node.paths.isEmpty()) {
+            if(token.isScalarValue()) {
+                String value = toString(parser, token);
+                if(value != null) {
+                    node.paths.forEach(path -> state.values.put(path, value));
+                }
+            }
+            else {
+                state.fallbackPaths.addAll(node.paths);
+            }
+            state.remainingPaths -= node.paths.size();
+        }
+        if(token == JsonToken.START_OBJECT && ! node.fields.isEmpty()) {
+            while(state.remainingPaths > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+                Node child = node.fields.get(parser.getCurrentName());
+                JsonToken valueToken = parser.nextToken();
+                if(child != null) {
+                    read(state, child, valueToken);
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        else if(token == JsonToken.START_ARRAY && ! node.indexes.isEmpty()) {
+            int index = 0;
+            JsonToken elementToken;
+            while(state.remainingPaths > 0 && (elementToken = parser.nextToken()) != null
+                    && elementToken != JsonToken.END_ARRAY) {
+                Node child = node.indexes.get(index++);
+                if(child != null) {
+                    read(state, child, elementToken);
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        else {
+            parser.skipChildren();
+        }
+    }
+
+    /**
+     * Returns the value as string representation matching the one of JsonPath.
+     */
+    private String toString(JsonParser parser, JsonToken token) throws IOException {
+        switch(token) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_NUMBER_FLOAT:
+                return String.valueOf(parser.getDoubleValue());
+            default:
+                return parser.getText();
+        }
+    }
+
+    private static class ReadState {
+        private JsonParser parser;
+        private final Map<String, String> values;
+        private final Collection<String> fallbackPaths;
+        private int remainingPaths;
+
+        ReadState(Map<String, String> values, Collection<String> fallbackPaths, int remainingPaths) {
+            this.values = values;
+            this.fallbackPaths = fallbackPaths;
+            this.remainingPaths = remainingPaths;
+        }
+    }
+
+    private static class Node {
+        private final Map<String, Node> fields = new HashMap<>();
+        private final Map<Integer, Node> indexes = new HashMap<>();
+        private final List<String> paths = new ArrayList<>();
+
+        Node getOrCreateChild(Object segment) {
+            if(segment instanceof Integer) {
+                return indexes.computeIfAbsent((Integer) segment, index -> new Node());
+            }
+            return fields.computeIfAbsent((String) segment, name -> new Node());
+        }
+    }
+}
@@ -38,6 +38,7 @@ public class TimeframeInterval implements ApplianceIdConsumer, TimeframeInterval
     private Request request;
     private transient Vector<TimeframeIntervalState> stateHistory = new Vector<>();
     private transient String applianceId;
+    private transient TimeframeIntervalQueue queue;
 
     public TimeframeInterval(Interval interval, Request request) {
         this.interval = interval;
@@ -69,13 +70,25 @@ public class TimeframeInterval implements ApplianceIdConsumer, TimeframeInterval
         return request;
     }
 
+    void setQueue(TimeframeIntervalQueue queue) {
+        this.queue = queue;
+    }
+
     public void initState(TimeframeIntervalState initialState) {
+        TimeframeIntervalState previousState = this.stateHistory.size() > 0 ? getState() : null;
         this.stateHistory.clear();
         stateHistory.add(initialState != null ? initialState : TimeframeIntervalState.CREATED);
+        if(queue != null) {
+            queue.stateChanged(this, previousState, getState());
+        }
     }
 
     public void stateTransitionTo(LocalDateTime now, TimeframeIntervalState state) {
+        TimeframeIntervalState previousState = getState();
         this.stateHistory.add(state);
+        if(queue != null) {
+            queue.stateChanged(this, previousState, state);
+        }
     }
 
     @Override
@@ -173,6 +186,40 @@ public class TimeframeInterval implements ApplianceIdConsumer, TimeframeInterval
         return null;
     }
 
+    /**
+     * Returns the earliest time after now at which the state of this timeframe interval may change merely because
+     * time passes, i.e. the start, the end, the latest start or the time the running request will be finished.
+     * State changes caused by the control, the meter or SEMP are not included.
+     * @return the time or null, if no such time exists
+     */
+    public LocalDateTime getNextStateChange(LocalDateTime now) {
+        TimeframeIntervalState state = getState();
+        LocalDateTime next = null;
+        if(state == TimeframeIntervalState.QUEUED) {
+            next = earliestAfter(now, next, interval.getStart());
+        }
+        if(state == TimeframeIntervalState.QUEUED || state == TimeframeIntervalState.ACTIVE) {
+            next = earliestAfter(now, next, interval.getEnd().plusSeconds(1));
+        }
+        if(! (request instanceof AbstractEnergyRequest)) {
+            Integer max = request.getMax(now);
+            if(max != null) {
+                next = earliestAfter(now, next, getLatestStart(now, interval.getEnd(), max).plusSeconds(1));
+                if(state == TimeframeIntervalState.ACTIVE && request.isControlOn()) {
+                    next = earliestAfter(now, next, now.plusSeconds(max));
+                }
+            }
+        }
+        return next;
+    }
+
+    private static LocalDateTime earliestAfter(LocalDateTime now, LocalDateTime earliest, LocalDateTime candidate) {
+        if(candidate.isAfter(now) && (earliest == null || candidate.isBefore(earliest))) {
+            return candidate;
+        }
+        return earliest;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
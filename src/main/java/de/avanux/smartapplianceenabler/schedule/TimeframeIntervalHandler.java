@@ -27,26 +27,60 @@ import de.avanux.smartapplianceenabler.control.ev.EVChargerState;
 import de.avanux.smartapplianceenabler.control.ev.ElectricVehicle;
 import de.avanux.smartapplianceenabler.control.ev.ElectricVehicleCharger;
 import de.avanux.smartapplianceenabler.control.ev.SocValues;
+import de.avanux.smartapplianceenabler.meter.PowerUpdateListener;
 import de.avanux.smartapplianceenabler.util.GuardedTimerTask;
 import de.avanux.smartapplianceenabler.util.Holder;
+import de.avanux.smartapplianceenabler.util.TaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-
-public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlStateChangedListener {
+import java.util.stream.Stream;
+
+/**
+ * Maintains the queue of timeframe intervals of an appliance.
+ * <p>
+ * If event driven (default) the queue is not polled. Instead a single wakeup is scheduled for the earliest time at
+ * which a queued timeframe interval may change its state (start, end, latest start, finished runtime request).
+ * Changes of the control state, power updates of the meter (while an energy request is active) and EV charger
+ * events request an immediate update. A wakeup is scheduled at least every {@link #MAX_UPDATE_QUEUE_INTERVAL_SECONDS}
+ * as a safety net.
+ * <p>
+ * All public methods modifying or looking up the queue take the lock of the handler except {@link #getQueue()}
+ * returning the immutable snapshot of the queue. Listeners are notified of a changed active timeframe interval only
+ * after the lock has been released since they may take locks of their own (e.g. the {@link ElectricVehicleCharger}
+ * switching off) while calling back into the handler, i.e. the handler lock is never held while a listener is called.
+ * The handler lock does not protect the listener lists of controls and meters: requests are registered with the
+ * control on the schedule pool while the control notifies its listeners on the device I/O pool. Therefore these
+ * lists are copy-on-write.
+ */
+public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlStateChangedListener,
+        PowerUpdateListener {
 
     private Logger logger = LoggerFactory.getLogger(TimeframeIntervalHandler.class);
     public static final int CONSIDERATION_INTERVAL_DAYS = 2;
     public static final int FILL_QUEUE_INTERVAL_SECONDS = 3600;
     public static final int UPDATE_QUEUE_INTERVAL_SECONDS = 30;
+    public static final int MAX_UPDATE_QUEUE_INTERVAL_SECONDS = 300;
+    public static final String eventDrivenConfigurationParamName = "Schedule.EventDriven";
+    public static final boolean DEFAULT_EVENT_DRIVEN = true;
+    private static volatile boolean eventDriven = DEFAULT_EVENT_DRIVEN;
     private String applianceId;
     private List<Schedule> schedules;
+    private TaskScheduler scheduler;
     private GuardedTimerTask fillQueueTimerTask;
     private GuardedTimerTask updateQueueTimerTask;
-    private LinkedList<TimeframeInterval> queue = new LinkedList<>();
+    private final Object wakeupLock = new Object();
+    private GuardedTimerTask wakeupTimerTask;
+    private long wakeupMillis;
+    // the finish of an active energy request depends on the energy metered and cannot be predicted
+    private volatile boolean energyRequestActive;
+    private TimeframeIntervalQueue queue = new TimeframeIntervalQueue();
     private Set<TimeframeIntervalChangedListener> timeframeIntervalChangedListeners = new HashSet<>();
+    // notifications collected while holding the handler lock to be delivered after it has been released
+    private final List<Runnable> pendingNotifications = new ArrayList<>();
     private Control control;
 
     public TimeframeIntervalHandler(List<Schedule> schedules, Control control) {
@@ -62,16 +96,25 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
         this.applianceId = applianceId;
     }
 
-    public void addTimeframeIntervalChangedListener(TimeframeIntervalChangedListener listener) {
+    public synchronized void addTimeframeIntervalChangedListener(TimeframeIntervalChangedListener listener) {
         this.timeframeIntervalChangedListeners.add(listener);
     }
 
-    public void removeTimeframeIntervalChangedListener(TimeframeIntervalChangedListener listener) {
+    public synchronized void removeTimeframeIntervalChangedListener(TimeframeIntervalChangedListener listener) {
         this.timeframeIntervalChangedListeners.remove(listener);
     }
 
-    public void setTimer(Timer timer) {
+    public static void setEventDriven(boolean eventDriven) {
+        TimeframeIntervalHandler.eventDriven = eventDriven;
+    }
+
+    public static boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    public void setScheduler(TaskScheduler scheduler) {
         if(control != null) {
+            this.scheduler = scheduler;
             this.fillQueueTimerTask = new GuardedTimerTask(this.applianceId, "FillQueueTimerTask",
                     FILL_QUEUE_INTERVAL_SECONDS * 1000) {
                 @Override
@@ -79,19 +122,25 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
                     fillQueue(LocalDateTime.now());
                 }
             };
-            if (timer != null) {
-                timer.schedule(fillQueueTimerTask, 0, fillQueueTimerTask.getPeriod());
+            if (scheduler != null) {
+                scheduler.schedule(fillQueueTimerTask, 0, fillQueueTimerTask.getPeriod());
             }
 
-            this.updateQueueTimerTask = new GuardedTimerTask(this.applianceId,
-                    "UpdateActiveTimeframeInterval", UPDATE_QUEUE_INTERVAL_SECONDS * 1000) {
-                @Override
-                public void runTask() {
-                    updateQueue(LocalDateTime.now(), false);
+            if(eventDriven) {
+                logger.debug("{}: Updating queue event driven", applianceId);
+                requestQueueUpdate();
+            }
+            else {
+                this.updateQueueTimerTask = new GuardedTimerTask(this.applianceId,
+                        "UpdateActiveTimeframeInterval", UPDATE_QUEUE_INTERVAL_SECONDS * 1000) {
+                    @Override
+                    public void runTask() {
+                        updateQueue(LocalDateTime.now(), false);
+                    }
+                };
+                if (scheduler != null) {
+                    scheduler.schedule(updateQueueTimerTask, 0, updateQueueTimerTask.getPeriod());
                 }
-            };
-            if (timer != null) {
-                timer.schedule(updateQueueTimerTask, 0, updateQueueTimerTask.getPeriod());
             }
         }
     }
@@ -104,18 +153,93 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
         if (this.fillQueueTimerTask != null) {
             this.fillQueueTimerTask.cancel();
         }
+        synchronized (wakeupLock) {
+            this.scheduler = null;
+            if (this.wakeupTimerTask != null) {
+                this.wakeupTimerTask.cancel();
+                this.wakeupTimerTask = null;
+            }
+        }
+    }
+
+    /**
+     * Requests an update of the queue as soon as possible if the queue is updated event driven.
+     */
+    public void requestQueueUpdate() {
+        if(eventDriven) {
+            scheduleQueueUpdate(0);
+        }
+    }
+
+    /**
+     * Schedules the wakeup for the earliest time after now at which a timeframe interval of the queue may change
+     * its state but not later than {@link #MAX_UPDATE_QUEUE_INTERVAL_SECONDS}.
+     */
+    private void scheduleNextQueueUpdate(LocalDateTime now) {
+        LocalDateTime next = getNextQueueUpdate(now);
+        logger.debug("{}: Next queue update at {}", applianceId, next);
+        scheduleQueueUpdate(Math.max(Duration.between(now, next).toMillis(), 0));
+    }
+
+    protected LocalDateTime getNextQueueUpdate(LocalDateTime now) {
+        LocalDateTime next = now.plusSeconds(MAX_UPDATE_QUEUE_INTERVAL_SECONDS);
+        for(TimeframeInterval timeframeInterval : queue) {
+            LocalDateTime nextStateChange = timeframeInterval.getNextStateChange(now);
+            if(nextStateChange != null && nextStateChange.isBefore(next)) {
+                next = nextStateChange;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Schedules a wakeup updating the queue unless a wakeup is already scheduled for the same or an earlier time.
+     */
+    private void scheduleQueueUpdate(long delayMillis) {
+        long dueMillis = System.currentTimeMillis() + delayMillis;
+        synchronized (wakeupLock) {
+            if(scheduler == null) {
+                return;
+            }
+            if(wakeupTimerTask != null) {
+                if(wakeupMillis <= dueMillis) {
+                    return;
+                }
+                wakeupTimerTask.cancel();
+            }
+            wakeupTimerTask = new GuardedTimerTask(this.applianceId, "UpdateActiveTimeframeInterval", 0) {
+                @Override
+                public void runTask() {
+                    synchronized (wakeupLock) {
+                        if(wakeupTimerTask == this) {
+                            wakeupTimerTask = null;
+                        }
+                    }
+                    updateQueue(LocalDateTime.now(), false);
+                }
+            };
+            wakeupMillis = dueMillis;
+            scheduler.schedule(wakeupTimerTask, delayMillis);
+        }
     }
 
     public List<TimeframeInterval> getQueue() {
-        return new ArrayList<>(queue);
+        return queue.getSnapshot();
     }
 
-    public void clearQueue() {
+    public synchronized void clearQueue() {
         logger.debug("{}: Cleaing queue", applianceId);
         queue.clear();
     }
 
     public void fillQueue(LocalDateTime now) {
+        synchronized (this) {
+            fillQueueLocked(now);
+        }
+        deliverPendingNotifications();
+    }
+
+    private void fillQueueLocked(LocalDateTime now) {
         logger.debug("{}: Starting to fill queue", applianceId);
         Interval considerationInterval = new Interval(now, now.plusDays(CONSIDERATION_INTERVAL_DAYS));
         TimeframeInterval lastTimeframeInterval = queue.peekLast();
@@ -132,11 +256,18 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
                         // request has to be enabled therefore
                         timeframeInterval.getRequest().setEnabled(! ((StartingCurrentSwitch) control).isApplianceOn());
                     }
-                    addTimeframeInterval(now, timeframeInterval, false, true);
+                    addTimeframeIntervalLocked(now, timeframeInterval, false, true);
                 });
     }
 
     public void updateQueue(LocalDateTime now, boolean ignoreStartTime) {
+        synchronized (this) {
+            updateQueueLocked(now, ignoreStartTime);
+        }
+        deliverPendingNotifications();
+    }
+
+    private void updateQueueLocked(LocalDateTime now, boolean ignoreStartTime) {
         if(ignoreStartTime) {
             logger.warn("{}: Forcing queue update with ignored timeframe interval start time", applianceId);
         }
@@ -180,7 +311,7 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
                         TimeframeInterval optionalEnergyTimeframeInterval = createOptionalEnergyTimeframeIntervalForEVCharger(
                                 now, connectedVehicle.getId(), connectedVehicle.getBatteryCapacity(),
                                 connectedVehicle.getDefaultSocOptionalEnergy());
-                        addTimeframeInterval(now, optionalEnergyTimeframeInterval, false, false);
+                        addTimeframeIntervalLocked(now, optionalEnergyTimeframeInterval, false, false);
                     }
                 }
                 else {
@@ -213,17 +344,46 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
         }
 
         if(deactivatableTimeframeInterval.isPresent() || activatableTimeframeInterval.isPresent()) {
-            for(TimeframeIntervalChangedListener listener : timeframeIntervalChangedListeners) {
-                logger.debug("{}: Notifying {} {} {}", applianceId, TimeframeIntervalChangedListener.class.getSimpleName(),
-                        listener.getClass().getSimpleName(), listener);
-                listener.activeIntervalChanged(now, applianceId,
-                        deactivatableTimeframeInterval.orElse(null),
-                        activatableTimeframeInterval.orElse(null),
-                        deactivatableTimeframeInterval
-                                .map(timeframeInterval -> timeframeInterval.wasInState(TimeframeIntervalState.ACTIVE))
-                                .orElse(false));
+            List<TimeframeIntervalChangedListener> listeners = new ArrayList<>(timeframeIntervalChangedListeners);
+            TimeframeInterval deactivatedInterval = deactivatableTimeframeInterval.orElse(null);
+            TimeframeInterval activatedInterval = activatableTimeframeInterval.orElse(null);
+            boolean wasRunning = deactivatableTimeframeInterval
+                    .map(timeframeInterval -> timeframeInterval.wasInState(TimeframeIntervalState.ACTIVE))
+                    .orElse(false);
+            pendingNotifications.add(() -> {
+                for(TimeframeIntervalChangedListener listener : listeners) {
+                    logger.debug("{}: Notifying {} {} {}", applianceId, TimeframeIntervalChangedListener.class.getSimpleName(),
+                            listener.getClass().getSimpleName(), listener);
+                    listener.activeIntervalChanged(now, applianceId, deactivatedInterval, activatedInterval, wasRunning);
+                }
+            });
+        }
+
+        TimeframeInterval activeTimeframeInterval = getActiveTimeframeInterval();
+        energyRequestActive = activeTimeframeInterval != null
+                && !(activeTimeframeInterval.getRequest() instanceof RuntimeRequest);
+        if(eventDriven) {
+            scheduleNextQueueUpdate(now);
+        }
+    }
+
+    /**
+     * Delivers the notifications collected while holding the handler lock. Nothing is delivered while the lock is
+     * still held by the calling thread since the outermost public method will deliver them after releasing it.
+     */
+    private void deliverPendingNotifications() {
+        if(Thread.holdsLock(this)) {
+            return;
+        }
+        List<Runnable> notifications;
+        synchronized (this) {
+            if(pendingNotifications.isEmpty()) {
+                return;
             }
+            notifications = new ArrayList<>(pendingNotifications);
+            pendingNotifications.clear();
         }
+        notifications.forEach(Runnable::run);
     }
 
     private void logQueue(LocalDateTime now) {
@@ -236,30 +396,39 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
         if(hasActiveTimeframeInterval()) {
             return Optional.empty();
         }
-        return queue.stream()
+        return queue.getTimeframeIntervals(TimeframeIntervalState.QUEUED).stream()
                 .filter(timeframeInterval -> timeframeInterval.isActivatable(now, ignoreStartTime))
                 .findFirst();
     }
 
     private Optional<TimeframeInterval> getDeactivatableTimeframeInterval(LocalDateTime now) {
-        return queue.stream()
+        return queue.getTimeframeIntervals(TimeframeIntervalState.ACTIVE).stream()
                 .filter(timeframeInterval -> timeframeInterval.isDeactivatable(now))
                 .findFirst();
     }
 
     private Optional<TimeframeInterval> getRemovableTimeframeInterval(LocalDateTime now) {
-        return queue.stream()
+        return Stream.of(TimeframeIntervalState.EXPIRED, TimeframeIntervalState.QUEUED, TimeframeIntervalState.ACTIVE)
+                .flatMap(state -> queue.getTimeframeIntervals(state).stream())
                 .filter(timeframeInterval -> timeframeInterval.isRemovable(now))
-                .findFirst();
+                .min(Comparator.comparingInt(queue::indexOf));
     }
 
     private Optional<TimeframeInterval> getProlongableTimeframeInterval(LocalDateTime now) {
-        return queue.stream()
+        return queue.getTimeframeIntervals(TimeframeIntervalState.ACTIVE).stream()
                 .filter(timeframeInterval -> timeframeInterval.isProlongable(now))
                 .findFirst();
     }
 
     public void addTimeframeInterval(LocalDateTime now, TimeframeInterval timeframeInterval, boolean asFirst, boolean updateQueue) {
+        synchronized (this) {
+            addTimeframeIntervalLocked(now, timeframeInterval, asFirst, updateQueue);
+        }
+        deliverPendingNotifications();
+    }
+
+    private void addTimeframeIntervalLocked(LocalDateTime now, TimeframeInterval timeframeInterval, boolean asFirst,
+                                            boolean updateQueue) {
         logger.debug("{}: Adding timeframeInterval to queue: {}", applianceId, timeframeInterval.toString(now));
 
         addTimeframeIntervalChangedListener(timeframeInterval.getRequest());
@@ -285,7 +454,7 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
         }
         timeframeInterval.stateTransitionTo(now, TimeframeIntervalState.QUEUED);
         if(updateQueue) {
-            updateQueue(now, false);
+            updateQueueLocked(now, false);
         }
     }
 
@@ -307,7 +476,7 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
         if(control instanceof StartingCurrentSwitch && timeframeInterval.getRequest() instanceof RuntimeRequest) {
             ((StartingCurrentSwitch) control)
                     .removeStartingCurrentSwitchListener((RuntimeRequest) timeframeInterval.getRequest());
-            fillQueue(now);
+            fillQueueLocked(now);
         }
     }
 
@@ -315,17 +484,13 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
         return getActiveTimeframeInterval() != null;
     }
 
-    public TimeframeInterval getActiveTimeframeInterval() {
-        return queue.stream()
-                .filter(timeframeInterval -> timeframeInterval.getState() == TimeframeIntervalState.ACTIVE)
-                .findFirst().orElse(null);
+    public synchronized TimeframeInterval getActiveTimeframeInterval() {
+        return queue.getActiveTimeframeInterval();
     }
 
-    public TimeframeInterval getFirstTimeframeInterval(TimeframeIntervalState... states) {
+    public synchronized TimeframeInterval getFirstTimeframeInterval(TimeframeIntervalState... states) {
         if(states.length > 0) {
-            return queue.stream()
-                    .filter(timeframeInterval -> Arrays.stream(states).anyMatch(state -> state == timeframeInterval.getState()))
-                    .findFirst().orElse(null);
+            return queue.getFirstTimeframeInterval(states);
         }
         if(queue.size() > 0) {
             return queue.get(0);
@@ -365,7 +530,7 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
         return timeframeIntervals;
     }
 
-    public List<TimeframeInterval> findTimeframeIntervalsUntilFirstGap() {
+    public synchronized List<TimeframeInterval> findTimeframeIntervalsUntilFirstGap() {
         List<TimeframeInterval> intervals = new ArrayList<>();
         TimeframeInterval firstTimeframeInterval = getFirstTimeframeInterval();
         if(firstTimeframeInterval != null) {
@@ -422,6 +587,15 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
 
     public void updateSocOfOptionalEnergyTimeframeIntervalForEVCharger(LocalDateTime now,  Integer evId, Integer batteryCapacity,
                                                                        Integer socCurrent, Integer socRequested) {
+        synchronized (this) {
+            updateSocOfOptionalEnergyTimeframeIntervalForEVChargerLocked(now, evId, batteryCapacity, socCurrent,
+                    socRequested);
+        }
+        deliverPendingNotifications();
+    }
+
+    private void updateSocOfOptionalEnergyTimeframeIntervalForEVChargerLocked(LocalDateTime now, Integer evId,
+            Integer batteryCapacity, Integer socCurrent, Integer socRequested) {
         TimeframeInterval timeframeInterval = findOptionalEnergyIntervalForEVCharger();
         if(timeframeInterval != null) {
             OptionalEnergySocRequest request = (OptionalEnergySocRequest) timeframeInterval.getRequest();
@@ -434,8 +608,8 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
                 OptionalEnergySocRequest request = (OptionalEnergySocRequest) timeframeInterval.getRequest();
                 request.setSocInitial(socCurrent);
                 request.setEnabled(true);
-                addTimeframeInterval(now, timeframeInterval, true, true);
-                updateQueue(now, false);
+                addTimeframeIntervalLocked(now, timeframeInterval, true, true);
+                updateQueueLocked(now, false);
                 activateTimeframeInterval(now, timeframeInterval);
             }
         }
@@ -470,30 +644,45 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
 
     @Override
     public void controlStateChanged(LocalDateTime now, boolean switchOn) {
+        requestQueueUpdate();
+    }
+
+    @Override
+    public void onPowerUpdate(int averagePower) {
+        if(energyRequestActive) {
+            requestQueueUpdate();
+        }
     }
 
     @Override
     public void onEVChargerStateChanged(LocalDateTime now, EVChargerState previousState, EVChargerState newState,
                                         ElectricVehicle ev) {
-        if(newState == EVChargerState.VEHICLE_CONNECTED) {
-            if(! hasActiveTimeframeInterval() && ev != null) {
-                TimeframeInterval timeframeInterval = createOptionalEnergyTimeframeIntervalForEVCharger(now,
-                        ev.getId(), ev.getBatteryCapacity(), ev.getDefaultSocOptionalEnergy());
-                if(timeframeInterval != null) {
-                    addTimeframeInterval(now, timeframeInterval, true, true);
-                    updateQueue(now, false);
-                    activateTimeframeInterval(now, timeframeInterval);
+        if(newState == EVChargerState.VEHICLE_CONNECTED && ev != null) {
+            // called by the charger holding its lock which is fine since the handler lock is never held while
+            // calling the charger
+            synchronized (this) {
+                if(! hasActiveTimeframeInterval()) {
+                    TimeframeInterval timeframeInterval = createOptionalEnergyTimeframeIntervalForEVCharger(now,
+                            ev.getId(), ev.getBatteryCapacity(), ev.getDefaultSocOptionalEnergy());
+                    if(timeframeInterval != null) {
+                        addTimeframeIntervalLocked(now, timeframeInterval, true, true);
+                        updateQueueLocked(now, false);
+                        activateTimeframeInterval(now, timeframeInterval);
+                    }
                 }
             }
+            deliverPendingNotifications();
         }
+        requestQueueUpdate();
     }
 
     @Override
     public void onEVChargerSocChanged(LocalDateTime now, SocValues socValues) {
 //        queue.forEach(timeframeInterval -> timeframeInterval.getRequest().onEVChargerSocChanged(now ,soc));
+        requestQueueUpdate();
     }
 
-    public Integer suggestRuntime() {
+    public synchronized Integer suggestRuntime() {
         LocalDateTime now = LocalDateTime.now();
         if(queue.size() > 0) {
             TimeframeInterval timeframeInterval = queue.get(0);
@@ -503,6 +692,13 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
     }
 
     public void setRuntimeDemand(LocalDateTime now, Integer runtime, boolean acceptControlRecommendations) {
+        synchronized (this) {
+            setRuntimeDemandLocked(now, runtime, acceptControlRecommendations);
+        }
+        deliverPendingNotifications();
+    }
+
+    private void setRuntimeDemandLocked(LocalDateTime now, Integer runtime, boolean acceptControlRecommendations) {
         final int additionalIntervalSeconds = UPDATE_QUEUE_INTERVAL_SECONDS + 1; // in order to make interval sufficient!
         final LocalDateTime requiredIntervalEnd = now.plusSeconds(runtime + additionalIntervalSeconds);
         TimeframeInterval activeTimeframeInterval = getActiveTimeframeInterval();
@@ -524,9 +720,9 @@ public class TimeframeIntervalHandler implements ApplianceIdConsumer, ControlSta
             Interval interval = new Interval(now, requiredIntervalEnd);
             TimeframeInterval timeframeInterval = new TimeframeInterval(interval, request);
             if(control instanceof StartingCurrentSwitch) {
-                clearQueue();
+                queue.clear();
             }
-            addTimeframeInterval(now, timeframeInterval, true, true);
+            addTimeframeIntervalLocked(now, timeframeInterval, true, true);
         }
     }
 
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.schedule;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * The queue of timeframe intervals of an appliance which keeps an index of the timeframe intervals per
+ * {@link TimeframeIntervalState} up to date as state transitions happen. Therefore the active timeframe interval
+ * and the first timeframe interval in a given state are found without scanning the queue.
+ * <p>
+ * The queue is not thread-safe. Except for {@link #getSnapshot()}, {@link #iterator()} and {@link #stream()} all
+ * methods including the lookups must be called holding the lock of the owning {@link TimeframeIntervalHandler}
+ * since state transitions update the index in place. The snapshot is an immutable list replaced on each structural
+ * modification of the queue and may be read without the lock. It does not reflect later state transitions.
+ */
+public class TimeframeIntervalQueue implements Iterable<TimeframeInterval> {
+
+    private final ArrayList<TimeframeInterval> intervals = new ArrayList<>();
+    private final Map<TimeframeInterval, Integer> positions = new IdentityHashMap<>();
+    // timeframe intervals per state in queue order
+    private final Map<TimeframeIntervalState, List<TimeframeInterval>> stateIndex
+            = new EnumMap<>(TimeframeIntervalState.class);
+    private volatile List<TimeframeInterval> snapshot = Collections.emptyList();
+
+    public TimeframeIntervalQueue() {
+        for(TimeframeIntervalState state : TimeframeIntervalState.values()) {
+            stateIndex.put(state, new ArrayList<>());
+        }
+    }
+
+    public void add(TimeframeInterval timeframeInterval) {
+        add(intervals.size(), timeframeInterval);
+    }
+
+    public void addFirst(TimeframeInterval timeframeInterval) {
+        add(0, timeframeInterval);
+    }
+
+    public void add(int index, TimeframeInterval timeframeInterval) {
+        intervals.add(index, timeframeInterval);
+        timeframeInterval.setQueue(this);
+        modified();
+    }
+
+    public boolean remove(TimeframeInterval timeframeInterval) {
+        Integer position = positions.get(timeframeInterval);
+        if(position == null) {
+            return false;
+        }
+        intervals.remove(position.intValue());
+        timeframeInterval.setQueue(null);
+        modified();
+        return true;
+    }
+
+    public void clear() {
+        intervals.forEach(timeframeInterval -> timeframeInterval.setQueue(null));
+        intervals.clear();
+        modified();
+    }
+
+    public TimeframeInterval get(int index) {
+        return intervals.get(index);
+    }
+
+    public TimeframeInterval peekLast() {
+        return intervals.size() > 0 ? intervals.get(intervals.size() - 1) : null;
+    }
+
+    public int indexOf(TimeframeInterval timeframeInterval) {
+        Integer position = positions.get(timeframeInterval);
+        return position != null ? position : -1;
+    }
+
+    public int size() {
+        return intervals.size();
+    }
+
+    /**
+     * Returns the timeframe intervals in the given state in queue order.
+     * @return an unmodifiable list
+     */
+    public List<TimeframeInterval> getTimeframeIntervals(TimeframeIntervalState state) {
+        return Collections.unmodifiableList(stateIndex.get(state));
+    }
+
+    public TimeframeInterval getActiveTimeframeInterval() {
+        List<TimeframeInterval> active = stateIndex.get(TimeframeIntervalState.ACTIVE);
+        return active.size() > 0 ? active.get(0) : null;
+    }
+
+    /**
+     * Returns the first timeframe interval of the queue being in one of the given states.
+     */
+    public TimeframeInterval getFirstTimeframeInterval(TimeframeIntervalState... states) {
+        TimeframeInterval first = null;
+        for(TimeframeIntervalState state : states) {
+            List<TimeframeInterval> timeframeIntervals = stateIndex.get(state);
+            if(timeframeIntervals.size() > 0 && (first == null
+                    || positions.get(timeframeIntervals.get(0)) < positions.get(first))) {
+                first = timeframeIntervals.get(0);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Returns an immutable list of the timeframe intervals in queue order as of the last modification of the queue.
+     */
+    public List<TimeframeInterval> getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public Iterator<TimeframeInterval> iterator() {
+        return snapshot.iterator();
+    }
+
+    public Stream<TimeframeInterval> stream() {
+        return snapshot.stream();
+    }
+
+    /**
+     * Moves the timeframe interval from the index of its previous state to the index of its new state.
+     */
+    void stateChanged(TimeframeInterval timeframeInterval, TimeframeIntervalState previousState,
+                      TimeframeIntervalState state) {
+        Integer position = positions.get(timeframeInterval);
+        if(position == null || previousState == state) {
+            return;
+        }
+        if(previousState != null) {
+            stateIndex.get(previousState).remove(indexInState(previousState, position));
+        }
+        if(state != null) {
+            List<TimeframeInterval> timeframeIntervals = stateIndex.get(state);
+            timeframeIntervals.add(-indexInState(state, position) - 1, timeframeInterval);
+        }
+    }
+
+    /**
+     * Returns the index of the timeframe interval at the given position within the list of the given state
+     * or (-(insertion point) - 1) if it is not contained.
+     */
+    private int indexInState(TimeframeIntervalState state, int position) {
+        List<TimeframeInterval> timeframeIntervals = stateIndex.get(state);
+        int low = 0;
+        int high = timeframeIntervals.size() - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int middlePosition = positions.get(timeframeIntervals.get(middle));
+            if(middlePosition < position) {
+                low = middle + 1;
+            }
+            else if(middlePosition > position) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Rebuilds positions and state index after a structural modification and publishes a new snapshot.
+     */
+    private void modified() {
+        positions.clear();
+        stateIndex.values().forEach(List::clear);
+        for(int i=0; i<intervals.size(); i++) {
+            TimeframeInterval timeframeInterval = intervals.get(i);
+            positions.put(timeframeInterval, i);
+            TimeframeIntervalState state = timeframeInterval.getState();
+            if(state != null) {
+                stateIndex.get(state).add(timeframeInterval);
+            }
+        }
+        snapshot = Collections.unmodifiableList(new ArrayList<>(intervals));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import java.util.Random;
+
+/**
+ * Circuit breaker of a device endpoint (host:port).
+ * <p>
+ * The breaker trips open after a number of consecutive failures. While open, requests are rejected immediately
+ * instead of waiting for a timeout. When the backoff has elapsed a single probe request is allowed (half open):
+ * if it succeeds the breaker closes, otherwise it opens again with doubled backoff up to a maximum. A probe whose
+ * outcome is not recorded within the probe timeout counts as failed so that the breaker cannot stay half open forever.
+ * A random jitter of up to half the backoff avoids probing all offline devices at the same time.
+ * <p>
+ * Requests changing the state of a device are not subject to the breaker, i.e. they do not call
+ * {@link #allowRequest(long)}, but their outcome is recorded.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String endpoint;
+    private final int failureThreshold;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long probeTimeoutMillis;
+    private final Random random;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    // number of consecutive trips without a success in between which determines the backoff
+    private int trips;
+    private long openUntilMillis;
+    private long probeStartMillis;
+    private long lastFailureMillis;
+    private long lastSuccessMillis;
+    private long rejectedRequests;
+
+    public CircuitBreaker(String endpoint, int failureThreshold, long initialBackoffMillis, long maxBackoffMillis,
+                          long probeTimeoutMillis) {
+        this(endpoint, failureThreshold, initialBackoffMillis, maxBackoffMillis, probeTimeoutMillis, new Random());
+    }
+
+    protected CircuitBreaker(String endpoint, int failureThreshold, long initialBackoffMillis, long maxBackoffMillis,
+                             long probeTimeoutMillis, Random random) {
+        this.endpoint = endpoint;
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = Math.max(maxBackoffMillis, initialBackoffMillis);
+        this.probeTimeoutMillis = probeTimeoutMillis;
+        this.random = random;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Returns true, if a request may be executed. A request allowed in state {@link State#HALF_OPEN} is the probe
+     * whose outcome has to be recorded.
+     * @param now the current time in millis
+     */
+    public synchronized boolean allowRequest(long now) {
+        if(state == State.HALF_OPEN && now >= probeStartMillis + probeTimeoutMillis) {
+            // the outcome of the probe has not been recorded in time
+            consecutiveFailures++;
+            lastFailureMillis = now;
+            trip(now);
+        }
+        if(state == State.OPEN && now >= openUntilMillis) {
+            state = State.HALF_OPEN;
+            probeStartMillis = now;
+            return true;
+        }
+        if(state == State.CLOSED) {
+            return true;
+        }
+        rejectedRequests++;
+        return false;
+    }
+
+    public synchronized void recordSuccess(long now) {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trips = 0;
+        lastSuccessMillis = now;
+    }
+
+    public synchronized void recordFailure(long now) {
+        consecutiveFailures++;
+        lastFailureMillis = now;
+        // failures of requests started before the breaker opened do not extend the backoff
+        if(state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            trip(now);
+        }
+    }
+
+    private void trip(long now) {
+        trips++;
+        long backoffMillis = getBackoffMillis(trips);
+        long jitterMillis = backoffMillis > 1 ? (long) (random.nextDouble() * (backoffMillis / 2)) : 0L;
+        openUntilMillis = now + backoffMillis - jitterMillis;
+        state = State.OPEN;
+    }
+
+    /**
+     * Returns the backoff before the given trip without jitter.
+     */
+    protected long getBackoffMillis(int trip) {
+        long backoffMillis = initialBackoffMillis;
+        for(int i=1; i<trip && backoffMillis < maxBackoffMillis; i++) {
+            backoffMillis *= 2;
+        }
+        return Math.min(backoffMillis, maxBackoffMillis);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized long getOpenUntilMillis() {
+        return state == State.OPEN ? openUntilMillis : 0L;
+    }
+
+    public synchronized long getLastFailureMillis() {
+        return lastFailureMillis;
+    }
+
+    public synchronized long getLastSuccessMillis() {
+        return lastSuccessMillis;
+    }
+
+    public synchronized long getRejectedRequests() {
+        return rejectedRequests;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return endpoint + " " + state + " consecutiveFailures=" + consecutiveFailures;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of {@link CircuitBreaker}s with one breaker per device endpoint (host:port) shared by all
+ * appliances communicating with the device.
+ */
+public class CircuitBreakerRegistry {
+    public static final String failureThresholdConfigurationParamName = "CircuitBreaker.FailureThreshold";
+    public static final String maxBackoffSecondsConfigurationParamName = "CircuitBreaker.MaxBackoffSeconds";
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final int DEFAULT_INITIAL_BACKOFF_SECONDS = 10;
+    public static final int DEFAULT_MAX_BACKOFF_SECONDS = 300;
+    // longer than the timeouts of HTTP and Modbus requests
+    public static final int DEFAULT_PROBE_TIMEOUT_SECONDS = 60;
+    private static CircuitBreakerRegistry instance;
+    private Logger logger = LoggerFactory.getLogger(CircuitBreakerRegistry.class);
+    private Map<String, CircuitBreaker> endpointWithCircuitBreaker = new ConcurrentHashMap<>();
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private int maxBackoffSeconds = DEFAULT_MAX_BACKOFF_SECONDS;
+
+    protected CircuitBreakerRegistry() {
+    }
+
+    public static synchronized CircuitBreakerRegistry getInstance() {
+        if(instance == null) {
+            instance = new CircuitBreakerRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the number of consecutive failures after which a breaker trips open. Existing breakers are discarded.
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+        endpointWithCircuitBreaker.clear();
+    }
+
+    /**
+     * Sets the maximum backoff before probing an endpoint again. Existing breakers are discarded.
+     */
+    public void setMaxBackoffSeconds(int maxBackoffSeconds) {
+        this.maxBackoffSeconds = maxBackoffSeconds;
+        endpointWithCircuitBreaker.clear();
+    }
+
+    /**
+     * Returns the circuit breaker of an endpoint.
+     * @param endpoint the endpoint as host:port
+     */
+    public CircuitBreaker getCircuitBreaker(String endpoint) {
+        return endpointWithCircuitBreaker.computeIfAbsent(endpoint, key -> {
+            logger.debug("Creating circuit breaker for {}", key);
+            return new CircuitBreaker(key, failureThreshold, DEFAULT_INITIAL_BACKOFF_SECONDS * 1000L,
+                    maxBackoffSeconds * 1000L, DEFAULT_PROBE_TIMEOUT_SECONDS * 1000L);
+        });
+    }
+
+    /**
+     * Returns the circuit breaker of the endpoint of an URL.
+     * @return the circuit breaker or null, if the URL is invalid
+     */
+    public CircuitBreaker getCircuitBreakerForUrl(String url) {
+        String endpoint = getEndpoint(url);
+        return endpoint != null ? getCircuitBreaker(endpoint) : null;
+    }
+
+    /**
+     * Returns the endpoint (host:port) of an URL.
+     * @return the endpoint or null, if the URL is invalid
+     */
+    public static String getEndpoint(String url) {
+        try {
+            URI uri = URI.create(url);
+            if(uri.getHost() == null) {
+                return null;
+            }
+            int port = uri.getPort();
+            if(port < 0) {
+                port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+            }
+            return uri.getHost() + ":" + port;
+        }
+        catch(IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns all circuit breakers sorted by endpoint.
+     */
+    public List<CircuitBreaker> getCircuitBreakers() {
+        List<CircuitBreaker> circuitBreakers = new ArrayList<>(endpointWithCircuitBreaker.values());
+        circuitBreakers.sort(Comparator.comparing(CircuitBreaker::getEndpoint));
+        return circuitBreakers;
+    }
+
+    public void clear() {
+        endpointWithCircuitBreaker.clear();
+    }
+}
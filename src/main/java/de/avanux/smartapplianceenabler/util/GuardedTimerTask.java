@@ -21,24 +21,49 @@ package de.avanux.smartapplianceenabler.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
- * The GuardedTimerTask maintains parameters passed to the Timer as well as details to identify itself.
+ * The GuardedTimerTask maintains parameters passed to the {@link TaskScheduler} as well as details to identify itself.
  * It also ensures, the errors during execution will be logged appropriately. Cancellation is logged as well.
+ * Each execution is recorded with {@link TaskMetrics}.
+ * <p>
+ * Tasks accessing a device specify the endpoint of the device. They are executed by the device I/O pool of the
+ * scheduler limited by the bulkhead of the endpoint. All other tasks are executed by the schedule logic pool.
+ * <p>
+ * Tasks completing asynchronously override {@link #runTaskAsync()} instead of {@link #runTask()}. The scheduler
+ * considers such an execution running until the returned future has completed, i.e. it is not repeated before and
+ * it occupies the bulkhead of the endpoint until then.
  */
-abstract public class GuardedTimerTask extends TimerTask {
+abstract public class GuardedTimerTask implements Runnable {
+    private static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
     private transient Logger logger = LoggerFactory.getLogger(GuardedTimerTask.class);
     private String applianceId;
     private String taskName;
     private long period;
+    private String endpoint;
+    private volatile boolean cancelled;
+    private volatile boolean scheduled;
 
     public GuardedTimerTask(String applianceId, String taskName, long period) {
+        this(applianceId, taskName, period, null);
+    }
+
+    /**
+     * @param endpoint the endpoint of the device accessed by the task or null, if no device is accessed
+     */
+    public GuardedTimerTask(String applianceId, String taskName, long period, String endpoint) {
         this.applianceId = applianceId;
         this.taskName = taskName;
         this.period = period;
-        logger.debug("{}: Created timer task name={} period={}ms id={}", this.applianceId != null ? this.applianceId : "",
-                taskName, period, this.hashCode());
+        this.endpoint = endpoint;
+        logger.debug("{}: Created timer task name={} period={}ms endpoint={} id={}",
+                this.applianceId != null ? this.applianceId : "", taskName, period, endpoint, this.hashCode());
+    }
+
+    public String getApplianceId() {
+        return applianceId;
     }
 
     public String getTaskName() {
@@ -49,27 +74,77 @@ abstract public class GuardedTimerTask extends TimerTask {
         return period;
     }
 
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void setScheduled(boolean scheduled) {
+        this.scheduled = scheduled;
+    }
+
     @Override
     public void run() {
+        run(0);
+    }
+
+    /**
+     * Executes the task and records the execution with {@link TaskMetrics} when it has been completed, i.e. an
+     * asynchronous execution is recorded when its future has completed.
+     * @param lagMillis the delay between the scheduled and the actual start of the execution
+     * @return the future completed when the execution has been completed; it never completes exceptionally
+     */
+    CompletableFuture<Void> run(long lagMillis) {
         logger.debug("{}: Executing timer task name={} id={}", this.applianceId != null ? this.applianceId : "",
                 this.taskName, this.hashCode());
+        long startTime = System.currentTimeMillis();
+        long start = System.nanoTime();
+        CompletableFuture<?> completion;
         try  {
-            runTask();
+            completion = runTaskAsync();
         }
         catch(Throwable e) {
-            logger.error(applianceId + ": Error executing timer task name=" + taskName + " id=" + this.hashCode(), e);
+            completion = CompletableFuture.failedFuture(e);
         }
+        return completion.handle((result, throwable) -> {
+            Throwable error = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            if(error != null) {
+                logger.error(applianceId + ": Error executing timer task name=" + taskName + " id=" + this.hashCode(),
+                        error);
+            }
+            TaskMetrics.getInstance().recordExecution(this, startTime, lagMillis, System.nanoTime() - start, error);
+            return null;
+        });
     }
 
-    @Override
+    /**
+     * Cancels the task. A running execution is completed but no further executions will take place.
+     * @return true, if further executions were prevented
+     */
     public boolean cancel() {
         logger.debug("{}: Cancel timer task name={} id={}", this.applianceId != null ? this.applianceId : "",
                 taskName, this.hashCode());
-        return super.cancel();
+        boolean wasCancelled = cancelled;
+        cancelled = true;
+        return ! wasCancelled && scheduled;
     }
 
     /**
      * Override this method instead of #run().
      */
-    abstract public void runTask();
+    public void runTask() {
+    }
+
+    /**
+     * Override this method instead of {@link #runTask()} if the task completes asynchronously.
+     * @return the future completed when the execution has been completed
+     */
+    public CompletableFuture<?> runTaskAsync() {
+        runTask();
+        return COMPLETED;
+    }
 }
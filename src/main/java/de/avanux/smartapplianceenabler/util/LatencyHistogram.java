@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in microseconds with a fixed number of log-linear buckets similar to HdrHistogram:
+ * values below 64 are counted exactly, larger values in 32 linear sub-buckets per power of two, i.e. with a
+ * relative error of at most 1/32. Values above {@link #MAX_MICROS} are counted as {@link #MAX_MICROS}.
+ * <p>
+ * Recording is lock-free and does not allocate. Values read while recording is in progress may be slightly
+ * inconsistent with each other.
+ */
+public class LatencyHistogram {
+
+    public static final long MAX_MICROS = (1L << 27) - 1; // ~134s
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_COUNT = 2 * SUB_BUCKET_COUNT;
+    private static final int BUCKET_COUNT = indexOf(MAX_MICROS) + 1;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     * @param nanos the latency in nanoseconds
+     */
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    /**
+     * Records a latency.
+     * @param micros the latency in microseconds
+     */
+    public void record(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_MICROS);
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    static int indexOf(long value) {
+        if(value < LINEAR_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return LINEAR_COUNT + (shift - 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the highest value counted in the bucket with the given index.
+     */
+    static long highestValueOf(int index) {
+        if(index < LINEAR_COUNT) {
+            return index;
+        }
+        int shift = (index - LINEAR_COUNT) / SUB_BUCKET_COUNT + 1;
+        long subBucket = (index - LINEAR_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxMicros() {
+        return max.get();
+    }
+
+    public double getMeanMicros() {
+        long currentCount = count.get();
+        return currentCount > 0 ? (double) sum.get() / currentCount : 0.0;
+    }
+
+    /**
+     * Returns the value below or at which the given percentage of all recorded values are.
+     * @param percentile the percentile between 0 and 100
+     * @return the value in microseconds or 0, if no value has been recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if(total == 0) {
+            return 0;
+        }
+        long rank = Math.max((long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total), 1);
+        long cumulated = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            cumulated += counts.get(i);
+            if(cumulated >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
@@ -36,6 +36,10 @@ public class RequestCache<K, V> {
         logger.debug("{}: Cache created maxAgeMillis={}", this.applianceId, this.maxAgeMillis);
     }
 
+    public int getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
     public V get(K key) {
         CacheValue cacheValue = this.cache.get(key);
         if(cacheValue != null) {
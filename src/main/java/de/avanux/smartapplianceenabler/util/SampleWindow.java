@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.avanux.smartapplianceenabler.util;
+
+import de.avanux.smartapplianceenabler.appliance.ApplianceIdConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * A fixed-capacity window of timestamped float samples backed by primitive ring buffers.
+ * Samples older than maxAgeSeconds are expired from the head when a new sample is added. If the window is full,
+ * the oldest sample is dropped. Sum, min and max are maintained incrementally (min/max using monotonic deques)
+ * so that average, min, max and last value can be read in O(1) without allocating.
+ */
+public class SampleWindow implements ApplianceIdConsumer {
+
+    public static final int DEFAULT_CAPACITY = 64;
+    private transient Logger logger = LoggerFactory.getLogger(SampleWindow.class);
+    private String name;
+    private String applianceId;
+    private int maxAgeSeconds;
+    // samples are identified by a sequence number; a sample's slot in the ring is sequence % capacity
+    private long[] timestamps;
+    private float[] values;
+    private long headSequence;
+    private long tailSequence;
+    private double sum;
+    // monotonic deques holding sequence numbers of samples
+    private long[] minDeque;
+    private int minDequeHead;
+    private int minDequeSize;
+    private long[] maxDeque;
+    private int maxDequeHead;
+    private int maxDequeSize;
+
+    public SampleWindow(String name) {
+        this(name, DEFAULT_CAPACITY);
+    }
+
+    public SampleWindow(String name, int capacity) {
+        this.name = name;
+        setCapacity(capacity);
+    }
+
+    @Override
+    public void setApplianceId(String applianceId) {
+        this.applianceId = applianceId;
+    }
+
+    public void setMaxAgeSeconds(int maxAgeSeconds) {
+        logger.debug("{}: maxAgeSeconds={}", applianceId, maxAgeSeconds);
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * Sets the capacity of the window. Samples contained in the window are discarded.
+     * @param capacity the maximum number of samples
+     */
+    public synchronized void setCapacity(int capacity) {
+        int validCapacity = Math.max(capacity, 2);
+        this.timestamps = new long[validCapacity];
+        this.values = new float[validCapacity];
+        this.minDeque = new long[validCapacity];
+        this.maxDeque = new long[validCapacity];
+        clear();
+    }
+
+    public synchronized int getCapacity() {
+        return this.values.length;
+    }
+
+    public void addValue(LocalDateTime timestamp, float value) {
+        addValue(timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), value);
+    }
+
+    public synchronized void addValue(long timestampMillis, float value) {
+        int removed = 0;
+        while(size() > 0 && (timestampMillis - timestamps[slot(headSequence)]) / 1000 > maxAgeSeconds) {
+            removeHead();
+            removed++;
+        }
+        if(size() == getCapacity()) {
+            removeHead();
+            removed++;
+        }
+
+        long sequence = tailSequence++;
+        int slot = slot(sequence);
+        timestamps[slot] = timestampMillis;
+        values[slot] = value;
+        sum += value;
+
+        while(minDequeSize > 0 && values[slot(minDequeLast())] >= value) {
+            minDequeSize--;
+        }
+        minDeque[(minDequeHead + minDequeSize++) % minDeque.length] = sequence;
+        while(maxDequeSize > 0 && values[slot(maxDequeLast())] <= value) {
+            maxDequeSize--;
+        }
+        maxDeque[(maxDequeHead + maxDequeSize++) % maxDeque.length] = sequence;
+
+        if(logger.isDebugEnabled()) {
+            logger.debug("{}: window={} added value={} timestamp={}  removed/total: {}/{}",
+                    applianceId, name, value, timestampMillis, removed, size());
+        }
+    }
+
+    private void removeHead() {
+        long sequence = headSequence++;
+        sum -= values[slot(sequence)];
+        if(minDequeSize > 0 && minDeque[minDequeHead] == sequence) {
+            minDequeHead = (minDequeHead + 1) % minDeque.length;
+            minDequeSize--;
+        }
+        if(maxDequeSize > 0 && maxDeque[maxDequeHead] == sequence) {
+            maxDequeHead = (maxDequeHead + 1) % maxDeque.length;
+            maxDequeSize--;
+        }
+        if(size() == 0) {
+            // avoid accumulating floating point errors
+            sum = 0.0;
+        }
+    }
+
+    private long minDequeLast() {
+        return minDeque[(minDequeHead + minDequeSize - 1) % minDeque.length];
+    }
+
+    private long maxDequeLast() {
+        return maxDeque[(maxDequeHead + maxDequeSize - 1) % maxDeque.length];
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % values.length);
+    }
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public synchronized int size() {
+        return (int) (tailSequence - headSequence);
+    }
+
+    public synchronized void clear() {
+        this.headSequence = 0;
+        this.tailSequence = 0;
+        this.sum = 0.0;
+        this.minDequeHead = 0;
+        this.minDequeSize = 0;
+        this.maxDequeHead = 0;
+        this.maxDequeSize = 0;
+    }
+
+    /**
+     * Returns the average of all samples or 0 if the window is empty.
+     */
+    public synchronized double getAverage() {
+        return size() > 0 ? sum / size() : 0.0;
+    }
+
+    /**
+     * Returns the minimum of all samples or 0 if the window is empty.
+     */
+    public synchronized float getMin() {
+        return minDequeSize > 0 ? values[slot(minDeque[minDequeHead])] : 0.0f;
+    }
+
+    /**
+     * Returns the maximum of all samples or 0 if the window is empty.
+     */
+    public synchronized float getMax() {
+        return maxDequeSize > 0 ? values[slot(maxDeque[maxDequeHead])] : 0.0f;
+    }
+
+    /**
+     * Returns the value of the sample at the given index with 0 being the oldest sample.
+     */
+    public synchronized float getValue(int index) {
+        checkIndex(index);
+        return values[slot(headSequence + index)];
+    }
+
+    /**
+     * Returns the timestamp (epoch millis) of the sample at the given index with 0 being the oldest sample.
+     */
+    public synchronized long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[slot(headSequence + index)];
+    }
+
+    public synchronized float getLastValue() {
+        return getValue(size() - 1);
+    }
+
+    public synchronized long getLastTimestamp() {
+        return getTimestamp(size() - 1);
+    }
+
+    private void checkIndex(int index) {
+        if(index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index=" + index + " size=" + size());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.avanux.smartapplianceenabler.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, preallocated queue of primitive long values for exactly one producer thread and one consumer thread.
+ * Neither {@link #offer(long)} nor {@link #poll()} block or allocate.
+ */
+public class SpscLongQueue {
+
+    /**
+     * Returned by {@link #poll()} if the queue is empty.
+     */
+    public static final long EMPTY = Long.MIN_VALUE;
+    private final long[] buffer;
+    private final int mask;
+    // next sequence to be read; written by consumer only
+    private final AtomicLong head = new AtomicLong();
+    // next sequence to be written; written by producer only
+    private final AtomicLong tail = new AtomicLong();
+    // producer's copy of head to avoid reading the volatile head on every offer
+    private long cachedHead;
+
+    /**
+     * @param capacity the capacity which is rounded up to the next power of two
+     */
+    public SpscLongQueue(int capacity) {
+        int powerOfTwoCapacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.buffer = new long[powerOfTwoCapacity];
+        this.mask = powerOfTwoCapacity - 1;
+    }
+
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Adds a value. Must only be called by the producer thread.
+     * @param value the value which must not be {@link #EMPTY}
+     * @return false, if the queue is full and the value was not added
+     */
+    public boolean offer(long value) {
+        long currentTail = tail.get();
+        if(currentTail - cachedHead >= buffer.length) {
+            cachedHead = head.get();
+            if(currentTail - cachedHead >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) (currentTail & mask)] = value;
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest value. Must only be called by the consumer thread.
+     * @return the oldest value or {@link #EMPTY} if the queue is empty
+     */
+    public long poll() {
+        long currentHead = head.get();
+        if(currentHead >= tail.get()) {
+            return EMPTY;
+        }
+        long value = buffer[(int) (currentHead & mask)];
+        head.lazySet(currentHead + 1);
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide execution statistics of {@link GuardedTimerTask}s per appliance id and task name including the
+ * execution duration, the lag between scheduled and actual start, overruns of the period, skipped executions and
+ * errors. The statistics are available via REST and as JMX MXBean {@link #OBJECT_NAME}.
+ * <p>
+ * If a slow task warning percentage is set, a warning is logged for each execution of a periodic task taking longer
+ * than this percentage of its period.
+ */
+public class TaskMetrics implements TaskMetricsMXBean {
+    public static final String OBJECT_NAME = "de.avanux.smartapplianceenabler:type=TaskMetrics";
+    public static final String slowTaskWarningPercentConfigurationParamName = "TaskScheduler.SlowTaskWarningPercent";
+    private static TaskMetrics instance;
+    private Logger logger = LoggerFactory.getLogger(TaskMetrics.class);
+    private Map<String, Metrics> keyWithMetrics = new ConcurrentHashMap<>();
+    private volatile Integer slowTaskWarningPercent;
+
+    protected TaskMetrics() {
+    }
+
+    public static synchronized TaskMetrics getInstance() {
+        if(instance == null) {
+            instance = new TaskMetrics();
+        }
+        return instance;
+    }
+
+    /**
+     * Registers the statistics with the platform MBean server.
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            logger.debug("Registered MBean {}", OBJECT_NAME);
+        }
+        catch(InstanceAlreadyExistsException e) {
+            // registered already
+        }
+        catch(Exception e) {
+            logger.warn("Error registering MBean {}", OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * @param slowTaskWarningPercent the percentage of the period above which an execution is logged as slow or
+     *                               null to disable warnings
+     */
+    public void setSlowTaskWarningPercent(Integer slowTaskWarningPercent) {
+        this.slowTaskWarningPercent = slowTaskWarningPercent;
+    }
+
+    /**
+     * Records an execution of a task.
+     * @param task the task
+     * @param startTime the start of the execution in epoch millis
+     * @param lagMillis the delay between the scheduled and the actual start
+     * @param durationNanos the duration of the execution
+     * @param error the error thrown by the execution or null
+     */
+    public void recordExecution(GuardedTimerTask task, long startTime, long lagMillis, long durationNanos,
+                                Throwable error) {
+        Metrics metrics = getMetrics(task);
+        metrics.executions.incrementAndGet();
+        metrics.lastStartTime = startTime;
+        metrics.lastDurationNanos = durationNanos;
+        metrics.durations.recordNanos(durationNanos);
+        metrics.lags.record(lagMillis * 1000);
+        long period = task.getPeriod();
+        if(period > 0 && durationNanos > period * 1000000) {
+            metrics.overruns.incrementAndGet();
+        }
+        if(error != null) {
+            metrics.errors.incrementAndGet();
+            metrics.lastError = error.toString();
+            metrics.lastErrorTime = startTime;
+        }
+        Integer warningPercent = this.slowTaskWarningPercent;
+        if(warningPercent != null && period > 0 && durationNanos / 10000 > period * warningPercent) {
+            logger.warn("{}: Slow timer task name={} duration={}ms period={}ms lag={}ms",
+                    task.getApplianceId() != null ? task.getApplianceId() : "", task.getTaskName(),
+                    durationNanos / 1000000, period, lagMillis);
+        }
+    }
+
+    /**
+     * Records an execution being skipped since the previous execution had not been completed yet.
+     */
+    public void recordSkipped(GuardedTimerTask task) {
+        getMetrics(task).skipped.incrementAndGet();
+    }
+
+    private Metrics getMetrics(GuardedTimerTask task) {
+        String key = task.getApplianceId() + "/" + task.getTaskName();
+        return keyWithMetrics.computeIfAbsent(key, k -> new Metrics(task));
+    }
+
+    @Override
+    public List<TaskStatistics> getTaskStatistics() {
+        List<TaskStatistics> statistics = new ArrayList<>();
+        for(Metrics metrics : keyWithMetrics.values()) {
+            statistics.add(metrics.getStatistics());
+        }
+        statistics.sort(Comparator.comparing((TaskStatistics taskStatistics) ->
+                taskStatistics.getApplianceId() != null ? taskStatistics.getApplianceId() : "")
+                .thenComparing(TaskStatistics::getTaskName));
+        return statistics;
+    }
+
+    @Override
+    public void reset() {
+        keyWithMetrics.clear();
+    }
+
+    private static class Metrics {
+        private final String applianceId;
+        private final String taskName;
+        private final String endpoint;
+        private final long period;
+        private final AtomicLong executions = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong overruns = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final LatencyHistogram durations = new LatencyHistogram();
+        private final LatencyHistogram lags = new LatencyHistogram();
+        private volatile long lastStartTime;
+        private volatile long lastDurationNanos;
+        private volatile String lastError;
+        private volatile long lastErrorTime;
+
+        Metrics(GuardedTimerTask task) {
+            this.applianceId = task.getApplianceId();
+            this.taskName = task.getTaskName();
+            this.endpoint = task.getEndpoint();
+            this.period = task.getPeriod();
+        }
+
+        TaskStatistics getStatistics() {
+            TaskStatistics statistics = new TaskStatistics();
+            statistics.setApplianceId(applianceId);
+            statistics.setTaskName(taskName);
+            statistics.setEndpoint(endpoint);
+            statistics.setPeriodMillis(period);
+            statistics.setExecutions(executions.get());
+            statistics.setSkipped(skipped.get());
+            statistics.setOverruns(overruns.get());
+            statistics.setErrors(errors.get());
+            statistics.setLastError(lastError);
+            statistics.setLastErrorTime(lastErrorTime);
+            statistics.setLastStartTime(lastStartTime);
+            statistics.setLastDurationMillis(lastDurationNanos / 1000000.0);
+            statistics.setDurationMeanMillis(durations.getMeanMicros() / 1000.0);
+            statistics.setDurationP99Millis(durations.getPercentileMicros(99.0) / 1000.0);
+            statistics.setDurationMaxMillis(durations.getMaxMicros() / 1000.0);
+            statistics.setLagMeanMillis(lags.getMeanMicros() / 1000.0);
+            statistics.setLagP99Millis(lags.getPercentileMicros(99.0) / 1000.0);
+            statistics.setLagMaxMillis(lags.getMaxMicros() / 1000.0);
+            return statistics;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler of {@link GuardedTimerTask}s replacing a single {@link java.util.Timer} thread.
+ * <p>
+ * The due times of tasks are managed by a {@link TimingWheel} advanced by a single timing thread on every tick,
+ * i.e. the timing thread only wakes up once per tick independent of the number of tasks. Periodic tasks are aligned
+ * to ticks being a multiple of their period since the epoch, e.g. all tasks with a period of 5s become due on the same
+ * tick every 5 seconds. All tasks due on a tick are dispatched as one batch grouped by device endpoint so that
+ * device I/O happens at the same time and can be served from shared ModBus range reads and coalesced HTTP requests.
+ * <p>
+ * Due tasks are dispatched to one of two pools: tasks accessing a device are executed by the
+ * device I/O pool, all other tasks by the schedule logic pool. Therefore a device not responding does not delay
+ * the evaluation of schedules. In addition the number of tasks executed concurrently for the same device endpoint
+ * is limited by a bulkhead so that a slow device cannot occupy all device I/O threads. Tasks exceeding the limit
+ * are queued without occupying a thread.
+ * <p>
+ * An execution of a periodic task is skipped if its previous execution has not been completed yet, i.e. a task
+ * never overlaps with itself. The execution of a task completing asynchronously (see
+ * {@link GuardedTimerTask#runTaskAsync()}) is completed when its future has completed.
+ */
+public class TaskScheduler {
+    public static final String deviceIoThreadsConfigurationParamName = "TaskScheduler.DeviceIoThreads";
+    public static final String scheduleThreadsConfigurationParamName = "TaskScheduler.ScheduleThreads";
+    public static final String maxConcurrencyPerEndpointConfigurationParamName = "TaskScheduler.MaxConcurrencyPerEndpoint";
+    public static final long DEFAULT_TICK_MILLIS = 1000;
+    public static final int DEFAULT_DEVICE_IO_THREADS = 4;
+    public static final int DEFAULT_SCHEDULE_THREADS = 2;
+    public static final int DEFAULT_MAX_CONCURRENCY_PER_ENDPOINT = 1;
+    private static final int WHEEL_SIZE = 512;
+    private Logger logger = LoggerFactory.getLogger(TaskScheduler.class);
+    private final TimingWheel<ScheduledTask> wheel;
+    // wall clock time at nano time 0 so that the time of the wheel is not affected by wall clock adjustments
+    private final long clockOffsetMillis = System.currentTimeMillis() - System.nanoTime() / 1000000;
+    private final ScheduledThreadPoolExecutor timingExecutor;
+    private final ThreadPoolExecutor deviceIoExecutor;
+    private final ThreadPoolExecutor scheduleExecutor;
+    private final Map<String, Bulkhead> endpointWithBulkhead = new ConcurrentHashMap<>();
+    private volatile int maxConcurrencyPerEndpoint;
+
+    public TaskScheduler() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_DEVICE_IO_THREADS, DEFAULT_SCHEDULE_THREADS,
+                DEFAULT_MAX_CONCURRENCY_PER_ENDPOINT);
+    }
+
+    public TaskScheduler(long tickMillis, int deviceIoThreads, int scheduleThreads, int maxConcurrencyPerEndpoint) {
+        this.wheel = new TimingWheel<>(tickMillis, WHEEL_SIZE, currentTimeMillis());
+        this.timingExecutor = new ScheduledThreadPoolExecutor(1, threadFactory("TaskScheduler-timer"));
+        this.deviceIoExecutor = newPool(deviceIoThreads, "TaskScheduler-io");
+        this.scheduleExecutor = newPool(scheduleThreads, "TaskScheduler-schedule");
+        this.maxConcurrencyPerEndpoint = Math.max(maxConcurrencyPerEndpoint, 1);
+        long tick = wheel.getTickMillis();
+        // the first tick is aligned to the wall clock, e.g. to a whole second
+        long initialDelay = tick - Math.floorMod(currentTimeMillis(), tick);
+        this.timingExecutor.scheduleAtFixedRate(this::tick, initialDelay, tick, TimeUnit.MILLISECONDS);
+    }
+
+    private static ThreadPoolExecutor newPool(int threads, String name) {
+        int size = Math.max(threads, 1);
+        return new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                threadFactory(name));
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private long currentTimeMillis() {
+        return clockOffsetMillis + System.nanoTime() / 1000000;
+    }
+
+    /**
+     * Changes the pool sizes and the max concurrency per endpoint.
+     */
+    public void configure(int deviceIoThreads, int scheduleThreads, int maxConcurrencyPerEndpoint) {
+        resize(deviceIoExecutor, deviceIoThreads);
+        resize(scheduleExecutor, scheduleThreads);
+        this.maxConcurrencyPerEndpoint = Math.max(maxConcurrencyPerEndpoint, 1);
+        logger.debug("Configured task scheduler: deviceIoThreads={} scheduleThreads={} maxConcurrencyPerEndpoint={}",
+                deviceIoThreads, scheduleThreads, this.maxConcurrencyPerEndpoint);
+    }
+
+    private void resize(ThreadPoolExecutor pool, int threads) {
+        int size = Math.max(threads, 1);
+        if(size > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        }
+        else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Returns the executor of the device I/O pool which may be used to run blocking device I/O started by tasks
+     * without blocking the task.
+     */
+    public Executor getDeviceIoExecutor() {
+        return deviceIoExecutor;
+    }
+
+    /**
+     * Schedules a task for a single execution.
+     * @param task the task
+     * @param delay the delay in milliseconds before the task is executed which is rounded up to the next tick
+     */
+    public void schedule(GuardedTimerTask task, long delay) {
+        task.setScheduled(true);
+        add(new ScheduledTask(task, 0), wheel.toTick(currentTimeMillis() + delay));
+    }
+
+    /**
+     * Schedules a task for repeated executions. The period is rounded to a multiple of the tick.
+     * @param task the task
+     * @param delay the delay in milliseconds before the task is executed the first time. Unless the delay is 0
+     *              the first execution is aligned to a multiple of the period as well.
+     * @param period the time in milliseconds between successive executions
+     */
+    public void schedule(GuardedTimerTask task, long delay, long period) {
+        long periodTicks = Math.max(Math.round((double) period / wheel.getTickMillis()), 1);
+        long deadlineTick = wheel.toTick(currentTimeMillis() + delay);
+        if(delay > 0) {
+            deadlineTick = alignedTick(deadlineTick - 1, periodTicks);
+        }
+        task.setScheduled(true);
+        add(new ScheduledTask(task, periodTicks), deadlineTick);
+    }
+
+    private void add(ScheduledTask scheduledTask, long deadlineTick) {
+        scheduledTask.deadlineTick = wheel.add(scheduledTask, deadlineTick);
+    }
+
+    /**
+     * Returns the first tick after the given tick being a multiple of the period.
+     */
+    static long alignedTick(long tick, long periodTicks) {
+        return (Math.floorDiv(tick, periodTicks) + 1) * periodTicks;
+    }
+
+    /**
+     * Called by the timing thread on every tick.
+     */
+    private void tick() {
+        try {
+            List<ScheduledTask> dueTasks = new ArrayList<>();
+            long tick = wheel.advance(currentTimeMillis(), dueTasks);
+            if(! dueTasks.isEmpty()) {
+                dispatch(tick, dueTasks);
+            }
+        }
+        catch(Throwable e) {
+            logger.error("Error processing tick", e);
+        }
+    }
+
+    private void dispatch(long tick, List<ScheduledTask> dueTasks) {
+        Map<String, List<ScheduledTask>> endpointWithTasks = new TreeMap<>();
+        for(ScheduledTask scheduledTask : dueTasks) {
+            GuardedTimerTask task = scheduledTask.task;
+            if(task.isCancelled()) {
+                task.setScheduled(false);
+                continue;
+            }
+            long dueMillis = scheduledTask.deadlineTick * wheel.getTickMillis();
+            if(scheduledTask.periodTicks > 0) {
+                add(scheduledTask, alignedTick(tick, scheduledTask.periodTicks));
+            }
+            else {
+                task.setScheduled(false);
+            }
+            if(! scheduledTask.tryStart(dueMillis)) {
+                continue;
+            }
+            String endpoint = task.getEndpoint();
+            if(endpoint != null) {
+                endpointWithTasks.computeIfAbsent(endpoint, key -> new ArrayList<>()).add(scheduledTask);
+            }
+            else {
+                scheduledTask.execute(scheduleExecutor, scheduledTask::start);
+            }
+        }
+        endpointWithTasks.forEach((endpoint, tasks) ->
+                endpointWithBulkhead.computeIfAbsent(endpoint, Bulkhead::new).submit(tasks));
+    }
+
+    /**
+     * Terminates the scheduler. Running tasks are completed but no further tasks will be executed.
+     */
+    public void shutdown() {
+        timingExecutor.shutdownNow();
+        deviceIoExecutor.shutdown();
+        scheduleExecutor.shutdown();
+    }
+
+    private class ScheduledTask {
+        private final GuardedTimerTask task;
+        private final long periodTicks;
+        // true while the task is queued or executed
+        private final AtomicBoolean pending = new AtomicBoolean();
+        // the tick of the next execution; accessed by the timing thread only
+        private long deadlineTick;
+        // the scheduled start of the pending execution
+        private volatile long dueMillis;
+
+        ScheduledTask(GuardedTimerTask task, long periodTicks) {
+            this.task = task;
+            this.periodTicks = periodTicks;
+        }
+
+        /**
+         * Marks the task as pending unless the previous execution has not been completed yet.
+         * @param dueMillis the scheduled start of the execution
+         */
+        boolean tryStart(long dueMillis) {
+            if(! pending.compareAndSet(false, true)) {
+                logger.debug("{}: Skipping timer task name={} since previous execution has not been completed",
+                        task.getApplianceId() != null ? task.getApplianceId() : "", task.getTaskName());
+                TaskMetrics.getInstance().recordSkipped(task);
+                return false;
+            }
+            this.dueMillis = dueMillis;
+            return true;
+        }
+
+        /**
+         * Starts the execution of the task.
+         * @return the future completed when the execution has been completed and the task is no longer pending
+         */
+        CompletableFuture<Void> start() {
+            CompletableFuture<Void> completion;
+            try {
+                completion = task.isCancelled() ? CompletableFuture.completedFuture(null)
+                        : task.run(Math.max(currentTimeMillis() - dueMillis, 0));
+            }
+            catch(RuntimeException e) {
+                pending.set(false);
+                throw e;
+            }
+            return completion.whenComplete((result, throwable) -> pending.set(false));
+        }
+
+        /**
+         * Executes the task by the executor.
+         * @return false, if the executor rejected the task since the scheduler has been shut down
+         */
+        boolean execute(Executor executor, Runnable runnable) {
+            try {
+                executor.execute(runnable);
+                return true;
+            }
+            catch(RejectedExecutionException e) {
+                pending.set(false);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Limits the number of tasks executed concurrently for an endpoint. Tasks exceeding the limit are queued and
+     * executed in order as soon as other tasks of the endpoint have been completed.
+     */
+    private class Bulkhead {
+        private final String endpoint;
+        private final Deque<ScheduledTask> waitingTasks = new ArrayDeque<>();
+        private int runningTasks;
+
+        Bulkhead(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        synchronized void submit(List<ScheduledTask> scheduledTasks) {
+            for(ScheduledTask scheduledTask : scheduledTasks) {
+                if(runningTasks < maxConcurrencyPerEndpoint) {
+                    runningTasks++;
+                    execute(scheduledTask);
+                }
+                else {
+                    logger.debug("Queueing timer task name={} for endpoint {}: runningTasks={}",
+                            scheduledTask.task.getTaskName(), endpoint, runningTasks);
+                    waitingTasks.addLast(scheduledTask);
+                }
+            }
+        }
+
+        private void execute(ScheduledTask scheduledTask) {
+            boolean executing = scheduledTask.execute(deviceIoExecutor, () -> {
+                CompletableFuture<Void> completion;
+                try {
+                    completion = scheduledTask.start();
+                }
+                catch(RuntimeException e) {
+                    release();
+                    throw e;
+                }
+                // the bulkhead is occupied until an asynchronous execution has been completed
+                completion.whenComplete((result, throwable) -> release());
+            });
+            if(! executing) {
+                runningTasks--;
+            }
+        }
+
+        private synchronized void release() {
+            ScheduledTask next = waitingTasks.pollFirst();
+            if(next != null) {
+                execute(next);
+            }
+            else {
+                runningTasks--;
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+/**
+ * Execution statistics of the timer tasks with the same appliance id and task name.
+ * Times are epoch millis; the lag is the delay between the scheduled and the actual start of an execution.
+ */
+public class TaskStatistics {
+    private String applianceId;
+    private String taskName;
+    private String endpoint;
+    private long periodMillis;
+    private long executions;
+    private long skipped;
+    private long overruns;
+    private long errors;
+    private String lastError;
+    private long lastErrorTime;
+    private long lastStartTime;
+    private double lastDurationMillis;
+    private double durationMeanMillis;
+    private double durationP99Millis;
+    private double durationMaxMillis;
+    private double lagMeanMillis;
+    private double lagP99Millis;
+    private double lagMaxMillis;
+
+    public String getApplianceId() {
+        return applianceId;
+    }
+
+    public void setApplianceId(String applianceId) {
+        this.applianceId = applianceId;
+    }
+
+    public String getTaskName() {
+        return taskName;
+    }
+
+    public void setTaskName(String taskName) {
+        this.taskName = taskName;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    public void setPeriodMillis(long periodMillis) {
+        this.periodMillis = periodMillis;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+
+    public void setExecutions(long executions) {
+        this.executions = executions;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(long skipped) {
+        this.skipped = skipped;
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    public void setOverruns(long overruns) {
+        this.overruns = overruns;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public void setErrors(long errors) {
+        this.errors = errors;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public long getLastErrorTime() {
+        return lastErrorTime;
+    }
+
+    public void setLastErrorTime(long lastErrorTime) {
+        this.lastErrorTime = lastErrorTime;
+    }
+
+    public long getLastStartTime() {
+        return lastStartTime;
+    }
+
+    public void setLastStartTime(long lastStartTime) {
+        this.lastStartTime = lastStartTime;
+    }
+
+    public double getLastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    public void setLastDurationMillis(double lastDurationMillis) {
+        this.lastDurationMillis = lastDurationMillis;
+    }
+
+    public double getDurationMeanMillis() {
+        return durationMeanMillis;
+    }
+
+    public void setDurationMeanMillis(double durationMeanMillis) {
+        this.durationMeanMillis = durationMeanMillis;
+    }
+
+    public double getDurationP99Millis() {
+        return durationP99Millis;
+    }
+
+    public void setDurationP99Millis(double durationP99Millis) {
+        this.durationP99Millis = durationP99Millis;
+    }
+
+    public double getDurationMaxMillis() {
+        return durationMaxMillis;
+    }
+
+    public void setDurationMaxMillis(double durationMaxMillis) {
+        this.durationMaxMillis = durationMaxMillis;
+    }
+
+    public double getLagMeanMillis() {
+        return lagMeanMillis;
+    }
+
+    public void setLagMeanMillis(double lagMeanMillis) {
+        this.lagMeanMillis = lagMeanMillis;
+    }
+
+    public double getLagP99Millis() {
+        return lagP99Millis;
+    }
+
+    public void setLagP99Millis(double lagP99Millis) {
+        this.lagP99Millis = lagP99Millis;
+    }
+
+    public double getLagMaxMillis() {
+        return lagMaxMillis;
+    }
+
+    public void setLagMaxMillis(double lagMaxMillis) {
+        this.lagMaxMillis = lagMaxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskStatistics{" +
+                "applianceId='" + applianceId + '\'' +
+                ", taskName='" + taskName + '\'' +
+                ", executions=" + executions +
+                ", skipped=" + skipped +
+                ", overruns=" + overruns +
+                ", errors=" + errors +
+                ", durationMaxMillis=" + durationMaxMillis +
+                ", lagMaxMillis=" + lagMaxMillis +
+                '}';
+    }
+}
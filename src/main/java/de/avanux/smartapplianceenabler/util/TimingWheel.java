@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timing wheel with a fixed tick. Each item is stored in the slot of the tick on which it becomes due.
+ * Advancing the wheel only visits the slots of the elapsed ticks, i.e. the cost of a tick does not depend on the
+ * number of items which are not due. Items due after more than one revolution of the wheel remain in their slot
+ * until their tick has been reached.
+ * <p>
+ * Time is measured in ticks since the epoch so that items with the same deadline tick become due on the same tick.
+ */
+public class TimingWheel<T> {
+    private final long tickMillis;
+    private final List<Entry<T>>[] slots;
+    private final int mask;
+    // the last tick processed
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis the duration of a tick
+     * @param wheelSize the number of slots which is rounded up to the next power of two
+     * @param nowMillis the current time in epoch millis
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int wheelSize, long nowMillis) {
+        int powerOfTwoSize = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.tickMillis = Math.max(tickMillis, 1);
+        this.slots = new List[powerOfTwoSize];
+        for(int i=0; i<powerOfTwoSize; i++) {
+            this.slots[i] = new ArrayList<>();
+        }
+        this.mask = powerOfTwoSize - 1;
+        this.currentTick = nowMillis / this.tickMillis;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public synchronized long getCurrentTick() {
+        return currentTick;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the tick of a time rounded up to the next tick.
+     */
+    public long toTick(long millis) {
+        return Math.floorDiv(millis + tickMillis - 1, tickMillis);
+    }
+
+    /**
+     * Adds an item which becomes due on the given tick or on the next tick, if the given tick has already been
+     * processed.
+     * @return the tick on which the item becomes due
+     */
+    public synchronized long add(T item, long deadlineTick) {
+        long tick = Math.max(deadlineTick, currentTick + 1);
+        slots[(int) (tick & mask)].add(new Entry<>(item, tick));
+        size++;
+        return tick;
+    }
+
+    /**
+     * Processes all ticks up to the given time and returns the items having become due.
+     * @param nowMillis the current time in epoch millis
+     * @param dueItems the list to which the due items are added
+     * @return the tick processed last
+     */
+    public synchronized long advance(long nowMillis, List<T> dueItems) {
+        long nowTick = Math.floorDiv(nowMillis, tickMillis);
+        // each slot has to be visited at most once even if the wheel was not advanced for more than one revolution
+        long lastTick = Math.min(nowTick, currentTick + slots.length);
+        for(long tick = currentTick + 1; tick <= lastTick; tick++) {
+            Iterator<Entry<T>> iterator = slots[(int) (tick & mask)].iterator();
+            while(iterator.hasNext()) {
+                Entry<T> entry = iterator.next();
+                if(entry.deadlineTick <= nowTick) {
+                    dueItems.add(entry.item);
+                    iterator.remove();
+                    size--;
+                }
+            }
+        }
+        if(nowTick > currentTick) {
+            currentTick = nowTick;
+        }
+        return currentTick;
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private final long deadlineTick;
+
+        Entry(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable extractor of a value from a text compiled once from the extraction regex and the factor of a read value.
+ * <p>
+ * The regular expression has to contain a capture group containing the value. If it is null or does not match, the
+ * whole text is used. Numbers are parsed directly from the character range of the text accepting a decimal comma
+ * instead of a decimal point. Instances are thread-safe and can be shared between polling threads.
+ */
+public class ValueExtractor {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // mantissas up to this value are represented exactly by a double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private final Pattern pattern;
+    // compiled without DOTALL since the full match has to behave like String.matches
+    private final Pattern fullMatchPattern;
+    private final double factorToValue;
+
+    private ValueExtractor(String regex, double factorToValue) {
+        this.pattern = regex != null ? Pattern.compile(regex, Pattern.DOTALL) : null;
+        this.fullMatchPattern = regex != null ? Pattern.compile(regex) : null;
+        this.factorToValue = factorToValue;
+    }
+
+    /**
+     * Compiles an extractor.
+     * @param regex the regular expression to be used to extract the value; may be null
+     * @param factorToValue the factor the extracted number is multiplied with; may be null
+     */
+    public static ValueExtractor compile(String regex, Double factorToValue) {
+        return new ValueExtractor(regex, factorToValue != null ? factorToValue : 1.0);
+    }
+
+    public String getRegex() {
+        return pattern != null ? pattern.pattern() : null;
+    }
+
+    /**
+     * Returns true, if the regular expression is found in the text.
+     * @return false, if there is no regular expression
+     */
+    public boolean isMatch(CharSequence text) {
+        return pattern != null && pattern.matcher(text).find();
+    }
+
+    /**
+     * Returns true, if the regular expression matches the entire text. Unlike {@link #isMatch(CharSequence)} the
+     * dot does not match line terminators, i.e. the result is the same as {@link String#matches(String)}.
+     * @return false, if there is no regular expression
+     */
+    public boolean isFullMatch(CharSequence text) {
+        return fullMatchPattern != null && fullMatchPattern.matcher(text).matches();
+    }
+
+    /**
+     * Returns the extracted number multiplied with the factor.
+     * @throws NumberFormatException if the extracted text is not a number
+     */
+    public double getDoubleValue(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        if(pattern != null) {
+            Matcher matcher = pattern.matcher(text);
+            if(matcher.find() && matcher.start(1) >= 0) {
+                start = matcher.start(1);
+                end = matcher.end(1);
+            }
+        }
+        return parseDouble(text, start, end) * factorToValue;
+    }
+
+    public float getFloatValue(CharSequence text) {
+        return (float) getDoubleValue(text);
+    }
+
+    /**
+     * Parses a decimal number from a range of characters. A decimal comma is treated like a decimal point.
+     * Numbers with a mantissa of up to 15 digits and an exponent within the range of exact powers of ten are converted
+     * directly which yields the same result as {@link Double#parseDouble(String)}; other numbers are delegated to it.
+     * @param text the text containing the number
+     * @param start the index of the first character (inclusive)
+     * @param end the index of the last character (exclusive)
+     * @throws NumberFormatException if the range is not a number
+     */
+    public static double parseDouble(CharSequence text, int start, int end) {
+        while(start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while(end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int index = start;
+        boolean negative = false;
+        if(index < end && (text.charAt(index) == '-' || text.charAt(index) == '+')) {
+            negative = text.charAt(index) == '-';
+            index++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean decimalSeparator = false;
+        boolean exact = true;
+        for(; index < end; index++) {
+            char c = text.charAt(index);
+            if(c >= '0' && c <= '9') {
+                if(mantissa < MAX_EXACT_MANTISSA / 10) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if(decimalSeparator) {
+                        scale++;
+                    }
+                }
+                else {
+                    exact = false;
+                }
+                digits++;
+            }
+            else if((c == '.' || c == ',') && ! decimalSeparator) {
+                decimalSeparator = true;
+            }
+            else {
+                break;
+            }
+        }
+        if(digits == 0) {
+            return parseDoubleSlow(text, start, end);
+        }
+        if(index < end && (text.charAt(index) == 'e' || text.charAt(index) == 'E')) {
+            index++;
+            boolean negativeExponent = false;
+            if(index < end && (text.charAt(index) == '-' || text.charAt(index) == '+')) {
+                negativeExponent = text.charAt(index) == '-';
+                index++;
+            }
+            int exponent = 0;
+            int exponentDigits = 0;
+            for(; index < end && text.charAt(index) >= '0' && text.charAt(index) <= '9'; index++) {
+                exponent = Math.min(exponent * 10 + (text.charAt(index) - '0'), 1000);
+                exponentDigits++;
+            }
+            if(exponentDigits == 0) {
+                return parseDoubleSlow(text, start, end);
+            }
+            scale -= negativeExponent ? -exponent : exponent;
+        }
+        if(index < end || ! exact || scale < -22 || scale > 22) {
+            return parseDoubleSlow(text, start, end);
+        }
+        double value = scale >= 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa * POWERS_OF_TEN[-scale];
+        return negative ? -value : value;
+    }
+
+    private static double parseDoubleSlow(CharSequence text, int start, int end) {
+        return Double.parseDouble(text.subSequence(start, end).toString().replace(',', '.'));
+    }
+}
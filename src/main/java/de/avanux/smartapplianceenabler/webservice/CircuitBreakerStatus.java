@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.webservice;
+
+public class CircuitBreakerStatus {
+    private String endpoint;
+    private String state;
+    private int consecutiveFailures;
+    private long openUntil;
+    private long lastFailure;
+    private long lastSuccess;
+    private long rejectedRequests;
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public void setConsecutiveFailures(int consecutiveFailures) {
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    public long getOpenUntil() {
+        return openUntil;
+    }
+
+    public void setOpenUntil(long openUntil) {
+        this.openUntil = openUntil;
+    }
+
+    public long getLastFailure() {
+        return lastFailure;
+    }
+
+    public void setLastFailure(long lastFailure) {
+        this.lastFailure = lastFailure;
+    }
+
+    public long getLastSuccess() {
+        return lastSuccess;
+    }
+
+    public void setLastSuccess(long lastSuccess) {
+        this.lastSuccess = lastSuccess;
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests;
+    }
+
+    public void setRejectedRequests(long rejectedRequests) {
+        this.rejectedRequests = rejectedRequests;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreakerStatus{" +
+                "endpoint='" + endpoint + '\'' +
+                ", state='" + state + '\'' +
+                ", consecutiveFailures=" + consecutiveFailures +
+                ", openUntil=" + openUntil +
+                ", lastFailure=" + lastFailure +
+                ", lastSuccess=" + lastSuccess +
+                ", rejectedRequests=" + rejectedRequests +
+                '}';
+    }
+}
@@ -27,15 +27,25 @@ import de.avanux.smartapplianceenabler.control.Control;
 import de.avanux.smartapplianceenabler.control.ControlDefaults;
 import de.avanux.smartapplianceenabler.control.ev.ElectricVehicle;
 import de.avanux.smartapplianceenabler.control.ev.ElectricVehicleCharger;
+import de.avanux.smartapplianceenabler.history.Resolution;
+import de.avanux.smartapplianceenabler.history.TimeSeriesStore;
 import de.avanux.smartapplianceenabler.meter.HttpElectricityMeterDefaults;
 import de.avanux.smartapplianceenabler.meter.Meter;
 import de.avanux.smartapplianceenabler.meter.MeterDefaults;
 import de.avanux.smartapplianceenabler.meter.S0ElectricityMeterDefaults;
+import de.avanux.smartapplianceenabler.modbus.ModbusConnectionManager;
 import de.avanux.smartapplianceenabler.modbus.ModbusElectricityMeterDefaults;
+import de.avanux.smartapplianceenabler.modbus.ModbusGatewayStatistics;
+import de.avanux.smartapplianceenabler.modbus.ModbusMetrics;
 import de.avanux.smartapplianceenabler.modbus.ModbusReadDefaults;
 import de.avanux.smartapplianceenabler.modbus.ModbusTcp;
+import de.avanux.smartapplianceenabler.modbus.ModbusTransactionStatistics;
 import de.avanux.smartapplianceenabler.schedule.*;
 import de.avanux.smartapplianceenabler.semp.webservice.*;
+import de.avanux.smartapplianceenabler.util.CircuitBreaker;
+import de.avanux.smartapplianceenabler.util.CircuitBreakerRegistry;
+import de.avanux.smartapplianceenabler.util.TaskMetrics;
+import de.avanux.smartapplianceenabler.util.TaskStatistics;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
@@ -44,8 +54,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -68,6 +80,11 @@ public class SaeController {
     private static final String EV_URL = BASE_URL + "/ev";
     private static final String EVCHARGE_URL = BASE_URL + "/evcharge";
     private static final String INFO_URL = BASE_URL + "/info";
+    private static final String HISTORY_URL = BASE_URL + "/history";
+    private static final String CIRCUITBREAKERS_URL = BASE_URL + "/diagnostics/circuitbreakers";
+    private static final String MODBUS_GATEWAYS_URL = BASE_URL + "/diagnostics/modbus";
+    private static final String MODBUS_TRANSACTIONS_URL = BASE_URL + "/diagnostics/modbus/transactions";
+    private static final String TASKS_URL = BASE_URL + "/diagnostics/tasks";
     // only required for development if running via "ng serve"
     private static final String CROSS_ORIGIN_URL = "http://localhost:4200";
     private Logger logger = LoggerFactory.getLogger(SaeController.class);
@@ -887,6 +904,188 @@ public class SaeController {
         return applianceStatuses;
     }
 
+    /**
+     * Returns the power and energy history of appliances. The response is written while reading the history:
+     * {"resolution":"15m","series":[{"applianceId":"F-...","points":[[epochSecond,avgPower,minPower,maxPower,energy],...]}]}
+     * Power values are in W and energy values are the kWh consumed since the previous point or within the bucket.
+     * Values which are not finite are written as null. All parameters are validated before the response is written.
+     */
+    @RequestMapping(value = HISTORY_URL, method = RequestMethod.GET, produces = "application/json")
+    @CrossOrigin(origins = CROSS_ORIGIN_URL)
+    public void getHistory(HttpServletResponse response,
+                           @RequestParam(value = "applianceid", required = false) List<String> applianceIds,
+                           @RequestParam(value = "from", required = false) String fromString,
+                           @RequestParam(value = "to", required = false) String toString,
+                           @RequestParam(value = "resolution", required = false, defaultValue = "15m") String resolutionId
+    ) {
+        try {
+            logger.debug("Received request for history: applianceIds={} from={} to={} resolution={}",
+                    applianceIds, fromString, toString, resolutionId);
+            TimeSeriesStore timeSeriesStore = ApplianceManager.getInstance().getTimeSeriesStore();
+            if (timeSeriesStore == null) {
+                logger.error("History not available");
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            Resolution resolution = Resolution.fromId(resolutionId);
+            if (resolution == null) {
+                logger.error("Invalid resolution: {}", resolutionId);
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            LocalDateTime to;
+            LocalDateTime from;
+            try {
+                to = toString != null ? LocalDateTime.parse(toString) : LocalDateTime.now();
+                from = fromString != null ? LocalDateTime.parse(fromString) : to.minusDays(1);
+            }
+            catch (DateTimeParseException e) {
+                logger.error("Invalid time range: from={} to={}", fromString, toString);
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            if (from.isAfter(to)) {
+                logger.error("Invalid time range: from={} is after to={}", from, to);
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            long fromEpochSecond = from.atZone(ZoneId.systemDefault()).toEpochSecond();
+            long toEpochSecond = to.atZone(ZoneId.systemDefault()).toEpochSecond();
+            if (applianceIds == null) {
+                applianceIds = new ArrayList<>();
+                for (Appliance appliance : ApplianceManager.getInstance().getAppliances()) {
+                    applianceIds.add(appliance.getId());
+                }
+            }
+            else {
+                for (String applianceId : applianceIds) {
+                    if (ApplianceManager.getInstance().findAppliance(applianceId) == null) {
+                        logger.error("{}: Appliance not found", applianceId);
+                        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                        return;
+                    }
+                }
+            }
+
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            PrintWriter writer = response.getWriter();
+            writer.write("{\"resolution\":\"" + resolution.getId() + "\",\"series\":[");
+            for (int i = 0; i < applianceIds.size(); i++) {
+                String applianceId = applianceIds.get(i);
+                writer.write((i > 0 ? "," : "") + "{\"applianceId\":\"" + applianceId + "\",\"points\":[");
+                boolean[] firstPoint = {true};
+                timeSeriesStore.query(applianceId, fromEpochSecond, toEpochSecond, resolution,
+                        (epochSecond, averagePower, minPower, maxPower, energy) -> {
+                            if (! firstPoint[0]) {
+                                writer.write(',');
+                            }
+                            firstPoint[0] = false;
+                            writer.write('[');
+                            writer.print(epochSecond);
+                            writer.write(',');
+                            printHistoryValue(writer, averagePower);
+                            writer.write(',');
+                            printHistoryValue(writer, minPower);
+                            writer.write(',');
+                            printHistoryValue(writer, maxPower);
+                            writer.write(',');
+                            printHistoryValue(writer, energy);
+                            writer.write(']');
+                        });
+                writer.write("]}");
+            }
+            writer.write("]}");
+            writer.flush();
+        } catch (Throwable e) {
+            logger.error("Error in " + getClass().getSimpleName(), e);
+            if (! response.isCommitted()) {
+                // discard the partial response which is still buffered
+                response.reset();
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    /**
+     * JSON does not allow NaN and Infinity.
+     */
+    private void printHistoryValue(PrintWriter writer, float value) {
+        if (Float.isFinite(value)) {
+            writer.print(value);
+        }
+        else {
+            writer.write("null");
+        }
+    }
+
+    /**
+     * Returns the state of the circuit breakers of all device endpoints (host:port).
+     * Timestamps are epoch millis; 0 if not applicable.
+     */
+    @RequestMapping(value = CIRCUITBREAKERS_URL, method = RequestMethod.GET, produces = "application/json")
+    @CrossOrigin(origins = CROSS_ORIGIN_URL)
+    public List<CircuitBreakerStatus> getCircuitBreakerStatus() {
+        try {
+            logger.debug("Received request for CircuitBreakerStatus");
+            List<CircuitBreakerStatus> statuses = new ArrayList<>();
+            for (CircuitBreaker circuitBreaker : CircuitBreakerRegistry.getInstance().getCircuitBreakers()) {
+                CircuitBreakerStatus status = new CircuitBreakerStatus();
+                status.setEndpoint(circuitBreaker.getEndpoint());
+                status.setState(circuitBreaker.getState().name());
+                status.setConsecutiveFailures(circuitBreaker.getConsecutiveFailures());
+                status.setOpenUntil(circuitBreaker.getOpenUntilMillis());
+                status.setLastFailure(circuitBreaker.getLastFailureMillis());
+                status.setLastSuccess(circuitBreaker.getLastSuccessMillis());
+                status.setRejectedRequests(circuitBreaker.getRejectedRequests());
+                statuses.add(status);
+            }
+            return statuses;
+        } catch (Throwable e) {
+            logger.error("Error in " + getClass().getSimpleName(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the connection and transaction statistics of all ModBus TCP gateways.
+     */
+    @RequestMapping(value = MODBUS_GATEWAYS_URL, method = RequestMethod.GET, produces = "application/json")
+    @CrossOrigin(origins = CROSS_ORIGIN_URL)
+    public List<ModbusGatewayStatistics> getModbusGatewayStatistics() {
+        try {
+            logger.debug("Received request for ModbusGatewayStatistics");
+            return ModbusConnectionManager.getInstance().getStatistics();
+        } catch (Throwable e) {
+            logger.error("Error in " + getClass().getSimpleName(), e);
+        }
+        return null;
+    }
+
+    @RequestMapping(value = MODBUS_TRANSACTIONS_URL, method = RequestMethod.GET, produces = "application/json")
+    @CrossOrigin(origins = CROSS_ORIGIN_URL)
+    public List<ModbusTransactionStatistics> getModbusTransactionStatistics() {
+        try {
+            logger.debug("Received request for ModbusTransactionStatistics");
+            return ModbusMetrics.getInstance().getTransactionStatistics();
+        } catch (Throwable e) {
+            logger.error("Error in " + getClass().getSimpleName(), e);
+        }
+        return null;
+    }
+
+    @RequestMapping(value = TASKS_URL, method = RequestMethod.GET, produces = "application/json")
+    @CrossOrigin(origins = CROSS_ORIGIN_URL)
+    public List<TaskStatistics> getTaskStatistics() {
+        try {
+            logger.debug("Received request for TaskStatistics");
+            return TaskMetrics.getInstance().getTaskStatistics();
+        } catch (Throwable e) {
+            logger.error("Error in " + getClass().getSimpleName(), e);
+        }
+        return null;
+    }
+
     @RequestMapping(value = INFO_URL, method = RequestMethod.GET, produces = "application/json")
     @CrossOrigin(origins = CROSS_ORIGIN_URL)
     public Info getInfo() {
@@ -165,6 +165,26 @@ public class EVModbusControlPhoenixContactTest {
         assertFalse(this.evModbusControl.isCharging());
     }
 
+    @Test
+    public void getStatus_C() {
+        this.readStringTestingExecutor.setValue("C");
+        EVChargerStatus status = this.evModbusControl.getStatus();
+        assertFalse(status.isVehicleNotConnected());
+        assertFalse(status.isVehicleConnected());
+        assertTrue(status.isCharging());
+        assertFalse(status.isInErrorState());
+    }
+
+    @Test
+    public void getStatus_E() {
+        this.readStringTestingExecutor.setValue("E");
+        EVChargerStatus status = this.evModbusControl.getStatus();
+        assertFalse(status.isVehicleNotConnected());
+        assertFalse(status.isVehicleConnected());
+        assertFalse(status.isCharging());
+        assertTrue(status.isInErrorState());
+    }
+
     @Test
     public void setChargeCurrent() {
         int chargeCurrent = 13;
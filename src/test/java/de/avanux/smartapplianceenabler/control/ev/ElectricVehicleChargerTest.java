@@ -57,6 +57,7 @@ public class ElectricVehicleChargerTest {
         ev.setId(1);
         ev.setBatteryCapacity(40000);
 
+        when(evChargerControl.getStatus()).thenCallRealMethod();
         evCharger.startChargingStateDetectionDelay = 0;
         evCharger.setControl(evChargerControl);
         evCharger.setApplianceId(applianceId);
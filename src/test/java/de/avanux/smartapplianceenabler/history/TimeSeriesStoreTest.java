@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.avanux.smartapplianceenabler.history;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeSeriesStoreTest {
+
+    private static final String APPLIANCE_ID = "F-00000001-000000000001-00";
+    private File homeDir;
+    private TimeSeriesStore store;
+    private LocalDate day = LocalDate.of(2020, 6, 1);
+
+    public TimeSeriesStoreTest() throws Exception {
+        homeDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        homeDir.deleteOnExit();
+        store = new TimeSeriesStore(homeDir.getAbsolutePath());
+    }
+
+    @Test
+    public void record() throws Exception {
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 0)), 1000);
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 30)), 2000);
+        store.record(APPLIANCE_ID, toMillis(day.atTime(11, 0)), 0);
+        store.flush();
+
+        TimeSeriesSegment segment = TimeSeriesSegment.openForRead(store.getSegmentFile(APPLIANCE_ID, day));
+        assertEquals(3, segment.getRecordCount());
+        assertEquals(toMillis(day.atTime(10, 30)) / 1000, segment.getEpochSecond(1));
+        assertEquals(2000.0f, segment.getPower(1), 0.01f);
+        assertEquals(0.5f, segment.getEnergy(1), 0.001f);
+        assertEquals(1.5f, segment.getEnergy(2), 0.001f);
+    }
+
+    @Test
+    public void record_onlyOneRecordPerSecond() throws Exception {
+        long timestamp = toMillis(day.atTime(10, 0));
+        store.record(APPLIANCE_ID, timestamp, 1000);
+        store.record(APPLIANCE_ID, timestamp + 500, 1000);
+        TimeSeriesSegment segment = TimeSeriesSegment.openForRead(store.getSegmentFile(APPLIANCE_ID, day));
+        assertEquals(1, segment.getRecordCount());
+    }
+
+    @Test
+    public void record_newSegmentPerDay() throws Exception {
+        store.record(APPLIANCE_ID, toMillis(day.atTime(23, 0)), 1000);
+        store.record(APPLIANCE_ID, toMillis(day.plusDays(1).atTime(1, 0)), 1000);
+        assertEquals(1, TimeSeriesSegment.openForRead(store.getSegmentFile(APPLIANCE_ID, day)).getRecordCount());
+        TimeSeriesSegment segment = TimeSeriesSegment.openForRead(store.getSegmentFile(APPLIANCE_ID, day.plusDays(1)));
+        assertEquals(1, segment.getRecordCount());
+        assertEquals(0.0f, segment.getEnergy(0), 0.001f);
+    }
+
+    @Test
+    public void record_energyContinuedAfterRestart() throws Exception {
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 0)), 1000);
+        store.record(APPLIANCE_ID, toMillis(day.atTime(11, 0)), 1000);
+        store.flush();
+
+        TimeSeriesStore restartedStore = new TimeSeriesStore(homeDir.getAbsolutePath());
+        restartedStore.record(APPLIANCE_ID, toMillis(day.atTime(12, 0)), 1000);
+        restartedStore.record(APPLIANCE_ID, toMillis(day.atTime(13, 0)), 1000);
+        TimeSeriesSegment segment = TimeSeriesSegment.openForRead(store.getSegmentFile(APPLIANCE_ID, day));
+        assertEquals(4, segment.getRecordCount());
+        assertEquals(2.0f, segment.getEnergy(3), 0.001f);
+    }
+
+    @Test
+    public void record_expiredSegmentsDeleted() throws Exception {
+        store.setRetentionDays(2);
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 0)), 1000);
+        store.record(APPLIANCE_ID, toMillis(day.plusDays(1).atTime(10, 0)), 1000);
+        assertTrue(store.getSegmentFile(APPLIANCE_ID, day).exists());
+        store.record(APPLIANCE_ID, toMillis(day.plusDays(2).atTime(10, 0)), 1000);
+        assertFalse(store.getSegmentFile(APPLIANCE_ID, day).exists());
+        assertTrue(store.getSegmentFile(APPLIANCE_ID, day.plusDays(1)).exists());
+    }
+
+    @Test
+    public void record_integrationLimitedAfterLongGap() throws Exception {
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 0)), 2000, 60);
+        // pulse meters do not notify between switching off and the next pulse
+        store.record(APPLIANCE_ID, toMillis(day.atTime(13, 0)), 0, 60);
+        TimeSeriesSegment segment = TimeSeriesSegment.openForRead(store.getSegmentFile(APPLIANCE_ID, day));
+        assertEquals(2, segment.getRecordCount());
+        assertEquals(2000.0f * 60 / 3600000, segment.getEnergy(1), 0.0001f);
+    }
+
+    @Test
+    public void record_expiredRollupRecordsDeleted() throws Exception {
+        store.setRetentionDays(2);
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 0)), 1000);
+        store.record(APPLIANCE_ID, toMillis(day.plusDays(1).atTime(10, 0)), 1000);
+        store.record(APPLIANCE_ID, toMillis(day.plusDays(2).atTime(10, 0)), 1000);
+        store.flush();
+        List<double[]> points = query(day.atStartOfDay(), day.plusDays(2).atTime(23, 59), Resolution.DAY);
+        assertEquals(2, points.size());
+        assertEquals(toMillis(day.plusDays(1).atStartOfDay()) / 1000, (long) points.get(0)[0]);
+        assertEquals(toMillis(day.plusDays(2).atStartOfDay()) / 1000, (long) points.get(1)[0]);
+    }
+
+    @Test
+    public void record_openRetriedAfterError() throws Exception {
+        File segmentFile = store.getSegmentFile(APPLIANCE_ID, day);
+        // a directory in place of the segment file makes opening fail
+        assertTrue(segmentFile.mkdirs());
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 0)), 1000);
+        assertTrue(segmentFile.delete());
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 1)), 1000);
+        assertEquals(1, TimeSeriesSegment.openForRead(segmentFile).getRecordCount());
+    }
+
+    @Test
+    public void query_raw() throws Exception {
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 0)), 1000);
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 30)), 2000);
+        store.record(APPLIANCE_ID, toMillis(day.atTime(11, 0)), 0);
+        List<double[]> points = query(day.atTime(10, 15), day.atTime(11, 0), Resolution.RAW);
+        assertEquals(2, points.size());
+        assertEquals(toMillis(day.atTime(10, 30)) / 1000, (long) points.get(0)[0]);
+        assertEquals(2000.0, points.get(0)[1], 0.01);
+        assertEquals(0.5, points.get(0)[4], 0.001);
+        assertEquals(1.0, points.get(1)[4], 0.001);
+    }
+
+    @Test
+    public void query_rollup() throws Exception {
+        for(int minute = 0; minute < 60; minute++) {
+            store.record(APPLIANCE_ID, toMillis(day.atTime(10, minute)), minute < 35 ? 1000 : 3000);
+        }
+        store.record(APPLIANCE_ID, toMillis(day.atTime(11, 0)), 0);
+
+        List<double[]> points = query(day.atTime(10, 0), day.atTime(10, 59), Resolution.QUARTER_HOUR);
+        assertEquals(4, points.size());
+        assertEquals(toMillis(day.atTime(10, 15)) / 1000, (long) points.get(1)[0]);
+        assertEquals(1000.0, points.get(1)[1], 0.01);
+        assertEquals(1000.0, points.get(1)[2], 0.01);
+        assertEquals(1000.0, points.get(1)[3], 0.01);
+        assertEquals(0.25, points.get(1)[4], 0.001);
+        assertEquals(2333.33, points.get(2)[1], 0.01);
+        assertEquals(1000.0, points.get(2)[2], 0.01);
+        assertEquals(3000.0, points.get(2)[3], 0.01);
+
+        points = query(day.atTime(0, 0), day.atTime(23, 59), Resolution.DAY);
+        assertEquals(1, points.size());
+        assertEquals(toMillis(day.atStartOfDay()) / 1000, (long) points.get(0)[0]);
+        assertEquals(1.8333, points.get(0)[4], 0.001);
+    }
+
+    @Test
+    public void query_rollupWeightedByDuration() throws Exception {
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 0)), 1000);
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 50)), 3000);
+        store.record(APPLIANCE_ID, toMillis(day.atTime(11, 0)), 0);
+        List<double[]> points = query(day.atTime(10, 0), day.atTime(10, 59), Resolution.HOUR);
+        assertEquals(1, points.size());
+        assertEquals(1333.33, points.get(0)[1], 0.01);
+    }
+
+    @Test
+    public void query_rollupAfterRestart() throws Exception {
+        store.record(APPLIANCE_ID, toMillis(day.atTime(10, 0)), 1000);
+        store.flush();
+        TimeSeriesStore restartedStore = new TimeSeriesStore(homeDir.getAbsolutePath());
+        restartedStore.record(APPLIANCE_ID, toMillis(day.atTime(10, 10)), 1000);
+        restartedStore.flush();
+        List<double[]> points = query(day.atTime(10, 0), day.atTime(11, 0), Resolution.HOUR);
+        assertEquals(1, points.size());
+        assertEquals(1000.0, points.get(0)[1], 0.01);
+    }
+
+    private List<double[]> query(LocalDateTime from, LocalDateTime to, Resolution resolution) throws Exception {
+        List<double[]> points = new ArrayList<>();
+        // a new store reads the segments from disk
+        new TimeSeriesStore(homeDir.getAbsolutePath()).query(APPLIANCE_ID, toMillis(from) / 1000, toMillis(to) / 1000,
+                resolution, (epochSecond, averagePower, minPower, maxPower, energy)
+                        -> points.add(new double[] {epochSecond, averagePower, minPower, maxPower, energy}));
+        return points;
+    }
+
+    private long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -80,31 +80,31 @@ public class EVHttpControlTest {
 
     @Test
     public void isVehicleNotConnected() {
-        Mockito.doReturn("{ \"car\": \"1\" }").when(executorMock).executeGet(Mockito.any());
+        Mockito.doReturn("{ \"car\": \"1\" }").when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
         assertTrue(this.control.isVehicleNotConnected());
     }
 
     @Test
     public void isVehicleConnected() {
-        Mockito.doReturn("{ \"car\": \"3\" }").when(executorMock).executeGet(Mockito.any());
+        Mockito.doReturn("{ \"car\": \"3\" }").when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
         assertTrue(this.control.isVehicleConnected());
     }
 
     @Test
     public void isCharging() {
-        Mockito.doReturn("{ \"car\": \"2\" }").when(executorMock).executeGet(Mockito.any());
+        Mockito.doReturn("{ \"car\": \"2\" }").when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
         assertTrue(this.control.isCharging());
     }
 
     @Test
     public void isInErrorState_True() {
-        Mockito.doReturn("{ \"err\": \"1\" }").when(executorMock).executeGet(Mockito.any());
+        Mockito.doReturn("{ \"err\": \"1\" }").when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
         assertTrue(this.control.isInErrorState());
     }
 
     @Test
     public void isInErrorState_False() {
-        Mockito.doReturn("{ \"err\": \"0\" }").when(executorMock).executeGet(Mockito.any());
+        Mockito.doReturn("{ \"err\": \"0\" }").when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
         assertFalse(this.control.isInErrorState());
     }
 
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpRequestCoalescerTest {
+
+    private static final String URL = "http://192.168.1.1/status";
+    private HttpRequestCoalescer coalescer = new HttpRequestCoalescer();
+    private AtomicInteger requestCount = new AtomicInteger();
+
+    public HttpRequestCoalescerTest() {
+        coalescer.setFreshnessMillis(60000);
+    }
+
+    @Test
+    public void execute_responseReused() {
+        assertEquals("1", execute(URL));
+        assertEquals("1", execute(URL));
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void execute_differentRequests() {
+        assertEquals("1", execute(URL));
+        assertEquals("2", execute(URL + "?channel=2"));
+        assertEquals("3", coalescer.execute("F-001", HttpMethod.GET, URL, null, "admin", "secret",
+                () -> String.valueOf(requestCount.incrementAndGet())));
+        assertEquals(3, requestCount.get());
+    }
+
+    @Test
+    public void execute_expired() {
+        coalescer.setFreshnessMillis(0);
+        assertEquals("1", execute(URL));
+        assertEquals("2", execute(URL));
+    }
+
+    @Test
+    public void execute_failedRequestNotReused() {
+        assertNull(coalescer.execute("F-001", HttpMethod.GET, URL, null, null, null, () -> null));
+        assertEquals("1", execute(URL));
+    }
+
+    @Test
+    public void execute_requestInFlightShared() throws Exception {
+        CountDownLatch requestStarted = new CountDownLatch(1);
+        CountDownLatch responseAvailable = new CountDownLatch(1);
+        String[] responses = new String[2];
+        Thread first = new Thread(() -> responses[0] = coalescer.execute("F-001", HttpMethod.GET, URL, null, null, null,
+                () -> {
+                    requestStarted.countDown();
+                    try {
+                        responseAvailable.await();
+                    }
+                    catch(InterruptedException e) {
+                    }
+                    return String.valueOf(requestCount.incrementAndGet());
+                }));
+        first.start();
+        requestStarted.await();
+        Thread second = new Thread(() -> responses[1] = execute(URL));
+        second.start();
+        responseAvailable.countDown();
+        first.join();
+        second.join();
+        assertEquals("1", responses[0]);
+        assertEquals("1", responses[1]);
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void invalidate() {
+        assertEquals("1", execute(URL));
+        coalescer.invalidate("http://192.168.1.1/relay?turn=on");
+        assertEquals("2", execute(URL));
+    }
+
+    private String execute(String url) {
+        return coalescer.execute("F-001", HttpMethod.GET, url, null, null, null,
+                () -> String.valueOf(requestCount.incrementAndGet()));
+    }
+}
@@ -580,6 +580,7 @@ public class EVChargerTest extends TestBase {
         Mockito.when(evChargerControl.isVehicleConnected()).thenReturn(connected);
         Mockito.when(evChargerControl.isVehicleNotConnected()).thenReturn(!connected);
         Mockito.when(evChargerControl.isCharging()).thenReturn(charging);
+        Mockito.when(evChargerControl.getStatus()).thenCallRealMethod();
         if(pollEnergy != null) {
             Mockito.when(pollEnergyExecutor.pollEnergy(Mockito.any())).thenReturn(pollEnergy);
         }
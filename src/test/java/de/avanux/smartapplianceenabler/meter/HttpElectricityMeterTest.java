@@ -22,6 +22,8 @@ import de.avanux.smartapplianceenabler.TestBase;
 import de.avanux.smartapplianceenabler.http.HttpConfiguration;
 import de.avanux.smartapplianceenabler.http.HttpTransactionExecutor;
 import de.avanux.smartapplianceenabler.protocol.ContentProtocolType;
+import de.avanux.smartapplianceenabler.util.CircuitBreaker;
+import de.avanux.smartapplianceenabler.util.CircuitBreakerRegistry;
 import de.avanux.smartapplianceenabler.http.HttpRead;
 import de.avanux.smartapplianceenabler.http.HttpReadValue;
 import java.time.LocalDateTime;
@@ -29,8 +31,10 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class HttpElectricityMeterTest extends TestBase {
 
@@ -51,7 +55,7 @@ public class HttpElectricityMeterTest extends TestBase {
         HttpReadValue powerReadValue = new HttpReadValue(MeterValueName.Power.name(), null, "<?xml version=\"1.0\" encoding=\"UTF8\"?><SMARTPLUG id=\"edimax\"><CMD id=\"get\"><NOW_POWER><Device.System.Power.NowCurrent></Device.System.Power.NowCurrent><Device.System.Power.NowPower></Device.System.Power.NowPower></NOW_POWER></CMD></SMARTPLUG>", ".*NowPower.(\\d+).*", null);
         read.setReadValues(Collections.singletonList(powerReadValue));
         meter.setHttpReads(Collections.singletonList(read));
-        Mockito.doReturn(edimaxSP2101WResponse).when(executorMock).execute(Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.doReturn(edimaxSP2101WResponse).when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
         assertEquals(52.0, meter.pollPower(), 0.01);
     }
 
@@ -61,7 +65,7 @@ public class HttpElectricityMeterTest extends TestBase {
         HttpReadValue powerReadValue = new HttpReadValue(MeterValueName.Power.name(), null, null, ".*Power.:(\\d+).*", null);
         powerReadSpy.setReadValues(Collections.singletonList(powerReadValue));
         meter.setHttpReads(Collections.singletonList(powerReadSpy));
-        Mockito.doReturn(sonoffPowResponse).when(executorMock).execute(Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.doReturn(sonoffPowResponse).when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
         assertEquals(26.0, meter.pollPower(), 0.01);
     }
 
@@ -71,7 +75,7 @@ public class HttpElectricityMeterTest extends TestBase {
         HttpReadValue powerReadValue = new HttpReadValue(MeterValueName.Power.name(), null, null, ".*RealPower.*\\n(\\d+\\,\\d{2}) kW.*Energy \\(present session\\).*", null);
         powerReadSpy.setReadValues(Collections.singletonList(powerReadValue));
         meter.setHttpReads(Collections.singletonList(powerReadSpy));
-        Mockito.doReturn(keContactP30Response).when(executorMock).execute(Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.doReturn(keContactP30Response).when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
         assertEquals(12.34, meter.pollPower(), 0.01);
     }
 
@@ -89,13 +93,13 @@ public class HttpElectricityMeterTest extends TestBase {
 
         LocalDateTime timestamp = LocalDateTime.now().plusHours(1);
         String response = goEChargerStatus.replace((CharSequence) "dws\":\"0", (CharSequence) "dws\":\"2500");
-        Mockito.doReturn(response).when(executorMock).execute(Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.doReturn(response).when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
         meter.getPollEnergyMeter().addValue(timestamp); // simulate timer task
         meter.getPollPowerMeter().addValue(timestamp, meter); // simulate timer task
 
         timestamp = LocalDateTime.now().plusHours(2);
         response = goEChargerStatus.replace((CharSequence) "dws\":\"0", (CharSequence) "dws\":\"5900");
-        Mockito.doReturn(response).when(executorMock).execute(Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.doReturn(response).when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
         meter.getPollEnergyMeter().addValue(timestamp); // simulate timer task
         meter.getPollPowerMeter().addValue(timestamp, meter); // simulate timer task
 
@@ -104,6 +108,89 @@ public class HttpElectricityMeterTest extends TestBase {
         assertEquals(3400, this.meter.getMinPower());
     }
 
+    @Test
+    public void pollValues_singleRequestForPowerAndEnergy() {
+        meter.setContentProtocol(ContentProtocolType.JSON);
+        HttpRead read = new HttpRead("http://127.0.0.1:8999");
+        HttpReadValue powerReadValue = new HttpReadValue(MeterValueName.Power.name(), "$.nrg[3]", null, null, 10.0);
+        HttpReadValue energyReadValue = new HttpReadValue(MeterValueName.Energy.name(), "$.dws", null, null, 0.001);
+        read.setReadValues(Arrays.asList(powerReadValue, energyReadValue));
+        meter.setHttpReads(Collections.singletonList(read));
+        meter.start(LocalDateTime.now(), null);
+
+        String response = goEChargerStatus.replace((CharSequence) "dws\":\"0", (CharSequence) "dws\":\"2500");
+        Mockito.doReturn(response).when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
+        meter.pollValues(LocalDateTime.now());
+
+        Mockito.verify(executorMock, Mockito.times(1)).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
+        assertEquals(2350, this.meter.getAveragePower());
+        assertEquals(2.5f, meter.getPollEnergyMeter().getValuesInMeasurementInterval().getLastValue(), 0.01);
+    }
+
+    @Test
+    public void pollValuesAsync() {
+        meter.setContentProtocol(ContentProtocolType.JSON);
+        HttpRead read = new HttpRead("http://127.0.0.1:8999");
+        HttpReadValue powerReadValue = new HttpReadValue(MeterValueName.Power.name(), "$.nrg[3]", null, null, 10.0);
+        read.setReadValues(Collections.singletonList(powerReadValue));
+        meter.setHttpReads(Collections.singletonList(read));
+        meter.start(LocalDateTime.now(), null);
+
+        Mockito.doReturn(CompletableFuture.completedFuture(goEChargerStatus))
+                .when(executorMock).executeReadOffloaded(Mockito.any(), Mockito.any(), Mockito.any());
+        meter.pollValuesAsync(LocalDateTime.now());
+
+        assertEquals(2350, this.meter.getAveragePower());
+    }
+
+    @Test
+    public void pollValuesAsync_failedPollDropsAveragePower() {
+        meter.setContentProtocol(ContentProtocolType.JSON);
+        HttpRead read = new HttpRead("http://127.0.0.1:8999");
+        HttpReadValue powerReadValue = new HttpReadValue(MeterValueName.Power.name(), "$.nrg[3]", null, null, 10.0);
+        read.setReadValues(Collections.singletonList(powerReadValue));
+        meter.setHttpReads(Collections.singletonList(read));
+        meter.start(LocalDateTime.now(), null);
+
+        meter.getPollPowerMeter().addValue(LocalDateTime.now(), 2000.0f);
+        assertEquals(2000, this.meter.getAveragePower());
+
+        Mockito.doReturn(CompletableFuture.failedFuture(new IllegalStateException("Connection refused")))
+                .when(executorMock).executeReadOffloaded(Mockito.any(), Mockito.any(), Mockito.any());
+        meter.pollValuesAsync(LocalDateTime.now());
+
+        assertTrue(this.meter.getAveragePower() < 2000);
+        assertEquals(0, this.meter.getMinPower());
+    }
+
+    @Test
+    public void pollValues_circuitBreakerOpenClearsPower() {
+        String url = "http://127.0.0.1:8998/status";
+        CircuitBreaker circuitBreaker = CircuitBreakerRegistry.getInstance().getCircuitBreakerForUrl(url);
+        try {
+            while(circuitBreaker.getState() != CircuitBreaker.State.OPEN) {
+                circuitBreaker.recordFailure(System.currentTimeMillis());
+            }
+            HttpElectricityMeter meter = new HttpElectricityMeter();
+            meter.setApplianceId("F-002");
+            HttpRead read = new HttpRead(url);
+            read.setReadValues(Collections.singletonList(
+                    new HttpReadValue(MeterValueName.Power.name(), null, null, ".*Power.:(\\d+).*", null)));
+            meter.setHttpReads(Collections.singletonList(read));
+            meter.init();
+            meter.start(LocalDateTime.now(), null);
+
+            meter.getPollPowerMeter().addValue(LocalDateTime.now(), 2000.0f);
+            meter.pollValues(LocalDateTime.now());
+
+            assertTrue(meter.getAveragePower() < 2000);
+            assertEquals(0, meter.getMinPower());
+        }
+        finally {
+            CircuitBreakerRegistry.getInstance().clear();
+        }
+    }
+
     @Test
     public void getEnergy_Initial() {
         assertEquals(0.0f, this.meter.getEnergy(), 0.01);
@@ -118,54 +205,56 @@ public class HttpElectricityMeterTest extends TestBase {
         meter.setHttpReads(Collections.singletonList(energyReadSpy));
 
         String startResponse = goEChargerStatus.replace((CharSequence) "dws\":\"0", (CharSequence) "dws\":\"2500");
-        Mockito.doReturn(startResponse).when(executorMock).execute(Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.doReturn(startResponse).when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
 
         this.meter.startEnergyMeter();
         String stopResponse = goEChargerStatus.replace((CharSequence) "dws\":\"0", (CharSequence) "dws\":\"5900");
-        Mockito.doReturn(stopResponse).when(executorMock).execute(Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.doReturn(stopResponse).when(executorMock).executeRead(Mockito.any(), Mockito.any(), Mockito.any());
         this.meter.stopEnergyMeter();
 
         assertEquals(3.4f, this.meter.getEnergy(), 0.01);
     }
 
     @Test
-    public void calculatePower_2energyValues() {
-        TreeMap<LocalDateTime, Float> energyValues = new TreeMap<>();
-        LocalDateTime now = LocalDateTime.now();
-        energyValues.put(now.plusHours(1), 5.0f); // after 1h: 5 kWh
-        energyValues.put(now.plusHours(2), 8.0f); // after 2h: 8 kWh
+    public void pollPower_calculatedFromEnergy() {
+        LocalDateTime now = startMeterWithoutPowerRead();
+        meter.getPollEnergyMeter().addValue(now.plusHours(1), 5.0f); // after 1h: 5 kWh
+        meter.getPollEnergyMeter().addValue(now.plusHours(2), 8.0f); // after 2h: 8 kWh
 
-        List<Float> powerValues = this.meter.calculatePower(energyValues);
-        assertEquals(1, powerValues.size());
-        assertEquals(3000, powerValues.get(0).floatValue(), 0.01);
+        assertEquals(3000, meter.pollPower(), 0.01);
     }
 
     @Test
-    public void calculatePower_4energyValues() {
-        TreeMap<LocalDateTime, Float> energyValues = new TreeMap<>();
-        LocalDateTime now = LocalDateTime.now();
-        energyValues.put(now.plusHours(1), 5.0f);  // after 1h: 5 kWh
-        energyValues.put(now.plusHours(2), 8.0f);  // after 2h: 8 kWh
-        energyValues.put(now.plusHours(3), 12.0f); // after 3h: 12 kWh
-        energyValues.put(now.plusHours(4), 17.0f); // after 4h: 17 kWh
-
-        List<Float> powerValues = this.meter.calculatePower(energyValues);
-        assertEquals(3, powerValues.size());
-        assertEquals(3000, powerValues.get(0).floatValue(), 0.01);
-        assertEquals(4000, powerValues.get(1).floatValue(), 0.01);
-        assertEquals(5000, powerValues.get(2).floatValue(), 0.01);
+    public void pollPower_calculatedFromLastEnergyValues() {
+        LocalDateTime now = startMeterWithoutPowerRead();
+        meter.getPollEnergyMeter().addValue(now.plusHours(1), 5.0f);  // after 1h: 5 kWh
+        meter.getPollEnergyMeter().addValue(now.plusHours(2), 8.0f);  // after 2h: 8 kWh
+        meter.getPollEnergyMeter().addValue(now.plusHours(3), 12.0f); // after 3h: 12 kWh
+        assertEquals(4000, meter.pollPower(), 0.01);
+
+        meter.getPollEnergyMeter().addValue(now.plusHours(4), 17.0f); // after 4h: 17 kWh
+        assertEquals(5000, meter.pollPower(), 0.01);
     }
 
     @Test
-    public void calculatePower_afterReset() {
-        TreeMap<LocalDateTime, Float> energyValues = new TreeMap<>();
-        LocalDateTime now = LocalDateTime.now();
-        energyValues.put(now.plusHours(1), 5.0f); // after 1h: 5 kWh
-        energyValues.put(now.plusHours(1).plusSeconds(10), 0.0f); // after 1h and 10s: 0 kWh
+    public void pollPower_calculatedFromEnergyAfterReset() {
+        LocalDateTime now = startMeterWithoutPowerRead();
+        meter.getPollEnergyMeter().addValue(now.plusHours(1), 5.0f); // after 1h: 5 kWh
+        meter.getPollEnergyMeter().addValue(now.plusHours(1).plusSeconds(10), 0.0f); // after 1h and 10s: 0 kWh
 
-        List<Float> powerValues = this.meter.calculatePower(energyValues);
-        assertEquals(1, powerValues.size());
-        assertEquals(0, powerValues.get(0).floatValue(), 0.01);
+        assertEquals(0, meter.pollPower(), 0.01);
+    }
+
+    private LocalDateTime startMeterWithoutPowerRead() {
+        meter.setContentProtocol(ContentProtocolType.JSON);
+        meter.setMeasurementInterval(7200);
+        HttpRead energyRead = new HttpRead("http://127.0.0.1:8999");
+        energyRead.setReadValues(Collections.singletonList(
+                new HttpReadValue(MeterValueName.Energy.name(), "$.dws", null, null, 0.001)));
+        meter.setHttpReads(Collections.singletonList(energyRead));
+        LocalDateTime now = LocalDateTime.now();
+        meter.start(now, null);
+        return now;
     }
 
     private final static String goEChargerStatus = "{\"version\":\"B\",\"rbc\":\"251\",\"rbt\":\"2208867\",\"car\":\"1\",\"amp\":\"10\",\"err\":\"0\",\"ast\"\n" +
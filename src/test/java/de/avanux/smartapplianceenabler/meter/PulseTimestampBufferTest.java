@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.avanux.smartapplianceenabler.meter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PulseTimestampBufferTest {
+
+    // power = POWER_FACTOR / interval in milliseconds
+    private static final double POWER_FACTOR = 1000.0;
+
+    @Test
+    public void emptyBuffer() {
+        PulseTimestampBuffer buffer = new PulseTimestampBuffer(4);
+        buffer.setMaxAgeMillis(60000);
+        assertEquals(0, buffer.size());
+        assertPower(buffer, 1000, 0.0, 0.0, 0.0);
+
+        // a single timestamp does not make an interval
+        buffer.add(1000);
+        assertEquals(1, buffer.size());
+        assertPower(buffer, 1000, 0.0, 0.0, 0.0);
+    }
+
+    @Test
+    public void add_timestampNotLaterIgnored() {
+        PulseTimestampBuffer buffer = new PulseTimestampBuffer(4);
+        assertTrue(buffer.add(1000));
+        assertFalse(buffer.add(1000));
+        assertFalse(buffer.add(900));
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void wrapAround_oldestTimestampsOverwritten() {
+        PulseTimestampBuffer buffer = new PulseTimestampBuffer(4);
+        buffer.setMaxAgeMillis(1000000);
+        // intervals: 100, 200, 400, 800, 1600
+        long[] timestamps = {1000, 1100, 1300, 1700, 2500, 4100};
+        for(long timestamp : timestamps) {
+            assertTrue(buffer.add(timestamp));
+        }
+
+        // only the intervals of the last 4 timestamps remain: 400, 800, 1600
+        assertEquals(4, buffer.size());
+        assertPower(buffer, 4100, 1000.0 * (1.0 / 400 + 1.0 / 800 + 1.0 / 1600) / 3, 1000.0 / 1600, 1000.0 / 400);
+    }
+
+    @Test
+    public void wrapAround_manyTimes() {
+        PulseTimestampBuffer buffer = new PulseTimestampBuffer(3);
+        buffer.setMaxAgeMillis(1000000);
+        long timestamp = 0;
+        for(int i = 0; i < 100; i++) {
+            timestamp += i < 90 ? 100 : 500;
+            buffer.add(timestamp);
+        }
+
+        assertEquals(3, buffer.size());
+        assertPower(buffer, timestamp, 2.0, 2.0, 2.0);
+    }
+
+    @Test
+    public void expiry_timestampAtWindowEdgeIncluded() {
+        PulseTimestampBuffer buffer = new PulseTimestampBuffer(8);
+        buffer.setMaxAgeMillis(1000);
+        // intervals: 1000, 400, 600, 400
+        for(long timestamp : new long[] {9000, 10000, 10400, 11000, 11400}) {
+            buffer.add(timestamp);
+        }
+
+        // 10400 is exactly max age old: intervals 600 and 400
+        assertPower(buffer, 11400, 1000.0 * (1.0 / 600 + 1.0 / 400) / 2, 1000.0 / 600, 1000.0 / 400);
+        // 10400 is expired: interval 400 only
+        assertPower(buffer, 11401, 2.5, 2.5, 2.5);
+    }
+
+    @Test
+    public void expiry_lastIntervalUntilOverdue() {
+        PulseTimestampBuffer buffer = new PulseTimestampBuffer(8);
+        buffer.setMaxAgeMillis(300);
+        buffer.add(10000);
+        buffer.add(10400);
+
+        // all timestamps expired but the next impulse is not overdue
+        assertPower(buffer, 10900, 2.5, 2.5, 2.5);
+        // no impulse for more than 1.5 times the last interval
+        assertPower(buffer, 11001, 0.0, 0.0, 0.0);
+    }
+
+    private void assertPower(PulseTimestampBuffer buffer, long timestampNow, double average, double min, double max) {
+        assertEquals(average, buffer.getAveragePower(timestampNow, POWER_FACTOR), 0.0001);
+        assertEquals(min, buffer.getMinPower(timestampNow, POWER_FACTOR), 0.0001);
+        assertEquals(max, buffer.getMaxPower(timestampNow, POWER_FACTOR), 0.0001);
+    }
+}
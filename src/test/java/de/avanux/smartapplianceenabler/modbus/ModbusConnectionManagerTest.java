@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModbusConnectionManagerTest {
+    private ModbusConnectionManager connectionManager = new ModbusConnectionManager();
+    private TestingModbusTcp modbusTcp = new TestingModbusTcp();
+
+    @Test
+    public void execute_reusesConnection() throws Exception {
+        List<TCPMasterConnection> usedConnections = new ArrayList<>();
+        connectionManager.execute("F-001", modbusTcp, usedConnections::add, true);
+        connectionManager.execute("F-002", modbusTcp, usedConnections::add, true);
+
+        assertEquals(1, modbusTcp.connections.size());
+        assertSame(usedConnections.get(0), usedConnections.get(1));
+        assertTrue(modbusTcp.connections.get(0).isConnected());
+        ModbusGatewayStatistics statistics = connectionManager.getStatistics().get(0);
+        assertEquals("gateway", statistics.getId());
+        assertEquals(1, statistics.getConnects());
+        assertEquals(2, statistics.getTransactions());
+        assertEquals(1, statistics.getIdleConnections());
+    }
+
+    @Test
+    public void execute_retriesFailedReusedConnection() throws Exception {
+        connectionManager.execute("F-001", modbusTcp, connection -> {}, true);
+        List<TCPMasterConnection> usedConnections = new ArrayList<>();
+        connectionManager.execute("F-001", modbusTcp, connection -> {
+            usedConnections.add(connection);
+            if(usedConnections.size() == 1) {
+                throw new ModbusIOException("Connection reset");
+            }
+        }, true);
+
+        assertEquals(2, modbusTcp.connections.size());
+        assertFalse(modbusTcp.connections.get(0).isConnected());
+        assertSame(modbusTcp.connections.get(1), usedConnections.get(1));
+        assertEquals(1, connectionManager.getStatistics().get(0).getOpenConnections());
+    }
+
+    @Test
+    public void execute_writeOnFailedReusedConnectionNotRetried() throws Exception {
+        connectionManager.execute("F-001", modbusTcp, connection -> {}, true);
+        List<TCPMasterConnection> usedConnections = new ArrayList<>();
+        assertThrows(ModbusIOException.class, () -> connectionManager.execute("F-001", modbusTcp, connection -> {
+            usedConnections.add(connection);
+            throw new ModbusIOException("Connection reset");
+        }, false));
+
+        assertEquals(1, usedConnections.size());
+        assertEquals(1, modbusTcp.connections.size());
+        assertFalse(modbusTcp.connections.get(0).isConnected());
+        assertEquals(0, connectionManager.getStatistics().get(0).getRetries());
+    }
+
+    @Test
+    public void execute_failedNewConnectionIsClosed() {
+        assertThrows(ModbusIOException.class, () -> connectionManager.execute("F-001", modbusTcp, connection -> {
+            throw new ModbusIOException("Connection reset");
+        }, true));
+
+        assertEquals(1, modbusTcp.connections.size());
+        assertFalse(modbusTcp.connections.get(0).isConnected());
+        ModbusGatewayStatistics statistics = connectionManager.getStatistics().get(0);
+        assertEquals(0, statistics.getOpenConnections());
+        assertEquals(1, statistics.getTransactionFailures());
+    }
+
+    @Test
+    public void execute_slaveExceptionKeepsConnection() throws Exception {
+        assertThrows(ModbusSlaveException.class, () -> connectionManager.execute("F-001", modbusTcp, connection -> {
+            throw new ModbusSlaveException(2);
+        }, true));
+        connectionManager.execute("F-001", modbusTcp, connection -> {}, true);
+
+        assertEquals(1, modbusTcp.connections.size());
+        assertTrue(modbusTcp.connections.get(0).isConnected());
+    }
+
+    @Test
+    public void close() throws Exception {
+        connectionManager.execute("F-001", modbusTcp, connection -> {}, true);
+        connectionManager.close();
+
+        assertFalse(modbusTcp.connections.get(0).isConnected());
+        assertTrue(connectionManager.getStatistics().isEmpty());
+    }
+
+    private static class TestingModbusTcp extends ModbusTcp {
+        private List<TestingTCPMasterConnection> connections = new ArrayList<>();
+
+        TestingModbusTcp() {
+            setId("gateway");
+        }
+
+        @Override
+        public TCPMasterConnection getConnection() {
+            TestingTCPMasterConnection connection = new TestingTCPMasterConnection();
+            connections.add(connection);
+            return connection;
+        }
+    }
+
+    private static class TestingTCPMasterConnection extends TCPMasterConnection {
+        private boolean connected;
+
+        TestingTCPMasterConnection() {
+            super(InetAddress.getLoopbackAddress());
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public void close() {
+            connected = false;
+        }
+    }
+}
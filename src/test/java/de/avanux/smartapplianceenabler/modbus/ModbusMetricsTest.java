@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModbusMetricsTest {
+
+    private ModbusMetrics metrics;
+    private ModbusTcp modbusTcp;
+
+    @BeforeEach
+    public void setUp() {
+        metrics = new ModbusMetrics();
+        modbusTcp = new ModbusTcp();
+        modbusTcp.setId("modbus");
+    }
+
+    @Test
+    public void getOutcome() {
+        assertEquals(ModbusMetrics.Outcome.SUCCESS, ModbusMetrics.getOutcome(null));
+        assertEquals(ModbusMetrics.Outcome.SLAVE_EXCEPTION, ModbusMetrics.getOutcome(new ModbusSlaveException(2)));
+        assertEquals(ModbusMetrics.Outcome.TIMEOUT,
+                ModbusMetrics.getOutcome(new IOException(new SocketTimeoutException())));
+        assertEquals(ModbusMetrics.Outcome.TIMEOUT,
+                ModbusMetrics.getOutcome(new ModbusIOException("Read timed out")));
+        assertEquals(ModbusMetrics.Outcome.ERROR, ModbusMetrics.getOutcome(new IOException("Connection refused")));
+    }
+
+    @Test
+    public void getRequestBytes() {
+        assertEquals(7 + 5, ModbusMetrics.getRequestBytes(Modbus.READ_INPUT_REGISTERS, 10));
+        assertEquals(7 + 5, ModbusMetrics.getRequestBytes(Modbus.WRITE_SINGLE_REGISTER, 1));
+        assertEquals(7 + 6 + 4, ModbusMetrics.getRequestBytes(Modbus.WRITE_MULTIPLE_REGISTERS, 2));
+        assertEquals(7 + 6 + 2, ModbusMetrics.getRequestBytes(Modbus.WRITE_MULTIPLE_COILS, 9));
+    }
+
+    @Test
+    public void getResponseBytes() {
+        assertEquals(7 + 2 + 20, ModbusMetrics.getResponseBytes(Modbus.READ_MULTIPLE_REGISTERS, 10));
+        assertEquals(7 + 2 + 2, ModbusMetrics.getResponseBytes(Modbus.READ_COILS, 9));
+        assertEquals(7 + 5, ModbusMetrics.getResponseBytes(Modbus.WRITE_SINGLE_REGISTER, 1));
+    }
+
+    @Test
+    public void record() {
+        metrics.record(modbusTcp, 1, Modbus.READ_INPUT_REGISTERS, 100, 2, 10000000L, 0,
+                ModbusMetrics.Outcome.SUCCESS);
+        metrics.record(modbusTcp, 1, Modbus.READ_INPUT_REGISTERS, 100, 2, 30000000L, 1,
+                ModbusMetrics.Outcome.SLAVE_EXCEPTION);
+        metrics.record(modbusTcp, 1, Modbus.READ_INPUT_REGISTERS, 100, 2, 5000000000L, 0,
+                ModbusMetrics.Outcome.TIMEOUT);
+        metrics.record(modbusTcp, 1, Modbus.READ_INPUT_REGISTERS, 100, 2, 0, 0,
+                ModbusMetrics.Outcome.REJECTED);
+
+        List<ModbusTransactionStatistics> statistics = metrics.getTransactionStatistics();
+        assertEquals(1, statistics.size());
+        ModbusTransactionStatistics transactionStatistics = statistics.get(0);
+        assertEquals("modbus", transactionStatistics.getGateway());
+        assertEquals(4, transactionStatistics.getTransactions());
+        assertEquals(1, transactionStatistics.getSlaveExceptions());
+        assertEquals(1, transactionStatistics.getTimeouts());
+        assertEquals(0, transactionStatistics.getErrors());
+        assertEquals(1, transactionStatistics.getRejected());
+        assertEquals(1, transactionStatistics.getRetries());
+        assertEquals(4 * 12, transactionStatistics.getBytesSent());
+        assertEquals(7 + 2 + 4 + 7 + 2, transactionStatistics.getBytesReceived());
+        // timeouts are not included in the latency
+        assertEquals(30.0, transactionStatistics.getLatencyMaxMillis(), 1.0);
+        assertEquals(20.0, transactionStatistics.getLatencyMeanMillis(), 1.0);
+    }
+
+    @Test
+    public void getTransactionStatistics_sorted() {
+        metrics.record(modbusTcp, 2, Modbus.READ_INPUT_REGISTERS, 100, 2, 1000000L, 0, (Throwable) null);
+        metrics.record(modbusTcp, 1, Modbus.READ_MULTIPLE_REGISTERS, 200, 2, 1000000L, 0, (Throwable) null);
+        metrics.record(modbusTcp, 1, Modbus.READ_MULTIPLE_REGISTERS, 100, 2, 1000000L, 0, (Throwable) null);
+
+        List<ModbusTransactionStatistics> statistics = metrics.getTransactionStatistics();
+        assertEquals(3, statistics.size());
+        assertEquals(100, statistics.get(0).getRegister());
+        assertEquals(200, statistics.get(1).getRegister());
+        assertEquals(2, statistics.get(2).getSlaveAddress());
+
+        metrics.reset();
+        assertTrue(metrics.getTransactionStatistics().isEmpty());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModbusPipelineTest {
+    private ServerSocket serverSocket;
+    private ModbusPipeline pipeline;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if(pipeline != null) {
+            pipeline.close();
+        }
+        serverSocket.close();
+    }
+
+    @Test
+    public void readRegisters_responsesOutOfOrder() throws Exception {
+        startGateway(3, (requests, output) -> {
+            // respond to the last request first
+            for(int i = requests.size() - 1; i >= 0; i--) {
+                int[] request = requests.get(i);
+                writeResponse(output, request, new int[] {request[3], request[3] + 1});
+            }
+        });
+
+        CompletableFuture<int[]> first = pipeline.readRegisters("F-001", 1, false, 100, 2);
+        CompletableFuture<int[]> second = pipeline.readRegisters("F-002", 2, true, 200, 2);
+        CompletableFuture<int[]> third = pipeline.readRegisters("F-003", 3, false, 300, 2);
+
+        assertArrayEquals(new int[] {100, 101}, first.get(2, TimeUnit.SECONDS));
+        assertArrayEquals(new int[] {200, 201}, second.get(2, TimeUnit.SECONDS));
+        assertArrayEquals(new int[] {300, 301}, third.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void readRegisters_exceptionResponse() throws Exception {
+        startGateway(1, (requests, output) -> {
+            int[] request = requests.get(0);
+            output.writeShort(request[0]);
+            output.writeShort(0);
+            output.writeShort(3);
+            output.writeByte(request[1]);
+            output.writeByte(request[2] | 0x80);
+            output.writeByte(2);
+            output.flush();
+        });
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> pipeline.readRegisters("F-001", 1, false, 100, 2).get(2, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof ModbusSlaveException);
+    }
+
+    @Test
+    public void readRegisters_connectionClosed() throws Exception {
+        startGateway(1, (requests, output) -> output.close());
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> pipeline.readRegisters("F-001", 1, false, 100, 2).get(2, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IOException);
+        assertEquals(0, pipeline.getInFlight());
+    }
+
+    @Test
+    public void readRegisters_timeoutKeepsConnection() throws Exception {
+        startGateway(2, (requests, output) -> writeResponse(output, requests.get(1), new int[] {200}));
+
+        CompletableFuture<int[]> first = pipeline.readRegisters("F-001", 1, false, 100, 1);
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> first.get(ModbusPipeline.TIMEOUT_MILLIS + 2000, TimeUnit.MILLISECONDS));
+        assertTrue(exception.getCause() instanceof java.util.concurrent.TimeoutException);
+
+        // the gateway accepts only one connection
+        assertArrayEquals(new int[] {200},
+                pipeline.readRegisters("F-002", 1, false, 200, 1).get(2, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Starts a gateway which accepts one connection, reads the given number of requests and responds using
+     * the responder.
+     */
+    private void startGateway(int requestCount, Responder responder) throws IOException {
+        serverSocket = new ServerSocket(0);
+        ModbusTcp modbusTcp = new ModbusTcp();
+        modbusTcp.setId("gateway");
+        modbusTcp.setPort(serverSocket.getLocalPort());
+        modbusTcp.setMaxInFlight(requestCount);
+        pipeline = new ModbusPipeline(modbusTcp, Runnable::run);
+        Thread thread = new Thread(() -> {
+            try(Socket socket = serverSocket.accept()) {
+                DataInputStream input = new DataInputStream(socket.getInputStream());
+                DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+                List<int[]> requests = new ArrayList<>();
+                for(int i = 0; i < requestCount; i++) {
+                    int transactionId = input.readUnsignedShort();
+                    input.readUnsignedShort();
+                    input.readUnsignedShort();
+                    int unitId = input.readUnsignedByte();
+                    int functionCode = input.readUnsignedByte();
+                    int address = input.readUnsignedShort();
+                    int count = input.readUnsignedShort();
+                    requests.add(new int[] {transactionId, unitId, functionCode, address, count});
+                }
+                responder.respond(requests, output);
+                // keep the connection open until the client closes it
+                while(input.read() >= 0) {
+                }
+            }
+            catch(IOException e) {
+                // the client closed the connection
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void writeResponse(DataOutputStream output, int[] request, int[] values) throws IOException {
+        output.writeShort(request[0]);
+        output.writeShort(0);
+        output.writeShort(3 + values.length * 2);
+        output.writeByte(request[1]);
+        output.writeByte(request[2]);
+        output.writeByte(values.length * 2);
+        for(int value : values) {
+            output.writeShort(value);
+        }
+        output.flush();
+    }
+
+    private interface Responder {
+        void respond(List<int[]> requests, DataOutputStream output) throws IOException;
+    }
+}
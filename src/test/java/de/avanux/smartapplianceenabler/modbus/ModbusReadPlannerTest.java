@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import de.avanux.smartapplianceenabler.modbus.executor.ReadRegisterExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModbusReadPlannerTest {
+    private ModbusReadPlanner planner = new ModbusReadPlanner();
+    private ModbusTcp modbusTcp = new ModbusTcp();
+    private List<int[]> rangeReads = new ArrayList<>();
+
+    public ModbusReadPlannerTest() {
+        modbusTcp.setId("gateway");
+    }
+
+    @Test
+    public void plan_mergesAdjacentAndWithinMaxGap() {
+        List<ModbusReadPlanner.Range> ranges = ModbusReadPlanner.plan(Arrays.asList(
+                new int[] {0x0C, 2}, new int[] {0x00, 2}, new int[] {0x02, 2}, new int[] {0x48, 2}), 10, 125);
+        assertEquals(2, ranges.size());
+        assertRange(ranges.get(0), 0x00, 14, 3);
+        assertRange(ranges.get(1), 0x48, 2, 1);
+    }
+
+    @Test
+    public void plan_overlappingReads() {
+        List<ModbusReadPlanner.Range> ranges = ModbusReadPlanner.plan(Arrays.asList(
+                new int[] {100, 10}, new int[] {104, 2}), 0, 125);
+        assertEquals(1, ranges.size());
+        assertRange(ranges.get(0), 100, 10, 2);
+    }
+
+    @Test
+    public void plan_respectsMaxRegisters() {
+        List<ModbusReadPlanner.Range> ranges = ModbusReadPlanner.plan(Arrays.asList(
+                new int[] {0, 2}, new int[] {100, 2}, new int[] {124, 2}), 100, 125);
+        assertEquals(2, ranges.size());
+        assertRange(ranges.get(0), 0, 102, 2);
+        assertRange(ranges.get(1), 124, 2, 1);
+    }
+
+    @Test
+    public void read_coalescesRegisteredReads() throws Exception {
+        planner.register(modbusTcp, 1, modbusRead("0x0C", ReadRegisterType.InputFloat));
+        planner.register(modbusTcp, 1, modbusRead("0x00", ReadRegisterType.InputFloat));
+
+        TestingReadRegisterExecutor power = new TestingReadRegisterExecutor(0x0C, 2);
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.InputFloat, power, 5000, this::readRange);
+        TestingReadRegisterExecutor voltage = new TestingReadRegisterExecutor(0x00, 2);
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.InputFloat, voltage, 5000, this::readRange);
+
+        assertEquals(1, rangeReads.size());
+        assertArrayEquals(new int[] {0x00, 14}, rangeReads.get(0));
+        assertArrayEquals(new Integer[] {0x0C, 0x0D}, power.byteValues);
+        assertArrayEquals(new Integer[] {0x00, 0x01}, voltage.byteValues);
+    }
+
+    @Test
+    public void read_separateTablesAndSlaves() throws Exception {
+        planner.register(modbusTcp, 1, modbusRead("0", ReadRegisterType.InputFloat));
+        planner.register(modbusTcp, 1, modbusRead("2", ReadRegisterType.Holding));
+        planner.register(modbusTcp, 2, modbusRead("4", ReadRegisterType.InputFloat));
+
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.InputFloat,
+                new TestingReadRegisterExecutor(0, 2), 5000, this::readRange);
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.Holding,
+                new TestingReadRegisterExecutor(2, 2), 5000, this::readRange);
+        planner.read("F-002", modbusTcp, 2, ReadRegisterType.InputFloat,
+                new TestingReadRegisterExecutor(4, 2), 5000, this::readRange);
+
+        assertEquals(3, rangeReads.size());
+    }
+
+    @Test
+    public void read_expiredValues() throws Exception {
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.InputFloat,
+                new TestingReadRegisterExecutor(0, 2), -1, this::readRange);
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.InputFloat,
+                new TestingReadRegisterExecutor(0, 2), -1, this::readRange);
+        assertEquals(2, rangeReads.size());
+    }
+
+    @Test
+    public void read_invalidated() throws Exception {
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.InputFloat,
+                new TestingReadRegisterExecutor(0, 2), 5000, this::readRange);
+        planner.invalidate(modbusTcp, 1);
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.InputFloat,
+                new TestingReadRegisterExecutor(0, 2), 5000, this::readRange);
+        assertEquals(2, rangeReads.size());
+    }
+
+    @Test
+    public void read_rejectedRangeReadsSeparately() throws Exception {
+        planner.register(modbusTcp, 1, modbusRead("0", ReadRegisterType.InputFloat));
+        planner.register(modbusTcp, 1, modbusRead("6", ReadRegisterType.InputFloat));
+        ModbusReadPlanner.RangeReader rangeReader = (type, address, count) -> {
+            if(count > 2) {
+                return CompletableFuture.failedFuture(new ModbusSlaveException(Modbus.ILLEGAL_ADDRESS_EXCEPTION));
+            }
+            return readRange(type, address, count);
+        };
+
+        TestingReadRegisterExecutor executor = new TestingReadRegisterExecutor(6, 2);
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.InputFloat, executor, 5000, rangeReader);
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.InputFloat,
+                new TestingReadRegisterExecutor(0, 2), 5000, rangeReader);
+
+        assertEquals(2, rangeReads.size());
+        assertArrayEquals(new int[] {6, 2}, rangeReads.get(0));
+        assertArrayEquals(new Integer[] {6, 7}, executor.byteValues);
+    }
+
+    @Test
+    public void read_transientExceptionKeepsCoalescing() throws Exception {
+        planner.register(modbusTcp, 1, modbusRead("0", ReadRegisterType.InputFloat));
+        planner.register(modbusTcp, 1, modbusRead("6", ReadRegisterType.InputFloat));
+        boolean[] busy = {true};
+        ModbusReadPlanner.RangeReader rangeReader = (type, address, count) -> {
+            if(busy[0]) {
+                busy[0] = false;
+                return CompletableFuture.failedFuture(new ModbusSlaveException(Modbus.SLAVE_BUSY_EXCEPTION));
+            }
+            return readRange(type, address, count);
+        };
+
+        assertThrows(ModbusSlaveException.class, () -> planner.read("F-001", modbusTcp, 1,
+                ReadRegisterType.InputFloat, new TestingReadRegisterExecutor(0, 2), 5000, rangeReader));
+        TestingReadRegisterExecutor executor = new TestingReadRegisterExecutor(6, 2);
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.InputFloat, executor, 5000, rangeReader);
+        planner.read("F-001", modbusTcp, 1, ReadRegisterType.InputFloat,
+                new TestingReadRegisterExecutor(0, 2), 5000, rangeReader);
+
+        assertEquals(1, rangeReads.size());
+        assertArrayEquals(new int[] {0, 8}, rangeReads.get(0));
+        assertArrayEquals(new Integer[] {6, 7}, executor.byteValues);
+    }
+
+    @Test
+    public void readAsync_sharesRangeReadInProgress() throws Exception {
+        planner.register(modbusTcp, 1, modbusRead("0", ReadRegisterType.InputFloat));
+        planner.register(modbusTcp, 1, modbusRead("2", ReadRegisterType.InputFloat));
+        CompletableFuture<int[]> response = new CompletableFuture<>();
+        ModbusReadPlanner.RangeReader rangeReader = (type, address, count) -> {
+            rangeReads.add(new int[] {address, count});
+            return response;
+        };
+
+        TestingReadRegisterExecutor first = new TestingReadRegisterExecutor(0, 2);
+        CompletableFuture<Void> firstRead = planner.readAsync("F-001", modbusTcp, 1, ReadRegisterType.InputFloat,
+                first, 5000, rangeReader);
+        TestingReadRegisterExecutor second = new TestingReadRegisterExecutor(2, 2);
+        CompletableFuture<Void> secondRead = planner.readAsync("F-001", modbusTcp, 1, ReadRegisterType.InputFloat,
+                second, 5000, rangeReader);
+        assertFalse(firstRead.isDone());
+        response.complete(new int[] {10, 11, 12, 13});
+        firstRead.get();
+        secondRead.get();
+
+        assertEquals(1, rangeReads.size());
+        assertArrayEquals(new Integer[] {10, 11}, first.byteValues);
+        assertArrayEquals(new Integer[] {12, 13}, second.byteValues);
+    }
+
+    private CompletableFuture<int[]> readRange(ReadRegisterType type, int address, int count) {
+        rangeReads.add(new int[] {address, count});
+        int[] values = new int[count];
+        for(int i = 0; i < count; i++) {
+            values[i] = address + i;
+        }
+        return CompletableFuture.completedFuture(values);
+    }
+
+    private ModbusRead modbusRead(String address, ReadRegisterType type) {
+        ModbusRead read = new ModbusRead();
+        read.setAddress(address);
+        read.setType(type.name());
+        read.setBytes(2);
+        return read;
+    }
+
+    private void assertRange(ModbusReadPlanner.Range range, int address, int count, int reads) {
+        assertEquals(address, range.getAddress());
+        assertEquals(count, range.getCount());
+        assertEquals(reads, range.getReads());
+    }
+
+    private static class TestingReadRegisterExecutor implements ReadRegisterExecutor {
+        private Integer address;
+        private int bytes;
+        private Integer[] byteValues;
+
+        TestingReadRegisterExecutor(Integer address, int bytes) {
+            this.address = address;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public Integer getAddress() {
+            return address;
+        }
+
+        @Override
+        public int getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void setRegisterValues(int[] registerValues, int offset) {
+            this.byteValues = new Integer[bytes];
+            for(int i = 0; i < bytes; i++) {
+                this.byteValues[i] = registerValues[offset + i];
+            }
+        }
+    }
+}
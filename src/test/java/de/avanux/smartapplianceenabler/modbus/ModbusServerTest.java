@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus;
+
+import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
+import com.ghgande.j2mod.modbus.procimg.InputRegister;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import de.avanux.smartapplianceenabler.control.ev.EVChargerState;
+import de.avanux.smartapplianceenabler.control.ev.SocValues;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModbusServerTest {
+
+    private ModbusServer server;
+
+    @BeforeEach
+    public void setUp() {
+        server = new ModbusServer();
+        server.configure(5020, 1, 10);
+    }
+
+    private float getFloat(Register[] registers, int offset) {
+        return Float.intBitsToFloat(registers[offset].getValue() << 16 | registers[offset + 1].getValue());
+    }
+
+    @Test
+    public void register_defaultAndConfiguredAddresses() {
+        assertEquals(0, server.register("F-001", null).getAddress());
+        assertEquals(10, server.register("F-002", null).getAddress());
+        assertEquals(100, server.register("F-003", 100).getAddress());
+        assertEquals(30, server.register("F-004", null).getAddress());
+        assertEquals(100 + ModbusServer.REGISTERS_PER_BLOCK, server.getImage().getRegisterCount());
+    }
+
+    @Test
+    public void register_overlapRejected() {
+        assertNotNull(server.register("F-001", null));
+        assertNull(server.register("F-002", 5));
+        assertNotNull(server.register("F-003", ModbusServer.REGISTERS_PER_BLOCK));
+        // the default block of the fifth appliance would overlap the block at 40
+        assertNotNull(server.register("F-004", 40));
+        assertNull(server.register("F-005", null));
+    }
+
+    @Test
+    public void onPowerUpdate_powerAndSessionEnergy() {
+        ModbusServer.ApplianceRegisterBlock block = server.register("F-001", 10);
+        block.onPowerUpdate(1000000L, 1800);
+        block.onPowerUpdate(1000000L + 3600000L, 2000);
+
+        Register[] registers = server.getImage().getRegisterRange(10, ModbusServer.REGISTERS_PER_BLOCK);
+        assertEquals(2000.0f, getFloat(registers, ModbusServer.POWER_OFFSET), 0.0f);
+        assertEquals(1.8f, getFloat(registers, ModbusServer.SESSION_ENERGY_OFFSET), 0.0001f);
+    }
+
+    @Test
+    public void onPowerUpdate_sessionEnergyLimitedAfterLongGap() {
+        ModbusServer.ApplianceRegisterBlock block = server.register("F-001", 10);
+        block.setMaxIntegrationSeconds(60);
+        block.onPowerUpdate(1000000L, 1800);
+        // no update for 3 hours, e.g. S0 meter without pulses after switching off
+        block.onPowerUpdate(1000000L + 3 * 3600000L, 0);
+
+        Register[] registers = server.getImage().getRegisterRange(10, ModbusServer.REGISTERS_PER_BLOCK);
+        assertEquals(0.03f, getFloat(registers, ModbusServer.SESSION_ENERGY_OFFSET), 0.0001f);
+    }
+
+    @Test
+    public void controlAndEVChargerState() {
+        ModbusServer.ApplianceRegisterBlock block = server.register("F-001", null);
+        InputRegister[] registers = server.getImage().getInputRegisterRange(0, ModbusServer.REGISTERS_PER_BLOCK);
+        assertEquals(0, registers[ModbusServer.ON_OFFSET].getValue());
+        assertEquals(0, registers[ModbusServer.EV_CHARGER_STATE_OFFSET].getValue());
+        assertEquals(ModbusServer.SOC_UNKNOWN, registers[ModbusServer.SOC_OFFSET].getValue());
+
+        LocalDateTime now = LocalDateTime.now();
+        block.controlStateChanged(now, true);
+        block.onEVChargerStateChanged(now, EVChargerState.VEHICLE_CONNECTED, EVChargerState.CHARGING, null);
+        block.onEVChargerSocChanged(now, new SocValues(40, 20, 30, 35));
+
+        registers = server.getImage().getInputRegisterRange(0, ModbusServer.REGISTERS_PER_BLOCK);
+        assertEquals(1, registers[ModbusServer.ON_OFFSET].getValue());
+        assertEquals(ModbusServer.EV_CHARGER_STATE_CHARGING,
+                registers[ModbusServer.EV_CHARGER_STATE_OFFSET].getValue());
+        assertEquals(35, registers[ModbusServer.SOC_OFFSET].getValue());
+    }
+
+    @Test
+    public void getEVChargerStateCode() {
+        assertEquals(0, ModbusServer.getEVChargerStateCode(null));
+        assertEquals(1, ModbusServer.getEVChargerStateCode(EVChargerState.VEHICLE_NOT_CONNECTED));
+        assertEquals(2, ModbusServer.getEVChargerStateCode(EVChargerState.VEHICLE_CONNECTED));
+        assertEquals(3, ModbusServer.getEVChargerStateCode(EVChargerState.CHARGING));
+        assertEquals(4, ModbusServer.getEVChargerStateCode(EVChargerState.CHARGING_COMPLETED));
+        assertEquals(5, ModbusServer.getEVChargerStateCode(EVChargerState.ERROR));
+    }
+
+    @Test
+    public void getRegisterRange_outOfImage() {
+        server.register("F-001", null);
+        assertThrows(IllegalAddressException.class,
+                () -> server.getImage().getRegisterRange(5, ModbusServer.REGISTERS_PER_BLOCK));
+    }
+
+    @Test
+    public void getRegister_writeRejected() {
+        server.register("F-001", null);
+        assertThrows(IllegalAddressException.class, () -> server.getImage().getRegister(0));
+    }
+}
@@ -21,12 +21,22 @@ package de.avanux.smartapplianceenabler.modbus.executor;
 import com.ghgande.j2mod.modbus.ModbusException;
 import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
 
-public class ModbusReadFloatTestingExecutor implements ModbusReadTransactionExecutor<Float>, ModbusTestingExecutor {
+public class ModbusReadFloatTestingExecutor implements ReadNumericRegisterExecutor, ModbusTestingExecutor {
     @Override
-    public Float getValue() {
+    public Double getValue() {
         return null;
     }
 
+    @Override
+    public boolean hasValue() {
+        return false;
+    }
+
+    @Override
+    public double getDoubleValue() {
+        return Double.NaN;
+    }
+
     @Override
     public void execute(TCPMasterConnection con, int slaveAddress) throws ModbusException {
 
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus.executor;
+
+import de.avanux.smartapplianceenabler.modbus.ByteOrder;
+import de.avanux.smartapplianceenabler.modbus.ReadRegisterType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReadNumericRegisterExecutorImplTest {
+
+    @Test
+    public void getDoubleValue_decimalBigEndian() {
+        ReadNumericRegisterExecutorImpl executor = getNumericReadExecutor(ReadRegisterType.InputDecimal, "182", 2,
+                null, 0.01);
+        executor.setRegisterValues(new int[] {1, 18254}, 0);
+        assertEquals(837.90, executor.getDoubleValue(), 0.0001);
+    }
+
+    @Test
+    public void getDoubleValue_decimalLittleEndianWithOffset() {
+        ReadNumericRegisterExecutorImpl executor = getNumericReadExecutor(ReadRegisterType.InputDecimal, "0xB6", 2,
+                ByteOrder.LittleEndian, 0.01);
+        executor.setRegisterValues(new int[] {0, 0, 18254, 1}, 2);
+        assertEquals(837.90, executor.getDoubleValue(), 0.0001);
+    }
+
+    @Test
+    public void getDoubleValue_floatIgnoresFactor() {
+        ReadNumericRegisterExecutorImpl executor = getNumericReadExecutor(ReadRegisterType.InputFloat, "0x0C", 2,
+                null, 0.01);
+        int bits = Float.floatToIntBits(1500.0f);
+        executor.setRegisterValues(new int[] {bits >>> 16, bits & 0xFFFF}, 0);
+        assertEquals(1500.0, executor.getDoubleValue(), 0.0);
+    }
+
+    @Test
+    public void getDoubleValue_holdingIgnoresByteOrder() {
+        ReadNumericRegisterExecutorImpl executor = getNumericReadExecutor(ReadRegisterType.Holding, "0", 2,
+                ByteOrder.LittleEndian, 1.0);
+        int bits = Float.floatToIntBits(230.5f);
+        executor.setRegisterValues(new int[] {bits >>> 16, bits & 0xFFFF}, 0);
+        assertEquals(230.5, executor.getDoubleValue(), 0.0);
+    }
+
+    @Test
+    public void hasValue_noResponse() {
+        ReadNumericRegisterExecutorImpl executor = getNumericReadExecutor(ReadRegisterType.Holding, "0", 2, null, 1.0);
+        assertFalse(executor.hasValue());
+        executor.setRegisterValues(new int[] {0, 0}, 0);
+        assertTrue(executor.hasValue());
+        executor.setRegisterValues(null, 0);
+        assertFalse(executor.hasValue());
+        assertNull(executor.getValue());
+    }
+
+    @Test
+    public void getNumericReadExecutor_testingExecutor() {
+        ModbusReadFloatTestingExecutor testingExecutor = new ModbusReadFloatTestingExecutor();
+        ModbusExecutorFactory.setTestingReadFloatExecutor(testingExecutor);
+        try {
+            assertSame(testingExecutor, ModbusExecutorFactory.getNumericReadExecutor("F-001",
+                    ReadRegisterType.InputFloat, "0x0C", 2, null, 1.0));
+        }
+        finally {
+            ModbusExecutorFactory.setTestingReadFloatExecutor(null);
+        }
+    }
+
+    @Test
+    public void getNumericReadExecutor_notNumeric() {
+        assertNull(ModbusExecutorFactory.getNumericReadExecutor("F-001",
+                ReadRegisterType.InputString, "0", 2, null, 1.0));
+    }
+
+    private ReadNumericRegisterExecutorImpl getNumericReadExecutor(ReadRegisterType type, String address, int bytes,
+                                                                   ByteOrder byteOrder, Double factorToValue) {
+        return (ReadNumericRegisterExecutorImpl) ModbusExecutorFactory.getNumericReadExecutor("F-001", type, address,
+                bytes, byteOrder, factorToValue);
+    }
+}
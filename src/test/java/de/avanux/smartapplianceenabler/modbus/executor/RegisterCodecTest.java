@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.modbus.executor;
+
+import de.avanux.smartapplianceenabler.modbus.ReadRegisterType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RegisterCodecTest {
+
+    @Test
+    public void decodeInt16() {
+        assertEquals(-2.0, RegisterCodec.INT16.decode(new int[] {0xFFFE}, 0, false), 0.0);
+        assertEquals(1234.0, RegisterCodec.INT16.decode(new int[] {0, 1234}, 1, false), 0.0);
+    }
+
+    @Test
+    public void decodeInt32() {
+        assertEquals(83790.0, RegisterCodec.INT32.decode(new int[] {1, 18254}, 0, false), 0.0);
+        assertEquals(83790.0, RegisterCodec.INT32.decode(new int[] {18254, 1}, 0, true), 0.0);
+        assertEquals(-1.0, RegisterCodec.INT32.decode(new int[] {0xFFFF, 0xFFFF}, 0, false), 0.0);
+    }
+
+    @Test
+    public void decodeInt64() {
+        assertEquals(4294967296.0 + 2, RegisterCodec.INT64.decode(new int[] {0, 1, 0, 2}, 0, false), 0.0);
+        assertEquals(4294967296.0 + 2, RegisterCodec.INT64.decode(new int[] {2, 0, 1, 0}, 0, true), 0.0);
+    }
+
+    @Test
+    public void decodeFloat32() {
+        int bits = Float.floatToIntBits(230.5f);
+        assertEquals(230.5, RegisterCodec.FLOAT32.decode(new int[] {bits >>> 16, bits & 0xFFFF}, 0, false), 0.0);
+        assertEquals(230.5, RegisterCodec.FLOAT32.decode(new int[] {bits & 0xFFFF, bits >>> 16}, 0, true), 0.0);
+    }
+
+    @Test
+    public void decodeFloat64() {
+        long bits = Double.doubleToLongBits(12345.678);
+        int[] registers = new int[] {(int) (bits >>> 48) & 0xFFFF, (int) (bits >>> 32) & 0xFFFF,
+                (int) (bits >>> 16) & 0xFFFF, (int) bits & 0xFFFF};
+        assertEquals(12345.678, RegisterCodec.FLOAT64.decode(registers, 0, false), 0.0);
+    }
+
+    @Test
+    public void forRead() {
+        assertEquals(RegisterCodec.FLOAT32, RegisterCodec.forRead(ReadRegisterType.InputFloat, 2));
+        assertEquals(RegisterCodec.FLOAT64, RegisterCodec.forRead(ReadRegisterType.Holding, 4));
+        assertEquals(RegisterCodec.INT32, RegisterCodec.forRead(ReadRegisterType.InputDecimal, 2));
+        assertNull(RegisterCodec.forRead(ReadRegisterType.InputFloat, 1));
+        assertNull(RegisterCodec.forRead(ReadRegisterType.InputString, 2));
+    }
+}
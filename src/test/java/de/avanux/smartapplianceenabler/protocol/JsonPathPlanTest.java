@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonPathPlanTest {
+
+    private static final String TASMOTA = "{\"StatusSNS\":{\"Time\":\"2020-10-26T09:44:31\",\"ENERGY\":{\"TotalStartTime\":\"2020-10-25T20:39:07\",\"Total\":0.329,\"Yesterday\":0.329,\"Today\":0.123,\"Power\":0,\"ApparentPower\":0,\"ReactivePower\":0,\"Factor\":0.00,\"Voltage\":0,\"Current\":0.000}}}";
+    private static final String GO_E_CHARGER = "{\"version\":\"B\",\"car\":\"1\",\"dws\":\"2500\",\"nrg\":[2,0,0,235,0,0,0,0,0,0,0,0,0,0,0,0],\"wst\":\"3\",\"nested\":[{\"a\":1},{\"a\":2}]}";
+    private List<String> fallbackPaths = new ArrayList<>();
+
+    @Test
+    public void compile() {
+        assertEquals(Arrays.asList("StatusSNS", "ENERGY", "Today"), JsonPathPlan.compile("$.StatusSNS.ENERGY.Today"));
+        assertEquals(Arrays.asList("nrg", 3), JsonPathPlan.compile("$.nrg[3]"));
+        assertEquals(Arrays.asList("a b", "c"), JsonPathPlan.compile("$['a b'].c"));
+        assertNull(JsonPathPlan.compile("$..Today"));
+        assertNull(JsonPathPlan.compile("$.nrg[*]"));
+        assertNull(JsonPathPlan.compile("$.nrg.length()"));
+        assertNull(JsonPathPlan.compile("$.nested[?(@.a > 1)]"));
+    }
+
+    @Test
+    public void read() {
+        JsonPathPlan plan = new JsonPathPlan(Arrays.asList("$.StatusSNS.ENERGY.Today", "$.StatusSNS.ENERGY.Power",
+                "$.StatusSNS.ENERGY.Current", "$.StatusSNS.Time"));
+        Map<String, String> values = plan.read(TASMOTA, fallbackPaths);
+        assertEquals("0.123", values.get("$.StatusSNS.ENERGY.Today"));
+        assertEquals("0", values.get("$.StatusSNS.ENERGY.Power"));
+        assertEquals("0.0", values.get("$.StatusSNS.ENERGY.Current"));
+        assertEquals("2020-10-26T09:44:31", values.get("$.StatusSNS.Time"));
+        assertTrue(fallbackPaths.isEmpty());
+    }
+
+    @Test
+    public void read_arrays() {
+        JsonPathPlan plan = new JsonPathPlan(Arrays.asList("$.nrg[3]", "$.dws", "$.nested[1].a"));
+        Map<String, String> values = plan.read(GO_E_CHARGER, fallbackPaths);
+        assertEquals("235", values.get("$.nrg[3]"));
+        assertEquals("2500", values.get("$.dws"));
+        assertEquals("2", values.get("$.nested[1].a"));
+    }
+
+    @Test
+    public void read_missing() {
+        JsonPathPlan plan = new JsonPathPlan(Arrays.asList("$.missing", "$.nrg[99]", "$.car.a"));
+        assertTrue(plan.read(GO_E_CHARGER, fallbackPaths).isEmpty());
+        assertTrue(fallbackPaths.isEmpty());
+    }
+
+    @Test
+    public void read_fallback() {
+        JsonPathPlan plan = new JsonPathPlan(Arrays.asList("$.nrg", "$..a", "$.car"));
+        Map<String, String> values = plan.read(GO_E_CHARGER, fallbackPaths);
+        assertEquals(Collections.singletonMap("$.car", "1"), values);
+        assertEquals(Arrays.asList("$..a", "$.nrg"), fallbackPaths);
+    }
+
+    @Test
+    public void read_invalidJson() {
+        JsonPathPlan plan = new JsonPathPlan(Collections.singletonList("$.Power"));
+        assertTrue(plan.read("STATUS8 = {\"Power\":26}", fallbackPaths).isEmpty());
+        assertEquals(Collections.singletonList("$.Power"), fallbackPaths);
+    }
+}
@@ -19,12 +19,14 @@
 package de.avanux.smartapplianceenabler.schedule;
 
 import de.avanux.smartapplianceenabler.TestBase;
+import de.avanux.smartapplianceenabler.appliance.TimeframeIntervalChangedListener;
 import de.avanux.smartapplianceenabler.control.MockSwitch;
 import java.time.LocalDateTime;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -99,4 +101,63 @@ public class TimeframeIntervalHandlerTest extends TestBase {
         assertEquals(toIntervalByDow(now,5,14,0,5, 16, 0),
                 timeframeIntervals.get(4).getInterval());
     }
+
+    @Test
+    public void getNextQueueUpdate_beforeStart() {
+        List<Schedule> schedules = new ArrayList<Schedule>();
+        addSchedule(schedules, 3600, 10, 0, 16, 0);
+        TimeframeIntervalHandler timeframeIntervalHandler = buildTimeframeIntervalHandler(schedules);
+        LocalDateTime now = toToday(9, 58);
+        timeframeIntervalHandler.fillQueue(now);
+        assertEquals(toToday(10, 0), timeframeIntervalHandler.getNextQueueUpdate(now));
+    }
+
+    @Test
+    public void getNextQueueUpdate_maxInterval() {
+        List<Schedule> schedules = new ArrayList<Schedule>();
+        addSchedule(schedules, 3600, 10, 0, 16, 0);
+        TimeframeIntervalHandler timeframeIntervalHandler = buildTimeframeIntervalHandler(schedules);
+        LocalDateTime now = toToday(9, 0);
+        timeframeIntervalHandler.fillQueue(now);
+        assertEquals(now.plusSeconds(TimeframeIntervalHandler.MAX_UPDATE_QUEUE_INTERVAL_SECONDS),
+                timeframeIntervalHandler.getNextQueueUpdate(now));
+    }
+
+    @Test
+    public void getNextStateChange_latestStart() {
+        TimeframeInterval timeframeInterval = new TimeframeInterval(TimeframeIntervalState.QUEUED,
+                toInterval(0, 10, 0, 0, 16, 0), new RuntimeRequest(null, 3600));
+        assertEquals(toToday(15, 0, 1), timeframeInterval.getNextStateChange(toToday(10, 30)));
+    }
+
+    @Test
+    public void getNextStateChange_expired() {
+        TimeframeInterval timeframeInterval = new TimeframeInterval(TimeframeIntervalState.QUEUED,
+                toInterval(0, 10, 0, 0, 16, 0), new RuntimeRequest(null, 3600));
+        assertEquals(null, timeframeInterval.getNextStateChange(toToday(16, 30)));
+    }
+
+    @Test
+    public void updateQueue_activeIntervalChangedWithoutHandlerLock() {
+        List<Schedule> schedules = new ArrayList<Schedule>();
+        addSchedule(schedules, 3600, 10, 0, 16, 0);
+        TimeframeIntervalHandler timeframeIntervalHandler = buildTimeframeIntervalHandler(schedules);
+        List<Boolean> handlerLockHeld = new ArrayList<>();
+        timeframeIntervalHandler.addTimeframeIntervalChangedListener(new TimeframeIntervalChangedListener() {
+            @Override
+            public void timeframeIntervalCreated(LocalDateTime now, TimeframeInterval timeframeInterval) {
+            }
+
+            @Override
+            public void activeIntervalChanged(LocalDateTime now, String applianceId,
+                                              TimeframeInterval deactivatedInterval,
+                                              TimeframeInterval activatedInterval, boolean wasRunning) {
+                handlerLockHeld.add(Thread.holdsLock(timeframeIntervalHandler));
+            }
+        });
+        LocalDateTime now = toToday(10, 0);
+        timeframeIntervalHandler.fillQueue(now);
+        timeframeIntervalHandler.updateQueue(now, false);
+        assertEquals(Collections.singletonList(false), handlerLockHeld);
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.avanux.smartapplianceenabler.schedule;
+
+import de.avanux.smartapplianceenabler.TestBase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeframeIntervalQueueTest extends TestBase {
+
+    private TimeframeIntervalQueue queue;
+    private TimeframeInterval first;
+    private TimeframeInterval second;
+    private TimeframeInterval third;
+    private LocalDateTime now;
+
+    @BeforeEach
+    public void setUp() {
+        queue = new TimeframeIntervalQueue();
+        now = toToday(9, 0);
+        first = new TimeframeInterval(toInterval(0, 10, 0, 0, 12, 0), new RuntimeRequest(null, 3600));
+        second = new TimeframeInterval(toInterval(0, 13, 0, 0, 15, 0), new RuntimeRequest(null, 3600));
+        third = new TimeframeInterval(toInterval(1, 10, 0, 1, 12, 0), new RuntimeRequest(null, 3600));
+        for(TimeframeInterval timeframeInterval : Arrays.asList(first, second, third)) {
+            queue.add(timeframeInterval);
+            timeframeInterval.stateTransitionTo(now, TimeframeIntervalState.QUEUED);
+        }
+    }
+
+    @Test
+    public void positionalAccess() {
+        assertEquals(3, queue.size());
+        assertSame(second, queue.get(1));
+        assertEquals(2, queue.indexOf(third));
+        assertSame(third, queue.peekLast());
+    }
+
+    @Test
+    public void stateIndex() {
+        assertEquals(Arrays.asList(first, second, third), queue.getTimeframeIntervals(TimeframeIntervalState.QUEUED));
+        assertNull(queue.getActiveTimeframeInterval());
+
+        second.stateTransitionTo(now, TimeframeIntervalState.ACTIVE);
+        assertSame(second, queue.getActiveTimeframeInterval());
+        assertEquals(Arrays.asList(first, third), queue.getTimeframeIntervals(TimeframeIntervalState.QUEUED));
+
+        first.stateTransitionTo(now, TimeframeIntervalState.EXPIRED);
+        assertSame(first, queue.getFirstTimeframeInterval(TimeframeIntervalState.ACTIVE, TimeframeIntervalState.EXPIRED));
+        assertSame(second, queue.getFirstTimeframeInterval(TimeframeIntervalState.ACTIVE));
+
+        second.stateTransitionTo(now, TimeframeIntervalState.QUEUED);
+        assertNull(queue.getActiveTimeframeInterval());
+        assertEquals(Arrays.asList(second, third), queue.getTimeframeIntervals(TimeframeIntervalState.QUEUED));
+    }
+
+    @Test
+    public void structuralModification() {
+        second.stateTransitionTo(now, TimeframeIntervalState.ACTIVE);
+        queue.remove(second);
+        queue.add(0, second);
+        assertEquals(0, queue.indexOf(second));
+        assertEquals(1, queue.indexOf(first));
+        assertSame(second, queue.getActiveTimeframeInterval());
+
+        queue.remove(second);
+        assertEquals(-1, queue.indexOf(second));
+        assertNull(queue.getActiveTimeframeInterval());
+        // state transitions of removed timeframe intervals do not affect the queue
+        second.stateTransitionTo(now, TimeframeIntervalState.QUEUED);
+        assertEquals(Arrays.asList(first, third), queue.getTimeframeIntervals(TimeframeIntervalState.QUEUED));
+    }
+
+    @Test
+    public void snapshot() {
+        List<TimeframeInterval> snapshot = queue.getSnapshot();
+        queue.remove(first);
+        assertEquals(3, snapshot.size());
+        assertEquals(2, queue.getSnapshot().size());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(first));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.simulator;
+
+import de.avanux.smartapplianceenabler.appliance.ApplianceManager;
+import de.avanux.smartapplianceenabler.modbus.ReadRegisterType;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Generates Appliances.xml and Device2EM.xml matching the virtual devices of the {@link Simulator} so that
+ * SAE polls and switches all of them.
+ */
+public class ApplianceConfigurationGenerator {
+
+    private final String host;
+    private final int pollInterval;
+
+    /**
+     * @param host the host SAE uses to connect to the virtual devices
+     * @param pollInterval the poll interval of meters in seconds
+     */
+    public ApplianceConfigurationGenerator(String host, int pollInterval) {
+        this.host = host;
+        this.pollInterval = pollInterval;
+    }
+
+    public static String getApplianceId(int index) {
+        return String.format("F-00000001-%012d-00", index + 1);
+    }
+
+    public void writeAppliances(Writer writer, List<VirtualHttpDevice> httpDevices,
+                                List<VirtualModbusDevice> modbusDevices) throws IOException {
+        PrintWriter out = new PrintWriter(writer);
+        out.println("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+        out.println("<Appliances xmlns=\"" + ApplianceManager.SCHEMA_LOCATION + "\">");
+        for(VirtualHttpDevice device: httpDevices) {
+            writeHttpAppliance(out, device);
+        }
+        for(VirtualModbusDevice device: modbusDevices) {
+            writeModbusAppliance(out, device);
+        }
+        if(! modbusDevices.isEmpty()) {
+            out.println("    <Connectivity>");
+            for(VirtualModbusDevice device: modbusDevices) {
+                out.println("        <ModbusTCP id=\"" + getModbusTcpId(device) + "\" host=\"" + host
+                        + "\" port=\"" + device.getPort() + "\"/>");
+            }
+            out.println("    </Connectivity>");
+        }
+        out.println("</Appliances>");
+        out.flush();
+        if(out.checkError()) {
+            throw new IOException("Error writing appliances");
+        }
+    }
+
+    private void writeHttpAppliance(PrintWriter out, VirtualHttpDevice device) {
+        String baseUrl = "http://" + host + ":" + device.getPort();
+        out.println("    <Appliance id=\"" + device.getDevice().getApplianceId() + "\">");
+        if(device.getType() == VirtualHttpDevice.Type.Shelly) {
+            String statusUrl = baseUrl + "/status";
+            out.println("        <HttpSwitch contentProtocol=\"JSON\">");
+            out.println("            <HttpWrite url=\"" + baseUrl + "/relay/0?turn=on\">");
+            out.println("                <HttpWriteValue name=\"On\" method=\"GET\"/>");
+            out.println("            </HttpWrite>");
+            out.println("            <HttpWrite url=\"" + baseUrl + "/relay/0?turn=off\">");
+            out.println("                <HttpWriteValue name=\"Off\" method=\"GET\"/>");
+            out.println("            </HttpWrite>");
+            out.println("            <HttpRead url=\"" + statusUrl + "\">");
+            out.println("                <HttpReadValue name=\"On\" path=\"$.relays[0].ison\" extractionRegex=\"true\"/>");
+            out.println("            </HttpRead>");
+            out.println("        </HttpSwitch>");
+            out.println("        <HttpElectricityMeter pollInterval=\"" + pollInterval + "\" contentProtocol=\"JSON\">");
+            out.println("            <HttpRead url=\"" + statusUrl + "\">");
+            out.println("                <HttpReadValue name=\"Power\" path=\"$.meters[0].power\"/>");
+            out.println("                <HttpReadValue name=\"Energy\" path=\"$.meters[0].total\" factorToValue=\"0.001\"/>");
+            out.println("            </HttpRead>");
+            out.println("        </HttpElectricityMeter>");
+        }
+        else {
+            String commandUrl = baseUrl + "/cm?cmnd=";
+            out.println("        <HttpSwitch>");
+            out.println("            <HttpWrite url=\"" + commandUrl + "Power%20On\">");
+            out.println("                <HttpWriteValue name=\"On\" method=\"GET\"/>");
+            out.println("            </HttpWrite>");
+            out.println("            <HttpWrite url=\"" + commandUrl + "Power%20Off\">");
+            out.println("                <HttpWriteValue name=\"Off\" method=\"GET\"/>");
+            out.println("            </HttpWrite>");
+            out.println("        </HttpSwitch>");
+            out.println("        <HttpElectricityMeter pollInterval=\"" + pollInterval + "\" contentProtocol=\"JSON\">");
+            out.println("            <HttpRead url=\"" + commandUrl + "Status%208\">");
+            out.println("                <HttpReadValue name=\"Power\" path=\"$.StatusSNS.ENERGY.Power\"/>");
+            out.println("                <HttpReadValue name=\"Energy\" path=\"$.StatusSNS.ENERGY.Total\"/>");
+            out.println("            </HttpRead>");
+            out.println("        </HttpElectricityMeter>");
+        }
+        out.println("    </Appliance>");
+    }
+
+    private void writeModbusAppliance(PrintWriter out, VirtualModbusDevice device) {
+        String slave = "idref=\"" + getModbusTcpId(device) + "\" slaveAddress=\"" + VirtualModbusDevice.SLAVE_ADDRESS + "\"";
+        RegisterMap registerMap = device.getRegisterMap();
+        out.println("    <Appliance id=\"" + device.getDevice().getApplianceId() + "\">");
+        RegisterMap.Entry onEntry = registerMap.getEntry(VirtualDevice.Variable.on);
+        if(onEntry != null && (onEntry.getType() == ReadRegisterType.Coil || onEntry.getType() == ReadRegisterType.Holding)) {
+            out.println("        <ModbusSwitch " + slave + ">");
+            out.println("            <ModbusWrite address=\"" + onEntry.getAddress() + "\" type=\"" + onEntry.getType() + "\">");
+            out.println("                <ModbusWriteValue name=\"On\" value=\"1\"/>");
+            out.println("                <ModbusWriteValue name=\"Off\" value=\"0\"/>");
+            out.println("            </ModbusWrite>");
+            out.println("        </ModbusSwitch>");
+        }
+        out.println("        <ModbusElectricityMeter " + slave + " pollInterval=\"" + pollInterval + "\">");
+        writeModbusRead(out, registerMap.getEntry(VirtualDevice.Variable.power), "Power");
+        writeModbusRead(out, registerMap.getEntry(VirtualDevice.Variable.energy), "Energy");
+        out.println("        </ModbusElectricityMeter>");
+        out.println("    </Appliance>");
+    }
+
+    private void writeModbusRead(PrintWriter out, RegisterMap.Entry entry, String valueName) {
+        if(entry != null && ! entry.isBit()) {
+            out.println("            <ModbusRead address=\"" + entry.getAddress() + "\" bytes=\"2\" type=\"" + entry.getType()
+                    + "\"" + (entry.getFactorToValue() != null ? " factorToValue=\"" + entry.getFactorToValue() + "\"" : "")
+                    + ">");
+            out.println("                <ModbusReadValue name=\"" + valueName + "\"/>");
+            out.println("            </ModbusRead>");
+        }
+    }
+
+    private String getModbusTcpId(VirtualModbusDevice device) {
+        return "modbus" + device.getPort();
+    }
+
+    public void writeDevice2EM(Writer writer, List<VirtualDevice> devices) throws IOException {
+        PrintWriter out = new PrintWriter(writer);
+        out.println("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+        out.println("<Device2EM xmlns=\"http://www.sma.de/communication/schema/SEMP/v1\">");
+        for(VirtualDevice device: devices) {
+            String applianceId = device.getApplianceId();
+            out.println("    <DeviceInfo>");
+            out.println("        <Identification>");
+            out.println("            <DeviceId>" + applianceId + "</DeviceId>");
+            out.println("            <DeviceName>Virtual " + applianceId.substring(11, 23) + "</DeviceName>");
+            out.println("            <DeviceType>Other</DeviceType>");
+            out.println("            <DeviceSerial>" + applianceId.substring(11, 23) + "</DeviceSerial>");
+            out.println("            <DeviceVendor>Simulator</DeviceVendor>");
+            out.println("        </Identification>");
+            out.println("        <Characteristics>");
+            out.println("            <MaxPowerConsumption>" + device.getNominalPower() * 2 + "</MaxPowerConsumption>");
+            out.println("        </Characteristics>");
+            out.println("        <Capabilities>");
+            out.println("            <CurrentPower>");
+            out.println("                <Method>Measurement</Method>");
+            out.println("            </CurrentPower>");
+            out.println("            <Interruptions>");
+            out.println("                <InterruptionsAllowed>true</InterruptionsAllowed>");
+            out.println("            </Interruptions>");
+            out.println("        </Capabilities>");
+            out.println("    </DeviceInfo>");
+        }
+        out.println("</Device2EM>");
+        out.flush();
+        if(out.checkError()) {
+            throw new IOException("Error writing Device2EM");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.simulator;
+
+import de.avanux.smartapplianceenabler.appliance.Appliance;
+import de.avanux.smartapplianceenabler.appliance.Appliances;
+import de.avanux.smartapplianceenabler.control.HttpSwitch;
+import de.avanux.smartapplianceenabler.control.ModbusSwitch;
+import de.avanux.smartapplianceenabler.meter.HttpElectricityMeter;
+import de.avanux.smartapplianceenabler.meter.ModbusElectricityMeter;
+import de.avanux.smartapplianceenabler.semp.webservice.Device2EM;
+import de.avanux.smartapplianceenabler.util.FileHandler;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApplianceConfigurationGeneratorTest {
+
+    private ApplianceConfigurationGenerator generator = new ApplianceConfigurationGenerator("127.0.0.1", 10);
+    private FileHandler fileHandler = new FileHandler();
+    private FaultProfile faultProfile = new FaultProfile(0, 0, 0.0);
+    private VirtualDevice shelly = new VirtualDevice(ApplianceConfigurationGenerator.getApplianceId(0), 1000, 0);
+    private VirtualDevice tasmota = new VirtualDevice(ApplianceConfigurationGenerator.getApplianceId(1), 2000, 1);
+    private VirtualDevice modbus = new VirtualDevice(ApplianceConfigurationGenerator.getApplianceId(2), 3000, 2);
+
+    @Test
+    public void writeAppliances() throws Exception {
+        List<VirtualHttpDevice> httpDevices = Arrays.asList(
+                new VirtualHttpDevice(shelly, VirtualHttpDevice.Type.Shelly, 18000, faultProfile),
+                new VirtualHttpDevice(tasmota, VirtualHttpDevice.Type.Tasmota, 18001, faultProfile));
+        List<VirtualModbusDevice> modbusDevices = Collections.singletonList(
+                new VirtualModbusDevice(modbus, 15020, RegisterMap.getDefault(), faultProfile));
+        StringWriter writer = new StringWriter();
+        generator.writeAppliances(writer, httpDevices, modbusDevices);
+
+        Appliances appliances = fileHandler.load(Appliances.class,
+                new ByteArrayInputStream(writer.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(3, appliances.getAppliances().size());
+        Appliance shellyAppliance = appliances.getAppliances().get(0);
+        assertEquals("F-00000001-000000000001-00", shellyAppliance.getId());
+        assertTrue(shellyAppliance.getControl() instanceof HttpSwitch);
+        assertTrue(shellyAppliance.getMeter() instanceof HttpElectricityMeter);
+        Appliance modbusAppliance = appliances.getAppliances().get(2);
+        assertTrue(modbusAppliance.getControl() instanceof ModbusSwitch);
+        assertTrue(modbusAppliance.getMeter() instanceof ModbusElectricityMeter);
+        assertEquals(1, appliances.getConnectivity().getModbusTCPs().size());
+        assertEquals(Integer.valueOf(15020), appliances.getConnectivity().getModbusTCPs().get(0).getPort());
+    }
+
+    @Test
+    public void writeDevice2EM() throws Exception {
+        StringWriter writer = new StringWriter();
+        generator.writeDevice2EM(writer, Arrays.asList(shelly, tasmota, modbus));
+
+        Device2EM device2EM = fileHandler.load(Device2EM.class,
+                new ByteArrayInputStream(writer.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(3, device2EM.getDeviceInfo().size());
+        assertEquals("F-00000001-000000000003-00",
+                device2EM.getDeviceInfo().get(2).getIdentification().getDeviceId());
+        assertEquals(6000, device2EM.getDeviceInfo().get(2).getCharacteristics().getMaxPowerConsumption());
+    }
+}
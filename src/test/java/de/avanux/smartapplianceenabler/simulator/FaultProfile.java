@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Response latency, jitter and failure rate applied by virtual devices to each request.
+ */
+public class FaultProfile {
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double failureRate;
+
+    /**
+     * @param latencyMillis the minimum response latency
+     * @param jitterMillis the maximum random latency added to the minimum latency
+     * @param failureRate the probability (0.0 ... 1.0) of a request failing
+     */
+    public FaultProfile(long latencyMillis, long jitterMillis, double failureRate) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.failureRate = failureRate;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    public long nextDelayMillis() {
+        return latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0L);
+    }
+
+    public boolean nextFailure() {
+        return failureRate > 0.0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+    }
+
+    /**
+     * Delays the calling thread by the latency of the next request.
+     * @return true, if the request has to fail
+     */
+    public boolean apply() {
+        long delayMillis = nextDelayMillis();
+        if(delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return nextFailure();
+    }
+
+    @Override
+    public String toString() {
+        return "latency=" + latencyMillis + "ms jitter=" + jitterMillis + "ms failureRate=" + failureRate;
+    }
+}
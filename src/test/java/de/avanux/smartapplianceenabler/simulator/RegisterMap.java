@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.simulator;
+
+import de.avanux.smartapplianceenabler.modbus.ReadRegisterType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Register map of a virtual ModBus device. Each line of a register map script maps a register to a variable of the
+ * {@link VirtualDevice}:
+ * <pre>
+ * # type address variable [factorToValue]
+ * InputFloat 0x000C power
+ * InputDecimal 0x0156 energy 0.01
+ * Coil 0 on
+ * </pre>
+ * The type is a {@link ReadRegisterType} except InputString. Float and decimal values occupy two registers,
+ * Coil and Discrete occupy one bit. The factor to value of InputDecimal and Holding registers is applied like in the
+ * ModBus read of the appliance configuration, i.e. the register contains the value divided by the factor.
+ */
+public class RegisterMap {
+
+    private final List<Entry> entries;
+
+    public RegisterMap(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Returns the register map of an electricity meter with power and energy and a switch.
+     */
+    public static RegisterMap getDefault() {
+        try {
+            return parse(new StringReader("InputFloat 0x000C power\nInputFloat 0x0156 energy\nCoil 0 on\n"));
+        }
+        catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static RegisterMap parse(Reader reader) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            if(tokens.length < 3 || tokens.length > 4) {
+                throw new IOException("Line " + lineNumber + ": expected type, address, variable and optional factor");
+            }
+            try {
+                ReadRegisterType type = ReadRegisterType.valueOf(tokens[0]);
+                if(type == ReadRegisterType.InputString) {
+                    throw new IllegalArgumentException("InputString is not supported");
+                }
+                String address = tokens[1];
+                VirtualDevice.Variable variable = VirtualDevice.Variable.valueOf(tokens[2]);
+                Double factorToValue = tokens.length == 4 ? Double.parseDouble(tokens[3]) : null;
+                entries.add(new Entry(type, address, variable, factorToValue));
+            }
+            catch(IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return new RegisterMap(entries);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the first entry for a variable.
+     * @return the entry or null
+     */
+    public Entry getEntry(VirtualDevice.Variable variable) {
+        for(Entry entry: entries) {
+            if(entry.getVariable() == variable) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public static class Entry {
+        private final ReadRegisterType type;
+        private final String address;
+        private final VirtualDevice.Variable variable;
+        private final Double factorToValue;
+
+        public Entry(ReadRegisterType type, String address, VirtualDevice.Variable variable, Double factorToValue) {
+            this.type = type;
+            this.address = address;
+            this.variable = variable;
+            this.factorToValue = factorToValue;
+        }
+
+        public ReadRegisterType getType() {
+            return type;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public int getResolvedAddress() {
+            return address.startsWith("0x") ? Integer.parseInt(address.substring(2), 16) : Integer.parseInt(address);
+        }
+
+        public VirtualDevice.Variable getVariable() {
+            return variable;
+        }
+
+        public Double getFactorToValue() {
+            return factorToValue;
+        }
+
+        public boolean isBit() {
+            return type == ReadRegisterType.Coil || type == ReadRegisterType.Discrete;
+        }
+
+        /**
+         * Returns the content of the two registers representing a value.
+         */
+        public int[] toRegisters(double value) {
+            boolean scaled = factorToValue != null && type != ReadRegisterType.InputFloat;
+            double scaledValue = scaled ? value / factorToValue : value;
+            int bits = type == ReadRegisterType.InputDecimal
+                    ? (int) Math.round(scaledValue)
+                    : Float.floatToIntBits((float) scaledValue);
+            return new int[] { (bits >>> 16) & 0xFFFF, bits & 0xFFFF };
+        }
+    }
+}
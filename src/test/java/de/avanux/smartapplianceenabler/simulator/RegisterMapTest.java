@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.simulator;
+
+import de.avanux.smartapplianceenabler.modbus.ReadRegisterType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegisterMapTest {
+
+    @Test
+    public void parse() throws Exception {
+        RegisterMap registerMap = RegisterMap.parse(new StringReader(
+                "# meter\nInputFloat 0x000C power\n\nInputDecimal 342 energy 0.01\nHolding 10 on\n"));
+        assertEquals(3, registerMap.getEntries().size());
+        RegisterMap.Entry power = registerMap.getEntry(VirtualDevice.Variable.power);
+        assertEquals(ReadRegisterType.InputFloat, power.getType());
+        assertEquals("0x000C", power.getAddress());
+        assertEquals(12, power.getResolvedAddress());
+        assertNull(power.getFactorToValue());
+        RegisterMap.Entry energy = registerMap.getEntry(VirtualDevice.Variable.energy);
+        assertEquals(342, energy.getResolvedAddress());
+        assertEquals(0.01, energy.getFactorToValue(), 0.0);
+        assertEquals(ReadRegisterType.Holding, registerMap.getEntry(VirtualDevice.Variable.on).getType());
+    }
+
+    @Test
+    public void parse_invalid() {
+        assertThrows(IOException.class, () -> RegisterMap.parse(new StringReader("InputFloat 0x000C")));
+        assertThrows(IOException.class, () -> RegisterMap.parse(new StringReader("InputString 100 power")));
+        assertThrows(IOException.class, () -> RegisterMap.parse(new StringReader("InputFloat 100 voltage")));
+    }
+
+    @Test
+    public void toRegisters_float() {
+        RegisterMap.Entry entry = new RegisterMap.Entry(ReadRegisterType.InputFloat, "0", VirtualDevice.Variable.power, null);
+        int[] registers = entry.toRegisters(1234.5);
+        assertEquals(1234.5f, Float.intBitsToFloat(registers[0] << 16 | registers[1]), 0.0f);
+    }
+
+    @Test
+    public void toRegisters_decimalWithFactor() {
+        RegisterMap.Entry entry = new RegisterMap.Entry(ReadRegisterType.InputDecimal, "0", VirtualDevice.Variable.energy, 0.01);
+        int[] registers = entry.toRegisters(123456.78);
+        assertEquals(12345678, registers[0] << 16 | registers[1]);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.simulator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves virtual HTTP (Shelly/Tasmota style) and ModBus TCP devices for load testing SAE without hardware.
+ * Each device listens on its own port starting at the base port of its kind. Optionally Appliances.xml and
+ * Device2EM.xml are written to a directory which can be used as SAE home directory.
+ * <p>
+ * Run with: mvn -Psimulator test-compile exec:java -Dsimulator.args="--http-devices=100 --modbus-devices=100 --output-dir=/tmp/sae"
+ * <p>
+ * Options (default):
+ * <ul>
+ * <li>--http-devices (100): number of HTTP devices, alternating Shelly and Tasmota</li>
+ * <li>--modbus-devices (100): number of ModBus TCP devices</li>
+ * <li>--host (127.0.0.1): host the HTTP devices bind to and SAE connects to</li>
+ * <li>--http-port (18000): port of the first HTTP device</li>
+ * <li>--modbus-port (15020): port of the first ModBus device</li>
+ * <li>--latency (20): minimum response latency in ms</li>
+ * <li>--jitter (30): maximum random latency added in ms</li>
+ * <li>--failure-rate (0.0): probability of a request failing</li>
+ * <li>--register-map: file containing the {@link RegisterMap} of ModBus devices</li>
+ * <li>--output-dir: directory to write Appliances.xml and Device2EM.xml to</li>
+ * <li>--poll-interval (10): poll interval of the meters in seconds</li>
+ * </ul>
+ */
+public class Simulator {
+
+    private Logger logger = LoggerFactory.getLogger(Simulator.class);
+    private final Map<String, String> options;
+    private final List<VirtualHttpDevice> httpDevices = new ArrayList<>();
+    private final List<VirtualModbusDevice> modbusDevices = new ArrayList<>();
+    private ExecutorService httpExecutor;
+    private ScheduledExecutorService updateExecutor;
+
+    public Simulator(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Simulator simulator = new Simulator(parseOptions(args));
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::stop));
+        simulator.start();
+        Thread.currentThread().join();
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for(String arg: args) {
+            if(! arg.startsWith("--") || ! arg.contains("=")) {
+                throw new IllegalArgumentException("Invalid option " + arg + " (expected --name=value)");
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    private String getOption(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private int getIntOption(String name, int defaultValue) {
+        return Integer.parseInt(getOption(name, String.valueOf(defaultValue)));
+    }
+
+    public void start() throws Exception {
+        String host = getOption("host", "127.0.0.1");
+        FaultProfile faultProfile = new FaultProfile(getIntOption("latency", 20), getIntOption("jitter", 30),
+                Double.parseDouble(getOption("failure-rate", "0.0")));
+        RegisterMap registerMap = RegisterMap.getDefault();
+        String registerMapFile = getOption("register-map", null);
+        if(registerMapFile != null) {
+            try(Reader reader = new FileReader(registerMapFile)) {
+                registerMap = RegisterMap.parse(reader);
+            }
+        }
+
+        int index = 0;
+        int httpPort = getIntOption("http-port", 18000);
+        httpExecutor = Executors.newCachedThreadPool();
+        for(int i=0; i<getIntOption("http-devices", 100); i++) {
+            VirtualHttpDevice.Type type = i % 2 == 0 ? VirtualHttpDevice.Type.Shelly : VirtualHttpDevice.Type.Tasmota;
+            VirtualHttpDevice device = new VirtualHttpDevice(createDevice(index++), type, httpPort + i, faultProfile);
+            device.start(host, httpExecutor);
+            httpDevices.add(device);
+        }
+        int modbusPort = getIntOption("modbus-port", 15020);
+        for(int i=0; i<getIntOption("modbus-devices", 100); i++) {
+            VirtualModbusDevice device = new VirtualModbusDevice(createDevice(index++), modbusPort + i, registerMap,
+                    faultProfile);
+            device.start();
+            modbusDevices.add(device);
+        }
+        updateExecutor = Executors.newSingleThreadScheduledExecutor();
+        updateExecutor.scheduleAtFixedRate(() -> modbusDevices.forEach(VirtualModbusDevice::update),
+                1, 1, TimeUnit.SECONDS);
+        logger.info("Started {} HTTP devices on ports {}-{} and {} ModBus devices on ports {}-{} ({})",
+                httpDevices.size(), httpPort, httpPort + httpDevices.size() - 1,
+                modbusDevices.size(), modbusPort, modbusPort + modbusDevices.size() - 1, faultProfile);
+
+        String outputDir = getOption("output-dir", null);
+        if(outputDir != null) {
+            writeConfiguration(new File(outputDir), host, getIntOption("poll-interval", 10));
+        }
+    }
+
+    private VirtualDevice createDevice(int index) {
+        // nominal power between 100W and 3000W
+        return new VirtualDevice(ApplianceConfigurationGenerator.getApplianceId(index), 100 + (index * 397) % 2901, index);
+    }
+
+    private void writeConfiguration(File directory, String host, int pollInterval) throws IOException {
+        directory.mkdirs();
+        ApplianceConfigurationGenerator generator = new ApplianceConfigurationGenerator(host, pollInterval);
+        File appliancesFile = new File(directory, "Appliances.xml");
+        try(Writer writer = new FileWriter(appliancesFile)) {
+            generator.writeAppliances(writer, httpDevices, modbusDevices);
+        }
+        List<VirtualDevice> devices = new ArrayList<>();
+        httpDevices.forEach(device -> devices.add(device.getDevice()));
+        modbusDevices.forEach(device -> devices.add(device.getDevice()));
+        File device2EMFile = new File(directory, "Device2EM.xml");
+        try(Writer writer = new FileWriter(device2EMFile)) {
+            generator.writeDevice2EM(writer, devices);
+        }
+        logger.info("Configuration written to {} and {}", appliancesFile, device2EMFile);
+    }
+
+    public void stop() {
+        if(updateExecutor != null) {
+            updateExecutor.shutdownNow();
+        }
+        httpDevices.forEach(VirtualHttpDevice::stop);
+        modbusDevices.forEach(VirtualModbusDevice::stop);
+        if(httpExecutor != null) {
+            httpExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.simulator;
+
+import java.util.Random;
+
+/**
+ * Simulated appliance whose power fluctuates around its nominal power while switched on. The energy is integrated
+ * from the power whenever the state is read or changed.
+ */
+public class VirtualDevice {
+
+    public enum Variable {
+        power,
+        energy,
+        on
+    }
+
+    private final String applianceId;
+    private final int nominalPower;
+    private final Random random;
+    private boolean on = true;
+    private double power;
+    private double energy; // kWh
+    private long lastUpdateMillis;
+
+    public VirtualDevice(String applianceId, int nominalPower, long seed) {
+        this.applianceId = applianceId;
+        this.nominalPower = nominalPower;
+        this.random = new Random(seed);
+        this.lastUpdateMillis = System.currentTimeMillis();
+        this.power = nominalPower;
+    }
+
+    public String getApplianceId() {
+        return applianceId;
+    }
+
+    public int getNominalPower() {
+        return nominalPower;
+    }
+
+    public synchronized boolean isOn() {
+        return on;
+    }
+
+    public synchronized void setOn(boolean on) {
+        update(System.currentTimeMillis());
+        this.on = on;
+    }
+
+    /**
+     * Returns the current power in W.
+     */
+    public synchronized double getPower() {
+        update(System.currentTimeMillis());
+        return power;
+    }
+
+    /**
+     * Returns the energy in kWh consumed since the start of the simulation.
+     */
+    public synchronized double getEnergy() {
+        update(System.currentTimeMillis());
+        return energy;
+    }
+
+    public synchronized double getValue(Variable variable) {
+        switch(variable) {
+            case power:
+                return getPower();
+            case energy:
+                return getEnergy();
+            default:
+                return on ? 1.0 : 0.0;
+        }
+    }
+
+    protected synchronized void update(long now) {
+        if(now > lastUpdateMillis) {
+            energy += power * (now - lastUpdateMillis) / 3600000000.0;
+            lastUpdateMillis = now;
+        }
+        // +/- 5% of nominal power
+        power = on ? nominalPower * (0.95 + random.nextDouble() * 0.1) : 0.0;
+    }
+}
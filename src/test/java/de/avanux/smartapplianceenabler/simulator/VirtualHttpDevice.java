@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+/**
+ * Serves a {@link VirtualDevice} through a JSON HTTP API on its own port.
+ * <ul>
+ * <li>Shelly: GET /status returns {"meters":[{"power":W,"total":Wh}],"relays":[{"ison":true}]},
+ * GET /relay/0?turn=on|off switches the device</li>
+ * <li>Tasmota: GET /cm?cmnd=Status%208 returns {"StatusSNS":{"ENERGY":{"Total":kWh,"Power":W}}},
+ * GET /cm?cmnd=Power%20On|Off switches the device</li>
+ * </ul>
+ */
+public class VirtualHttpDevice {
+
+    public enum Type {
+        Shelly,
+        Tasmota
+    }
+
+    private Logger logger = LoggerFactory.getLogger(VirtualHttpDevice.class);
+    private final VirtualDevice device;
+    private final Type type;
+    private final int port;
+    private final FaultProfile faultProfile;
+    private HttpServer server;
+
+    public VirtualHttpDevice(VirtualDevice device, Type type, int port, FaultProfile faultProfile) {
+        this.device = device;
+        this.type = type;
+        this.port = port;
+        this.faultProfile = faultProfile;
+    }
+
+    public VirtualDevice getDevice() {
+        return device;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Starts serving requests.
+     * @param host the host to bind to
+     * @param executor the executor handling requests which is shared by all devices
+     */
+    public void start(String host, Executor executor) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 50);
+        server.setExecutor(executor);
+        if(type == Type.Shelly) {
+            server.createContext("/status", exchange -> handle(exchange, this::getShellyStatus));
+            server.createContext("/relay/0", exchange -> handle(exchange, this::switchShelly));
+        }
+        else {
+            server.createContext("/cm", exchange -> handle(exchange, this::handleTasmotaCommand));
+        }
+        server.start();
+    }
+
+    public void stop() {
+        if(server != null) {
+            server.stop(0);
+        }
+    }
+
+    private void handle(HttpExchange exchange, RequestHandler handler) throws IOException {
+        try {
+            if(faultProfile.apply()) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            String query = exchange.getRequestURI().getQuery();
+            String body = handler.handle(query != null ? query : "");
+            if(body == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try(OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+        catch(IOException e) {
+            logger.debug("{}: Error sending response", device.getApplianceId(), e);
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private String getShellyStatus(String query) {
+        return String.format(Locale.US, "{\"meters\":[{\"power\":%.2f,\"total\":%.3f}],\"relays\":[{\"ison\":%s}]}",
+                device.getPower(), device.getEnergy() * 1000.0, device.isOn());
+    }
+
+    private String switchShelly(String query) {
+        if(query.contains("turn=on")) {
+            device.setOn(true);
+        }
+        else if(query.contains("turn=off")) {
+            device.setOn(false);
+        }
+        return "{\"ison\":" + device.isOn() + "}";
+    }
+
+    private String handleTasmotaCommand(String query) {
+        String command = query.replace("cmnd=", "").replace("%20", " ").replace('+', ' ');
+        if(command.equalsIgnoreCase("Status 8")) {
+            return String.format(Locale.US, "{\"StatusSNS\":{\"ENERGY\":{\"Total\":%.3f,\"Power\":%d}}}",
+                    device.getEnergy(), Math.round(device.getPower()));
+        }
+        if(command.equalsIgnoreCase("Power On")) {
+            device.setOn(true);
+        }
+        else if(command.equalsIgnoreCase("Power Off")) {
+            device.setOn(false);
+        }
+        else if(! command.equalsIgnoreCase("Power")) {
+            return null;
+        }
+        return "{\"POWER\":\"" + (device.isOn() ? "ON" : "OFF") + "\"}";
+    }
+
+    private interface RequestHandler {
+        String handle(String query);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.simulator;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.procimg.DigitalIn;
+import com.ghgande.j2mod.modbus.procimg.DigitalOut;
+import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
+import com.ghgande.j2mod.modbus.procimg.InputRegister;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleDigitalIn;
+import com.ghgande.j2mod.modbus.procimg.SimpleDigitalOut;
+import com.ghgande.j2mod.modbus.procimg.SimpleInputRegister;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.slave.ModbusSlave;
+import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
+import de.avanux.smartapplianceenabler.modbus.ReadRegisterType;
+
+/**
+ * Serves a {@link VirtualDevice} as ModBus TCP slave on its own port. The registers are defined by a
+ * {@link RegisterMap} and refreshed by {@link #update()}. Writes to a coil or holding register mapped to the
+ * variable "on" switch the device.
+ */
+public class VirtualModbusDevice {
+
+    public static final int SLAVE_ADDRESS = 1;
+    private static final int POOL_SIZE = 3;
+    private final VirtualDevice device;
+    private final int port;
+    private final RegisterMap registerMap;
+    private final FaultProfile faultProfile;
+    private SimpleInputRegister[] inputRegisters;
+    private SimpleRegister[] holdingRegisters;
+    private SimpleDigitalOut[] coils;
+    private SimpleDigitalIn[] discreteInputs;
+    private boolean lastOn;
+    private ModbusSlave slave;
+
+    public VirtualModbusDevice(VirtualDevice device, int port, RegisterMap registerMap, FaultProfile faultProfile) {
+        this.device = device;
+        this.port = port;
+        this.registerMap = registerMap;
+        this.faultProfile = faultProfile;
+    }
+
+    public VirtualDevice getDevice() {
+        return device;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public RegisterMap getRegisterMap() {
+        return registerMap;
+    }
+
+    public void start() throws ModbusException {
+        SimpleProcessImage processImage = new FaultInjectingProcessImage();
+        inputRegisters = new SimpleInputRegister[getSize(ReadRegisterType.InputFloat, ReadRegisterType.InputDecimal)];
+        for(int i=0; i<inputRegisters.length; i++) {
+            inputRegisters[i] = new SimpleInputRegister(0);
+            processImage.addInputRegister(inputRegisters[i]);
+        }
+        holdingRegisters = new SimpleRegister[getSize(ReadRegisterType.Holding)];
+        for(int i=0; i<holdingRegisters.length; i++) {
+            holdingRegisters[i] = new SimpleRegister(0);
+            processImage.addRegister(holdingRegisters[i]);
+        }
+        coils = new SimpleDigitalOut[getSize(ReadRegisterType.Coil)];
+        for(int i=0; i<coils.length; i++) {
+            coils[i] = new SimpleDigitalOut(false);
+            processImage.addDigitalOut(coils[i]);
+        }
+        discreteInputs = new SimpleDigitalIn[getSize(ReadRegisterType.Discrete)];
+        for(int i=0; i<discreteInputs.length; i++) {
+            discreteInputs[i] = new SimpleDigitalIn(false);
+            processImage.addDigitalIn(discreteInputs[i]);
+        }
+        lastOn = device.isOn();
+        update();
+        slave = ModbusSlaveFactory.createTCPSlave(port, POOL_SIZE);
+        slave.addProcessImage(SLAVE_ADDRESS, processImage);
+        slave.open();
+    }
+
+    public void stop() {
+        if(slave != null) {
+            slave.close();
+        }
+    }
+
+    private int getSize(ReadRegisterType... types) {
+        int size = 0;
+        for(RegisterMap.Entry entry: registerMap.getEntries()) {
+            for(ReadRegisterType type: types) {
+                if(entry.getType() == type) {
+                    size = Math.max(size, entry.getResolvedAddress() + (entry.isBit() ? 1 : 2));
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Applies writes of the switch state to the device and refreshes all registers from the device.
+     */
+    public synchronized void update() {
+        RegisterMap.Entry onEntry = registerMap.getEntry(VirtualDevice.Variable.on);
+        if(onEntry != null) {
+            boolean on = readOn(onEntry);
+            if(on != lastOn) {
+                device.setOn(on);
+            }
+        }
+        for(RegisterMap.Entry entry: registerMap.getEntries()) {
+            double value = device.getValue(entry.getVariable());
+            int address = entry.getResolvedAddress();
+            switch(entry.getType()) {
+                case Coil:
+                    coils[address].set(value != 0.0);
+                    break;
+                case Discrete:
+                    discreteInputs[address].set(value != 0.0);
+                    break;
+                case Holding:
+                    int[] holdingValues = entry.toRegisters(value);
+                    holdingRegisters[address].setValue(holdingValues[0]);
+                    holdingRegisters[address + 1].setValue(holdingValues[1]);
+                    break;
+                default:
+                    int[] inputValues = entry.toRegisters(value);
+                    inputRegisters[address].setValue(inputValues[0]);
+                    inputRegisters[address + 1].setValue(inputValues[1]);
+            }
+        }
+        lastOn = device.isOn();
+    }
+
+    private boolean readOn(RegisterMap.Entry entry) {
+        int address = entry.getResolvedAddress();
+        if(entry.getType() == ReadRegisterType.Coil) {
+            return coils[address].isSet();
+        }
+        if(entry.getType() == ReadRegisterType.Holding) {
+            return holdingRegisters[address].getValue() != 0 || holdingRegisters[address + 1].getValue() != 0;
+        }
+        return lastOn;
+    }
+
+    /**
+     * Applies the {@link FaultProfile} to each read or write of the ModBus master.
+     */
+    private class FaultInjectingProcessImage extends SimpleProcessImage {
+
+        private void applyFaultProfile() throws IllegalAddressException {
+            if(faultProfile.apply()) {
+                throw new IllegalAddressException("Simulated failure");
+            }
+        }
+
+        @Override
+        public InputRegister[] getInputRegisterRange(int offset, int count) throws IllegalAddressException {
+            applyFaultProfile();
+            return super.getInputRegisterRange(offset, count);
+        }
+
+        @Override
+        public Register[] getRegisterRange(int offset, int count) throws IllegalAddressException {
+            applyFaultProfile();
+            return super.getRegisterRange(offset, count);
+        }
+
+        @Override
+        public Register getRegister(int ref) throws IllegalAddressException {
+            applyFaultProfile();
+            return super.getRegister(ref);
+        }
+
+        @Override
+        public DigitalOut[] getDigitalOutRange(int offset, int count) throws IllegalAddressException {
+            applyFaultProfile();
+            return super.getDigitalOutRange(offset, count);
+        }
+
+        @Override
+        public DigitalOut getDigitalOut(int ref) throws IllegalAddressException {
+            applyFaultProfile();
+            return super.getDigitalOut(ref);
+        }
+
+        @Override
+        public DigitalIn[] getDigitalInRange(int offset, int count) throws IllegalAddressException {
+            applyFaultProfile();
+            return super.getDigitalInRange(offset, count);
+        }
+    }
+}
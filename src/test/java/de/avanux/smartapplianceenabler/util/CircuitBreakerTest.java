@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+    private CircuitBreaker circuitBreaker;
+
+    public CircuitBreakerTest() {
+        // without jitter
+        Random random = new Random() {
+            @Override
+            public double nextDouble() {
+                return 0.0;
+            }
+        };
+        circuitBreaker = new CircuitBreaker("192.168.1.1:80", 3, 1000, 4000, 5000, random);
+    }
+
+    @Test
+    public void closed() {
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest(0));
+        circuitBreaker.recordFailure(0);
+        circuitBreaker.recordFailure(0);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        circuitBreaker.recordSuccess(0);
+        circuitBreaker.recordFailure(0);
+        circuitBreaker.recordFailure(0);
+        assertTrue(circuitBreaker.allowRequest(0));
+    }
+
+    @Test
+    public void tripOpen() {
+        failRequests(3, 10000);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(11000, circuitBreaker.getOpenUntilMillis());
+        assertFalse(circuitBreaker.allowRequest(10999));
+        assertEquals(1, circuitBreaker.getRejectedRequests());
+    }
+
+    @Test
+    public void halfOpen_probeSucceeds() {
+        failRequests(3, 10000);
+        assertTrue(circuitBreaker.allowRequest(11000));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        // only the probe is allowed
+        assertFalse(circuitBreaker.allowRequest(11001));
+        circuitBreaker.recordSuccess(11500);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(0, circuitBreaker.getConsecutiveFailures());
+        assertTrue(circuitBreaker.allowRequest(11501));
+    }
+
+    @Test
+    public void halfOpen_probeFails_exponentialBackoff() {
+        failRequests(3, 10000);
+        assertTrue(circuitBreaker.allowRequest(11000));
+        circuitBreaker.recordFailure(11000);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(13000, circuitBreaker.getOpenUntilMillis());
+        assertTrue(circuitBreaker.allowRequest(13000));
+        circuitBreaker.recordFailure(13000);
+        assertEquals(17000, circuitBreaker.getOpenUntilMillis());
+        assertTrue(circuitBreaker.allowRequest(17000));
+        circuitBreaker.recordFailure(17000);
+        // limited by max backoff
+        assertEquals(21000, circuitBreaker.getOpenUntilMillis());
+    }
+
+    @Test
+    public void halfOpen_probeTimeout() {
+        failRequests(3, 10000);
+        assertTrue(circuitBreaker.allowRequest(11000));
+        // outcome of the probe not recorded
+        assertFalse(circuitBreaker.allowRequest(15999));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest(16000));
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(18000, circuitBreaker.getOpenUntilMillis());
+        assertTrue(circuitBreaker.allowRequest(18000));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void open_lateFailureDoesNotExtendBackoff() {
+        failRequests(3, 10000);
+        circuitBreaker.recordFailure(10500);
+        assertEquals(11000, circuitBreaker.getOpenUntilMillis());
+    }
+
+    @Test
+    public void jitter() {
+        Random random = new Random() {
+            @Override
+            public double nextDouble() {
+                return 0.5;
+            }
+        };
+        CircuitBreaker circuitBreaker = new CircuitBreaker("192.168.1.1:80", 1, 1000, 4000, 5000, random);
+        circuitBreaker.recordFailure(0);
+        assertEquals(750, circuitBreaker.getOpenUntilMillis());
+    }
+
+    @Test
+    public void getEndpoint() {
+        assertEquals("192.168.1.1:80", CircuitBreakerRegistry.getEndpoint("http://192.168.1.1/status"));
+        assertEquals("shelly:8080", CircuitBreakerRegistry.getEndpoint("http://shelly:8080/rpc?id=0"));
+        assertEquals("wallbox:443", CircuitBreakerRegistry.getEndpoint("https://wallbox/api"));
+        assertNull(CircuitBreakerRegistry.getEndpoint("not a url"));
+    }
+
+    private void failRequests(int count, long now) {
+        for(int i=0; i<count; i++) {
+            assertTrue(circuitBreaker.allowRequest(now));
+            circuitBreaker.recordFailure(now);
+        }
+    }
+}
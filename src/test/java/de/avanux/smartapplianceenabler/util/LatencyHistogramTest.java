@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    private LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    public void indexOf_highestValueOf() {
+        long previousHighestValue = -1;
+        for(long value = 0; value < 100000; value++) {
+            int index = LatencyHistogram.indexOf(value);
+            long highestValue = LatencyHistogram.highestValueOf(index);
+            assertTrue(value <= highestValue, "value=" + value);
+            assertTrue(highestValue - value <= value / 32, "value=" + value);
+            if(index > 0) {
+                assertTrue(LatencyHistogram.highestValueOf(index - 1) < value, "value=" + value);
+            }
+            assertTrue(highestValue >= previousHighestValue);
+            previousHighestValue = highestValue;
+        }
+    }
+
+    @Test
+    public void getPercentileMicros_empty() {
+        assertEquals(0, histogram.getPercentileMicros(50.0));
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMeanMicros(), 0.0);
+    }
+
+    @Test
+    public void getPercentileMicros() {
+        for(int i = 1; i <= 1000; i++) {
+            histogram.record(i * 100);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(100000, histogram.getMaxMicros());
+        assertEquals(50050.0, histogram.getMeanMicros(), 0.001);
+        assertEquals(50000, histogram.getPercentileMicros(50.0), 50000 / 32);
+        assertEquals(99000, histogram.getPercentileMicros(99.0), 99000 / 32);
+        assertEquals(100000, histogram.getPercentileMicros(100.0));
+        assertEquals(100, histogram.getPercentileMicros(0.0), 100 / 32);
+    }
+
+    @Test
+    public void recordNanos_clamped() {
+        histogram.recordNanos(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        assertEquals(LatencyHistogram.MAX_MICROS, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(50.0));
+        assertEquals(LatencyHistogram.MAX_MICROS, histogram.getPercentileMicros(100.0));
+    }
+
+    @Test
+    public void reset() {
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(99.0));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.avanux.smartapplianceenabler.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SampleWindowTest {
+
+    private SampleWindow window;
+
+    public SampleWindowTest() {
+        window = new SampleWindow("Test", 4);
+        window.setApplianceId(getClass().getSimpleName());
+        window.setMaxAgeSeconds(60);
+    }
+
+    @Test
+    public void empty() {
+        assertTrue(window.isEmpty());
+        assertEquals(0.0, window.getAverage(), 0.01);
+        assertEquals(0.0f, window.getMin(), 0.01f);
+        assertEquals(0.0f, window.getMax(), 0.01f);
+    }
+
+    @Test
+    public void averageMinMaxLast() {
+        window.addValue(0, 10.0f);
+        window.addValue(10000, 30.0f);
+        window.addValue(20000, 20.0f);
+        assertEquals(3, window.size());
+        assertEquals(20.0, window.getAverage(), 0.01);
+        assertEquals(10.0f, window.getMin(), 0.01f);
+        assertEquals(30.0f, window.getMax(), 0.01f);
+        assertEquals(20.0f, window.getLastValue(), 0.01f);
+        assertEquals(20000, window.getLastTimestamp());
+    }
+
+    @Test
+    public void expiredValuesRemoved() {
+        window.addValue(0, 10.0f);
+        window.addValue(30000, 50.0f);
+        window.addValue(61000, 20.0f);
+        assertEquals(2, window.size());
+        assertEquals(35.0, window.getAverage(), 0.01);
+        assertEquals(20.0f, window.getMin(), 0.01f);
+        assertEquals(50.0f, window.getMax(), 0.01f);
+        assertEquals(50.0f, window.getValue(0), 0.01f);
+    }
+
+    @Test
+    public void oldestValueDroppedIfFull() {
+        window.addValue(0, 100.0f);
+        window.addValue(1000, 1.0f);
+        window.addValue(2000, 2.0f);
+        window.addValue(3000, 3.0f);
+        window.addValue(4000, 4.0f);
+        assertEquals(4, window.size());
+        assertEquals(2.5, window.getAverage(), 0.01);
+        assertEquals(1.0f, window.getMin(), 0.01f);
+        assertEquals(4.0f, window.getMax(), 0.01f);
+        assertEquals(1000, window.getTimestamp(0));
+    }
+
+    @Test
+    public void clear() {
+        window.addValue(0, 10.0f);
+        window.clear();
+        assertTrue(window.isEmpty());
+        window.addValue(1000, 5.0f);
+        assertEquals(5.0, window.getAverage(), 0.01);
+        assertEquals(5.0f, window.getMin(), 0.01f);
+        assertEquals(5.0f, window.getMax(), 0.01f);
+    }
+}
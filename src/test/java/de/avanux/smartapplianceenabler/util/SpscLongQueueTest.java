@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.avanux.smartapplianceenabler.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpscLongQueueTest {
+
+    private SpscLongQueue queue = new SpscLongQueue(3);
+
+    @Test
+    public void capacity() {
+        assertEquals(4, queue.getCapacity());
+    }
+
+    @Test
+    public void poll_empty() {
+        assertTrue(queue.isEmpty());
+        assertEquals(SpscLongQueue.EMPTY, queue.poll());
+    }
+
+    @Test
+    public void offer_poll() {
+        assertTrue(queue.offer(1L));
+        assertTrue(queue.offer(2L));
+        assertEquals(2, queue.size());
+        assertEquals(1L, queue.poll());
+        assertEquals(2L, queue.poll());
+        assertEquals(SpscLongQueue.EMPTY, queue.poll());
+    }
+
+    @Test
+    public void offer_full() {
+        for(long i=0; i<4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4L));
+        assertEquals(0L, queue.poll());
+        assertTrue(queue.offer(4L));
+        assertEquals(1L, queue.poll());
+    }
+
+    @Test
+    public void concurrentProducerConsumer() throws Exception {
+        int count = 100000;
+        Thread producer = new Thread(() -> {
+            for(long i=0; i<count; i++) {
+                while(! queue.offer(i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+        long expected = 0;
+        while(expected < count) {
+            long value = queue.poll();
+            if(value != SpscLongQueue.EMPTY) {
+                assertEquals(expected++, value);
+            }
+        }
+        producer.join();
+        assertTrue(queue.isEmpty());
+    }
+}
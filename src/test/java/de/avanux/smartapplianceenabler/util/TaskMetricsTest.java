@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TaskMetricsTest {
+
+    private TaskMetrics metrics;
+
+    @BeforeEach
+    public void setUp() {
+        metrics = new TaskMetrics();
+    }
+
+    private GuardedTimerTask createTask(String applianceId, String taskName, long period) {
+        return new GuardedTimerTask(applianceId, taskName, period) {
+            @Override
+            public void runTask() {
+            }
+        };
+    }
+
+    @Test
+    public void recordExecution() {
+        GuardedTimerTask task = createTask("F-001", "PollPowerMeter", 5000);
+        metrics.recordExecution(task, 1000L, 10, 100000000L, null);
+        metrics.recordExecution(task, 6000L, 30, 5200000000L, new IOException("Connection refused"));
+        metrics.recordSkipped(task);
+
+        List<TaskStatistics> statistics = metrics.getTaskStatistics();
+        assertEquals(1, statistics.size());
+        TaskStatistics taskStatistics = statistics.get(0);
+        assertEquals("F-001", taskStatistics.getApplianceId());
+        assertEquals("PollPowerMeter", taskStatistics.getTaskName());
+        assertEquals(5000, taskStatistics.getPeriodMillis());
+        assertEquals(2, taskStatistics.getExecutions());
+        assertEquals(1, taskStatistics.getSkipped());
+        assertEquals(1, taskStatistics.getOverruns());
+        assertEquals(1, taskStatistics.getErrors());
+        assertEquals("java.io.IOException: Connection refused", taskStatistics.getLastError());
+        assertEquals(6000L, taskStatistics.getLastErrorTime());
+        assertEquals(6000L, taskStatistics.getLastStartTime());
+        assertEquals(5200.0, taskStatistics.getLastDurationMillis(), 0.001);
+        assertEquals(5200.0, taskStatistics.getDurationMaxMillis(), 5200.0 / 32);
+        assertEquals(30.0, taskStatistics.getLagMaxMillis(), 1.0);
+    }
+
+    @Test
+    public void getTaskStatistics_sortedByApplianceAndTask() {
+        metrics.recordExecution(createTask("F-002", "UpdateState", 1000), 0L, 0, 0, null);
+        metrics.recordExecution(createTask("F-001", "UpdateActiveTimeframeInterval", 1000), 0L, 0, 0, null);
+        metrics.recordExecution(createTask(null, "HolidaysDownloader", 0), 0L, 0, 0, null);
+        metrics.recordExecution(createTask("F-001", "FillQueueTimerTask", 1000), 0L, 0, 0, null);
+
+        List<TaskStatistics> statistics = metrics.getTaskStatistics();
+        assertEquals(4, statistics.size());
+        assertEquals("HolidaysDownloader", statistics.get(0).getTaskName());
+        assertEquals("FillQueueTimerTask", statistics.get(1).getTaskName());
+        assertEquals("UpdateActiveTimeframeInterval", statistics.get(2).getTaskName());
+        assertEquals("UpdateState", statistics.get(3).getTaskName());
+
+        metrics.reset();
+        assertTrue(metrics.getTaskStatistics().isEmpty());
+    }
+
+    @Test
+    public void run_recordsError() {
+        GuardedTimerTask task = new GuardedTimerTask("F-003", "Failing", 1000) {
+            @Override
+            public void runTask() {
+                throw new IllegalStateException("failed");
+            }
+        };
+        task.run();
+        TaskStatistics taskStatistics = TaskMetrics.getInstance().getTaskStatistics().stream()
+                .filter(statistics -> "F-003".equals(statistics.getApplianceId()))
+                .findFirst().orElse(null);
+        assertNotNull(taskStatistics);
+        assertEquals(1, taskStatistics.getErrors());
+        assertEquals("java.lang.IllegalStateException: failed", taskStatistics.getLastError());
+    }
+
+    @Test
+    public void run_async_recordedWhenCompleted() {
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        GuardedTimerTask task = new GuardedTimerTask("F-004", "Async", 1000) {
+            @Override
+            public CompletableFuture<?> runTaskAsync() {
+                return completion;
+            }
+        };
+        CompletableFuture<Void> execution = task.run(0);
+        assertFalse(execution.isDone());
+        assertFalse(TaskMetrics.getInstance().getTaskStatistics().stream()
+                .anyMatch(statistics -> "F-004".equals(statistics.getApplianceId())));
+
+        completion.completeExceptionally(new IOException("Connection refused"));
+        assertTrue(execution.isDone());
+        assertFalse(execution.isCompletedExceptionally());
+        TaskStatistics taskStatistics = TaskMetrics.getInstance().getTaskStatistics().stream()
+                .filter(statistics -> "F-004".equals(statistics.getApplianceId()))
+                .findFirst().orElse(null);
+        assertNotNull(taskStatistics);
+        assertEquals(1, taskStatistics.getExecutions());
+        assertEquals("java.io.IOException: Connection refused", taskStatistics.getLastError());
+    }
+}
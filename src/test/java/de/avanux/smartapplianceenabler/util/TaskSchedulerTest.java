@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TaskSchedulerTest {
+
+    private TaskScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new TaskScheduler(5, 2, 1, 1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void schedule_periodicUntilCancelled() throws Exception {
+        CountDownLatch executions = new CountDownLatch(3);
+        GuardedTimerTask task = new GuardedTimerTask("F-001", "Periodic", 10) {
+            @Override
+            public void runTask() {
+                executions.countDown();
+            }
+        };
+        scheduler.schedule(task, 0, task.getPeriod());
+        assertTrue(executions.await(2, TimeUnit.SECONDS));
+        assertTrue(task.cancel());
+        assertTrue(task.isCancelled());
+        assertFalse(task.cancel());
+    }
+
+    @Test
+    public void schedule_once() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch executed = new CountDownLatch(1);
+        scheduler.schedule(new GuardedTimerTask("F-001", "Once", 0) {
+            @Override
+            public void runTask() {
+                executions.incrementAndGet();
+                executed.countDown();
+            }
+        }, 10);
+        assertTrue(executed.await(2, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void schedule_noOverlap() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch executions = new CountDownLatch(2);
+        GuardedTimerTask task = new GuardedTimerTask("F-001", "Slow", 5, "192.168.1.1:502") {
+            @Override
+            public void runTask() {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(50);
+                running.decrementAndGet();
+                executions.countDown();
+            }
+        };
+        scheduler.configure(4, 1, 4);
+        scheduler.schedule(task, 0, task.getPeriod());
+        assertTrue(executions.await(2, TimeUnit.SECONDS));
+        task.cancel();
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void schedule_bulkheadPerEndpoint() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch executions = new CountDownLatch(4);
+        for(int i=0; i<4; i++) {
+            scheduler.schedule(new GuardedTimerTask("F-00" + i, "Poll", 0, "192.168.1.1:502") {
+                @Override
+                public void runTask() {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(20);
+                    running.decrementAndGet();
+                    executions.countDown();
+                }
+            }, 0);
+        }
+        assertTrue(executions.await(2, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void schedule_logicNotBlockedByDeviceIo() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch logicExecuted = new CountDownLatch(1);
+        for(int i=0; i<2; i++) {
+            scheduler.schedule(new GuardedTimerTask("F-00" + i, "Poll", 0, "192.168.1." + i + ":80") {
+                @Override
+                public void runTask() {
+                    await(release);
+                }
+            }, 0);
+        }
+        scheduler.schedule(new GuardedTimerTask("F-001", "UpdateQueue", 0) {
+            @Override
+            public void runTask() {
+                logicExecuted.countDown();
+            }
+        }, 10);
+        assertTrue(logicExecuted.await(2, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void schedule_asyncOccupiesBulkheadUntilCompleted() throws Exception {
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        AtomicInteger asyncExecutions = new AtomicInteger();
+        CountDownLatch otherExecuted = new CountDownLatch(1);
+        GuardedTimerTask asyncTask = new GuardedTimerTask("F-001", "Async", 5, "192.168.1.1:502") {
+            @Override
+            public CompletableFuture<?> runTaskAsync() {
+                asyncExecutions.incrementAndGet();
+                return completion;
+            }
+        };
+        scheduler.schedule(asyncTask, 0, asyncTask.getPeriod());
+        scheduler.schedule(new GuardedTimerTask("F-002", "Poll", 0, "192.168.1.1:502") {
+            @Override
+            public void runTask() {
+                otherExecuted.countDown();
+            }
+        }, 10);
+        assertFalse(otherExecuted.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, asyncExecutions.get());
+        completion.complete(null);
+        assertTrue(otherExecuted.await(2, TimeUnit.SECONDS));
+        asyncTask.cancel();
+    }
+
+    @Test
+    public void alignedTick() {
+        assertEquals(5, TaskScheduler.alignedTick(0, 5));
+        assertEquals(5, TaskScheduler.alignedTick(4, 5));
+        assertEquals(10, TaskScheduler.alignedTick(5, 5));
+        assertEquals(8, TaskScheduler.alignedTick(7, 1));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(2, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
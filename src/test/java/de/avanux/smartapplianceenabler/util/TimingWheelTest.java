@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    private TimingWheel<String> wheel = new TimingWheel<>(1000, 8, 10000);
+
+    private List<String> advance(long nowMillis) {
+        List<String> dueItems = new ArrayList<>();
+        wheel.advance(nowMillis, dueItems);
+        return dueItems;
+    }
+
+    @Test
+    public void toTick() {
+        assertEquals(10, wheel.toTick(10000));
+        assertEquals(11, wheel.toTick(10001));
+        assertEquals(11, wheel.toTick(10999));
+    }
+
+    @Test
+    public void advance_sameTick() {
+        wheel.add("a", 12);
+        wheel.add("b", 12);
+        wheel.add("c", 13);
+        assertEquals(3, wheel.size());
+        assertTrue(advance(11999).isEmpty());
+        assertEquals(Arrays.asList("a", "b"), advance(12000));
+        assertEquals(Collections.singletonList("c"), advance(13500));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void add_pastTick() {
+        wheel.add("a", 5);
+        assertEquals(Collections.singletonList("a"), advance(11000));
+    }
+
+    @Test
+    public void advance_moreThanOneRevolution() {
+        // tick 30 is stored in the same slot as tick 14 and 22
+        wheel.add("a", 30);
+        assertTrue(advance(14000).isEmpty());
+        assertTrue(advance(22000).isEmpty());
+        assertEquals(1, wheel.size());
+        assertEquals(Collections.singletonList("a"), advance(30000));
+    }
+
+    @Test
+    public void advance_skippedTicks() {
+        wheel.add("a", 12);
+        wheel.add("b", 25);
+        assertEquals(Arrays.asList("a", "b"), sorted(advance(40000)));
+        assertEquals(40, wheel.getCurrentTick());
+    }
+
+    private List<String> sorted(List<String> items) {
+        Collections.sort(items);
+        return items;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2020 Axel Müller <axel.mueller@avanux.de>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package de.avanux.smartapplianceenabler.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValueExtractorTest {
+
+    @Test
+    public void getFloatValue_noRegex() {
+        ValueExtractor extractor = ValueExtractor.compile(null, null);
+        assertEquals(123.45f, extractor.getFloatValue("123.45"), 0.0001f);
+    }
+
+    @Test
+    public void getFloatValue_regex() {
+        ValueExtractor extractor = ValueExtractor.compile(".*Power\":(\\d+.\\d+).*", null);
+        assertEquals(41.5f, extractor.getFloatValue("{\"Power\":41.5,\"Energy\":7.1}"), 0.0001f);
+    }
+
+    @Test
+    public void getFloatValue_regexNotMatching() {
+        ValueExtractor extractor = ValueExtractor.compile("power=(\\d+)", null);
+        assertEquals(17.0f, extractor.getFloatValue("17"), 0.0001f);
+    }
+
+    @Test
+    public void getFloatValue_factorToValue() {
+        ValueExtractor extractor = ValueExtractor.compile(null, 0.001);
+        assertEquals(1.234f, extractor.getFloatValue("1234"), 0.00001f);
+    }
+
+    @Test
+    public void getFloatValue_decimalComma() {
+        ValueExtractor extractor = ValueExtractor.compile("<td>(.*)</td>", null);
+        assertEquals(-0.5f, extractor.getFloatValue("<td>-0,5</td>"), 0.0001f);
+    }
+
+    @Test
+    public void getFloatValue_invalid() {
+        ValueExtractor extractor = ValueExtractor.compile(null, null);
+        assertThrows(NumberFormatException.class, () -> extractor.getFloatValue("n/a"));
+    }
+
+    @Test
+    public void parseDouble_sameAsDoubleParseDouble() {
+        String[] values = { "0", "-0", "+1", "3.14159", " 42 ", "1e3", "1.5E-7", "0.1", "123456789012345678",
+                "9007199254740993", "4.9e-324", "1.7976931348623157e308", "12.", ".5", "1d", "NaN", "-Infinity" };
+        for(String value: values) {
+            assertEquals(Double.parseDouble(value), ValueExtractor.parseDouble(value, 0, value.length()), value);
+        }
+    }
+
+    @Test
+    public void parseDouble_range() {
+        String text = "value=12,75kWh";
+        assertEquals(12.75, ValueExtractor.parseDouble(text, 6, 11), 0.0);
+    }
+
+    @Test
+    public void isMatch() {
+        ValueExtractor extractor = ValueExtractor.compile("\"on\":true", null);
+        assertTrue(extractor.isMatch("{\"on\":true,\"power\":0}"));
+        assertFalse(extractor.isFullMatch("{\"on\":true,\"power\":0}"));
+        assertTrue(extractor.isFullMatch("\"on\":true"));
+        assertFalse(ValueExtractor.compile(null, null).isMatch("anything"));
+    }
+
+    @Test
+    public void isFullMatch_sameAsStringMatches() {
+        ValueExtractor extractor = ValueExtractor.compile(".*on.*", null);
+        assertTrue(extractor.isMatch("status\non"));
+        assertEquals("status\non".matches(".*on.*"), extractor.isFullMatch("status\non"));
+        assertFalse(extractor.isFullMatch("status\non"));
+        assertTrue(extractor.isFullMatch("status on"));
+    }
+}